@@ -0,0 +1,104 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Measures complete {@link JsonNominatimClient} calls against the {@link NominatimStubServer}: query string
+ * generation, HTTP exchange over the loopback interface and response parsing.
+ * <p>
+ * Run with <code>-t</code> to measure concurrent calls, and with <code>-p latencyMillis=50</code> to simulate the
+ * server latency.
+ *
+ * @author Jeremie Huchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientCallBenchmark {
+
+    /** The latency added by the server to each response. */
+    @Param({ "0" })
+    private int latencyMillis;
+
+    private NominatimStubServer server;
+
+    private CloseableHttpClient httpClient;
+
+    private NominatimClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new NominatimStubServer();
+        server.setLatency(latencyMillis, 0, TimeUnit.MILLISECONDS);
+        server.start();
+
+        httpClient = HttpClients.custom().setMaxConnPerRoute(64).setMaxConnTotal(64).build();
+        client = new JsonNominatimClient(server.getBaseUrl(), httpClient, "contact@dudie.fr");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        httpClient.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public List<Address> search() throws IOException {
+        return client.search("vitré, rennes");
+    }
+
+    @Benchmark
+    public Address getAddress() throws IOException {
+        return client.getAddress(-1.6489126, 48.1166561, 18);
+    }
+
+    @Benchmark
+    public List<Address> lookupAddress() throws IOException {
+        return client.lookupAddress(Arrays.asList("W42928962", "W24351247", "W118562830"));
+    }
+}
@@ -0,0 +1,104 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Measures the parsing of recorded Nominatim responses with the {@link Gson} instance configured for
+ * {@link JsonNominatimClient}, from a string and through the {@link NominatimResponseHandler}.
+ *
+ * @author Jeremie Huchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    /** The recorded response, from <code>src/test/resources/fixtures</code>. */
+    @Param({ "search.json", "search-polygon.json", "reverse.json", "lookup.json" })
+    private String fixture;
+
+    private Gson gson;
+
+    private Type type;
+
+    private byte[] payload;
+
+    private String json;
+
+    private NominatimResponseHandler<Object> handler;
+
+    @Setup
+    public void setUp() throws IOException {
+        gson = NominatimGson.create();
+        if (fixture.startsWith("reverse")) {
+            type = Address.class;
+        } else {
+            type = new TypeToken<List<Address>>() {
+            }.getType();
+        }
+        payload = NominatimStubServer.read("/fixtures/" + fixture);
+        json = new String(payload, "UTF-8");
+        handler = new NominatimResponseHandler<Object>(gson, type);
+    }
+
+    @Benchmark
+    public Object gsonFromString() {
+        return gson.fromJson(json, type);
+    }
+
+    @Benchmark
+    public Object responseHandler() throws IOException {
+        final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.setEntity(new ByteArrayEntity(payload, ContentType.APPLICATION_JSON));
+        return handler.handleResponse(response);
+    }
+}
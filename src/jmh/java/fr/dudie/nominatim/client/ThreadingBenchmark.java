@@ -0,0 +1,114 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the platform and virtual thread modes of {@link ExecutorAsyncNominatimClient}: each invocation issues
+ * <code>calls</code> reverse geocoding calls at once against the {@link NominatimStubServer} and waits for all of
+ * them.
+ * <p>
+ * The platform mode runs the calls on a fixed pool of <code>connections</code> threads, the virtual mode starts a
+ * virtual thread per call, capped to <code>connections</code> running calls. The virtual mode requires Java 21.
+ *
+ * @author Jeremie Huchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadingBenchmark {
+
+    /** The thread mode. */
+    @Param({ "platform", "virtual" })
+    private String threads;
+
+    /** The number of calls per invocation. */
+    @Param({ "1000" })
+    private int calls;
+
+    /** The size of the connection pool. */
+    @Param({ "200" })
+    private int connections;
+
+    /** The latency added by the server to each response. */
+    @Param({ "20" })
+    private int latencyMillis;
+
+    private NominatimStubServer server;
+
+    private CloseableHttpClient httpClient;
+
+    private ExecutorAsyncNominatimClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new NominatimStubServer(connections);
+        server.setLatency(latencyMillis, 0, TimeUnit.MILLISECONDS);
+        server.start();
+
+        httpClient = HttpClients.custom().setMaxConnPerRoute(connections).setMaxConnTotal(connections).build();
+        final NominatimClient blocking = new JsonNominatimClient(server.getBaseUrl(), httpClient, "contact@dudie.fr");
+        if ("virtual".equals(threads)) {
+            client = ExecutorAsyncNominatimClient.withVirtualThreads(blocking, connections);
+        } else {
+            client = ExecutorAsyncNominatimClient.withPlatformThreads(blocking, connections);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        httpClient.close();
+        server.stop();
+    }
+
+    @Benchmark
+    public void getAddress() {
+        final CompletableFuture<?>[] results = new CompletableFuture<?>[calls];
+        for (int i = 0; i < calls; i++) {
+            results[i] = client.getAddress(-1.6489126 + i * 1E-5, 48.1166561, 18);
+        }
+        CompletableFuture.allOf(results).join();
+    }
+}
@@ -0,0 +1,133 @@
+package fr.dudie.nominatim.client.request;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fr.dudie.nominatim.client.request.paramhelper.OsmType;
+import fr.dudie.nominatim.client.request.paramhelper.PolygonFormat;
+
+/**
+ * Measures the query string generation of each request type, and compares the cached encoders of
+ * {@link QueryParameterAnnotationHandler} with the reflective implementation they replaced.
+ *
+ * @author Jeremie Huchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryStringBenchmark {
+
+    private NominatimReverseRequest reverse;
+
+    private NominatimReverseRequest reverseOsmId;
+
+    private NominatimSearchRequest search;
+
+    private NominatimSearchRequest structuredSearch;
+
+    private NominatimLookupRequest lookup;
+
+    @Setup
+    public void setUp() {
+        reverse = new NominatimReverseRequest();
+        reverse.setQuery(-1.14465546607971, 48.1462173461914);
+        reverse.setZoom(18);
+        reverse.setAddressDetails(true);
+
+        search = new NominatimSearchRequest();
+        search.setQuery("10 rue de chateaudun, rennes, france");
+        search.setAcceptLanguage("fr_FR");
+        search.addCountryCode("FR");
+        search.setLimit(10);
+        search.setPolygonFormat(PolygonFormat.GEO_JSON);
+
+        reverseOsmId = new NominatimReverseRequest();
+        reverseOsmId.setQuery(new OsmTypeAndIdReverseQuery(OsmType.RELATION, 54517));
+
+        final ExtendedSearchQuery structured = new ExtendedSearchQuery();
+        structured.setStreet("10 rue de chateaudun");
+        structured.setCity("rennes");
+        structured.setPostalCode("35000");
+        structured.setCountry("france");
+        structuredSearch = new NominatimSearchRequest();
+        structuredSearch.setQuery(structured);
+        structuredSearch.setViewBox(-1.75, 48.15, -1.6, 48.05);
+        structuredSearch.setBounded(true);
+        structuredSearch.setAddress(true);
+
+        lookup = new NominatimLookupRequest();
+        lookup.setQuery(Arrays.asList("R146656", "W104393803", "N240109189"));
+        lookup.setAddressDetails(true);
+    }
+
+    @Benchmark
+    public String reverseCachedEncoder() {
+        return QueryParameterAnnotationHandler.process(reverse);
+    }
+
+    @Benchmark
+    public String reverseReflective() {
+        return ReflectiveQueryParameterHandler.process(reverse);
+    }
+
+    @Benchmark
+    public String searchCachedEncoder() {
+        return QueryParameterAnnotationHandler.process(search);
+    }
+
+    @Benchmark
+    public String searchReflective() {
+        return ReflectiveQueryParameterHandler.process(search);
+    }
+
+    @Benchmark
+    public String reverseOsmId() {
+        return reverseOsmId.getQueryString();
+    }
+
+    @Benchmark
+    public String structuredSearch() {
+        return structuredSearch.getQueryString();
+    }
+
+    @Benchmark
+    public String lookup() {
+        return lookup.getQueryString();
+    }
+}
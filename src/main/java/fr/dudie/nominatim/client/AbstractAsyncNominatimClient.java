@@ -0,0 +1,129 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Base class for {@link AsyncNominatimClient} implementations.
+ * <p>
+ * The convenience methods build a {@link NominatimSearchRequest}, a {@link NominatimReverseRequest} or a
+ * {@link NominatimLookupRequest} and pass it to {@link #search(NominatimSearchRequest)},
+ * {@link #getAddress(NominatimReverseRequest)} or {@link #lookupAddress(NominatimLookupRequest)}, so that
+ * implementations only have to handle these three requests.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public abstract class AbstractAsyncNominatimClient implements AsyncNominatimClient {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#search(java.lang.String)
+     */
+    @Override
+    public CompletableFuture<List<Address>> search(final String query) {
+
+        final NominatimSearchRequest q = new NominatimSearchRequest();
+        q.setQuery(query);
+        return this.search(q);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(double, double)
+     */
+    @Override
+    public CompletableFuture<Address> getAddress(final double longitude, final double latitude) {
+
+        final NominatimReverseRequest q = new NominatimReverseRequest();
+        q.setQuery(longitude, latitude);
+        return this.getAddress(q);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(double, double, int)
+     */
+    @Override
+    public CompletableFuture<Address> getAddress(final double longitude, final double latitude, final int zoom) {
+
+        final NominatimReverseRequest q = new NominatimReverseRequest();
+        q.setQuery(longitude, latitude);
+        q.setZoom(zoom);
+        return this.getAddress(q);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(int, int)
+     */
+    @Override
+    public CompletableFuture<Address> getAddress(final int longitudeE6, final int latitudeE6) {
+
+        return this.getAddress(longitudeE6 / 1E6, latitudeE6 / 1E6);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(String, long)
+     */
+    @Override
+    @Deprecated
+    public CompletableFuture<Address> getAddress(final String type, final long id) {
+
+        final List<String> typeIds = new ArrayList<String>();
+        typeIds.add(type + id);
+        return this.lookupAddress(typeIds).thenApply(response -> {
+            if (response != null && response.size() > 0) {
+                return response.get(0);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#lookupAddress(java.util.List)
+     */
+    @Override
+    public CompletableFuture<List<Address>> lookupAddress(final List<String> typeId) {
+
+        final NominatimLookupRequest q = new NominatimLookupRequest();
+        q.setQuery(typeId);
+        return this.lookupAddress(q);
+    }
+}
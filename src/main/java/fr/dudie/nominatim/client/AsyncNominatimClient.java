@@ -0,0 +1,153 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Non-blocking interface to use the Nominatim Service.
+ * <p>
+ * Mirrors {@link NominatimClient}: each method returns immediately and the returned future completes with the result,
+ * or exceptionally with the communication error, once the server answered.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public interface AsyncNominatimClient {
+
+    /**
+     * Search for results with the given query.
+     * <p>
+     * See also {@link #search(NominatimSearchRequest)} to obtain more result details.
+     *
+     * @param query
+     *            the query
+     * @return a future list of results
+     * @see NominatimClient#search(String)
+     */
+    CompletableFuture<List<Address>> search(String query);
+
+    /**
+     * Reverse geocode the given coordinates.
+     *
+     * @param longitude
+     *            a longitude
+     * @param latitude
+     *            a latitude
+     * @return a future address corresponding to the given longitude and latitude, completed with <code>null</code> if
+     *         no result found
+     * @see NominatimClient#getAddress(double, double)
+     */
+    CompletableFuture<Address> getAddress(double longitude, double latitude);
+
+    /**
+     * Reverse geocode the given coordinates using a specific zoom level
+     *
+     * @param longitude
+     *            a longitude
+     * @param latitude
+     *            a latitude
+     * @param zoom
+     *            a osm zoom level
+     * @return a future address corresponding to the given longitude and latitude, completed with <code>null</code> if
+     *         no result found
+     * @see NominatimClient#getAddress(double, double, int)
+     */
+    CompletableFuture<Address> getAddress(double longitude, double latitude, int zoom);
+
+    /**
+     * A convenience method to do the same as {@link #getAddress(double, double)} but with int E6 latitude and
+     * longitude.
+     *
+     * @param longitudeE6
+     *            a longitude E6
+     * @param latitudeE6
+     *            a latitude E6
+     * @return a future address corresponding to the given longitude and latitude, completed with <code>null</code> if
+     *         no result found
+     * @see NominatimClient#getAddress(int, int)
+     */
+    CompletableFuture<Address> getAddress(int longitudeE6, int latitudeE6);
+
+    /**
+     * Reverse geocode the given OSM id.
+     *
+     * @param type
+     *            An OSM type [N|W|R]
+     * @param id
+     *            An OSM id
+     * @return a future address corresponding to the given osm type and id pair, completed with <code>null</code> if
+     *         no result found
+     * @deprecated
+     * @see NominatimClient#getAddress(String, long)
+     */
+    @Deprecated
+    CompletableFuture<Address> getAddress(String type, long id);
+
+    /**
+     * This method can be used to lookup addresses with an OSM type and ID
+     *
+     * @param typeId
+     *            [N|W|R]ID
+     * @return a future list of addresses corresponding to the given OSM type and ID
+     * @see NominatimClient#lookupAddress(List)
+     */
+    CompletableFuture<List<Address>> lookupAddress(List<String> typeId);
+
+    /**
+     * Search for addresses.
+     *
+     * @param search
+     *            the search request parameters
+     * @return a future list of results
+     * @see NominatimClient#search(NominatimSearchRequest)
+     */
+    CompletableFuture<List<Address>> search(NominatimSearchRequest search);
+
+    /**
+     * Reverse geocoding request.
+     *
+     * @param reverse
+     *            a reverse geocoding request
+     * @return a future address corresponding to the given longitude and latitude, completed with <code>null</code> if
+     *         no result found
+     * @see NominatimClient#getAddress(NominatimReverseRequest)
+     */
+    CompletableFuture<Address> getAddress(NominatimReverseRequest reverse);
+
+    /**
+     * Address lookup request.
+     *
+     * @param lookup
+     *            a lookup request
+     * @return a future list of addresses corresponding to the given OSM type and ID
+     * @see NominatimClient#lookupAddress(NominatimLookupRequest)
+     */
+    CompletableFuture<List<Address>> lookupAddress(NominatimLookupRequest lookup);
+}
@@ -0,0 +1,249 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A server behind a {@link LoadBalancingNominatimClient}: its client, its load, its latency and its health.
+ * <p>
+ * A server is ejected after a number of consecutive failures, and receives requests again once its cool-down is
+ * over. Until it answers successfully, a single failure ejects it again, for twice the previous cool-down (at most
+ * 16 times the configured one).
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+final class Backend {
+
+    /** The maximum number of times the cool-down is doubled. */
+    private static final int MAX_COOL_DOWN_SHIFT = 4;
+
+    /** The server name. */
+    private final String name;
+
+    /** The client sending the requests to this server. */
+    private final NominatimClient client;
+
+    /** The time after which a latency measurement weighs 1/e in the average, in nanoseconds. */
+    private final long decayNanos;
+
+    /** The number of requests in flight. */
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    /** The number of requests sent. */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /** The number of failed requests. */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /** The number of times this server was ejected. */
+    private final AtomicLong ejectionCount = new AtomicLong();
+
+    /** The moving average latency, in nanoseconds, 0 until the first response. */
+    private double latencyEwma;
+
+    /** The time of the last latency measurement, in nanoseconds. */
+    private long lastMeasureNanos;
+
+    /** The number of failures since the last success. */
+    private int consecutiveFailures;
+
+    /** The number of ejections since the last success. */
+    private int consecutiveEjections;
+
+    /** The end of the current ejection, in nanoseconds, meaningless when {@link #consecutiveEjections} is 0. */
+    private long ejectedUntilNanos;
+
+    /**
+     * @param name
+     *            the server name
+     * @param client
+     *            the client sending the requests to this server
+     * @param decayNanos
+     *            the time after which a latency measurement weighs 1/e in the average, in nanoseconds
+     */
+    Backend(final String name, final NominatimClient client, final long decayNanos) {
+        this.name = name;
+        this.client = client;
+        this.decayNanos = decayNanos;
+    }
+
+    /**
+     * @return the server name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the client sending the requests to this server
+     */
+    NominatimClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Estimates the latency of a new request: the moving average latency times the requests in flight plus one. The
+     * average decays while the server receives no request, so that a server avoided after a latency peak is tried
+     * again.
+     *
+     * @param now
+     *            the current time, in nanoseconds
+     * @return the expected latency of a new request
+     */
+    synchronized double getCost(final long now) {
+        return (latencyEwma * weight(now) + 1) * (outstanding.get() + 1);
+    }
+
+    /**
+     * @param now
+     *            the current time, in nanoseconds
+     * @return whether the server may receive requests: it isn't ejected, or its cool-down is over
+     */
+    synchronized boolean isAvailable(final long now) {
+        return 0 == consecutiveEjections || now - ejectedUntilNanos >= 0;
+    }
+
+    /**
+     * @return the end of the current ejection, in nanoseconds
+     */
+    synchronized long getEjectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    /**
+     * Records the start of a request.
+     */
+    void started() {
+        requestCount.incrementAndGet();
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Records a successful response, which brings the server back if it was ejected.
+     *
+     * @param now
+     *            the current time, in nanoseconds
+     * @param latency
+     *            the request duration, in nanoseconds
+     */
+    synchronized void succeeded(final long now, final long latency) {
+
+        outstanding.decrementAndGet();
+        measure(now, latency);
+        consecutiveFailures = 0;
+        consecutiveEjections = 0;
+    }
+
+    /**
+     * Records a failure, and ejects the server when it failed too many times in a row.
+     *
+     * @param now
+     *            the current time, in nanoseconds
+     * @param latency
+     *            the request duration, in nanoseconds
+     * @param maxFailures
+     *            the number of consecutive failures ejecting the server
+     * @param coolDownNanos
+     *            the ejection duration
+     * @return true if the server was ejected by this failure
+     */
+    synchronized boolean failed(final long now, final long latency, final int maxFailures,
+            final long coolDownNanos) {
+
+        outstanding.decrementAndGet();
+        failureCount.incrementAndGet();
+        // a fast failure mustn't make the server look fast
+        measure(now, Math.max(latency, (long) (2 * latencyEwma)));
+        consecutiveFailures++;
+        if (consecutiveFailures < maxFailures || !isAvailable(now)) {
+            return false;
+        }
+        ejectedUntilNanos = now + (coolDownNanos << Math.min(consecutiveEjections, MAX_COOL_DOWN_SHIFT));
+        consecutiveEjections++;
+        // on probation: the next failure ejects it again
+        consecutiveFailures = maxFailures - 1;
+        ejectionCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Records the end of a request which didn't tell anything about the server, like an interruption.
+     */
+    void abandoned() {
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * Updates the moving average latency. Peaks are taken immediately, lower measurements weigh more as the last
+     * measurement gets older.
+     *
+     * @param now
+     *            the current time, in nanoseconds
+     * @param latency
+     *            the measured latency, in nanoseconds
+     */
+    private void measure(final long now, final long latency) {
+
+        if (latency > latencyEwma) {
+            latencyEwma = latency;
+        } else {
+            final double weight = weight(now);
+            latencyEwma = latencyEwma * weight + latency * (1 - weight);
+        }
+        lastMeasureNanos = now;
+    }
+
+    /**
+     * @param now
+     *            the current time, in nanoseconds
+     * @return the weight of the moving average, given the time elapsed since the last measurement
+     */
+    private double weight(final long now) {
+        return Math.exp(-Math.max(0, now - lastMeasureNanos) / (double) decayNanos);
+    }
+
+    /**
+     * @param now
+     *            the current time, in nanoseconds
+     * @return a snapshot of the statistics of this server
+     */
+    synchronized BackendStats getStats(final long now) {
+        return new BackendStats(name, isAvailable(now), outstanding.get(), requestCount.get(), failureCount.get(),
+                ejectionCount.get(), (long) latencyEwma);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,136 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * A snapshot of the statistics of a server behind a {@link LoadBalancingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class BackendStats {
+
+    /** The server name. */
+    private final String name;
+
+    /** Whether the server receives requests. */
+    private final boolean available;
+
+    /** The number of requests in flight. */
+    private final int outstanding;
+
+    /** The number of requests sent. */
+    private final long requestCount;
+
+    /** The number of failed requests. */
+    private final long failureCount;
+
+    /** The number of times the server was ejected. */
+    private final long ejectionCount;
+
+    /** The moving average latency, in nanoseconds. */
+    private final long latencyEwmaNanos;
+
+    /**
+     * @param name
+     *            the server name
+     * @param available
+     *            whether the server receives requests
+     * @param outstanding
+     *            the number of requests in flight
+     * @param requestCount
+     *            the number of requests sent
+     * @param failureCount
+     *            the number of failed requests
+     * @param ejectionCount
+     *            the number of times the server was ejected
+     * @param latencyEwmaNanos
+     *            the moving average latency, in nanoseconds
+     */
+    public BackendStats(final String name, final boolean available, final int outstanding, final long requestCount,
+            final long failureCount, final long ejectionCount, final long latencyEwmaNanos) {
+        this.name = name;
+        this.available = available;
+        this.outstanding = outstanding;
+        this.requestCount = requestCount;
+        this.failureCount = failureCount;
+        this.ejectionCount = ejectionCount;
+        this.latencyEwmaNanos = latencyEwmaNanos;
+    }
+
+    /**
+     * @return the server name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true unless the server is ejected and its cool-down isn't over
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the number of requests in flight
+     */
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    /**
+     * @return the number of requests sent
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return the number of failed requests
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return the number of times the server was ejected
+     */
+    public long getEjectionCount() {
+        return ejectionCount;
+    }
+
+    /**
+     * @return the moving average latency, in nanoseconds, 0 until the first response
+     */
+    public long getLatencyEwmaNanos() {
+        return latencyEwmaNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BackendStats[%s, available=%s, outstanding=%s, requests=%s, failures=%s, "
+                + "ejections=%s, latency=%sns]", name, available, outstanding, requestCount, failureCount,
+                ejectionCount, latencyEwmaNanos);
+    }
+}
@@ -0,0 +1,97 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.List;
+
+/**
+ * How {@link LoadBalancingNominatimClient} chooses the server receiving a request, among the healthy ones.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public enum BalancingStrategy {
+
+    /** Each server in turn. */
+    ROUND_ROBIN {
+
+        @Override
+        Backend choose(final List<Backend> candidates, final int start, final long now) {
+            return candidates.get(start % candidates.size());
+        }
+    },
+
+    /** The server with the fewest requests in flight, each server in turn on a tie. */
+    LEAST_OUTSTANDING {
+
+        @Override
+        Backend choose(final List<Backend> candidates, final int start, final long now) {
+
+            Backend best = null;
+            for (int i = 0; i < candidates.size(); i++) {
+                final Backend b = candidates.get((start + i) % candidates.size());
+                if (null == best || b.getOutstanding() < best.getOutstanding()) {
+                    best = b;
+                }
+            }
+            return best;
+        }
+    },
+
+    /**
+     * The server with the lowest expected latency: its exponentially weighted moving average latency, multiplied by
+     * the number of requests in flight plus one. The average follows latency peaks immediately and forgets them
+     * progressively, so a server slowing down is avoided at once. Servers without measurement are tried first.
+     */
+    EWMA {
+
+        @Override
+        Backend choose(final List<Backend> candidates, final int start, final long now) {
+
+            Backend best = null;
+            double bestCost = Double.MAX_VALUE;
+            for (int i = 0; i < candidates.size(); i++) {
+                final Backend b = candidates.get((start + i) % candidates.size());
+                final double cost = b.getCost(now);
+                if (cost < bestCost) {
+                    best = b;
+                    bestCost = cost;
+                }
+            }
+            return best;
+        }
+    };
+
+    /**
+     * Chooses a server.
+     *
+     * @param candidates
+     *            the servers which may receive the request, not empty
+     * @param start
+     *            a counter incremented for each choice, to rotate between equivalent servers
+     * @param now
+     *            the current time, in nanoseconds
+     * @return the chosen server
+     */
+    abstract Backend choose(List<Backend> candidates, int start, long now);
+}
@@ -0,0 +1,374 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.client.request.OsmTypeAndIdLookupQuery;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator merging concurrent single object lookups into multi objects lookups.
+ * <p>
+ * The first thread looking up a single object opens a batch and waits for other threads to add their objects to it,
+ * until the batch window elapses or the batch holds the maximum number of objects accepted by the server. It then
+ * sends one lookup request for the whole batch and hands each thread the address of the object it requested. Lookups
+ * of several objects, searches and reverse geocoding requests are forwarded as is.
+ * <p>
+ * A batch only holds lookups sharing the same language and address details options. If the batch request fails,
+ * every thread of the batch receives the error.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class BatchingNominatimClient extends AbstractNominatimClient {
+
+    /** The maximum number of objects Nominatim accepts in a lookup request. */
+    public static final int MAX_LOOKUP_IDS = 50;
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingNominatimClient.class);
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** The maximum number of objects in a batch. */
+    private final int maxBatchSize;
+
+    /** The time a batch waits for more objects, in nanoseconds. */
+    private final long windowNanos;
+
+    /** Guards the open batches. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The batches accepting objects, by options. */
+    private final Map<String, Batch> openBatches = new HashMap<String, Batch>();
+
+    /**
+     * Creates a batching client with a 10 milliseconds window and batches of up to {@value #MAX_LOOKUP_IDS} objects.
+     *
+     * @param delegate
+     *            the client sending the requests
+     */
+    public BatchingNominatimClient(final NominatimClient delegate) {
+        this(delegate, 10, TimeUnit.MILLISECONDS, MAX_LOOKUP_IDS);
+    }
+
+    /**
+     * Creates a batching client.
+     *
+     * @param delegate
+     *            the client sending the requests
+     * @param window
+     *            the time a batch waits for more objects
+     * @param unit
+     *            the time unit of the window
+     * @param maxBatchSize
+     *            the maximum number of objects in a batch, between 1 and {@value #MAX_LOOKUP_IDS}
+     */
+    public BatchingNominatimClient(final NominatimClient delegate, final long window, final TimeUnit unit,
+            final int maxBatchSize) {
+        if (maxBatchSize < 1 || maxBatchSize > MAX_LOOKUP_IDS) {
+            throw new IllegalArgumentException("maxBatchSize must be between 1 and " + MAX_LOOKUP_IDS + ": "
+                    + maxBatchSize);
+        }
+        this.delegate = delegate;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return delegate.search(search);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return delegate.getAddress(reverse);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+
+        if (!(lookup.getQuery() instanceof OsmTypeAndIdLookupQuery)) {
+            return delegate.lookupAddress(lookup);
+        }
+        final List<String> typeIds = ((OsmTypeAndIdLookupQuery) lookup.getQuery()).getTypeId();
+        if (null == typeIds || typeIds.size() != 1) {
+            return delegate.lookupAddress(lookup);
+        }
+
+        final String typeId = normalize(typeIds.get(0));
+        final NominatimLookupRequest options = new NominatimLookupRequest();
+        options.setAcceptLanguage(lookup.getAcceptLanguage());
+        if (null != lookup.getAddressDetails()) {
+            options.setAddressDetails(lookup.getAddressDetails());
+        }
+        final String optionsKey = options.getQueryString();
+
+        final Batch batch;
+        final CompletableFuture<List<Address>> result;
+        final boolean leader;
+        lock.lock();
+        try {
+            Batch open = openBatches.get(optionsKey);
+            leader = null == open;
+            if (leader) {
+                open = new Batch(options);
+                openBatches.put(optionsKey, open);
+            }
+            batch = open;
+            result = batch.add(typeId);
+            if (batch.results.size() >= maxBatchSize) {
+                close(optionsKey, batch);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (leader) {
+            awaitBatch(optionsKey, batch);
+            send(batch);
+        }
+        try {
+            return new ArrayList<Address>(result.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for lookup of " + typeId);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Waits until a batch is full or its window elapses, then closes it.
+     *
+     * @param optionsKey
+     *            the batch options
+     * @param batch
+     *            the batch
+     */
+    private void awaitBatch(final String optionsKey, final Batch batch) {
+
+        lock.lock();
+        try {
+            long remaining = windowNanos;
+            while (!batch.closed && remaining > 0) {
+                remaining = batch.full.awaitNanos(remaining);
+            }
+        } catch (final InterruptedException e) {
+            // send what we have, the batch members are waiting
+            Thread.currentThread().interrupt();
+        } finally {
+            close(optionsKey, batch);
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops a batch from accepting objects, the lock must be held.
+     *
+     * @param optionsKey
+     *            the batch options
+     * @param batch
+     *            the batch
+     */
+    private void close(final String optionsKey, final Batch batch) {
+
+        if (!batch.closed) {
+            batch.closed = true;
+            openBatches.remove(optionsKey);
+            batch.full.signal();
+        }
+    }
+
+    /**
+     * Sends a closed batch and completes the results of its objects.
+     *
+     * @param batch
+     *            the batch
+     */
+    private void send(final Batch batch) {
+
+        final NominatimLookupRequest request = new NominatimLookupRequest();
+        request.setAcceptLanguage(batch.options.getAcceptLanguage());
+        if (null != batch.options.getAddressDetails()) {
+            request.setAddressDetails(batch.options.getAddressDetails());
+        }
+        request.setQuery(new ArrayList<String>(batch.results.keySet()));
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("sending a batch of {} lookups", batch.results.size());
+        }
+
+        try {
+            // the batch members' requests, cancelling the leader's mustn't abort it
+            complete(batch, Cancellation.detached(c -> c.lookupAddress(request), delegate));
+        } catch (final IOException e) {
+            fail(batch, e);
+        } catch (final Throwable e) {
+            // no batch member must wait forever
+            fail(batch, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Completes the results of the objects of a batch with the addresses received.
+     *
+     * @param batch
+     *            the batch
+     * @param addresses
+     *            the addresses received, may be <code>null</code>
+     */
+    private static void complete(final Batch batch, final List<Address> addresses) {
+
+        final Map<String, List<Address>> byTypeId = new HashMap<String, List<Address>>();
+        if (null != addresses) {
+            for (final Address address : addresses) {
+                if (null != address.getOsmType() && !address.getOsmType().isEmpty()) {
+                    final String typeId = normalize(address.getOsmType().substring(0, 1) + address.getOsmId());
+                    List<Address> matches = byTypeId.get(typeId);
+                    if (null == matches) {
+                        matches = new ArrayList<Address>(1);
+                        byTypeId.put(typeId, matches);
+                    }
+                    matches.add(address);
+                }
+            }
+        }
+        for (final Map.Entry<String, CompletableFuture<List<Address>>> result : batch.results.entrySet()) {
+            final List<Address> matches = byTypeId.get(result.getKey());
+            result.getValue().complete(null == matches ? Collections.<Address> emptyList() : matches);
+        }
+    }
+
+    /**
+     * Completes the results of the objects of a batch which are still pending with an error.
+     *
+     * @param batch
+     *            the batch
+     * @param error
+     *            the error
+     */
+    private static void fail(final Batch batch, final Throwable error) {
+
+        for (final CompletableFuture<List<Address>> result : batch.results.values()) {
+            result.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Normalizes an object identifier: <code>r146656</code> and <code>R146656</code> are the same relation.
+     *
+     * @param typeId
+     *            the object type initial followed by the object id
+     * @return the normalized identifier
+     */
+    private static String normalize(final String typeId) {
+        return typeId.trim().toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Objects waiting to be looked up in the same request.
+     */
+    private final class Batch {
+
+        /** The options of the lookup request. */
+        private final NominatimLookupRequest options;
+
+        /** The results, by object identifier. */
+        private final Map<String, CompletableFuture<List<Address>>> results =
+                new LinkedHashMap<String, CompletableFuture<List<Address>>>();
+
+        /** Signaled when the batch is closed. */
+        private final Condition full = lock.newCondition();
+
+        /** Whether the batch stopped accepting objects. */
+        private boolean closed;
+
+        /**
+         * @param options
+         *            the options of the lookup request
+         */
+        private Batch(final NominatimLookupRequest options) {
+            this.options = options;
+        }
+
+        /**
+         * Adds an object to the batch, the lock must be held.
+         *
+         * @param typeId
+         *            the object identifier
+         * @return the result of the lookup of the object, shared by the threads looking up the same object
+         */
+        private CompletableFuture<List<Address>> add(final String typeId) {
+
+            CompletableFuture<List<Address>> result = results.get(typeId);
+            if (null == result) {
+                result = new CompletableFuture<List<Address>>();
+                results.put(typeId, result);
+            }
+            return result;
+        }
+    }
+}
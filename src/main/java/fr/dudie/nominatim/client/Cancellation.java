@@ -0,0 +1,160 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+
+/**
+ * Lets a thread cancel the request sent by another thread, like the losing attempt of a hedged request.
+ * <p>
+ * The thread sending the request runs it within {@link #run(NominatimCall, NominatimClient)};
+ * {@link JsonNominatimClient} registers how to abort its HTTP request with {@link #current()}. Once cancelled, the
+ * request fails with an {@link java.io.InterruptedIOException}.
+ * <p>
+ * A request shared with other threads, like a batch or a coalesced request, is sent with
+ * {@link #detached(NominatimCall, NominatimClient)}: cancelling one of the callers mustn't abort it for the others.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+final class Cancellation {
+
+    /** The cancellation of the request sent by the current thread. */
+    private static final ThreadLocal<Cancellation> CURRENT = new ThreadLocal<Cancellation>();
+
+    /** Aborts the request, <code>null</code> until it is sent. */
+    private Runnable abort;
+
+    /** Whether the request was cancelled. */
+    private boolean cancelled;
+
+    /**
+     * @return the cancellation of the request sent by the current thread, <code>null</code> if it can't be cancelled
+     */
+    static Cancellation current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sends a request which can be cancelled with this instance.
+     *
+     * @param call
+     *            sends the request
+     * @param client
+     *            the client sending the request
+     * @return the response
+     * @throws IOException
+     *             the request failed
+     */
+    <T> T run(final NominatimCall<T> call, final NominatimClient client) throws IOException {
+        return send(this, call, client);
+    }
+
+    /**
+     * Sends a request which can't be cancelled, even if the current thread sends a request which can.
+     *
+     * @param call
+     *            sends the request
+     * @param client
+     *            the client sending the request
+     * @return the response
+     * @throws IOException
+     *             the request failed
+     */
+    static <T> T detached(final NominatimCall<T> call, final NominatimClient client) throws IOException {
+        return send(null, call, client);
+    }
+
+    /**
+     * Sends a request with the cancellation of the current thread replaced.
+     *
+     * @param cancellation
+     *            the cancellation of the request, <code>null</code> if it can't be cancelled
+     * @param call
+     *            sends the request
+     * @param client
+     *            the client sending the request
+     * @return the response
+     * @throws IOException
+     *             the request failed
+     */
+    private static <T> T send(final Cancellation cancellation, final NominatimCall<T> call,
+            final NominatimClient client) throws IOException {
+
+        final Cancellation previous = CURRENT.get();
+        if (null == cancellation) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(cancellation);
+        }
+        try {
+            return call.send(client);
+        } finally {
+            if (null == previous) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Registers how to abort the request, runs it at once if the request is already cancelled.
+     *
+     * @param abort
+     *            aborts the request
+     */
+    void onCancel(final Runnable abort) {
+
+        final boolean abortNow;
+        synchronized (this) {
+            this.abort = abort;
+            abortNow = cancelled;
+        }
+        if (abortNow) {
+            abort.run();
+        }
+    }
+
+    /**
+     * Cancels the request.
+     */
+    void cancel() {
+
+        final Runnable a;
+        synchronized (this) {
+            cancelled = true;
+            a = abort;
+        }
+        if (null != a) {
+            a.run();
+        }
+    }
+
+    /**
+     * @return whether the request was cancelled
+     */
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
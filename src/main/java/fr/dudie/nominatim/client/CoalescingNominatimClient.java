@@ -0,0 +1,203 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator sharing one request between the threads asking for the same thing at the same
+ * time.
+ * <p>
+ * Requests are identified by their endpoint and query string. The first thread sends the request, the threads asking
+ * for the same request while it is in flight wait for its response instead of sending their own. Each of them
+ * receives its own copy of the list of addresses, the {@link Address} instances themselves are shared. A request
+ * received once the response arrived is sent again: this client doesn't cache anything, see
+ * {@link fr.dudie.nominatim.client.cache.CachingNominatimClient} for that.
+ * <p>
+ * If the request fails, every waiting thread receives the error.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class CoalescingNominatimClient extends AbstractNominatimClient {
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** The responses of the requests in flight, by endpoint and query string. */
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+
+    /** The number of requests sent. */
+    private final AtomicLong sentCount = new AtomicLong();
+
+    /** The number of requests answered by a request in flight. */
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     */
+    public CoalescingNominatimClient(final NominatimClient delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the number of requests sent to the delegate client
+     */
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    /**
+     * @return the number of requests answered by sharing the response of a request in flight
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return copy(execute("search?" + search.getQueryString(), c -> c.search(search)));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return execute("reverse?" + reverse.getQueryString(), c -> c.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        return copy(execute("lookup?" + lookup.getQueryString(), c -> c.lookupAddress(lookup)));
+    }
+
+    /**
+     * Sends a request, or waits for the response of the same request if it is already in flight.
+     *
+     * @param key
+     *            the endpoint and query string of the request
+     * @param request
+     *            sends the request
+     * @return the response
+     * @throws IOException
+     *             the request failed, or the thread was interrupted while waiting for it
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T execute(final String key, final NominatimCall<T> request) throws IOException {
+
+        final CompletableFuture<Object> response = new CompletableFuture<Object>();
+        final CompletableFuture<Object> pending = inFlight.putIfAbsent(key, response);
+        if (null != pending) {
+            coalescedCount.incrementAndGet();
+            return (T) await(pending);
+        }
+
+        sentCount.incrementAndGet();
+        try {
+            // the waiting threads' request too, cancelling the sender's mustn't abort it
+            final T result = Cancellation.detached(request, delegate);
+            inFlight.remove(key, response);
+            response.complete(result);
+            return result;
+        } catch (final IOException e) {
+            inFlight.remove(key, response);
+            response.completeExceptionally(e);
+            throw e;
+        } catch (final RuntimeException e) {
+            inFlight.remove(key, response);
+            response.completeExceptionally(e);
+            throw e;
+        } catch (final Error e) {
+            inFlight.remove(key, response);
+            response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the response of a request sent by another thread.
+     *
+     * @param response
+     *            the future response
+     * @return the response
+     * @throws IOException
+     *             the request failed, or the thread was interrupted
+     */
+    private static Object await(final CompletableFuture<Object> response) throws IOException {
+
+        try {
+            return response.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for a request in flight");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Copies a list of addresses, so that callers sharing a response can't see each other's modifications.
+     *
+     * @param addresses
+     *            the addresses, may be <code>null</code>
+     * @return a copy of the list, or <code>null</code>
+     */
+    private static List<Address> copy(final List<Address> addresses) {
+        return null == addresses ? null : new ArrayList<Address>(addresses);
+    }
+}
@@ -0,0 +1,110 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * A snapshot of the statistics of a {@link NominatimConnectionPool}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class ConnectionPoolStats {
+
+    /** Number of connections carrying a request. */
+    private final int leased;
+
+    /** Number of idle connections kept alive. */
+    private final int available;
+
+    /** Number of requests waiting for a connection. */
+    private final int pending;
+
+    /** Maximum number of connections. */
+    private final int max;
+
+    /** Number of connections opened since the pool was created. */
+    private final long openedCount;
+
+    /**
+     * @param leased
+     *            number of connections carrying a request
+     * @param available
+     *            number of idle connections kept alive
+     * @param pending
+     *            number of requests waiting for a connection
+     * @param max
+     *            maximum number of connections
+     * @param openedCount
+     *            number of connections opened since the pool was created
+     */
+    public ConnectionPoolStats(final int leased, final int available, final int pending, final int max,
+            final long openedCount) {
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.max = max;
+        this.openedCount = openedCount;
+    }
+
+    /**
+     * @return the number of connections carrying a request
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return the number of idle connections kept alive
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return the number of requests waiting for a connection
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return the maximum number of connections
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return the number of connections opened since the pool was created, each one costing a TCP, and possibly TLS,
+     *         handshake
+     */
+    public long getOpenedCount() {
+        return openedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStats[leased=" + leased + ", available=" + available + ", pending=" + pending
+                + ", max=" + max + ", opened=" + openedCount + "]";
+    }
+}
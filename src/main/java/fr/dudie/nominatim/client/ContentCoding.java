@@ -0,0 +1,170 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Negotiates the compression of the responses and decompresses them as they are read.
+ * <p>
+ * Responses compressed with <code>gzip</code> or <code>deflate</code> are decoded with {@link java.util.zip}.
+ * Responses compressed with <code>br</code> are only accepted when the Brotli decoder
+ * <code>org.brotli:dec</code> is on the classpath.
+ *
+ * @author Jeremie Huchet
+ */
+final class ContentCoding {
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentCoding.class);
+
+    /** The name of the HTTP header listing the accepted content codings. */
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+
+    /** The size of the decompression buffers. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The constructor of <code>org.brotli.dec.BrotliInputStream</code>, <code>null</code> if not available. */
+    private static final Constructor<? extends InputStream> BROTLI;
+
+    /** The value of the {@value #ACCEPT_ENCODING} header. */
+    static final String ACCEPTED;
+
+    static {
+        Constructor<? extends InputStream> brotli = null;
+        try {
+            brotli = Class.forName("org.brotli.dec.BrotliInputStream").asSubclass(InputStream.class)
+                    .getConstructor(InputStream.class);
+        } catch (final ClassNotFoundException e) {
+            LOGGER.debug("brotli decoder not found, brotli compression disabled");
+        } catch (final NoSuchMethodException e) {
+            LOGGER.debug("unsupported brotli decoder, brotli compression disabled");
+        }
+        BROTLI = brotli;
+        ACCEPTED = null == brotli ? "gzip, deflate" : "gzip, deflate, br";
+    }
+
+    /**
+     * Utility class.
+     */
+    private ContentCoding() {
+    }
+
+    /**
+     * Decodes a response body.
+     *
+     * @param in
+     *            the response body, as received
+     * @param contentEncoding
+     *            the value of the <code>Content-Encoding</code> header, may be <code>null</code>
+     * @return a stream decoding the response body as it is read
+     * @throws IOException
+     *             the content coding is not supported, or the compressed stream header is invalid
+     */
+    static InputStream decode(final InputStream in, final String contentEncoding) throws IOException {
+
+        if (null == contentEncoding) {
+            return in;
+        }
+        // the codings are listed in the order they were applied
+        final String[] codings = contentEncoding.split(",");
+        InputStream decoded = in;
+        for (int i = codings.length - 1; i >= 0; i--) {
+            decoded = decode1(decoded, codings[i].trim().toLowerCase(Locale.ENGLISH));
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes one content coding.
+     *
+     * @param in
+     *            the encoded stream
+     * @param coding
+     *            the content coding, lower case
+     * @return the decoded stream
+     * @throws IOException
+     *             the content coding is not supported, or the compressed stream header is invalid
+     */
+    private static InputStream decode1(final InputStream in, final String coding) throws IOException {
+
+        if (coding.isEmpty() || "identity".equals(coding)) {
+            return in;
+        } else if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        } else if ("deflate".equals(coding)) {
+            return inflate(in);
+        } else if ("br".equals(coding) && null != BROTLI) {
+            try {
+                return BROTLI.newInstance(in);
+            } catch (final InvocationTargetException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("failed to create the brotli decoder", e.getCause());
+            } catch (final ReflectiveOperationException e) {
+                throw new IOException("failed to create the brotli decoder", e);
+            }
+        }
+        throw new IOException("unsupported content encoding: " + coding);
+    }
+
+    /**
+     * Decodes a <code>deflate</code> stream. The HTTP specification requires a zlib stream, but some servers send a
+     * raw deflate stream: the zlib header is looked for to tell them apart.
+     *
+     * @param in
+     *            the encoded stream
+     * @return the decoded stream
+     * @throws IOException
+     *             the stream can't be read
+     */
+    private static InputStream inflate(final InputStream in) throws IOException {
+
+        final BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        buffered.mark(2);
+        final int cmf = buffered.read();
+        final int flg = buffered.read();
+        buffered.reset();
+        final boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        return new InflaterInputStream(buffered, new Inflater(!zlib), BUFFER_SIZE) {
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                inf.end();
+            }
+        };
+    }
+}
@@ -0,0 +1,201 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * An {@link AsyncNominatimClient} running the calls of a blocking {@link NominatimClient} on an executor.
+ * <p>
+ * With {@link #withVirtualThreads(NominatimClient, int)}, each call runs on its own virtual thread, so that a JVM can
+ * keep tens of thousands of calls in flight with the blocking {@link JsonNominatimClient} and a handful of carrier
+ * threads.
+ * <p>
+ * The number of calls running at the same time is capped by a fair semaphore, which should not exceed the size of the
+ * HTTP connection pool of the delegate client. The Apache HTTP client connection pool takes a monitor while leasing a
+ * connection, and a virtual thread waiting for a connection inside a monitor pins its carrier thread: capping the
+ * concurrency to the pool size keeps the extra calls waiting on the semaphore, which doesn't pin.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class ExecutorAsyncNominatimClient extends AbstractAsyncNominatimClient implements Closeable {
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** The executor running the calls. */
+    private final ExecutorService executor;
+
+    /** The permits to run a call. */
+    private final Semaphore permits;
+
+    /**
+     * Creates a client running the calls on the given executor.
+     *
+     * @param delegate
+     *            the client sending the requests
+     * @param executor
+     *            the executor running the calls, shut down by {@link #close()}
+     * @param maxConcurrentCalls
+     *            the maximum number of calls running at the same time, usually the size of the connection pool of
+     *            the delegate client
+     */
+    public ExecutorAsyncNominatimClient(final NominatimClient delegate, final ExecutorService executor,
+            final int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be at least 1: " + maxConcurrentCalls);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**
+     * Creates a client running each call on a new virtual thread.
+     *
+     * @param delegate
+     *            the client sending the requests
+     * @param maxConcurrentCalls
+     *            the maximum number of calls running at the same time, usually the size of the connection pool of
+     *            the delegate client
+     * @return a client using virtual threads
+     * @throws UnsupportedOperationException
+     *             the JVM doesn't support virtual threads, see {@link VirtualThreads#isAvailable()}
+     */
+    public static ExecutorAsyncNominatimClient withVirtualThreads(final NominatimClient delegate,
+            final int maxConcurrentCalls) {
+        return new ExecutorAsyncNominatimClient(delegate,
+                VirtualThreads.newThreadPerTaskExecutor("nominatim-call-"), maxConcurrentCalls);
+    }
+
+    /**
+     * Creates a client running the calls on a fixed pool of platform threads.
+     *
+     * @param delegate
+     *            the client sending the requests
+     * @param threads
+     *            the number of threads, also the maximum number of calls running at the same time
+     * @return a client using platform threads
+     */
+    public static ExecutorAsyncNominatimClient withPlatformThreads(final NominatimClient delegate, final int threads) {
+        return new ExecutorAsyncNominatimClient(delegate, Executors.newFixedThreadPool(threads), threads);
+    }
+
+    /**
+     * @return the number of calls waiting for their turn
+     */
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public CompletableFuture<List<Address>> search(final NominatimSearchRequest search) {
+        return execute(c -> c.search(search));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public CompletableFuture<Address> getAddress(final NominatimReverseRequest reverse) {
+        return execute(c -> c.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public CompletableFuture<List<Address>> lookupAddress(final NominatimLookupRequest lookup) {
+        return execute(c -> c.lookupAddress(lookup));
+    }
+
+    /**
+     * Shuts the executor down, the calls in flight complete normally.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Runs a call on the executor, once a permit is available.
+     * <p>
+     * Cancelling the returned future interrupts the call.
+     *
+     * @param call
+     *            the blocking call
+     * @return a future result
+     */
+    private <T> CompletableFuture<T> execute(final NominatimCall<T> call) {
+
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final Future<?> task = executor.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (final InterruptedException e) {
+                result.completeExceptionally(new InterruptedIOException("interrupted while waiting for a permit"));
+                return;
+            }
+            try {
+                result.complete(call.send(delegate));
+            } catch (final IOException e) {
+                result.completeExceptionally(e);
+            } catch (final RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                permits.release();
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+}
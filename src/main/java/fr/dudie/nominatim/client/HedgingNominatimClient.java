@@ -0,0 +1,611 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.dudie.nominatim.client.metrics.Histogram;
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator sending a second copy of a slow request, and taking the first response.
+ * <p>
+ * The request is sent from the calling thread. If no response arrived after a delay, the latency percentile of the
+ * previous requests, the same request is sent again from another thread: the first response wins and the other
+ * request is aborted, when the delegate is a {@link JsonNominatimClient} or delegates to one. Wrapping a
+ * {@link LoadBalancingNominatimClient} sends the second request to another server. A request shared with other
+ * callers by a {@link BatchingNominatimClient} or a {@link CoalescingNominatimClient} is never aborted.
+ * <p>
+ * The extra load is bounded by a budget: each request earns a fraction of a hedge, and a hedge is only sent when a
+ * whole one was earned. With a 5% budget, at most 1 request out of 20 is hedged, after a burst of 10 at most.
+ * <p>
+ * <pre>
+ * HedgingNominatimClient client = HedgingNominatimClient.builder(balancer).percentile(95).budget(0.05).build();
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class HedgingNominatimClient extends AbstractNominatimClient implements Closeable {
+
+    /** The budget of a hedge, the budget is counted in millionths of hedges to avoid rounding errors. */
+    private static final long HEDGE = 1000000;
+
+    /** The maximum budget saved. */
+    private static final long MAX_SAVED_BUDGET = 10 * HEDGE;
+
+    /** The number of clients, to name the threads. */
+    private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** The latency percentile after which a request is hedged. */
+    private final double percentile;
+
+    /** The budget earned by each request, in millionths of hedges. */
+    private final long budget;
+
+    /** The number of latencies measured before updating the hedging delay. */
+    private final int window;
+
+    /** Sends the hedged requests. */
+    private final ExecutorService executor;
+
+    /** Whether the executor is shut down with this client. */
+    private final boolean ownsExecutor;
+
+    /** Sends the hedged requests once their delay is over. */
+    private final ScheduledThreadPoolExecutor timer;
+
+    /** The latencies measured since the last update of the hedging delay. */
+    private final Histogram latencies = new Histogram();
+
+    /** The number of latencies measured. */
+    private final AtomicLong latencyCount = new AtomicLong();
+
+    /** The number of requests. */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /** The number of hedged requests sent. */
+    private final AtomicLong hedgeCount = new AtomicLong();
+
+    /** The number of hedged requests answering first. */
+    private final AtomicLong hedgeWonCount = new AtomicLong();
+
+    /** The time after which a request is hedged, in nanoseconds. */
+    private volatile long delayNanos;
+
+    /** The budget saved, in millionths of hedges. */
+    private long savedBudget;
+
+    /**
+     * Hidden constructor, use {@link #builder(NominatimClient)}.
+     *
+     * @param builder
+     *            the builder
+     */
+    private HedgingNominatimClient(final Builder builder) {
+
+        this.delegate = builder.delegate;
+        this.percentile = builder.percentile;
+        this.budget = Math.round(builder.budget * HEDGE);
+        this.window = builder.window;
+        this.delayNanos = builder.initialDelayNanos;
+
+        final String name = "nominatim-hedge-" + CLIENT_COUNT.incrementAndGet();
+        this.ownsExecutor = null == builder.executor;
+        this.executor = ownsExecutor ? Executors.newCachedThreadPool(daemon(name + "-request-")) : builder.executor;
+        this.timer = new ScheduledThreadPoolExecutor(1, daemon(name + "-timer-"));
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param delegate
+     *            the client sending the requests
+     * @return a builder
+     */
+    public static Builder builder(final NominatimClient delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * @return the number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of hedged requests sent
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return the number of hedged requests which answered before the original request
+     */
+    public long getHedgeWonCount() {
+        return hedgeWonCount.get();
+    }
+
+    /**
+     * @return the current time after which a request is hedged, in nanoseconds
+     */
+    public long getHedgeDelayNanos() {
+        return delayNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return execute(c -> c.search(search));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return execute(c -> c.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        return execute(c -> c.lookupAddress(lookup));
+    }
+
+    /**
+     * Stops the hedging threads. The delegate client is left open.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends a request, and a hedged copy if it is too slow.
+     *
+     * @param request
+     *            sends the request
+     * @return the first response
+     * @throws IOException
+     *             both requests failed, the error of the hedged request is suppressed by the error of the original
+     *             request
+     */
+    private <T> T execute(final NominatimCall<T> request) throws IOException {
+
+        requestCount.incrementAndGet();
+        final Call<T> call = new Call<T>(request);
+        final ScheduledFuture<?> hedge = earnHedge() ? timer.schedule(call::hedge, delayNanos, TimeUnit.NANOSECONDS)
+                : null;
+        final long start = System.nanoTime();
+        try {
+            final T response = call.primary.run(request, delegate);
+            measure(System.nanoTime() - start);
+            return call.primaryAnswered(response);
+        } catch (final IOException e) {
+            if (call.primary.isCancelled()) {
+                // lost against the hedge, which tells its latency was at least this long
+                measure(System.nanoTime() - start);
+            }
+            return call.primaryFailed(e);
+        } catch (final RuntimeException e) {
+            call.abandon();
+            throw e;
+        } catch (final Error e) {
+            call.abandon();
+            throw e;
+        } finally {
+            if (null != hedge) {
+                hedge.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Adds the share of a request to the budget.
+     *
+     * @return whether a hedge can be sent
+     */
+    private synchronized boolean earnHedge() {
+        savedBudget = Math.min(MAX_SAVED_BUDGET, savedBudget + budget);
+        return savedBudget >= HEDGE;
+    }
+
+    /**
+     * Takes a hedge from the budget.
+     *
+     * @return whether a hedge can be sent
+     */
+    private synchronized boolean spendHedge() {
+        if (savedBudget < HEDGE) {
+            return false;
+        }
+        savedBudget -= HEDGE;
+        return true;
+    }
+
+    /**
+     * Records the latency of a request, and updates the hedging delay once enough latencies were measured.
+     *
+     * @param latency
+     *            the latency, in nanoseconds
+     */
+    private void measure(final long latency) {
+
+        latencies.record(latency);
+        if (latencyCount.incrementAndGet() % window == 0) {
+            delayNanos = Math.max(1, latencies.snapshotAndReset().getValueAtPercentile(percentile));
+        }
+    }
+
+    /**
+     * Creates a thread factory for daemon threads.
+     *
+     * @param prefix
+     *            the thread name prefix
+     * @return a thread factory
+     */
+    private static ThreadFactory daemon(final String prefix) {
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread t = new Thread(task, prefix + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * A request, and maybe its hedged copy.
+     *
+     * @param <T>
+     *            the response type
+     */
+    private final class Call<T> {
+
+        /** Sends the request. */
+        private final NominatimCall<T> request;
+
+        /** Cancels the original request. */
+        private final Cancellation primary = new Cancellation();
+
+        /** Cancels the hedged request. */
+        private final Cancellation hedged = new Cancellation();
+
+        /** The first response. */
+        private final CompletableFuture<T> winner = new CompletableFuture<T>();
+
+        /** The response of the hedged request. */
+        private final CompletableFuture<T> hedgedResponse = new CompletableFuture<T>();
+
+        /** Whether the original request completed. */
+        private boolean completed;
+
+        /** Whether the hedged request was sent. */
+        private boolean sent;
+
+        /**
+         * @param request
+         *            sends the request
+         */
+        Call(final NominatimCall<T> request) {
+            this.request = request;
+        }
+
+        /**
+         * Sends the hedged request, unless the original one completed or the budget is exhausted.
+         */
+        void hedge() {
+
+            synchronized (this) {
+                if (completed || !spendHedge()) {
+                    return;
+                }
+                sent = true;
+            }
+            hedgeCount.incrementAndGet();
+            try {
+                executor.execute(this::sendHedge);
+            } catch (final RejectedExecutionException e) {
+                hedgedResponse.completeExceptionally(new IOException("hedged request rejected", e));
+            }
+        }
+
+        /**
+         * Sends the hedged request and aborts the original one if the hedged one answers first.
+         */
+        private void sendHedge() {
+
+            try {
+                final T response = hedged.run(request, delegate);
+                if (winner.complete(response)) {
+                    hedgeWonCount.incrementAndGet();
+                    primary.cancel();
+                }
+                hedgedResponse.complete(response);
+            } catch (final Throwable e) {
+                hedgedResponse.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Marks the original request as completed.
+         *
+         * @return whether the hedged request was sent
+         */
+        private synchronized boolean complete() {
+            completed = true;
+            return sent;
+        }
+
+        /**
+         * Handles the response of the original request.
+         *
+         * @param response
+         *            the response
+         * @return the first response
+         */
+        T primaryAnswered(final T response) {
+
+            final boolean wasHedged = complete();
+            if (winner.complete(response)) {
+                if (wasHedged) {
+                    hedged.cancel();
+                }
+                return response;
+            }
+            return winner.join();
+        }
+
+        /**
+         * Handles the failure of the original request: takes the response of the hedged request if any.
+         *
+         * @param error
+         *            the error of the original request
+         * @return the response of the hedged request
+         * @throws IOException
+         *             no hedged request was sent, or it failed too
+         */
+        T primaryFailed(final IOException error) throws IOException {
+
+            final boolean wasHedged = complete();
+            if (winner.isDone()) {
+                return winner.join();
+            }
+            if (!wasHedged) {
+                throw error;
+            }
+            try {
+                return await(hedgedResponse);
+            } catch (final InterruptedIOException e) {
+                hedged.cancel();
+                e.addSuppressed(error);
+                throw e;
+            } catch (final IOException e) {
+                error.addSuppressed(e);
+                throw error;
+            }
+        }
+
+        /**
+         * Cancels the hedged request after an unexpected error of the original request.
+         */
+        void abandon() {
+            if (complete()) {
+                hedged.cancel();
+            }
+        }
+
+        /**
+         * Waits for the response of the hedged request.
+         *
+         * @param response
+         *            the future response
+         * @return the response
+         * @throws IOException
+         *             the request failed, or the thread was interrupted
+         */
+        private T await(final CompletableFuture<T> response) throws IOException {
+
+            try {
+                return response.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for a hedged request");
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    /**
+     * Builds a {@link HedgingNominatimClient}.
+     * <p>
+     * By default, requests slower than the 95th latency percentile of the last 1000 requests are hedged (500
+     * milliseconds until 1000 latencies were measured), within a 5% budget.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The client sending the requests. */
+        private final NominatimClient delegate;
+
+        /** The latency percentile after which a request is hedged. */
+        private double percentile = 95;
+
+        /** The number of hedges earned by each request. */
+        private double budget = 0.05;
+
+        /** The number of latencies measured before updating the hedging delay. */
+        private int window = 1000;
+
+        /** The hedging delay until enough latencies were measured, in nanoseconds. */
+        private long initialDelayNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+        /** Sends the hedged requests, <code>null</code> to create an executor. */
+        private ExecutorService executor;
+
+        /**
+         * Hidden constructor, use {@link HedgingNominatimClient#builder(NominatimClient)}.
+         *
+         * @param delegate
+         *            the client sending the requests
+         */
+        private Builder(final NominatimClient delegate) {
+            this.delegate = delegate;
+        }
+
+        /**
+         * Sets the latency percentile after which a request is hedged.
+         *
+         * @param percentile
+         *            the percentile, between 0 and 100
+         * @return this builder
+         */
+        public Builder percentile(final double percentile) {
+            if (!(percentile > 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the maximum extra load.
+         *
+         * @param budget
+         *            the maximum ratio of hedged requests, 0.05 for 5%
+         * @return this builder
+         */
+        public Builder budget(final double budget) {
+            if (!(budget >= 0 && budget <= 1)) {
+                throw new IllegalArgumentException("budget must be between 0 and 1: " + budget);
+            }
+            this.budget = budget;
+            return this;
+        }
+
+        /**
+         * Sets the number of latencies the percentile is computed on.
+         *
+         * @param window
+         *            the number of latencies measured before updating the hedging delay
+         * @return this builder
+         */
+        public Builder window(final int window) {
+            if (window < 1) {
+                throw new IllegalArgumentException("window must be at least 1: " + window);
+            }
+            this.window = window;
+            return this;
+        }
+
+        /**
+         * Sets the hedging delay used until enough latencies were measured.
+         *
+         * @param duration
+         *            the delay
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder initialDelay(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("initialDelay must be positive: " + duration);
+            }
+            this.initialDelayNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sends the hedged requests with an executor, not shut down with the client.
+         *
+         * @param executor
+         *            the executor
+         * @return this builder
+         */
+        public Builder executor(final ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @return a new hedging client
+         */
+        public HedgingNominatimClient build() {
+            return new HedgingNominatimClient(this);
+        }
+    }
+}
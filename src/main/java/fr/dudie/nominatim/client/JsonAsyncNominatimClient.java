@@ -0,0 +1,234 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A non-blocking implementation of the Nominatim Api Service.
+ * <p>
+ * Requests are sent using an {@link HttpAsyncClient}, so that a few I/O threads can keep a large number of requests in
+ * flight. The given HTTP client must be started before any call to this client.
+ * <p>
+ * Responses are parsed by a {@link NominatimResponseHandler} on the HTTP client I/O thread which received them.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class JsonAsyncNominatimClient extends AbstractAsyncNominatimClient {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JsonAsyncNominatimClient.class);
+
+    /** The default nominatim base URL. */
+    private static final String DEFAULT_BASE_URL = "https://nominatim.openstreetmap.org/";
+
+    /** The url to make search queries. */
+    private final String searchUrl;
+
+    /** The url for reverse geocoding. */
+    private final String reverseUrl;
+
+    /** The url for address lookup. */
+    private final String lookupUrl;
+
+    /** The default search options. */
+    private final NominatimOptions defaults;
+
+    /** The non-blocking HTTP client. */
+    private final HttpAsyncClient httpClient;
+
+    /** The default response handler for search requests. */
+    private final NominatimResponseHandler<List<Address>> defaultSearchResponseHandler;
+
+    /** The default response handler for reverse geocoding requests. */
+    private final NominatimResponseHandler<Address> defaultReverseGeocodingHandler;
+
+    /** The default response handler for lookup requests. */
+    private final NominatimResponseHandler<List<Address>> defaultLookupHandler;
+
+    /**
+     * Creates the json nominatim client with the default base URL ({@value #DEFAULT_BASE_URL}.
+     *
+     * @param httpClient
+     *            a started non-blocking HTTP client
+     * @param email
+     *            an email to add in the HTTP requests parameters to "sign" them
+     */
+    public JsonAsyncNominatimClient(final HttpAsyncClient httpClient, final String email) {
+
+        this(DEFAULT_BASE_URL, httpClient, email, new NominatimOptions());
+    }
+
+    /**
+     * Creates the json nominatim client.
+     *
+     * @param baseUrl
+     *            the nominatim server url
+     * @param httpClient
+     *            a started non-blocking HTTP client
+     * @param email
+     *            an email to add in the HTTP requests parameters to "sign" them (see
+     *            https://wiki.openstreetmap.org/wiki/Nominatim_usage_policy)
+     */
+    public JsonAsyncNominatimClient(final String baseUrl, final HttpAsyncClient httpClient, final String email) {
+
+        this(baseUrl, httpClient, email, new NominatimOptions());
+    }
+
+    /**
+     * Creates the json nominatim client.
+     *
+     * @param baseUrl
+     *            the nominatim server url
+     * @param httpClient
+     *            a started non-blocking HTTP client
+     * @param email
+     *            an email to add in the HTTP requests parameters to "sign" them (see
+     *            https://wiki.openstreetmap.org/wiki/Nominatim_usage_policy)
+     * @param defaults
+     *            defaults options, they override null valued requests options
+     */
+    public JsonAsyncNominatimClient(final String baseUrl, final HttpAsyncClient httpClient, final String email,
+            final NominatimOptions defaults) {
+
+        final NominatimServer server = new NominatimServer(baseUrl, email);
+        this.searchUrl = server.getSearchUrl();
+        this.reverseUrl = server.getReverseUrl();
+        this.lookupUrl = server.getLookupUrl();
+        this.defaults = defaults;
+        this.httpClient = httpClient;
+
+        final Gson gsonInstance = NominatimGson.create();
+        defaultSearchResponseHandler = new NominatimResponseHandler<List<Address>>(gsonInstance, new TypeToken<List<Address>>() {
+        }.getType());
+        defaultReverseGeocodingHandler = new NominatimResponseHandler<Address>(gsonInstance, Address.class);
+        defaultLookupHandler = new NominatimResponseHandler<List<Address>>(gsonInstance, new TypeToken<List<Address>>() {
+        }.getType());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public CompletableFuture<List<Address>> search(final NominatimSearchRequest search) {
+
+        defaults.mergeTo(search);
+        final String apiCall = String.format("%s&%s", searchUrl, search.getQueryString());
+        LOGGER.debug("search url: {}", apiCall);
+        return execute(apiCall, defaultSearchResponseHandler);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public CompletableFuture<Address> getAddress(final NominatimReverseRequest reverse) {
+
+        final String apiCall = String.format("%s&%s", reverseUrl, reverse.getQueryString());
+        LOGGER.debug("reverse geocoding url: {}", apiCall);
+        return execute(apiCall, defaultReverseGeocodingHandler);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public CompletableFuture<List<Address>> lookupAddress(final NominatimLookupRequest lookup) {
+
+        final String apiCall = String.format("%s&%s", lookupUrl, lookup.getQueryString());
+        LOGGER.debug("lookup url: {}", apiCall);
+        return execute(apiCall, defaultLookupHandler);
+    }
+
+    /**
+     * Sends the request and parses the response once received.
+     * <p>
+     * Cancelling the returned future aborts the HTTP exchange.
+     *
+     * @param apiCall
+     *            the request URL
+     * @param handler
+     *            the handler in charge of reading the response
+     * @return a future result
+     */
+    private <T> CompletableFuture<T> execute(final String apiCall, final NominatimResponseHandler<T> handler) {
+
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final HttpGet request = new HttpGet(apiCall);
+        request.setHeader(ContentCoding.ACCEPT_ENCODING, ContentCoding.ACCEPTED);
+        final Future<HttpResponse> exchange = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+
+            @Override
+            public void completed(final HttpResponse response) {
+                try {
+                    result.complete(handler.handleResponse(response));
+                } catch (final IOException e) {
+                    result.completeExceptionally(e);
+                } catch (final RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(final Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+        return result;
+    }
+}
@@ -22,35 +22,27 @@ package fr.dudie.nominatim.client;
  * [/license]
  */
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.ArrayList;
+import java.io.InterruptedIOException;
 import java.util.List;
 
+import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpGet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.filosganga.geogson.gson.GeometryAdapterFactory;
-import com.github.filosganga.geogson.jts.JtsAdapterFactory;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 
+import fr.dudie.nominatim.client.metrics.Endpoint;
+import fr.dudie.nominatim.client.metrics.NominatimMetrics;
 import fr.dudie.nominatim.client.request.NominatimLookupRequest;
 import fr.dudie.nominatim.client.request.NominatimReverseRequest;
 import fr.dudie.nominatim.client.request.NominatimSearchRequest;
-import fr.dudie.nominatim.client.request.paramhelper.OsmType;
-import fr.dudie.nominatim.gson.ArrayOfAddressElementsDeserializer;
-import fr.dudie.nominatim.gson.ArrayOfPolygonPointsDeserializer;
-import fr.dudie.nominatim.gson.BoundingBoxDeserializer;
-import fr.dudie.nominatim.gson.PolygonPointDeserializer;
 import fr.dudie.nominatim.model.Address;
-import fr.dudie.nominatim.model.Element;
-import fr.dudie.nominatim.model.BoundingBox;
-import fr.dudie.nominatim.model.PolygonPoint;
 
 /**
  * An implementation of the Nominatim Api Service.
@@ -58,7 +50,7 @@ import fr.dudie.nominatim.model.PolygonPoint;
  * @author Jérémie Huchet
  * @author Sunil D S
  */
-public final class JsonNominatimClient implements NominatimClient {
+public final class JsonNominatimClient extends AbstractNominatimClient implements Closeable {
 
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(JsonNominatimClient.class);
@@ -96,6 +88,15 @@ public final class JsonNominatimClient implements NominatimClient {
     /** The default response handler for lookup requests. */
     private NominatimResponseHandler<List<Address>> defaultLookupHandler;
 
+    /** The metrics receiving the measurements of the requests. */
+    private volatile NominatimMetrics metrics = NominatimMetrics.NOOP;
+
+    /** The connection pool of the HTTP client, when built by a {@link NominatimClientBuilder}. */
+    private NominatimConnectionPool connectionPool;
+
+    /** Whether the connection pool is closed with this client. */
+    private boolean ownsConnectionPool;
+
     /**
      * Creates the json nominatim client with the default base URL ({@value #DEFAULT_BASE_URL}.
      * 
@@ -155,15 +156,10 @@ public final class JsonNominatimClient implements NominatimClient {
      */
     public JsonNominatimClient(final String baseUrl, final HttpClient httpClient, final String email, final NominatimOptions defaults) {
 
-        String emailEncoded;
-        try {
-            emailEncoded = URLEncoder.encode(email, ENCODING_UTF_8);
-        } catch (UnsupportedEncodingException e) {
-            emailEncoded = email;
-        }
-        this.searchUrl = String.format("%s/search?format=jsonv2&email=%s", baseUrl.replaceAll("/$", ""), emailEncoded);
-        this.reverseUrl = String.format("%s/reverse?format=jsonv2&email=%s", baseUrl.replaceAll("/$", ""), emailEncoded);
-        this.lookupUrl = String.format("%s/lookup?format=json&email=%s", baseUrl.replaceAll("/$", ""), emailEncoded);
+        final NominatimServer server = new NominatimServer(baseUrl, email);
+        this.searchUrl = server.getSearchUrl();
+        this.reverseUrl = server.getReverseUrl();
+        this.lookupUrl = server.getLookupUrl();
 
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("API search URL: {}", searchUrl);
@@ -173,17 +169,7 @@ public final class JsonNominatimClient implements NominatimClient {
         this.defaults = defaults;
 
         // prepare gson instance
-        final GsonBuilder gsonBuilder = new GsonBuilder();
-
-        gsonBuilder.registerTypeAdapter(Element[].class, new ArrayOfAddressElementsDeserializer());
-        gsonBuilder.registerTypeAdapter(PolygonPoint.class, new PolygonPointDeserializer());
-        gsonBuilder.registerTypeAdapter(PolygonPoint[].class, new ArrayOfPolygonPointsDeserializer());
-        gsonBuilder.registerTypeAdapter(BoundingBox.class, new BoundingBoxDeserializer());
-
-        gsonBuilder.registerTypeAdapterFactory(new JtsAdapterFactory());
-        gsonBuilder.registerTypeAdapterFactory(new GeometryAdapterFactory());
-
-        gsonInstance = gsonBuilder.create();
+        gsonInstance = NominatimGson.create();
 
         // prepare httpclient
         this.httpClient = httpClient;
@@ -195,127 +181,151 @@ public final class JsonNominatimClient implements NominatimClient {
     }
 
     /**
-     * {@inheritDoc}
+     * Sets the metrics receiving the measurements of the requests.
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     * @param metrics
+     *            the metrics, {@link NominatimMetrics#NOOP} by default
+     * @since 3.5
      */
-    @Override
-    public List<Address> search(final NominatimSearchRequest search) throws IOException {
-
-        defaults.mergeTo(search);
-        final String apiCall = String.format("%s&%s", searchUrl, search.getQueryString());
-        LOGGER.debug("search url: {}", apiCall);
-        final HttpGet req = new HttpGet(apiCall);
-        return httpClient.execute(req, defaultSearchResponseHandler);
+    public void setMetrics(final NominatimMetrics metrics) {
+        this.metrics = null == metrics ? NominatimMetrics.NOOP : metrics;
     }
-    
+
     /**
-     * {@inheritDoc}
-     * 
-     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     * @return the metrics receiving the measurements of the requests
+     * @since 3.5
      */
-    @Override
-    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
-
-        final String apiCall = String.format("%s&%s", reverseUrl, reverse.getQueryString());
-        LOGGER.debug("reverse geocoding url: {}", apiCall);
-        final HttpGet req = new HttpGet(apiCall);
-        return httpClient.execute(req, defaultReverseGeocodingHandler);
+    public NominatimMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * {@inheritDoc}
+     * Sets the connection pool of the HTTP client.
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     * @param connectionPool
+     *            the connection pool
+     * @param owned
+     *            true to close the pool with this client
      */
-    @Override
-    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
-
-        final String apiCall = String.format("%s&%s", lookupUrl, lookup.getQueryString());
-        LOGGER.debug("lookup url: {}", apiCall);
-        final HttpGet req = new HttpGet(apiCall);
-        return httpClient.execute(req, defaultLookupHandler);
+    void setConnectionPool(final NominatimConnectionPool connectionPool, final boolean owned) {
+        this.connectionPool = connectionPool;
+        this.ownsConnectionPool = owned;
     }
-    
+
     /**
-     * {@inheritDoc}
-     * 
-     * @see fr.dudie.nominatim.client.NominatimClient#search(java.lang.String)
+     * @return the connection pool of the HTTP client, <code>null</code> unless the client was built by a
+     *         {@link NominatimClientBuilder}
+     * @since 3.5
      */
-    @Override
-    public List<Address> search(final String query) throws IOException {
-
-        final NominatimSearchRequest q = new NominatimSearchRequest();
-        q.setQuery(query);
-        return this.search(q);
+    public NominatimConnectionPool getConnectionPool() {
+        return connectionPool;
     }
 
     /**
-     * {@inheritDoc}
+     * Closes the connection pool if it was created for this client by a {@link NominatimClientBuilder}. An HTTP
+     * client given to the constructor is left open.
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(double, double)
+     * @throws IOException
+     *             if an error occurs while closing the connections
+     * @see java.io.Closeable#close()
+     * @since 3.5
      */
     @Override
-    public Address getAddress(final double longitude, final double latitude) throws IOException {
-
-        final NominatimReverseRequest q = new NominatimReverseRequest();
-        q.setQuery(longitude, latitude);
-        return this.getAddress(q);
+    public void close() throws IOException {
+        if (ownsConnectionPool) {
+            connectionPool.close();
+        }
     }
 
     /**
      * {@inheritDoc}
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(double, double, int)
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
      */
     @Override
-    public Address getAddress(final double longitude, final double latitude, final int zoom)
-            throws IOException {
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
 
-        final NominatimReverseRequest q = new NominatimReverseRequest();
-        q.setQuery(longitude, latitude);
-        q.setZoom(zoom);
-        return this.getAddress(q);
+        final RequestRecorder recorder = new RequestRecorder(metrics, Endpoint.SEARCH);
+        defaults.mergeTo(search);
+        final String apiCall = String.format("%s&%s", searchUrl, search.getQueryString());
+        recorder.encoded();
+        LOGGER.debug("search url: {}", apiCall);
+        return execute(new HttpGet(apiCall), defaultSearchResponseHandler, recorder);
     }
-
+    
     /**
      * {@inheritDoc}
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(int, int)
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
      */
     @Override
-    public Address getAddress(final int longitudeE6, final int latitudeE6) throws IOException {
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
 
-        return this.getAddress((double) (longitudeE6 / 1E6), (double) (latitudeE6 / 1E6));
+        final RequestRecorder recorder = new RequestRecorder(metrics, Endpoint.REVERSE);
+        final String apiCall = String.format("%s&%s", reverseUrl, reverse.getQueryString());
+        recorder.encoded();
+        LOGGER.debug("reverse geocoding url: {}", apiCall);
+        return execute(new HttpGet(apiCall), defaultReverseGeocodingHandler, recorder);
     }
 
     /**
      * {@inheritDoc}
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(String, long)
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
      */
     @Override
-    public Address getAddress(final String type, final long id) throws IOException {
-
-	final List<String> typeIds = new ArrayList<String>();
-        typeIds.add(type + id);
-        final List<Address> response = this.lookupAddress(typeIds);
-	if (response != null && response.size() > 0) {
-            return response.get(0);
-	}
-	return null;
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+
+        final RequestRecorder recorder = new RequestRecorder(metrics, Endpoint.LOOKUP);
+        final String apiCall = String.format("%s&%s", lookupUrl, lookup.getQueryString());
+        recorder.encoded();
+        LOGGER.debug("lookup url: {}", apiCall);
+        return execute(new HttpGet(apiCall), defaultLookupHandler, recorder);
     }
 
     /**
-     * {@inheritDoc}
+     * Sends a request and reports its measurements.
      * 
-     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(java.util.List)
+     * @param req
+     *            the request
+     * @param handler
+     *            the response handler
+     * @param recorder
+     *            the measurements of the request
+     * @return the parsed response
+     * @throws IOException
+     *             the request failed
      */
-    @Override
-    public List<Address> lookupAddress(final List<String> typeId) throws IOException {
+    private <T> T execute(final HttpGet req, final NominatimResponseHandler<T> handler,
+            final RequestRecorder recorder) throws IOException {
 
-        final NominatimLookupRequest q = new NominatimLookupRequest();
-        q.setQuery(typeId);
-        return this.lookupAddress(q);
+        req.setHeader(ContentCoding.ACCEPT_ENCODING, ContentCoding.ACCEPTED);
+        final Cancellation cancellation = Cancellation.current();
+        if (null != cancellation) {
+            cancellation.onCancel(req::abort);
+        }
+        try {
+            final T result = httpClient.execute(req, new ResponseHandler<T>() {
+
+                @Override
+                public T handleResponse(final HttpResponse response) throws IOException {
+                    return handler.handleResponse(response, recorder);
+                }
+            });
+            recorder.success();
+            return result;
+        } catch (final IOException e) {
+            if (null != cancellation && cancellation.isCancelled() && !(e instanceof InterruptedIOException)) {
+                final InterruptedIOException cancelled = new InterruptedIOException("request cancelled");
+                cancelled.initCause(e);
+                recorder.failure(cancelled);
+                throw cancelled;
+            }
+            recorder.failure(e);
+            throw e;
+        } catch (final RuntimeException e) {
+            recorder.failure(e);
+            throw e;
+        }
     }
 }
@@ -0,0 +1,487 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} spreading the requests over several Nominatim servers, replicas of each other.
+ * <p>
+ * Each request is sent to a server chosen by a {@link BalancingStrategy}. Servers are checked passively: a server
+ * failing several times in a row is ejected, and receives requests again once a cool-down is over. A failed request
+ * is sent again to another server, up to a number of attempts. When every server is ejected, the requests go to the
+ * server whose ejection ends first rather than failing at once.
+ * <p>
+ * <pre>
+ * NominatimClientBuilder settings = NominatimClientBuilder.create(null, "me@example.org").maxConnectionsPerRoute(20);
+ * LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder()
+ *         .servers(settings, "https://nominatim1.example.org/", "https://nominatim2.example.org/")
+ *         .strategy(BalancingStrategy.EWMA).build();
+ * ...
+ * client.close();
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class LoadBalancingNominatimClient extends AbstractNominatimClient implements Closeable {
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadBalancingNominatimClient.class);
+
+    /** The servers. */
+    private final List<Backend> backends;
+
+    /** The resources created for the servers, closed with this client. */
+    private final List<Closeable> resources;
+
+    /** How a server is chosen. */
+    private final BalancingStrategy strategy;
+
+    /** The number of consecutive failures ejecting a server. */
+    private final int maxFailures;
+
+    /** The first ejection duration of a server, in nanoseconds. */
+    private final long coolDownNanos;
+
+    /** The maximum number of servers a request is sent to. */
+    private final int maxAttempts;
+
+    /** The time source. */
+    private final Clock clock;
+
+    /** The number of server choices, to rotate between equivalent servers. */
+    private final AtomicInteger choices = new AtomicInteger();
+
+    /**
+     * Hidden constructor, use {@link #builder()}.
+     *
+     * @param builder
+     *            the builder
+     */
+    private LoadBalancingNominatimClient(final Builder builder) {
+        final List<Backend> servers = new ArrayList<Backend>(builder.names.size());
+        for (int i = 0; i < builder.names.size(); i++) {
+            servers.add(new Backend(builder.names.get(i), builder.clients.get(i), builder.decayNanos));
+        }
+        this.backends = Collections.unmodifiableList(servers);
+        this.resources = new ArrayList<Closeable>(builder.resources);
+        this.strategy = builder.strategy;
+        this.maxFailures = builder.maxFailures;
+        this.coolDownNanos = builder.coolDownNanos;
+        this.maxAttempts = Math.min(builder.maxAttempts, backends.size());
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @return a builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a snapshot of the statistics of each server
+     */
+    public List<BackendStats> getBackendStats() {
+
+        final long now = clock.nanoTime();
+        final List<BackendStats> stats = new ArrayList<BackendStats>(backends.size());
+        for (final Backend b : backends) {
+            stats.add(b.getStats(now));
+        }
+        return stats;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return execute(c -> c.search(search));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return execute(c -> c.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        return execute(c -> c.lookupAddress(lookup));
+    }
+
+    /**
+     * Closes the clients and the connection pool created by {@link Builder#servers(NominatimClientBuilder, String...)}.
+     * The clients given to {@link Builder#backend(String, NominatimClient)} are left open.
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+
+        IOException error = null;
+        for (final Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (final IOException e) {
+                if (null == error) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (null != error) {
+            throw error;
+        }
+    }
+
+    /**
+     * Sends a request to a server, then to other servers while it fails. Connection failures, timeouts, server errors
+     * and too many requests responses count as failures of the server and the request is sent to another one, while a
+     * request rejected by the server, an unreadable response or an interrupted request is reported at once.
+     *
+     * @param request
+     *            sends the request
+     * @return the response
+     * @throws IOException
+     *             the last attempt failed, the errors of the previous attempts are suppressed exceptions
+     */
+    private <T> T execute(final NominatimCall<T> request) throws IOException {
+
+        final List<Backend> tried = new ArrayList<Backend>(maxAttempts);
+        IOException error = null;
+        Backend backend;
+        while (tried.size() < maxAttempts && null != (backend = choose(tried))) {
+            tried.add(backend);
+            backend.started();
+            final long start = clock.nanoTime();
+            try {
+                final T response = request.send(backend.getClient());
+                final long end = clock.nanoTime();
+                backend.succeeded(end, end - start);
+                return response;
+            } catch (final NominatimClientErrorException e) {
+                // the server answered, the request is wrong and would be rejected by any other one
+                final long end = clock.nanoTime();
+                backend.succeeded(end, end - start);
+                throw e;
+            } catch (final NominatimParseException e) {
+                backend.abandoned();
+                throw e;
+            } catch (final SocketTimeoutException e) {
+                // a timeout is an interrupted I/O operation too, but not one the caller asked for
+                error = failed(backend, start, e, error);
+            } catch (final ConnectTimeoutException e) {
+                error = failed(backend, start, e, error);
+            } catch (final InterruptedIOException e) {
+                backend.abandoned();
+                throw e;
+            } catch (final IOException e) {
+                error = failed(backend, start, e, error);
+            } catch (final RuntimeException e) {
+                backend.abandoned();
+                throw e;
+            } catch (final Error e) {
+                backend.abandoned();
+                throw e;
+            }
+        }
+        throw error;
+    }
+
+    /**
+     * Records the failure of a server to answer a request, which will be sent to another server.
+     *
+     * @param backend
+     *            the server
+     * @param start
+     *            the start of the request, in nanoseconds
+     * @param e
+     *            the error
+     * @param previous
+     *            the error of the previous attempt, or <code>null</code>
+     * @return the error, with the previous one suppressed
+     */
+    private IOException failed(final Backend backend, final long start, final IOException e,
+            final IOException previous) {
+
+        final long end = clock.nanoTime();
+        if (backend.failed(end, end - start, maxFailures, coolDownNanos)) {
+            LOGGER.warn("ejecting {} for {} ms after {} consecutive failures: {}", backend,
+                    TimeUnit.NANOSECONDS.toMillis(backend.getEjectedUntilNanos() - end), maxFailures, e.getMessage());
+        }
+        if (null != previous) {
+            e.addSuppressed(previous);
+        }
+        return e;
+    }
+
+    /**
+     * Chooses a server among the available ones which weren't tried yet, or the one whose ejection ends first if
+     * every one is ejected.
+     *
+     * @param tried
+     *            the servers which already failed to answer the request
+     * @return the chosen server, <code>null</code> if every server was tried
+     */
+    private Backend choose(final List<Backend> tried) {
+
+        final long now = clock.nanoTime();
+        final List<Backend> candidates = new ArrayList<Backend>(backends.size());
+        Backend soonest = null;
+        for (final Backend b : backends) {
+            if (tried.contains(b)) {
+                continue;
+            }
+            if (b.isAvailable(now)) {
+                candidates.add(b);
+            } else if (null == soonest || b.getEjectedUntilNanos() - soonest.getEjectedUntilNanos() < 0) {
+                soonest = b;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return soonest;
+        }
+        return strategy.choose(candidates, choices.getAndIncrement() & Integer.MAX_VALUE, now);
+    }
+
+    /**
+     * Builds a {@link LoadBalancingNominatimClient}.
+     * <p>
+     * By default, servers are chosen in turn, ejected for 30 seconds after 5 consecutive failures, and a failed
+     * request is sent to a second server.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The server names. */
+        private final List<String> names = new ArrayList<String>();
+
+        /** The clients sending requests to the servers. */
+        private final List<NominatimClient> clients = new ArrayList<NominatimClient>();
+
+        /** The resources created for the servers. */
+        private final List<Closeable> resources = new ArrayList<Closeable>();
+
+        /** How a server is chosen. */
+        private BalancingStrategy strategy = BalancingStrategy.ROUND_ROBIN;
+
+        /** The number of consecutive failures ejecting a server. */
+        private int maxFailures = 5;
+
+        /** The first ejection duration of a server, in nanoseconds. */
+        private long coolDownNanos = TimeUnit.SECONDS.toNanos(30);
+
+        /** The time after which a latency measurement weighs 1/e in the average, in nanoseconds. */
+        private long decayNanos = TimeUnit.SECONDS.toNanos(10);
+
+        /** The maximum number of servers a request is sent to. */
+        private int maxAttempts = 2;
+
+        /** The time source. */
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Hidden constructor, use {@link LoadBalancingNominatimClient#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Adds a server.
+         *
+         * @param name
+         *            the server name, for the logs and the statistics
+         * @param client
+         *            the client sending requests to the server, not closed by the load balancing client
+         * @return this builder
+         */
+        public Builder backend(final String name, final NominatimClient client) {
+            names.add(name);
+            clients.add(client);
+            return this;
+        }
+
+        /**
+         * Adds servers, with clients sharing one connection pool. The clients are built with the settings of the given
+         * builder, except its server url: the maximum total number of connections of the pool is raised to allow the
+         * maximum number of connections on each server, the given builder is left unchanged. If the settings hold a
+         * shared connection pool, it is used as is and not closed with the load balancing client.
+         *
+         * @param settings
+         *            the client settings
+         * @param baseUrls
+         *            the nominatim server urls
+         * @return this builder
+         */
+        public Builder servers(final NominatimClientBuilder settings, final String... baseUrls) {
+
+            NominatimConnectionPool pool = settings.getConnectionPool();
+            if (null == pool) {
+                final NominatimClientBuilder pooled = settings.copy();
+                pooled.maxConnectionsTotal = Math.max(settings.maxConnectionsTotal,
+                        settings.maxConnectionsPerRoute * baseUrls.length);
+                pool = pooled.buildConnectionPool();
+                resources.add(pool);
+            }
+            for (final String baseUrl : baseUrls) {
+                backend(baseUrl, settings.build(baseUrl, pool, false));
+            }
+            return this;
+        }
+
+        /**
+         * Sets how a server is chosen.
+         *
+         * @param strategy
+         *            the balancing strategy
+         * @return this builder
+         */
+        public Builder strategy(final BalancingStrategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Sets the number of consecutive failures ejecting a server.
+         *
+         * @param maxFailures
+         *            the number of failures, at least 1
+         * @return this builder
+         */
+        public Builder ejectAfter(final int maxFailures) {
+            if (maxFailures < 1) {
+                throw new IllegalArgumentException("maxFailures must be at least 1: " + maxFailures);
+            }
+            this.maxFailures = maxFailures;
+            return this;
+        }
+
+        /**
+         * Sets the first ejection duration of a server. A server failing again right after its return is ejected for
+         * twice the previous duration, up to 16 times this one.
+         *
+         * @param duration
+         *            the ejection duration
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder coolDown(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("coolDown must be positive: " + duration);
+            }
+            this.coolDownNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets how fast the moving average latency used by {@link BalancingStrategy#EWMA} forgets old measurements.
+         *
+         * @param duration
+         *            the time after which a measurement weighs 1/e in the average
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder decay(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("decay must be positive: " + duration);
+            }
+            this.decayNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of servers a request is sent to, one after the other while it fails.
+         *
+         * @param maxAttempts
+         *            the maximum number of attempts, 1 to never send a request again
+         * @return this builder
+         */
+        public Builder maxAttempts(final int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the time source, for tests.
+         *
+         * @param clock
+         *            the time source
+         * @return this builder
+         */
+        public Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new load balancing client
+         */
+        public LoadBalancingNominatimClient build() {
+            if (names.isEmpty()) {
+                throw new IllegalStateException("no server");
+            }
+            return new LoadBalancingNominatimClient(this);
+        }
+    }
+}
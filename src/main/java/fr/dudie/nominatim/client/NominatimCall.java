@@ -0,0 +1,50 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+
+/**
+ * A request sent with a {@link NominatimClient}, whatever its endpoint.
+ * <p>
+ * The clients wrapping another one use it to handle search, reverse geocoding and lookup requests the same way, and
+ * to choose which client sends the request.
+ *
+ * @param <T>
+ *            the response type
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public interface NominatimCall<T> {
+
+    /**
+     * Sends the request.
+     *
+     * @param client
+     *            the client sending the request
+     * @return the response
+     * @throws IOException
+     *             the request failed
+     */
+    T send(NominatimClient client) throws IOException;
+}
@@ -0,0 +1,375 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import fr.dudie.nominatim.client.metrics.NominatimMetrics;
+
+/**
+ * Builds a {@link JsonNominatimClient} sending its requests through a pool of persistent connections.
+ * <p>
+ * The defaults suit a single Nominatim server: 10 connections, kept alive up to 30 seconds and closed after
+ * 1 minute of inactivity, 5 seconds to connect or to get a connection from the pool and 30 seconds to receive data.
+ * <p>
+ * <pre>
+ * JsonNominatimClient client = NominatimClientBuilder.create("https://nominatim.example.org/", "me@example.org")
+ *         .maxConnectionsPerRoute(20).build();
+ * ...
+ * client.close();
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class NominatimClientBuilder {
+
+    /** The default user agent. */
+    private static final String DEFAULT_USER_AGENT = "nominatim-java-api";
+
+    /** The nominatim server url. */
+    private final String baseUrl;
+
+    /** The email added to the requests. */
+    private final String email;
+
+    /** The default search options. */
+    private NominatimOptions defaults = new NominatimOptions();
+
+    /** The metrics receiving the measurements of the requests. */
+    private NominatimMetrics metrics = NominatimMetrics.NOOP;
+
+    /** The shared connection pool, <code>null</code> to create one. */
+    private NominatimConnectionPool connectionPool;
+
+    /** The maximum number of connections to a server. */
+    int maxConnectionsPerRoute = 10;
+
+    /** The maximum number of connections. */
+    int maxConnectionsTotal = 10;
+
+    /** The maximum time a connection is kept alive, in milliseconds. */
+    long keepAliveMillis = TimeUnit.SECONDS.toMillis(30);
+
+    /** The time after which an idle connection is closed, in milliseconds. */
+    long maxIdleMillis = TimeUnit.MINUTES.toMillis(1);
+
+    /** The time after which an idle connection is checked before being reused, in milliseconds. */
+    long validateAfterInactivityMillis = TimeUnit.SECONDS.toMillis(2);
+
+    /** The time allowed to open a connection, in milliseconds. */
+    long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(5);
+
+    /** The time allowed between two packets of a response, in milliseconds. */
+    long socketTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+
+    /** The time allowed to get a connection from the pool, in milliseconds. */
+    long connectionRequestTimeoutMillis = TimeUnit.SECONDS.toMillis(5);
+
+    /** The user agent. */
+    String userAgent = DEFAULT_USER_AGENT;
+
+    /**
+     * Hidden constructor, use {@link #create(String, String)}.
+     *
+     * @param baseUrl
+     *            the nominatim server url
+     * @param email
+     *            an email to add in the HTTP requests parameters to "sign" them
+     */
+    private NominatimClientBuilder(final String baseUrl, final String email) {
+        this.baseUrl = baseUrl;
+        this.email = email;
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @param baseUrl
+     *            the nominatim server url
+     * @param email
+     *            an email to add in the HTTP requests parameters to "sign" them (see
+     *            https://wiki.openstreetmap.org/wiki/Nominatim_usage_policy)
+     * @return a builder
+     */
+    public static NominatimClientBuilder create(final String baseUrl, final String email) {
+        return new NominatimClientBuilder(baseUrl, email);
+    }
+
+    /**
+     * Sets the default search options.
+     *
+     * @param defaults
+     *            defaults options, they override null valued requests options
+     * @return this builder
+     */
+    public NominatimClientBuilder defaults(final NominatimOptions defaults) {
+        this.defaults = defaults;
+        return this;
+    }
+
+    /**
+     * Sets the metrics receiving the measurements of the requests.
+     *
+     * @param metrics
+     *            the metrics
+     * @return this builder
+     */
+    public NominatimClientBuilder metrics(final NominatimMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Sends the requests through an existing connection pool, shared with other clients. The connection settings of
+     * this builder are then ignored, and closing the client doesn't close the pool.
+     *
+     * @param connectionPool
+     *            the connection pool
+     * @return this builder
+     */
+    public NominatimClientBuilder connectionPool(final NominatimConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of connections to a server. The maximum total number of connections is raised to this
+     * value if lower.
+     *
+     * @param maxConnectionsPerRoute
+     *            the maximum number of connections to a server
+     * @return this builder
+     */
+    public NominatimClientBuilder maxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = positive("maxConnectionsPerRoute", maxConnectionsPerRoute);
+        this.maxConnectionsTotal = Math.max(maxConnectionsTotal, maxConnectionsPerRoute);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of connections, to all servers.
+     *
+     * @param maxConnectionsTotal
+     *            the maximum number of connections
+     * @return this builder
+     */
+    public NominatimClientBuilder maxConnectionsTotal(final int maxConnectionsTotal) {
+        this.maxConnectionsTotal = positive("maxConnectionsTotal", maxConnectionsTotal);
+        return this;
+    }
+
+    /**
+     * Sets the maximum time a connection is kept alive, when the server doesn't announce a shorter one.
+     *
+     * @param duration
+     *            the keep-alive duration
+     * @param unit
+     *            the duration unit
+     * @return this builder
+     */
+    public NominatimClientBuilder keepAlive(final long duration, final TimeUnit unit) {
+        this.keepAliveMillis = positive("keepAlive", unit.toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Sets the time after which an idle connection is closed by the eviction thread.
+     *
+     * @param duration
+     *            the maximum idle time
+     * @param unit
+     *            the duration unit
+     * @return this builder
+     */
+    public NominatimClientBuilder maxIdleTime(final long duration, final TimeUnit unit) {
+        this.maxIdleMillis = positive("maxIdleTime", unit.toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Sets the time after which an idle connection is checked for staleness before being reused.
+     *
+     * @param duration
+     *            the inactivity duration
+     * @param unit
+     *            the duration unit
+     * @return this builder
+     */
+    public NominatimClientBuilder validateAfterInactivity(final long duration, final TimeUnit unit) {
+        this.validateAfterInactivityMillis = positive("validateAfterInactivity", unit.toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Sets the time allowed to open a connection.
+     *
+     * @param duration
+     *            the timeout, 0 for no timeout
+     * @param unit
+     *            the duration unit
+     * @return this builder
+     */
+    public NominatimClientBuilder connectTimeout(final long duration, final TimeUnit unit) {
+        this.connectTimeoutMillis = notNegative("connectTimeout", unit.toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Sets the time allowed between two packets of a response.
+     *
+     * @param duration
+     *            the timeout, 0 for no timeout
+     * @param unit
+     *            the duration unit
+     * @return this builder
+     */
+    public NominatimClientBuilder socketTimeout(final long duration, final TimeUnit unit) {
+        this.socketTimeoutMillis = notNegative("socketTimeout", unit.toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Sets the time allowed to get a connection from the pool when all connections are in use.
+     *
+     * @param duration
+     *            the timeout, 0 for no timeout
+     * @param unit
+     *            the duration unit
+     * @return this builder
+     */
+    public NominatimClientBuilder connectionRequestTimeout(final long duration, final TimeUnit unit) {
+        this.connectionRequestTimeoutMillis = notNegative("connectionRequestTimeout", unit.toMillis(duration));
+        return this;
+    }
+
+    /**
+     * Sets the user agent, the Nominatim usage policy requires one identifying the application.
+     *
+     * @param userAgent
+     *            the user agent
+     * @return this builder
+     */
+    public NominatimClientBuilder userAgent(final String userAgent) {
+        this.userAgent = userAgent;
+        return this;
+    }
+
+    /**
+     * Creates a connection pool with the connection settings of this builder, to share between clients.
+     *
+     * @return a new connection pool, to close when no longer used
+     */
+    public NominatimConnectionPool buildConnectionPool() {
+        return new NominatimConnectionPool(this);
+    }
+
+    /**
+     * Creates the client. Unless a shared pool was given, the client owns a new connection pool and closing the
+     * client closes the pool.
+     *
+     * @return a new client
+     */
+    public JsonNominatimClient build() {
+        final boolean owned = null == connectionPool;
+        return build(baseUrl, owned ? buildConnectionPool() : connectionPool, owned);
+    }
+
+    /**
+     * @return the shared connection pool, <code>null</code> if the clients should create one
+     */
+    NominatimConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * @return a new builder with the same settings, which can be changed without changing this one
+     */
+    NominatimClientBuilder copy() {
+
+        final NominatimClientBuilder copy = new NominatimClientBuilder(baseUrl, email);
+        copy.defaults = defaults;
+        copy.metrics = metrics;
+        copy.connectionPool = connectionPool;
+        copy.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        copy.maxConnectionsTotal = maxConnectionsTotal;
+        copy.keepAliveMillis = keepAliveMillis;
+        copy.maxIdleMillis = maxIdleMillis;
+        copy.validateAfterInactivityMillis = validateAfterInactivityMillis;
+        copy.connectTimeoutMillis = connectTimeoutMillis;
+        copy.socketTimeoutMillis = socketTimeoutMillis;
+        copy.connectionRequestTimeoutMillis = connectionRequestTimeoutMillis;
+        copy.userAgent = userAgent;
+        return copy;
+    }
+
+    /**
+     * Creates a client with the settings of this builder.
+     *
+     * @param serverUrl
+     *            the nominatim server url, replacing the one of this builder
+     * @param pool
+     *            the connection pool
+     * @param owned
+     *            true to close the pool with the client
+     * @return a new client
+     */
+    JsonNominatimClient build(final String serverUrl, final NominatimConnectionPool pool, final boolean owned) {
+        final JsonNominatimClient client = new JsonNominatimClient(serverUrl, pool.getHttpClient(), email, defaults);
+        client.setConnectionPool(pool, owned);
+        client.setMetrics(metrics);
+        return client;
+    }
+
+    /**
+     * Checks a setting is positive.
+     *
+     * @param name
+     *            the setting name
+     * @param value
+     *            the value
+     * @return the value
+     */
+    private static <T extends Number> T positive(final String name, final T value) {
+        if (value.longValue() <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Checks a setting is not negative.
+     *
+     * @param name
+     *            the setting name
+     * @param value
+     *            the value
+     * @return the value
+     */
+    private static long notNegative(final String name, final long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,47 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * Thrown when the Nominatim server rejects a request (HTTP 4xx except 429), sending it again would fail the same way.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class NominatimClientErrorException extends NominatimHttpException {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param statusCode
+     *            the HTTP status code
+     * @param reasonPhrase
+     *            the HTTP reason phrase
+     * @param retryAfterMillis
+     *            the delay asked by the server before sending another request, in milliseconds, -1 if none
+     */
+    public NominatimClientErrorException(final int statusCode, final String reasonPhrase, final long retryAfterMillis) {
+        super(statusCode, reasonPhrase, retryAfterMillis);
+    }
+}
@@ -0,0 +1,159 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * A pool of persistent HTTP connections to Nominatim servers, and the HTTP client using it.
+ * <p>
+ * Connections are kept alive between requests for the duration announced by the server, bounded by the configured
+ * keep-alive. A background thread closes the connections which stayed idle for too long, and a connection idle for a
+ * while is checked before being reused, so that requests don't fail on connections closed by the server.
+ * <p>
+ * The HTTP client leaves compressed responses as is, so that the client measures their size on the wire before
+ * decompressing them.
+ * <p>
+ * The pool is created by {@link NominatimClientBuilder#buildConnectionPool()} and can be shared by several clients,
+ * each server getting at most <code>maxConnectionsPerRoute</code> connections.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class NominatimConnectionPool implements Closeable {
+
+    /** The connection manager. */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /** The HTTP client. */
+    private final CloseableHttpClient httpClient;
+
+    /** The number of connections opened. */
+    private final AtomicLong openedCount = new AtomicLong();
+
+    /**
+     * @param builder
+     *            the configuration
+     */
+    NominatimConnectionPool(final NominatimClientBuilder builder) {
+
+        final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = new HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection>() {
+
+            @Override
+            public ManagedHttpClientConnection create(final HttpRoute route, final ConnectionConfig config) {
+                openedCount.incrementAndGet();
+                return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+            }
+        };
+        connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory> create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory()).build(), connectionFactory);
+        connectionManager.setMaxTotal(builder.maxConnectionsTotal);
+        connectionManager.setDefaultMaxPerRoute(builder.maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity((int) Math.min(Integer.MAX_VALUE, builder.validateAfterInactivityMillis));
+
+        final long keepAliveMillis = builder.keepAliveMillis;
+        final ConnectionKeepAliveStrategy keepAlive = new ConnectionKeepAliveStrategy() {
+
+            @Override
+            public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+                final long announced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response,
+                        context);
+                return announced > 0 ? Math.min(announced, keepAliveMillis) : keepAliveMillis;
+            }
+        };
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(toTimeout(builder.connectTimeoutMillis))
+                .setSocketTimeout(toTimeout(builder.socketTimeoutMillis))
+                .setConnectionRequestTimeout(toTimeout(builder.connectionRequestTimeoutMillis)).build();
+
+        httpClient = HttpClients.custom().setConnectionManager(connectionManager).setKeepAliveStrategy(keepAlive)
+                .setDefaultRequestConfig(requestConfig).disableContentCompression().evictExpiredConnections()
+                .evictIdleConnections(builder.maxIdleMillis, TimeUnit.MILLISECONDS).setUserAgent(builder.userAgent)
+                .build();
+    }
+
+    /**
+     * Converts a timeout to the Apache HTTP client convention.
+     *
+     * @param millis
+     *            the timeout in milliseconds, 0 for no timeout
+     * @return the timeout in milliseconds, 0 for no timeout
+     */
+    private static int toTimeout(final long millis) {
+        return (int) Math.min(Integer.MAX_VALUE, millis);
+    }
+
+    /**
+     * @return the HTTP client sending the requests through this pool
+     */
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Gets the current statistics of the whole pool.
+     *
+     * @return a snapshot of the statistics
+     */
+    public ConnectionPoolStats getStats() {
+        final PoolStats stats = connectionManager.getTotalStats();
+        return new ConnectionPoolStats(stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax(),
+                openedCount.get());
+    }
+
+    /**
+     * Closes all the connections and stops the eviction thread.
+     *
+     * @throws IOException
+     *             if an error occurs while closing the HTTP client
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,67 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import com.github.filosganga.geogson.gson.GeometryAdapterFactory;
+import com.github.filosganga.geogson.jts.JtsAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import fr.dudie.nominatim.gson.ArrayOfAddressElementsTypeAdapter;
+import fr.dudie.nominatim.gson.BoundingBoxTypeAdapter;
+import fr.dudie.nominatim.model.BoundingBox;
+import fr.dudie.nominatim.model.Element;
+
+/**
+ * Creates the {@link Gson} instance able to read Nominatim API responses.
+ *
+ * @author Jeremie Huchet
+ */
+final class NominatimGson {
+
+    /**
+     * Utility class.
+     */
+    private NominatimGson() {
+    }
+
+    /**
+     * Creates a Gson instance configured with the Nominatim model type adapters.
+     *
+     * @return a new Gson instance
+     */
+    static Gson create() {
+
+        final GsonBuilder gsonBuilder = new GsonBuilder();
+
+        // streaming adapters: no intermediate JSON tree is built, the polygon points are bound to
+        // PackedPolygonTypeAdapter by the Address model itself
+        gsonBuilder.registerTypeAdapter(Element[].class, new ArrayOfAddressElementsTypeAdapter());
+        gsonBuilder.registerTypeAdapter(BoundingBox.class, new BoundingBoxTypeAdapter());
+
+        gsonBuilder.registerTypeAdapterFactory(new JtsAdapterFactory());
+        gsonBuilder.registerTypeAdapterFactory(new GeometryAdapterFactory());
+
+        return gsonBuilder.create();
+    }
+}
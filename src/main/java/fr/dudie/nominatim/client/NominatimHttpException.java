@@ -0,0 +1,75 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+
+/**
+ * Thrown when the Nominatim server answers with an HTTP error status.
+ * <p>
+ * The subclasses tell whether sending the request again may succeed: {@link NominatimThrottledException} and
+ * {@link NominatimServerErrorException} are transient, {@link NominatimClientErrorException} isn't.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class NominatimHttpException extends IOException {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The HTTP status code. */
+    private final int statusCode;
+
+    /** The delay asked by the server before sending another request, in milliseconds, -1 if none. */
+    private final long retryAfterMillis;
+
+    /**
+     * @param statusCode
+     *            the HTTP status code
+     * @param reasonPhrase
+     *            the HTTP reason phrase
+     * @param retryAfterMillis
+     *            the delay asked by the server before sending another request, in milliseconds, -1 if none
+     */
+    public NominatimHttpException(final int statusCode, final String reasonPhrase, final long retryAfterMillis) {
+        super(String.format("HTTP error: %s %s", statusCode, reasonPhrase));
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the HTTP status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the delay asked by the server with a <code>Retry-After</code> header before sending another request, in
+     *         milliseconds, -1 if none
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -26,21 +26,37 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.util.EntityUtils;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.MalformedJsonException;
 
 /**
  * Parses a json response from the Nominatim API for a reverse geocoding request.
+ * <p>
+ * Compressed responses are decompressed while they are parsed, without buffering the whole body. HTTP errors are
+ * reported with a subclass of {@link NominatimHttpException} and unreadable responses with a
+ * {@link NominatimParseException}, so that callers can tell which failures are worth a retry.
  * 
  * @author Jérémie Huchet
  */
 public final class NominatimResponseHandler<T> implements ResponseHandler<T> {
 
+    /** The HTTP status of throttled requests, missing from {@link HttpStatus}. */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
     /** Gson instance for Nominatim API calls. */
     private final Gson gsonInstance;
 
@@ -69,24 +85,106 @@ public final class NominatimResponseHandler<T> implements ResponseHandler<T> {
     @Override
     public T handleResponse(final HttpResponse response) throws IOException {
 
+        return handleResponse(response, null);
+    }
+
+    /**
+     * Parses a response and measures the parsing.
+     * 
+     * @param response
+     *            the HTTP response
+     * @param recorder
+     *            the measurements of the request, may be <code>null</code>
+     * @return the parsed response
+     * @throws IOException
+     *             the request failed or the response can't be read
+     */
+    T handleResponse(final HttpResponse response, final RequestRecorder recorder) throws IOException {
+
         InputStream content = null;
         final T addresses;
 
         try {
+            if (null != recorder) {
+                recorder.firstByte();
+            }
             final StatusLine status = response.getStatusLine();
             if (status.getStatusCode() >= HttpStatus.SC_BAD_REQUEST) {
-                throw new IOException(String.format("HTTP error: %s %s", status.getStatusCode(), status.getReasonPhrase()));
+                throw httpError(response);
+            }
+            final HttpEntity entity = response.getEntity();
+            content = entity.getContent();
+            if (null != recorder) {
+                content = recorder.receiving(content);
+            }
+            final Header contentEncoding = entity.getContentEncoding();
+            content = ContentCoding.decode(content, null == contentEncoding ? null : contentEncoding.getValue());
+            if (null != recorder) {
+                content = recorder.parsing(content);
+            }
+            try {
+                addresses = gsonInstance.fromJson(new InputStreamReader(content, "utf-8"), responseType);
+            } catch (final JsonParseException e) {
+                // Gson wraps the errors of the stream, like a connection reset
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException && !(cause instanceof MalformedJsonException)) {
+                    throw (IOException) cause;
+                }
+                throw new NominatimParseException("unexpected response: " + e.getMessage(), e);
+            }
+            if (null != recorder) {
+                recorder.parsed();
             }
-            content = response.getEntity().getContent();
-            addresses = gsonInstance
-                    .fromJson(new InputStreamReader(content, "utf-8"), responseType);
         } finally {
             if (null != content) {
                 content.close();
             }
-            response.getEntity().consumeContent();
+            // releases the connection once the remaining content is read, so that it can be reused
+            EntityUtils.consume(response.getEntity());
         }
 
         return addresses;
     }
+
+    /**
+     * Creates the error matching an HTTP error response.
+     *
+     * @param response
+     *            the HTTP response, with a status of at least 400
+     * @return a {@link NominatimThrottledException}, a {@link NominatimServerErrorException} or a
+     *         {@link NominatimClientErrorException}
+     */
+    private static NominatimHttpException httpError(final HttpResponse response) {
+
+        final int code = response.getStatusLine().getStatusCode();
+        final String reason = response.getStatusLine().getReasonPhrase();
+        final long retryAfter = retryAfterMillis(response.getFirstHeader(HttpHeaders.RETRY_AFTER));
+        if (code == HTTP_TOO_MANY_REQUESTS) {
+            return new NominatimThrottledException(code, reason, retryAfter);
+        } else if (code >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            return new NominatimServerErrorException(code, reason, retryAfter);
+        }
+        return new NominatimClientErrorException(code, reason, retryAfter);
+    }
+
+    /**
+     * Reads a <code>Retry-After</code> header, holding either a number of seconds or a date.
+     *
+     * @param header
+     *            the header, may be <code>null</code>
+     * @return the delay, in milliseconds, -1 if there is no header or it can't be read
+     */
+    static long retryAfterMillis(final Header header) {
+
+        if (null == header || null == header.getValue()) {
+            return -1;
+        }
+        final String value = header.getValue().trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+        } catch (final NumberFormatException e) {
+            final Date date = DateUtils.parseDate(value);
+            return null == date ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * Holds the URLs of the Nominatim API endpoints exposed by a server.
+ *
+ * @author Jeremie Huchet
+ */
+final class NominatimServer {
+
+    /** The url to make search queries. */
+    private final String searchUrl;
+
+    /** The url for reverse geocoding. */
+    private final String reverseUrl;
+
+    /** The url for address lookup. */
+    private final String lookupUrl;
+
+    /**
+     * Builds the endpoints URLs of a Nominatim server.
+     *
+     * @param baseUrl
+     *            the nominatim server url
+     * @param email
+     *            an email to add in the HTTP requests parameters to "sign" them
+     */
+    NominatimServer(final String baseUrl, final String email) {
+
+        String emailEncoded;
+        try {
+            emailEncoded = URLEncoder.encode(email, JsonNominatimClient.ENCODING_UTF_8);
+        } catch (UnsupportedEncodingException e) {
+            emailEncoded = email;
+        }
+        final String url = baseUrl.replaceAll("/$", "");
+        this.searchUrl = String.format("%s/search?format=jsonv2&email=%s", url, emailEncoded);
+        this.reverseUrl = String.format("%s/reverse?format=jsonv2&email=%s", url, emailEncoded);
+        this.lookupUrl = String.format("%s/lookup?format=json&email=%s", url, emailEncoded);
+    }
+
+    /**
+     * @return the url to make search queries
+     */
+    String getSearchUrl() {
+        return searchUrl;
+    }
+
+    /**
+     * @return the url for reverse geocoding
+     */
+    String getReverseUrl() {
+        return reverseUrl;
+    }
+
+    /**
+     * @return the url for address lookup
+     */
+    String getLookupUrl() {
+        return lookupUrl;
+    }
+}
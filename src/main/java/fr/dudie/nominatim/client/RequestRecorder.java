@@ -0,0 +1,218 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import fr.dudie.nominatim.client.metrics.Endpoint;
+import fr.dudie.nominatim.client.metrics.NominatimMetrics;
+import fr.dudie.nominatim.client.metrics.RequestSample;
+
+/**
+ * Measures the phases of a request and reports them to the {@link NominatimMetrics} once the request completes.
+ * <p>
+ * A recorder measures one request, it is not thread safe.
+ *
+ * @author Jeremie Huchet
+ */
+final class RequestRecorder {
+
+    /** The metrics receiving the measurements. */
+    private final NominatimMetrics metrics;
+
+    /** The endpoint. */
+    private final Endpoint endpoint;
+
+    /** The start of the request. */
+    private final long start;
+
+    /** The end of the request encoding. */
+    private long encoded;
+
+    /** The reception of the response headers. */
+    private long firstByte;
+
+    /** The start of the response parsing. */
+    private long parseStart;
+
+    /** The end of the response parsing. */
+    private long parseEnd;
+
+    /** The response body stream as received, counting the bytes read. */
+    private CountingInputStream wire;
+
+    /** The decoded response body stream, counting the bytes read. */
+    private CountingInputStream content;
+
+    /**
+     * Starts measuring a request.
+     *
+     * @param metrics
+     *            the metrics receiving the measurements
+     * @param endpoint
+     *            the endpoint
+     */
+    RequestRecorder(final NominatimMetrics metrics, final Endpoint endpoint) {
+        this.metrics = metrics;
+        this.endpoint = endpoint;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the request encoding.
+     */
+    void encoded() {
+        encoded = System.nanoTime();
+    }
+
+    /**
+     * Marks the reception of the response headers.
+     */
+    void firstByte() {
+        firstByte = System.nanoTime();
+    }
+
+    /**
+     * Marks the start of the response reading.
+     *
+     * @param in
+     *            the response body stream, as received
+     * @return a stream counting the bytes received
+     */
+    InputStream receiving(final InputStream in) {
+        parseStart = System.nanoTime();
+        wire = new CountingInputStream(in);
+        return wire;
+    }
+
+    /**
+     * Marks the start of the response parsing.
+     *
+     * @param in
+     *            the decoded response body stream
+     * @return a stream counting the bytes read from the decoded response body
+     */
+    InputStream parsing(final InputStream in) {
+        if (0 == parseStart) {
+            parseStart = System.nanoTime();
+        }
+        content = new CountingInputStream(in);
+        return content;
+    }
+
+    /**
+     * Marks the end of the response parsing.
+     */
+    void parsed() {
+        parseEnd = System.nanoTime();
+    }
+
+    /**
+     * Reports a successful request.
+     */
+    void success() {
+        report(null);
+    }
+
+    /**
+     * Reports a failed request.
+     *
+     * @param error
+     *            the error
+     */
+    void failure(final Throwable error) {
+        report(error.getClass().getName());
+    }
+
+    /**
+     * Reports the measurements.
+     *
+     * @param error
+     *            the error class name, or <code>null</code>
+     */
+    private void report(final String error) {
+
+        final long end = System.nanoTime();
+        metrics.record(new RequestSample(endpoint, elapsed(start, encoded), elapsed(start, firstByte), elapsed(
+                parseStart, parseEnd), end - start, null == content ? RequestSample.NOT_REACHED : content.count,
+                null == wire ? RequestSample.NOT_REACHED : wire.count,
+                error));
+    }
+
+    /**
+     * Computes the duration of a phase.
+     *
+     * @param from
+     *            the start of the phase
+     * @param to
+     *            the end of the phase, 0 if it wasn't reached
+     * @return the duration of the phase, or {@link RequestSample#NOT_REACHED}
+     */
+    private static long elapsed(final long from, final long to) {
+        return 0 == to || 0 == from ? RequestSample.NOT_REACHED : to - from;
+    }
+
+    /**
+     * Counts the bytes read from a stream.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /** The number of bytes read. */
+        private long count;
+
+        /**
+         * @param in
+         *            the counted stream
+         */
+        private CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
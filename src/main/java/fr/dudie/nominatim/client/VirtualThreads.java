@@ -0,0 +1,142 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates virtual threads when the JVM supports them.
+ * <p>
+ * This library targets Java 8, so virtual threads, final in Java 21, are created through reflection. On older JVMs,
+ * {@link #isAvailable()} returns false and the factory methods throw an {@link UnsupportedOperationException}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class VirtualThreads {
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    /** <code>Thread.ofVirtual()</code>, <code>null</code> if virtual threads are not available. */
+    private static final Method OF_VIRTUAL;
+
+    /** <code>Thread.Builder.name(String, long)</code>. */
+    private static final Method NAME;
+
+    /** <code>Thread.Builder.factory()</code>. */
+    private static final Method FACTORY;
+
+    /** <code>Executors.newThreadPerTaskExecutor(ThreadFactory)</code>. */
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newExecutor = null;
+        try {
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // throws when virtual threads are a disabled preview feature
+            factory.invoke(Thread.class.getMethod("ofVirtual").invoke(null));
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+        } catch (final ClassNotFoundException e) {
+            LOGGER.debug("virtual threads are not available: {}", e.toString());
+        } catch (final NoSuchMethodException e) {
+            LOGGER.debug("virtual threads are not available: {}", e.toString());
+        } catch (final IllegalAccessException e) {
+            LOGGER.debug("virtual threads are not available: {}", e.toString());
+        } catch (final InvocationTargetException e) {
+            LOGGER.debug("virtual threads are not available: {}", e.getCause().toString());
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+    }
+
+    /**
+     * Utility class.
+     */
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isAvailable() {
+        return null != OF_VIRTUAL;
+    }
+
+    /**
+     * Creates a factory of virtual threads.
+     *
+     * @param prefix
+     *            the prefix of the thread names, followed by a counter
+     * @return a virtual thread factory
+     * @throws UnsupportedOperationException
+     *             the JVM doesn't support virtual threads
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("virtual threads require Java 21");
+        }
+        try {
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L));
+        } catch (final IllegalAccessException e) {
+            throw new UnsupportedOperationException("virtual threads are not accessible", e);
+        } catch (final InvocationTargetException e) {
+            throw new UnsupportedOperationException("failed to create a virtual thread factory", e.getCause());
+        }
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task.
+     *
+     * @param prefix
+     *            the prefix of the thread names, followed by a counter
+     * @return a virtual thread per task executor
+     * @throws UnsupportedOperationException
+     *             the JVM doesn't support virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(final String prefix) {
+        final ThreadFactory factory = newThreadFactory(prefix);
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (final IllegalAccessException e) {
+            throw new UnsupportedOperationException("virtual threads are not accessible", e);
+        } catch (final InvocationTargetException e) {
+            throw new UnsupportedOperationException("failed to create a virtual thread executor", e.getCause());
+        }
+    }
+}
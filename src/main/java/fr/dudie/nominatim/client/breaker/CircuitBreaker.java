@@ -0,0 +1,599 @@
+package fr.dudie.nominatim.client.breaker;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.Clock;
+
+/**
+ * Stops sending requests to a failing or slow server, so that callers fail fast instead of waiting for timeouts.
+ * <p>
+ * While {@link CircuitState#CLOSED closed}, the outcome of the last calls is kept in a sliding window. Once the window
+ * holds a minimum number of calls, the circuit opens when the percentage of failed calls or the percentage of slow
+ * calls reaches its threshold. While {@link CircuitState#OPEN open}, no request is permitted. After the open
+ * duration, the circuit is {@link CircuitState#HALF_OPEN half-open}: a few trial requests are permitted, and their
+ * outcome closes the circuit again or opens it for another period.
+ * <p>
+ * A circuit breaker is thread safe and can be shared by several clients of the same server.
+ * <p>
+ * <pre>
+ * CircuitBreaker breaker = CircuitBreaker.builder().failureRateThreshold(50).slowCall(80, 2, TimeUnit.SECONDS)
+ *         .openDuration(30, TimeUnit.SECONDS).build();
+ * NominatimClient client = new CircuitBreakingNominatimClient(jsonClient, breaker);
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class CircuitBreaker {
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /** The outcome flag of a failed call. */
+    private static final byte FAILED = 1;
+
+    /** The outcome flag of a slow call. */
+    private static final byte SLOW = 2;
+
+    /** The name, for the logs. */
+    private final String name;
+
+    /** The percentage of failed calls opening the circuit. */
+    private final float failureRateThreshold;
+
+    /** The percentage of slow calls opening the circuit. */
+    private final float slowCallRateThreshold;
+
+    /** The duration from which a call is slow, in nanoseconds. */
+    private final long slowCallNanos;
+
+    /** The minimum number of calls in the window before the rates are evaluated. */
+    private final int minimumCalls;
+
+    /** The time the circuit stays open, in nanoseconds. */
+    private final long openNanos;
+
+    /** The number of trial calls permitted while half-open. */
+    private final int halfOpenCalls;
+
+    /** The time source. */
+    private final Clock clock;
+
+    /** The state listeners. */
+    private final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<CircuitBreakerListener>();
+
+    /** The outcomes of the last calls, a ring buffer. */
+    private final byte[] window;
+
+    /** The number of requests refused. */
+    private final AtomicLong notPermittedCount = new AtomicLong();
+
+    /** The number of transitions to the open state. */
+    private final AtomicLong openedCount = new AtomicLong();
+
+    /** The number of transitions to the half-open state. */
+    private final AtomicLong halfOpenedCount = new AtomicLong();
+
+    /** The number of transitions to the closed state. */
+    private final AtomicLong closedCount = new AtomicLong();
+
+    /** The current state. */
+    private CircuitState state = CircuitState.CLOSED;
+
+    /** The position of the next outcome in the window. */
+    private int head;
+
+    /** The number of outcomes in the window. */
+    private int size;
+
+    /** The number of failed calls in the window, or among the trial calls. */
+    private int failures;
+
+    /** The number of slow calls in the window, or among the trial calls. */
+    private int slowCalls;
+
+    /** The time the circuit opened, in nanoseconds. */
+    private long openedAtNanos;
+
+    /** The number of trial calls permitted. */
+    private int trialsPermitted;
+
+    /** The number of trial calls completed. */
+    private int trialsCompleted;
+
+    /**
+     * Hidden constructor, use {@link #builder()}.
+     *
+     * @param builder
+     *            the builder
+     */
+    private CircuitBreaker(final Builder builder) {
+        this.name = builder.name;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallNanos = builder.slowCallNanos;
+        this.minimumCalls = Math.min(builder.minimumCalls, builder.windowSize);
+        this.openNanos = builder.openNanos;
+        this.halfOpenCalls = builder.halfOpenCalls;
+        this.clock = builder.clock;
+        this.window = new byte[builder.windowSize];
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @return a builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the name of the circuit breaker
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Adds a listener receiving the state transitions.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void addListener(final CircuitBreakerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener
+     *            the listener
+     */
+    public void removeListener(final CircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the current state
+     */
+    public CircuitState getState() {
+
+        final CircuitState[] transition;
+        final CircuitState current;
+        synchronized (this) {
+            transition = halfOpenIfDue();
+            current = state;
+        }
+        notifyListeners(transition);
+        return current;
+    }
+
+    /**
+     * Asks the permission to send a request. A permitted request must report its outcome with
+     * {@link #onSuccess(long)}, {@link #onFailure(long)} or {@link #onIgnored()}.
+     *
+     * @return true if the request can be sent
+     */
+    public boolean tryAcquire() {
+
+        final CircuitState[] transition;
+        final boolean permitted;
+        synchronized (this) {
+            transition = halfOpenIfDue();
+            if (CircuitState.CLOSED == state) {
+                permitted = true;
+            } else if (CircuitState.HALF_OPEN == state && trialsPermitted < halfOpenCalls) {
+                trialsPermitted++;
+                permitted = true;
+            } else {
+                permitted = false;
+            }
+        }
+        notifyListeners(transition);
+        if (!permitted) {
+            notPermittedCount.incrementAndGet();
+        }
+        return permitted;
+    }
+
+    /**
+     * Asks the permission to send a request.
+     *
+     * @throws CircuitOpenException
+     *             the request must not be sent
+     * @see #tryAcquire()
+     */
+    public void acquire() throws CircuitOpenException {
+        if (!tryAcquire()) {
+            throw new CircuitOpenException(String.format("circuit %s is open", name));
+        }
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param durationNanos
+     *            the request duration, in nanoseconds
+     */
+    public void onSuccess(final long durationNanos) {
+        record(durationNanos >= slowCallNanos ? SLOW : 0);
+    }
+
+    /**
+     * Records a failed request.
+     *
+     * @param durationNanos
+     *            the request duration, in nanoseconds
+     */
+    public void onFailure(final long durationNanos) {
+        record((byte) (FAILED | (durationNanos >= slowCallNanos ? SLOW : 0)));
+    }
+
+    /**
+     * Records a request whose outcome doesn't tell anything about the server, like a cancelled request.
+     */
+    public void onIgnored() {
+        synchronized (this) {
+            if (CircuitState.HALF_OPEN == state && trialsPermitted > trialsCompleted) {
+                trialsPermitted--;
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the statistics
+     */
+    public CircuitBreakerStats getStats() {
+
+        final CircuitState[] transition;
+        final CircuitBreakerStats stats;
+        synchronized (this) {
+            transition = halfOpenIfDue();
+            final int calls = CircuitState.CLOSED == state ? size : trialsCompleted;
+            stats = new CircuitBreakerStats(state, calls, rate(failures, calls), rate(slowCalls, calls),
+                    notPermittedCount.get(), openedCount.get(), halfOpenedCount.get(), closedCount.get());
+        }
+        notifyListeners(transition);
+        return stats;
+    }
+
+    /**
+     * Records the outcome of a call, and changes the state if the thresholds are reached.
+     *
+     * @param outcome
+     *            the outcome flags
+     */
+    private void record(final byte outcome) {
+
+        CircuitState[] transition = null;
+        synchronized (this) {
+            if (CircuitState.CLOSED == state) {
+                if (size == window.length) {
+                    count(window[head], -1);
+                } else {
+                    size++;
+                }
+                window[head] = outcome;
+                head = (head + 1) % window.length;
+                count(outcome, 1);
+                if (size >= minimumCalls && thresholdReached(size)) {
+                    transition = transition(CircuitState.OPEN);
+                }
+            } else if (CircuitState.HALF_OPEN == state && trialsPermitted > trialsCompleted) {
+                trialsCompleted++;
+                count(outcome, 1);
+                if (thresholdReached(halfOpenCalls)) {
+                    transition = transition(CircuitState.OPEN);
+                } else if (trialsCompleted == halfOpenCalls) {
+                    transition = transition(CircuitState.CLOSED);
+                }
+            }
+        }
+        notifyListeners(transition);
+    }
+
+    /**
+     * @param calls
+     *            the number of calls the rates are computed on
+     * @return whether the failure or slow call rate reached its threshold
+     */
+    private boolean thresholdReached(final int calls) {
+        return rate(failures, calls) >= failureRateThreshold || rate(slowCalls, calls) >= slowCallRateThreshold;
+    }
+
+    /**
+     * Adds or removes an outcome from the counters.
+     *
+     * @param outcome
+     *            the outcome flags
+     * @param delta
+     *            1 to add the outcome, -1 to remove it
+     */
+    private void count(final byte outcome, final int delta) {
+        if ((outcome & FAILED) != 0) {
+            failures += delta;
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls += delta;
+        }
+    }
+
+    /**
+     * Moves from the open to the half-open state once the open duration is over. Must hold the lock.
+     *
+     * @return the transition, <code>null</code> if the state didn't change
+     */
+    private CircuitState[] halfOpenIfDue() {
+        if (CircuitState.OPEN == state && clock.nanoTime() - openedAtNanos >= openNanos) {
+            return transition(CircuitState.HALF_OPEN);
+        }
+        return null;
+    }
+
+    /**
+     * Changes the state and resets the counters. Must hold the lock.
+     *
+     * @param to
+     *            the new state
+     * @return the transition
+     */
+    private CircuitState[] transition(final CircuitState to) {
+
+        final CircuitState from = state;
+        state = to;
+        head = 0;
+        size = 0;
+        failures = 0;
+        slowCalls = 0;
+        trialsPermitted = 0;
+        trialsCompleted = 0;
+        if (CircuitState.OPEN == to) {
+            openedAtNanos = clock.nanoTime();
+            openedCount.incrementAndGet();
+        } else if (CircuitState.HALF_OPEN == to) {
+            halfOpenedCount.incrementAndGet();
+        } else {
+            closedCount.incrementAndGet();
+        }
+        return new CircuitState[] { from, to };
+    }
+
+    /**
+     * Logs a transition and notifies the listeners. Must not hold the lock.
+     *
+     * @param transition
+     *            the previous and the new state, may be <code>null</code>
+     */
+    private void notifyListeners(final CircuitState[] transition) {
+
+        if (null == transition) {
+            return;
+        }
+        if (CircuitState.OPEN == transition[1]) {
+            LOGGER.warn("circuit {} {} -> {}", name, transition[0], transition[1]);
+        } else {
+            LOGGER.info("circuit {} {} -> {}", name, transition[0], transition[1]);
+        }
+        for (final CircuitBreakerListener listener : listeners) {
+            try {
+                listener.onStateChange(this, transition[0], transition[1]);
+            } catch (final RuntimeException e) {
+                LOGGER.error("circuit breaker listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * @param count
+     *            a number of calls
+     * @param calls
+     *            the total number of calls
+     * @return the percentage
+     */
+    private static float rate(final int count, final int calls) {
+        return 0 == calls ? 0 : 100f * count / calls;
+    }
+
+    /**
+     * Builds a {@link CircuitBreaker}.
+     * <p>
+     * By default, the circuit opens when half of the last 100 calls failed (at least 20 calls), or all of them took
+     * more than 10 seconds, and stays open 30 seconds before 5 trial calls are permitted.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The name. */
+        private String name = "nominatim";
+
+        /** The percentage of failed calls opening the circuit. */
+        private float failureRateThreshold = 50;
+
+        /** The percentage of slow calls opening the circuit. */
+        private float slowCallRateThreshold = 100;
+
+        /** The duration from which a call is slow, in nanoseconds. */
+        private long slowCallNanos = TimeUnit.SECONDS.toNanos(10);
+
+        /** The number of calls in the sliding window. */
+        private int windowSize = 100;
+
+        /** The minimum number of calls in the window before the rates are evaluated. */
+        private int minimumCalls = 20;
+
+        /** The time the circuit stays open, in nanoseconds. */
+        private long openNanos = TimeUnit.SECONDS.toNanos(30);
+
+        /** The number of trial calls permitted while half-open. */
+        private int halfOpenCalls = 5;
+
+        /** The time source. */
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Hidden constructor, use {@link CircuitBreaker#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Sets the name, for the logs.
+         *
+         * @param name
+         *            the name
+         * @return this builder
+         */
+        public Builder name(final String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Sets the percentage of failed calls opening the circuit.
+         *
+         * @param percentage
+         *            the threshold, between 0 (excluded) and 100
+         * @return this builder
+         */
+        public Builder failureRateThreshold(final float percentage) {
+            this.failureRateThreshold = percentage(percentage);
+            return this;
+        }
+
+        /**
+         * Sets when slow calls open the circuit.
+         *
+         * @param percentage
+         *            the percentage of slow calls opening the circuit, between 0 (excluded) and 100
+         * @param duration
+         *            the duration from which a call is slow
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder slowCall(final float percentage, final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("slow call duration must be positive: " + duration);
+            }
+            this.slowCallRateThreshold = percentage(percentage);
+            this.slowCallNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the size of the sliding window.
+         *
+         * @param windowSize
+         *            the number of calls whose outcome is kept
+         * @param minimumCalls
+         *            the minimum number of calls in the window before the rates are evaluated
+         * @return this builder
+         */
+        public Builder window(final int windowSize, final int minimumCalls) {
+            if (windowSize < 1 || minimumCalls < 1) {
+                throw new IllegalArgumentException(String.format(
+                        "windowSize and minimumCalls must be at least 1: %s, %s", windowSize, minimumCalls));
+            }
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * Sets the time the circuit stays open before trial calls are permitted.
+         *
+         * @param duration
+         *            the open duration
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder openDuration(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("openDuration must be positive: " + duration);
+            }
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the number of trial calls permitted while half-open.
+         *
+         * @param halfOpenCalls
+         *            the number of trial calls, at least 1
+         * @return this builder
+         */
+        public Builder halfOpenCalls(final int halfOpenCalls) {
+            if (halfOpenCalls < 1) {
+                throw new IllegalArgumentException("halfOpenCalls must be at least 1: " + halfOpenCalls);
+            }
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        /**
+         * Sets the time source, for tests.
+         *
+         * @param clock
+         *            the time source
+         * @return this builder
+         */
+        public Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new circuit breaker
+         */
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+
+        /**
+         * Checks a percentage.
+         *
+         * @param percentage
+         *            the percentage
+         * @return the percentage
+         */
+        private static float percentage(final float percentage) {
+            if (!(percentage > 0 && percentage <= 100)) {
+                throw new IllegalArgumentException("percentage must be between 0 and 100: " + percentage);
+            }
+            return percentage;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package fr.dudie.nominatim.client.breaker;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * Receives the state transitions of a {@link CircuitBreaker}.
+ * <p>
+ * Listeners are called by the thread whose request caused the transition, after the transition: they should return
+ * quickly and must not throw.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * Called when the circuit changes state.
+     *
+     * @param breaker
+     *            the circuit breaker
+     * @param from
+     *            the previous state
+     * @param to
+     *            the new state
+     */
+    void onStateChange(CircuitBreaker breaker, CircuitState from, CircuitState to);
+}
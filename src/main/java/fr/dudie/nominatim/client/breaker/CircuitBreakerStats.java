@@ -0,0 +1,150 @@
+package fr.dudie.nominatim.client.breaker;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * A snapshot of the statistics of a {@link CircuitBreaker}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class CircuitBreakerStats {
+
+    /** The current state. */
+    private final CircuitState state;
+
+    /** Number of calls in the sliding window. */
+    private final int bufferedCalls;
+
+    /** Percentage of failed calls in the sliding window. */
+    private final float failureRate;
+
+    /** Percentage of slow calls in the sliding window. */
+    private final float slowCallRate;
+
+    /** Number of requests refused while the circuit was open. */
+    private final long notPermittedCount;
+
+    /** Number of transitions to the open state. */
+    private final long openedCount;
+
+    /** Number of transitions to the half-open state. */
+    private final long halfOpenedCount;
+
+    /** Number of transitions to the closed state. */
+    private final long closedCount;
+
+    /**
+     * @param state
+     *            the current state
+     * @param bufferedCalls
+     *            number of calls in the sliding window
+     * @param failureRate
+     *            percentage of failed calls in the sliding window
+     * @param slowCallRate
+     *            percentage of slow calls in the sliding window
+     * @param notPermittedCount
+     *            number of requests refused while the circuit was open
+     * @param openedCount
+     *            number of transitions to the open state
+     * @param halfOpenedCount
+     *            number of transitions to the half-open state
+     * @param closedCount
+     *            number of transitions to the closed state
+     */
+    public CircuitBreakerStats(final CircuitState state, final int bufferedCalls, final float failureRate,
+            final float slowCallRate, final long notPermittedCount, final long openedCount,
+            final long halfOpenedCount, final long closedCount) {
+        this.state = state;
+        this.bufferedCalls = bufferedCalls;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.notPermittedCount = notPermittedCount;
+        this.openedCount = openedCount;
+        this.halfOpenedCount = halfOpenedCount;
+        this.closedCount = closedCount;
+    }
+
+    /**
+     * @return the current state
+     */
+    public CircuitState getState() {
+        return state;
+    }
+
+    /**
+     * @return the number of calls in the sliding window
+     */
+    public int getBufferedCalls() {
+        return bufferedCalls;
+    }
+
+    /**
+     * @return the percentage of failed calls in the sliding window
+     */
+    public float getFailureRate() {
+        return failureRate;
+    }
+
+    /**
+     * @return the percentage of slow calls in the sliding window
+     */
+    public float getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    /**
+     * @return the number of requests refused while the circuit was open
+     */
+    public long getNotPermittedCount() {
+        return notPermittedCount;
+    }
+
+    /**
+     * @return the number of transitions to the open state
+     */
+    public long getOpenedCount() {
+        return openedCount;
+    }
+
+    /**
+     * @return the number of transitions to the half-open state
+     */
+    public long getHalfOpenedCount() {
+        return halfOpenedCount;
+    }
+
+    /**
+     * @return the number of transitions to the closed state
+     */
+    public long getClosedCount() {
+        return closedCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CircuitBreakerStats[%s, calls=%s, failures=%.1f%%, slow=%.1f%%, notPermitted=%s, "
+                + "opened=%s, halfOpened=%s, closed=%s]", state, bufferedCalls, failureRate, slowCallRate,
+                notPermittedCount, openedCount, halfOpenedCount, closedCount);
+    }
+}
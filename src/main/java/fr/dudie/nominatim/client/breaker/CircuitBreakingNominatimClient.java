@@ -0,0 +1,190 @@
+package fr.dudie.nominatim.client.breaker;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import fr.dudie.nominatim.client.AbstractNominatimClient;
+import fr.dudie.nominatim.client.Clock;
+import fr.dudie.nominatim.client.NominatimCall;
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.client.NominatimClientErrorException;
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator sending the requests through a {@link CircuitBreaker}.
+ * <p>
+ * While the circuit is open, requests are answered by the fallback client if there is one, for example a client
+ * answering from a cache, or fail at once with a {@link CircuitOpenException}. Requests rejected by the server
+ * ({@link NominatimClientErrorException}) prove that it is up and count as successful calls, interrupted and cancelled
+ * requests aren't counted.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class CircuitBreakingNominatimClient extends AbstractNominatimClient {
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** The circuit breaker. */
+    private final CircuitBreaker breaker;
+
+    /** The client answering while the circuit is open, may be <code>null</code>. */
+    private final NominatimClient fallback;
+
+    /** The time source. */
+    private final Clock clock;
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     * @param breaker
+     *            the circuit breaker, may be shared with other clients of the same server
+     */
+    public CircuitBreakingNominatimClient(final NominatimClient delegate, final CircuitBreaker breaker) {
+        this(delegate, breaker, null, Clock.SYSTEM);
+    }
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     * @param breaker
+     *            the circuit breaker, may be shared with other clients of the same server
+     * @param fallback
+     *            the client answering while the circuit is open, <code>null</code> to fail fast
+     */
+    public CircuitBreakingNominatimClient(final NominatimClient delegate, final CircuitBreaker breaker,
+            final NominatimClient fallback) {
+        this(delegate, breaker, fallback, Clock.SYSTEM);
+    }
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     * @param breaker
+     *            the circuit breaker, may be shared with other clients of the same server
+     * @param fallback
+     *            the client answering while the circuit is open, <code>null</code> to fail fast
+     * @param clock
+     *            the time source measuring the requests duration
+     */
+    public CircuitBreakingNominatimClient(final NominatimClient delegate, final CircuitBreaker breaker,
+            final NominatimClient fallback, final Clock clock) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.fallback = fallback;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the circuit breaker
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return execute(c -> c.search(search));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return execute(c -> c.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        return execute(c -> c.lookupAddress(lookup));
+    }
+
+    /**
+     * Sends a request if the circuit breaker permits it, and records its outcome.
+     *
+     * @param request
+     *            sends the request
+     * @return the response
+     * @throws IOException
+     *             the request failed, or the circuit is open and there is no fallback
+     */
+    private <T> T execute(final NominatimCall<T> request) throws IOException {
+
+        if (!breaker.tryAcquire()) {
+            if (null != fallback) {
+                return request.send(fallback);
+            }
+            throw new CircuitOpenException(String.format("circuit %s is open", breaker.getName()));
+        }
+        final long start = clock.nanoTime();
+        try {
+            final T response = request.send(delegate);
+            breaker.onSuccess(clock.nanoTime() - start);
+            return response;
+        } catch (final NominatimClientErrorException e) {
+            breaker.onSuccess(clock.nanoTime() - start);
+            throw e;
+        } catch (final SocketTimeoutException e) {
+            breaker.onFailure(clock.nanoTime() - start);
+            throw e;
+        } catch (final ConnectTimeoutException e) {
+            breaker.onFailure(clock.nanoTime() - start);
+            throw e;
+        } catch (final InterruptedIOException e) {
+            breaker.onIgnored();
+            throw e;
+        } catch (final IOException e) {
+            breaker.onFailure(clock.nanoTime() - start);
+            throw e;
+        } catch (final RuntimeException e) {
+            breaker.onIgnored();
+            throw e;
+        } catch (final Error e) {
+            breaker.onIgnored();
+            throw e;
+        }
+    }
+}
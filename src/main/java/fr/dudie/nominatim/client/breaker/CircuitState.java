@@ -0,0 +1,41 @@
+package fr.dudie.nominatim.client.breaker;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * The states of a {@link CircuitBreaker}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public enum CircuitState {
+
+    /** Requests are sent, and their outcome is recorded in the sliding window. */
+    CLOSED,
+
+    /** Requests fail fast without being sent, until the open duration is over. */
+    OPEN,
+
+    /** A few trial requests are sent, their outcome closes or opens the circuit again. */
+    HALF_OPEN
+}
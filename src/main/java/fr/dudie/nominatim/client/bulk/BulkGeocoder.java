@@ -0,0 +1,312 @@
+package fr.dudie.nominatim.client.bulk;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import fr.dudie.nominatim.client.Clock;
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.client.ratelimit.RateLimiter;
+import fr.dudie.nominatim.client.retry.RetryPolicy;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.client.request.SearchQuery;
+
+/**
+ * Geocodes a large number of search requests with a {@link NominatimClient}.
+ * <p>
+ * Each call to {@link #submit(Iterator, Consumer)} or {@link #submit(Iterator)} starts a {@link BulkJob} which reads
+ * the requests one by one, sends them from a pool of worker threads and delivers a {@link BulkResult} for each of
+ * them, either in input order or as soon as they complete. The job reads a request only when fewer than
+ * <code>bufferSize</code> requests are pending, a request being pending from the moment it is read until its result
+ * is delivered, so that the memory used doesn't depend on the size of the input. A slow consumer slows down the
+ * reading of the input.
+ * <p>
+ * A failed request is sent again as told by a {@link RetryPolicy}, a request which still fails is delivered as a
+ * failed result and doesn't stop the job. Give the geocoder a {@link RateLimiter} to respect the usage policy of the
+ * server.
+ * <p>
+ * A geocoder only holds its configuration and can run several jobs at the same time.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class BulkGeocoder {
+
+    /** The client sending the requests. */
+    final NominatimClient client;
+
+    /** The number of worker threads. */
+    final int parallelism;
+
+    /** The maximum number of pending requests. */
+    final int bufferSize;
+
+    /** The rate limiter, may be <code>null</code>. */
+    final RateLimiter rateLimiter;
+
+    /** Decides whether and when a failed request is sent again. */
+    final RetryPolicy retryPolicy;
+
+    /** Whether results are delivered in input order. */
+    final boolean ordered;
+
+    /** The time source. */
+    final Clock clock;
+
+    /**
+     * @param builder
+     *            the configuration
+     */
+    private BulkGeocoder(final Builder builder) {
+        this.client = builder.client;
+        this.parallelism = builder.parallelism;
+        this.bufferSize = Math.max(builder.parallelism, builder.bufferSize);
+        this.rateLimiter = builder.rateLimiter;
+        this.retryPolicy = builder.retryPolicy;
+        this.ordered = builder.ordered;
+        this.clock = builder.clock;
+    }
+
+    /**
+     * Creates a builder for a geocoder running 4 requests in parallel, trying each request up to 3 times and
+     * delivering the results as soon as they complete.
+     *
+     * @param client
+     *            the client sending the requests
+     * @return a builder
+     */
+    public static Builder builder(final NominatimClient client) {
+        return new Builder(client);
+    }
+
+    /**
+     * Starts geocoding requests, delivering the results to a callback.
+     * <p>
+     * The callback is never called by two threads at the same time. It runs on one of the worker threads, while the
+     * other ones go on sending requests, as long as the buffer has room.
+     *
+     * @param requests
+     *            the requests, read by a dedicated thread, use {@link java.util.stream.Stream#iterator()} to geocode
+     *            a stream
+     * @param callback
+     *            receives the results
+     * @return the running job
+     */
+    public BulkJob submit(final Iterator<NominatimSearchRequest> requests, final Consumer<BulkResult> callback) {
+        final BulkJob job = new BulkJob(this, requests, callback);
+        job.start();
+        return job;
+    }
+
+    /**
+     * Starts geocoding requests, the results must be consumed from {@link BulkJob#results()}.
+     *
+     * @param requests
+     *            the requests, read by a dedicated thread, use {@link java.util.stream.Stream#iterator()} to geocode
+     *            a stream
+     * @return the running job
+     */
+    public BulkJob submit(final Iterator<NominatimSearchRequest> requests) {
+        final BulkJob job = new BulkJob(this, requests, null);
+        job.start();
+        return job;
+    }
+
+    /**
+     * Wraps search queries, such as {@link fr.dudie.nominatim.client.request.ExtendedSearchQuery}, into requests
+     * with the default options.
+     *
+     * @param queries
+     *            the search queries
+     * @return the search requests, built as they are read
+     */
+    public static Iterator<NominatimSearchRequest> requestsOf(final Iterator<? extends SearchQuery> queries) {
+        return new Iterator<NominatimSearchRequest>() {
+
+            @Override
+            public boolean hasNext() {
+                return queries.hasNext();
+            }
+
+            @Override
+            public NominatimSearchRequest next() {
+                final NominatimSearchRequest request = new NominatimSearchRequest();
+                request.setQuery(queries.next());
+                return request;
+            }
+        };
+    }
+
+    /**
+     * Builds a {@link BulkGeocoder}.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The client sending the requests. */
+        private final NominatimClient client;
+
+        /** The number of worker threads. */
+        private int parallelism = 4;
+
+        /** The maximum number of pending requests, 0 for 4 per worker thread. */
+        private int bufferSize;
+
+        /** The rate limiter. */
+        private RateLimiter rateLimiter;
+
+        /** Decides whether and when a failed request is sent again. */
+        private RetryPolicy retryPolicy = RetryPolicy.builder().maxAttempts(3).backoff(1, 1, TimeUnit.SECONDS).build();
+
+        /** Whether results are delivered in input order. */
+        private boolean ordered;
+
+        /** The time source. */
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Hidden constructor, use {@link BulkGeocoder#builder(NominatimClient)}.
+         *
+         * @param client
+         *            the client sending the requests
+         */
+        private Builder(final NominatimClient client) {
+            if (null == client) {
+                throw new IllegalArgumentException("client must not be null");
+            }
+            this.client = client;
+        }
+
+        /**
+         * Sets the number of requests sent at the same time.
+         *
+         * @param parallelism
+         *            the number of worker threads
+         * @return this builder
+         */
+        public Builder parallelism(final int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests read but whose result is not delivered yet. In order mode, a slow
+         * request holds back the results of the following ones and the buffer must be large enough to keep the
+         * workers busy meanwhile.
+         *
+         * @param bufferSize
+         *            the maximum number of pending requests, raised to the parallelism if lower
+         * @return this builder
+         */
+        public Builder bufferSize(final int bufferSize) {
+            if (bufferSize < 1) {
+                throw new IllegalArgumentException("bufferSize must be at least 1: " + bufferSize);
+            }
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Sets the rate limiter every request must go through.
+         *
+         * @param rateLimiter
+         *            the rate limiter, may be shared with other clients of the same server
+         * @return this builder
+         */
+        public Builder rateLimiter(final RateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /**
+         * Sets how failed requests are retried, the delays being drawn at random up to the given one.
+         *
+         * @param maxAttempts
+         *            the maximum number of times a request is sent, 1 to never retry
+         * @param delay
+         *            the maximum delay before sending a failed request again
+         * @param unit
+         *            the delay unit
+         * @return this builder
+         */
+        public Builder retry(final int maxAttempts, final long delay, final TimeUnit unit) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("delay must not be negative: " + delay);
+            }
+            return retry(RetryPolicy.builder().maxAttempts(maxAttempts).backoff(delay, delay, unit).build());
+        }
+
+        /**
+         * Sets how failed requests are retried.
+         *
+         * @param retryPolicy
+         *            decides whether and when a failed request is sent again
+         * @return this builder
+         */
+        public Builder retry(final RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Sets whether results are delivered in input order, or as soon as they complete.
+         *
+         * @param ordered
+         *            true to deliver the results in input order
+         * @return this builder
+         */
+        public Builder ordered(final boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        /**
+         * Sets the time source used to measure the throughput, for tests.
+         *
+         * @param clock
+         *            the time source
+         * @return this builder
+         */
+        public Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new bulk geocoder
+         */
+        public BulkGeocoder build() {
+            if (0 == bufferSize) {
+                bufferSize = 4 * parallelism;
+            }
+            return new BulkGeocoder(this);
+        }
+    }
+}
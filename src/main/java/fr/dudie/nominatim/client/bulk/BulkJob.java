@@ -0,0 +1,525 @@
+package fr.dudie.nominatim.client.bulk;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.client.retry.RetryPolicy;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A running bulk geocoding, created by a {@link BulkGeocoder}.
+ * <p>
+ * A reader thread takes a permit of the buffer, reads a request and hands it to the worker threads. The permit is
+ * given back once the result is delivered, to the callback or to the consumer of {@link #results()}, so that at most
+ * <code>bufferSize</code> requests and results are held in memory. In order mode, completed results wait in a
+ * reorder buffer until the results of all the previous requests are delivered.
+ * <p>
+ * Results ready to be delivered wait in a queue. The first worker finding no other one delivering results delivers
+ * them one after the other, without holding the job lock, until the queue is empty: the other workers hand their
+ * results over and go on with the next requests, even while the callback is slow.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class BulkJob {
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkJob.class);
+
+    /** Numbers the jobs, to name their threads. */
+    private static final AtomicInteger JOB_COUNT = new AtomicInteger();
+
+    /** Marks the end of the results in the stream mode queue. */
+    private static final BulkResult END = new BulkResult(-1, null, null, null, 0);
+
+    /** The configuration. */
+    private final BulkGeocoder config;
+
+    /** The requests. */
+    private final Iterator<NominatimSearchRequest> requests;
+
+    /** Receives the results, <code>null</code> in stream mode. */
+    private final Consumer<BulkResult> callback;
+
+    /** The results not consumed yet in stream mode. */
+    private final BlockingQueue<BulkResult> queue;
+
+    /** The permits to read a request. */
+    private final Semaphore buffer;
+
+    /** The worker threads. */
+    private final ExecutorService workers;
+
+    /** The thread reading the requests. */
+    private final Thread reader;
+
+    /** Guards the delivery of the results. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when the job is finished. */
+    private final Condition finishedCondition = lock.newCondition();
+
+    /** The completed results waiting for the previous ones, in order mode. */
+    private final Map<Long, BulkResult> reorderBuffer = new HashMap<Long, BulkResult>();
+
+    /** The index of the next result to deliver, in order mode. */
+    private long nextIndex;
+
+    /** The results ready to be delivered, in delivery order. */
+    private final Queue<BulkResult> ready = new ArrayDeque<BulkResult>();
+
+    /** Whether a worker is delivering the ready results. */
+    private boolean delivering;
+
+    /** Whether all the requests were read. */
+    private boolean inputExhausted;
+
+    /** Whether all the results were delivered, or the job was cancelled. */
+    private boolean finished;
+
+    /** The error thrown while reading the requests. */
+    private volatile RuntimeException inputError;
+
+    /** Whether the job was cancelled. */
+    private volatile boolean cancelled;
+
+    /** Whether {@link #results()} was called. */
+    private boolean streamed;
+
+    /** The time the job started, in nanoseconds. */
+    private volatile long startNanos;
+
+    /** The time the job finished, in nanoseconds. */
+    private volatile long endNanos;
+
+    /** Number of requests read. */
+    private final AtomicLong readCount = new AtomicLong();
+
+    /** Number of results delivered. */
+    private final AtomicLong completedCount = new AtomicLong();
+
+    /** Number of failed results delivered. */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /** Number of retried attempts. */
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /**
+     * @param config
+     *            the configuration
+     * @param requests
+     *            the requests
+     * @param callback
+     *            receives the results, <code>null</code> for the stream mode
+     */
+    BulkJob(final BulkGeocoder config, final Iterator<NominatimSearchRequest> requests,
+            final Consumer<BulkResult> callback) {
+        this.config = config;
+        this.requests = requests;
+        this.callback = callback;
+        this.queue = null == callback ? new LinkedBlockingQueue<BulkResult>() : null;
+        this.buffer = new Semaphore(config.bufferSize);
+
+        final String name = "nominatim-bulk-" + JOB_COUNT.incrementAndGet();
+        final AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(config.parallelism, new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable task) {
+                final Thread t = new Thread(task, name + "-worker-" + workerCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.reader = new Thread(this::read, name + "-reader");
+        this.reader.setDaemon(true);
+    }
+
+    /**
+     * Starts reading the requests.
+     */
+    void start() {
+        startNanos = config.clock.nanoTime();
+        reader.start();
+    }
+
+    /**
+     * Gets the results, in stream mode.
+     * <p>
+     * The stream blocks until the next result is available. Closing it cancels the job.
+     *
+     * @return the results
+     * @throws IllegalStateException
+     *             the job delivers its results to a callback, or the results were already requested
+     */
+    public Stream<BulkResult> results() {
+
+        lock.lock();
+        try {
+            if (null == queue || streamed) {
+                throw new IllegalStateException("the results are not available as a stream");
+            }
+            streamed = true;
+        } finally {
+            lock.unlock();
+        }
+        final Iterator<BulkResult> iterator = new Iterator<BulkResult>() {
+
+            /** The next result, <code>null</code> if not taken from the queue yet. */
+            private BulkResult next;
+
+            @Override
+            public boolean hasNext() {
+                if (null == next) {
+                    try {
+                        next = queue.take();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        cancel();
+                        throw new IllegalStateException("interrupted while waiting for a result", e);
+                    }
+                    if (END == next) {
+                        queue.offer(END);
+                    } else {
+                        buffer.release();
+                    }
+                }
+                if (END == next) {
+                    checkInput();
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public BulkResult next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final BulkResult result = next;
+                next = null;
+                return result;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false)
+                .onClose(this::cancel);
+    }
+
+    /**
+     * Waits until all the results are delivered.
+     *
+     * @throws InterruptedException
+     *             the thread was interrupted while waiting
+     * @throws IllegalStateException
+     *             reading the requests failed
+     */
+    public void await() throws InterruptedException {
+        lock.lock();
+        try {
+            while (!finished) {
+                finishedCondition.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+        checkInput();
+    }
+
+    /**
+     * Waits until all the results are delivered, or the timeout elapses.
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the timeout unit
+     * @return true if the job is finished
+     * @throws InterruptedException
+     *             the thread was interrupted while waiting
+     * @throws IllegalStateException
+     *             reading the requests failed
+     */
+    public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!finished) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = finishedCondition.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+        checkInput();
+        return true;
+    }
+
+    /**
+     * Stops reading requests and interrupts the requests in flight. The results not delivered yet are lost.
+     */
+    public void cancel() {
+        cancelled = true;
+        reader.interrupt();
+        workers.shutdownNow();
+        lock.lock();
+        try {
+            finish();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if all the results were delivered, or the job was cancelled
+     */
+    public boolean isDone() {
+        lock.lock();
+        try {
+            return finished;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return a snapshot of the progress of the job
+     */
+    public BulkProgress getProgress() {
+        final long end = endNanos;
+        final long elapsed = (0 == end ? config.clock.nanoTime() : end) - startNanos;
+        return new BulkProgress(readCount.get(), completedCount.get(), failedCount.get(), retryCount.get(), elapsed);
+    }
+
+    /**
+     * Reads the requests and hands them to the workers, as long as the buffer has room.
+     */
+    private void read() {
+        try {
+            while (!cancelled) {
+                buffer.acquire();
+                if (!requests.hasNext()) {
+                    break;
+                }
+                final NominatimSearchRequest request = requests.next();
+                final long index = readCount.getAndIncrement();
+                workers.execute(() -> geocode(index, request));
+            }
+        } catch (final InterruptedException e) {
+            LOGGER.debug("bulk geocoding cancelled");
+        } catch (final RuntimeException e) {
+            // the workers reject the requests once the job is cancelled
+            if (!cancelled) {
+                LOGGER.error("failed to read the requests", e);
+                inputError = e;
+            }
+        } finally {
+            lock.lock();
+            try {
+                inputExhausted = true;
+                finishIfComplete();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Sends a request, retrying it if it fails, and delivers its result.
+     *
+     * @param index
+     *            the position of the request in the input
+     * @param request
+     *            the request
+     */
+    private void geocode(final long index, final NominatimSearchRequest request) {
+
+        List<Address> addresses = null;
+        IOException error = null;
+        int attempts = 0;
+        final long start = config.clock.nanoTime();
+        while (true) {
+            attempts++;
+            try {
+                if (null != config.rateLimiter) {
+                    config.rateLimiter.acquire();
+                }
+                addresses = config.client.search(request);
+                error = null;
+                break;
+            } catch (final IOException e) {
+                error = e;
+            } catch (final RuntimeException e) {
+                error = new IOException("unexpected failure", e);
+            }
+            final long delay = config.retryPolicy.nextDelayNanos(attempts, error, config.clock.nanoTime() - start);
+            if (delay == RetryPolicy.GIVE_UP || cancelled) {
+                break;
+            }
+            LOGGER.debug("retrying request {} after attempt {} failed: {}", index, attempts, error.getMessage());
+            retryCount.incrementAndGet();
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        deliver(new BulkResult(index, request, addresses, error, attempts));
+    }
+
+    /**
+     * Delivers a result, and the following ones if they were waiting for it in order mode, unless another worker is
+     * delivering results: that worker then delivers it too.
+     *
+     * @param result
+     *            a completed result
+     */
+    private void deliver(final BulkResult result) {
+        lock.lock();
+        try {
+            if (finished) {
+                return;
+            }
+            if (!config.ordered) {
+                ready.add(result);
+            } else {
+                reorderBuffer.put(result.getIndex(), result);
+                BulkResult next;
+                while (null != (next = reorderBuffer.remove(nextIndex))) {
+                    nextIndex++;
+                    ready.add(next);
+                }
+            }
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        } finally {
+            lock.unlock();
+        }
+        while (true) {
+            final BulkResult next;
+            lock.lock();
+            try {
+                next = finished ? null : ready.poll();
+                if (null == next) {
+                    delivering = false;
+                    finishIfComplete();
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            emit(next);
+        }
+    }
+
+    /**
+     * Hands a result to the callback, or to the stream. Must be called by the delivering worker, without the lock.
+     *
+     * @param result
+     *            the result
+     */
+    private void emit(final BulkResult result) {
+        if (null != queue) {
+            queue.offer(result);
+        } else {
+            try {
+                callback.accept(result);
+            } catch (final RuntimeException e) {
+                LOGGER.warn("bulk geocoding callback failed on result {}", result.getIndex(), e);
+            }
+            buffer.release();
+        }
+        if (!result.isSuccess()) {
+            failedCount.incrementAndGet();
+        }
+        // counted once delivered, so that the job finishes after the last callback
+        completedCount.incrementAndGet();
+    }
+
+    /**
+     * Finishes the job if all the results were delivered. Must be called with the lock held.
+     */
+    private void finishIfComplete() {
+        if (inputExhausted && completedCount.get() == readCount.get()) {
+            finish();
+        }
+    }
+
+    /**
+     * Marks the job finished and releases the threads. Must be called with the lock held.
+     */
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        endNanos = config.clock.nanoTime();
+        workers.shutdown();
+        if (null != queue) {
+            queue.offer(END);
+        }
+        finishedCondition.signalAll();
+    }
+
+    /**
+     * Throws the error met while reading the requests, if any.
+     */
+    private void checkInput() {
+        final RuntimeException e = inputError;
+        if (null != e) {
+            throw new IllegalStateException("failed to read the requests", e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package fr.dudie.nominatim.client.bulk;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A snapshot of the progress of a {@link BulkJob}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class BulkProgress {
+
+    /** Number of requests read from the input. */
+    private final long readCount;
+
+    /** Number of results delivered. */
+    private final long completedCount;
+
+    /** Number of failed requests among the delivered results. */
+    private final long failedCount;
+
+    /** Number of attempts which were retried. */
+    private final long retryCount;
+
+    /** Time elapsed since the job started, in nanoseconds. */
+    private final long elapsedNanos;
+
+    /**
+     * @param readCount
+     *            number of requests read from the input
+     * @param completedCount
+     *            number of results delivered
+     * @param failedCount
+     *            number of failed requests among the delivered results
+     * @param retryCount
+     *            number of attempts which were retried
+     * @param elapsedNanos
+     *            time elapsed since the job started, in nanoseconds
+     */
+    public BulkProgress(final long readCount, final long completedCount, final long failedCount,
+            final long retryCount, final long elapsedNanos) {
+        this.readCount = readCount;
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.retryCount = retryCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of requests read from the input
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+
+    /**
+     * @return the number of results delivered
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return the number of successful requests among the delivered results
+     */
+    public long getSucceededCount() {
+        return completedCount - failedCount;
+    }
+
+    /**
+     * @return the number of failed requests among the delivered results
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return the number of attempts which were retried
+     */
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    /**
+     * @return the number of requests read but whose result is not delivered yet
+     */
+    public long getPendingCount() {
+        return readCount - completedCount;
+    }
+
+    /**
+     * @return the time elapsed since the job started, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the number of results delivered per second since the job started
+     */
+    public double getThroughput() {
+        return elapsedNanos <= 0 ? 0 : completedCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BulkProgress[read=%d, completed=%d, failed=%d, retries=%d, %.1f/s]", readCount,
+                completedCount, failedCount, retryCount, getThroughput());
+    }
+}
@@ -0,0 +1,122 @@
+package fr.dudie.nominatim.client.bulk;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * The outcome of one request of a {@link BulkJob}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class BulkResult {
+
+    /** The position of the request in the input, starting at 0. */
+    private final long index;
+
+    /** The request. */
+    private final NominatimSearchRequest request;
+
+    /** The addresses found, <code>null</code> if the request failed. */
+    private final List<Address> addresses;
+
+    /** The error of the last attempt, <code>null</code> if the request succeeded. */
+    private final IOException error;
+
+    /** The number of times the request was sent. */
+    private final int attempts;
+
+    /**
+     * @param index
+     *            the position of the request in the input, starting at 0
+     * @param request
+     *            the request
+     * @param addresses
+     *            the addresses found, <code>null</code> if the request failed
+     * @param error
+     *            the error of the last attempt, <code>null</code> if the request succeeded
+     * @param attempts
+     *            the number of times the request was sent
+     */
+    public BulkResult(final long index, final NominatimSearchRequest request, final List<Address> addresses,
+            final IOException error, final int attempts) {
+        this.index = index;
+        this.request = request;
+        this.addresses = addresses;
+        this.error = error;
+        this.attempts = attempts;
+    }
+
+    /**
+     * @return the position of the request in the input, starting at 0
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the request
+     */
+    public NominatimSearchRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * @return the addresses found, <code>null</code> if the request failed
+     */
+    public List<Address> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * @return the error of the last attempt, <code>null</code> if the request succeeded
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * @return the number of times the request was sent
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return true if the request succeeded
+     */
+    public boolean isSuccess() {
+        return null == error;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkResult[index=" + index + ", attempts=" + attempts
+                + (isSuccess() ? ", addresses=" + addresses.size() : ", error=" + error) + "]";
+    }
+}
@@ -0,0 +1,81 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Serializable;
+
+/**
+ * A cached Nominatim response.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class CacheEntry implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The response: an {@link fr.dudie.nominatim.model.Address} or a list of addresses. */
+    private final Serializable value;
+
+    /** The time the response was received, in milliseconds since the epoch. */
+    private final long createdAt;
+
+    /** The estimated size of the response in memory, in bytes. */
+    private final long weight;
+
+    /**
+     * @param value
+     *            the response
+     * @param createdAt
+     *            the time the response was received, in milliseconds since the epoch
+     * @param weight
+     *            the estimated size of the response in memory, in bytes
+     */
+    public CacheEntry(final Serializable value, final long createdAt, final long weight) {
+        this.value = value;
+        this.createdAt = createdAt;
+        this.weight = weight;
+    }
+
+    /**
+     * @return the response
+     */
+    public Serializable getValue() {
+        return value;
+    }
+
+    /**
+     * @return the time the response was received, in milliseconds since the epoch
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return the estimated size of the response in memory, in bytes
+     */
+    public long getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,130 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * A snapshot of the statistics of a {@link NominatimCache}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class CacheStats {
+
+    /** Number of lookups which found an entry. */
+    private final long hitCount;
+
+    /** Number of lookups which found no entry, or an expired one. */
+    private final long missCount;
+
+    /** Number of entries removed to respect the size limits. */
+    private final long evictionCount;
+
+    /** Number of entries removed because they expired. */
+    private final long expirationCount;
+
+    /** Number of entries in the cache. */
+    private final long size;
+
+    /** Estimated size of the entries in memory, in bytes. */
+    private final long weight;
+
+    /**
+     * @param hitCount
+     *            number of lookups which found an entry
+     * @param missCount
+     *            number of lookups which found no entry, or an expired one
+     * @param evictionCount
+     *            number of entries removed to respect the size limits
+     * @param expirationCount
+     *            number of entries removed because they expired
+     * @param size
+     *            number of entries in the cache
+     * @param weight
+     *            estimated size of the entries in memory, in bytes
+     */
+    public CacheStats(final long hitCount, final long missCount, final long evictionCount,
+            final long expirationCount, final long size, final long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    /**
+     * @return the number of lookups which found an entry
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups which found no entry, or an expired one
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the ratio of lookups which found an entry, 1 when there was no lookup
+     */
+    public double getHitRate() {
+        final long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return the number of entries removed to respect the size limits
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the number of entries removed because they expired
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * @return the number of entries in the cache
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the estimated size of the entries in memory, in bytes
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStats[hits=%s, misses=%s, evictions=%s, expirations=%s, size=%s, weight=%s]",
+                hitCount, missCount, evictionCount, expirationCount, size, weight);
+    }
+}
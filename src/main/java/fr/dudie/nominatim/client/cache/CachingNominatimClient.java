@@ -0,0 +1,591 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.AbstractNominatimClient;
+import fr.dudie.nominatim.client.Clock;
+import fr.dudie.nominatim.client.NominatimCall;
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.client.request.CoordinatesReverseQuery;
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator caching the responses of another client.
+ * <p>
+ * Requests are identified by their endpoint and their query string. By default, only non empty responses are
+ * cached: an empty result or an error is always forwarded to the underlying client. Lists of addresses are copied so
+ * that callers can modify the returned lists without altering the cache.
+ * <p>
+ * When a {@link ReverseGeocodingGrid} is set, reverse geocoding requests are identified by the grid cell containing
+ * their coordinates instead of their exact coordinates: the address found for a position is returned for any position
+ * of the same cell without sending a request.
+ * <p>
+ * With {@link #setStaleWhileRevalidate(long, long, TimeUnit, Executor)}, a response older than a soft time to live
+ * is still returned, while a single background request per key refreshes it, so that callers don't wait for the
+ * server when entries expire. Only a response older than the hard time to live is fetched again before returning.
+ * <p>
+ * Empty responses, including the error payload answered when no place is found at reverse geocoded coordinates, are
+ * only cached when a separate cache is given to {@link #setNegativeCache(NominatimCache)}, usually smaller and with
+ * a shorter time to live. Its statistics tell how many requests were answered with a cached empty response.
+ * <p>
+ * A {@link QueryNormalizer} set with {@link #setQueryNormalizer(QueryNormalizer)} identifies searches by the
+ * canonical form of their query, so that searches written differently share a cache entry, while the server still
+ * receives the query as it was written.
+ *
+ * <pre>
+ * NominatimClient client = new CachingNominatimClient(new JsonNominatimClient(httpClient, email),
+ *         InMemoryNominatimCache.builder().maximumEntries(10000).expireAfterWrite(1, TimeUnit.DAYS).build());
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class CachingNominatimClient extends AbstractNominatimClient {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(CachingNominatimClient.class);
+
+    /** The number of recent search keys whose frequency is tracked accurately. */
+    private static final long TRACKED_SEARCH_KEYS = 65536;
+
+    /** The client fetching the responses which are not cached. */
+    private final NominatimClient delegate;
+
+    /** The cache. */
+    private final NominatimCache cache;
+
+    /** The time source used to timestamp the responses. */
+    private final Clock clock;
+
+    /** The grid snapping reverse geocoding coordinates, <code>null</code> to use the exact coordinates. */
+    private volatile ReverseGeocodingGrid reverseGrid;
+
+    /** The cache of the empty responses, <code>null</code> to not cache them. */
+    private volatile NominatimCache negativeCache;
+
+    /** Builds the canonical form of search queries, <code>null</code> to use the queries as written. */
+    private volatile QueryNormalizer queryNormalizer;
+
+    /** Estimates how often the search keys built from the queries as written were recently cached. */
+    private final FrequencySketch rawSearchKeys = new FrequencySketch(TRACKED_SEARCH_KEYS);
+
+    /** The number of cached searches whose query was recently sent as written. */
+    private final AtomicLong rawHitCount = new AtomicLong();
+
+    /** The number of cached searches found only thanks to the canonical form of their query. */
+    private final AtomicLong normalizedHitCount = new AtomicLong();
+
+    /** The stale-while-revalidate settings, <code>null</code> to return only fresh responses. */
+    private volatile Revalidation revalidation;
+
+    /** The keys of the responses being refreshed. */
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    /** The number of stale responses returned. */
+    private final AtomicLong staleHitCount = new AtomicLong();
+
+    /** The number of successful background refreshes. */
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    /** The number of failed or rejected background refreshes. */
+    private final AtomicLong refreshFailureCount = new AtomicLong();
+
+    /**
+     * Creates a caching client.
+     *
+     * @param delegate
+     *            the client fetching the responses which are not cached
+     * @param cache
+     *            the cache
+     */
+    public CachingNominatimClient(final NominatimClient delegate, final NominatimCache cache) {
+        this(delegate, cache, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a caching client.
+     *
+     * @param delegate
+     *            the client fetching the responses which are not cached
+     * @param cache
+     *            the cache
+     * @param clock
+     *            the time source used to timestamp the responses
+     */
+    public CachingNominatimClient(final NominatimClient delegate, final NominatimCache cache, final Clock clock) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cache
+     */
+    public NominatimCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the grid snapping reverse geocoding coordinates, or <code>null</code>
+     */
+    public ReverseGeocodingGrid getReverseGrid() {
+        return reverseGrid;
+    }
+
+    /**
+     * Sets the grid snapping reverse geocoding coordinates.
+     *
+     * @param reverseGrid
+     *            the grid, or <code>null</code> to cache reverse geocoding responses by exact coordinates
+     */
+    public void setReverseGrid(final ReverseGeocodingGrid reverseGrid) {
+        this.reverseGrid = reverseGrid;
+    }
+
+    /**
+     * @return the cache of the empty responses, or <code>null</code>
+     */
+    public NominatimCache getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * Sets the cache of the empty responses, so that requests without result, like searches of malformed addresses,
+     * aren't sent again.
+     *
+     * <pre>
+     * client.setNegativeCache(InMemoryNominatimCache.builder().maximumEntries(10000)
+     *         .expireAfterWrite(1, TimeUnit.HOURS).build());
+     * </pre>
+     *
+     * @param negativeCache
+     *            the cache of the empty responses, <code>null</code> to never cache them
+     */
+    public void setNegativeCache(final NominatimCache negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    /**
+     * @return the normalizer building the canonical form of search queries, or <code>null</code>
+     */
+    public QueryNormalizer getQueryNormalizer() {
+        return queryNormalizer;
+    }
+
+    /**
+     * Sets the normalizer building the canonical form of search queries, which identifies the searches in the cache.
+     *
+     * @param queryNormalizer
+     *            the normalizer, <code>null</code> to identify searches by their query as written
+     */
+    public void setQueryNormalizer(final QueryNormalizer queryNormalizer) {
+        this.queryNormalizer = queryNormalizer;
+    }
+
+    /**
+     * Gets the number of cached searches which would have been found without a {@link QueryNormalizer}, because the
+     * response to the same query, as written, was recently cached. The frequency of the queries is estimated, this
+     * count is approximate.
+     *
+     * @return the number of cached searches whose query was recently sent as written
+     */
+    public long getRawHitCount() {
+        return rawHitCount.get();
+    }
+
+    /**
+     * Gets the number of cached searches found only thanks to the {@link QueryNormalizer}: the response to the query
+     * was recently cached only for the query written differently. The frequency of the queries is estimated, this
+     * count is approximate.
+     *
+     * @return the number of cached searches found thanks to the canonical form of their query
+     */
+    public long getNormalizedHitCount() {
+        return normalizedHitCount.get();
+    }
+
+    /**
+     * Returns stale responses while refreshing them in the background. The cache must keep the entries at least
+     * for the hard time to live, see {@link InMemoryNominatimCache.Builder#expireAfterWrite(long, TimeUnit)}.
+     * <p>
+     * The executor should be bounded, for example a {@link java.util.concurrent.ThreadPoolExecutor} with a few
+     * threads and a bounded queue: a refresh it rejects is skipped and the stale response is returned until the next
+     * lookup tries again.
+     *
+     * @param softTtl
+     *            the age after which a response is refreshed in the background
+     * @param hardTtl
+     *            the age after which a response isn't returned any more
+     * @param unit
+     *            the time unit of the durations
+     * @param executor
+     *            runs the background refreshes
+     */
+    public void setStaleWhileRevalidate(final long softTtl, final long hardTtl, final TimeUnit unit,
+            final Executor executor) {
+        if (softTtl <= 0 || hardTtl < softTtl) {
+            throw new IllegalArgumentException("expected 0 < softTtl <= hardTtl: " + softTtl + ", " + hardTtl);
+        }
+        this.revalidation = new Revalidation(unit.toMillis(softTtl), unit.toMillis(hardTtl), executor);
+    }
+
+    /**
+     * @return the number of stale responses returned while they were refreshed
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /**
+     * @return the number of responses refreshed in the background
+     */
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    /**
+     * @return the number of background refreshes which failed or were rejected by the executor
+     */
+    public long getRefreshFailureCount() {
+        return refreshFailureCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+
+        final String rawKey = "search?" + search.getQueryString();
+        final QueryNormalizer normalizer = queryNormalizer;
+        if (null == normalizer || null == search.getQuery()) {
+            return copy(get(rawKey, searching(search), () -> searching(search.copy()), null));
+        }
+        final boolean seen;
+        synchronized (rawSearchKeys) {
+            seen = rawSearchKeys.frequency(rawKey) > 0;
+        }
+        final Serializable response = get(searchKey(search, normalizer), searching(search),
+                () -> searching(search.copy()), seen ? rawHitCount : normalizedHitCount);
+        if (!isEmpty(response) || null != negativeCache) {
+            // a cache keyed by the query as written would now hold the response too
+            synchronized (rawSearchKeys) {
+                rawSearchKeys.increment(rawKey);
+            }
+        }
+        return copy(response);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+
+        return (Address) get(reverseKey(reverse), reversing(reverse), () -> reversing(reverse.copy()), null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+
+        return copy(get("lookup?" + lookup.getQueryString(), lookingUp(lookup), () -> lookingUp(lookup.copy()), null));
+    }
+
+    /**
+     * @param search
+     *            a search request
+     * @return sends the request to a client
+     */
+    private static NominatimCall<Serializable> searching(final NominatimSearchRequest search) {
+        return c -> copy(c.search(search));
+    }
+
+    /**
+     * @param reverse
+     *            a reverse geocoding request
+     * @return sends the request to a client
+     */
+    private static NominatimCall<Serializable> reversing(final NominatimReverseRequest reverse) {
+        return c -> c.getAddress(reverse);
+    }
+
+    /**
+     * @param lookup
+     *            a lookup request
+     * @return sends the request to a client
+     */
+    private static NominatimCall<Serializable> lookingUp(final NominatimLookupRequest lookup) {
+        return c -> copy(c.lookupAddress(lookup));
+    }
+
+    /**
+     * Builds the cache key of a search request from the canonical form of its query.
+     *
+     * @param search
+     *            the request, with its query as written
+     * @param normalizer
+     *            builds the canonical form of the query
+     * @return the query string of a copy of the request holding the query in canonical form
+     */
+    private static String searchKey(final NominatimSearchRequest search, final QueryNormalizer normalizer) {
+
+        final NominatimSearchRequest canonical = search.copy();
+        canonical.setQuery(normalizer.normalize(search.getQuery()));
+        return "search?" + canonical.getQueryString();
+    }
+
+    /**
+     * Builds the cache key of a reverse geocoding request.
+     *
+     * @param reverse
+     *            the request
+     * @return the request query string, or the grid cell, which includes the zoom level, and the other parameters
+     *         when coordinates are snapped to a grid
+     */
+    private String reverseKey(final NominatimReverseRequest reverse) {
+
+        final ReverseGeocodingGrid grid = reverseGrid;
+        if (null == grid || !(reverse.getQuery() instanceof CoordinatesReverseQuery)) {
+            return "reverse?" + reverse.getQueryString();
+        }
+        final CoordinatesReverseQuery coordinates = (CoordinatesReverseQuery) reverse.getQuery();
+        final NominatimReverseRequest options = new NominatimReverseRequest();
+        options.setAcceptLanguage(reverse.getAcceptLanguage());
+        if (null != reverse.getAddressDetails()) {
+            options.setAddressDetails(reverse.getAddressDetails());
+        }
+        return "reverse@" + grid.getCell(coordinates.getLongitude(), coordinates.getLatitude(), reverse.getZoom())
+                + "?" + options.getQueryString();
+    }
+
+    /**
+     * Gets a response from the cache, or from the underlying client.
+     *
+     * @param key
+     *            the request key
+     * @param request
+     *            sends the request to the underlying client
+     * @param snapshot
+     *            copies the request, on the caller's thread, for a background refresh: the caller may change or reuse
+     *            its request once the stale response is returned
+     * @param hits
+     *            counts the responses found in the cache, may be <code>null</code>
+     * @return the response
+     * @throws IOException
+     *             the underlying client failed
+     */
+    private Serializable get(final String key, final NominatimCall<Serializable> request,
+            final Supplier<NominatimCall<Serializable>> snapshot, final AtomicLong hits) throws IOException {
+
+        final CacheEntry cached = cache.get(key);
+        if (null != cached) {
+            final Revalidation settings = revalidation;
+            final long age = clock.currentTimeMillis() - cached.getCreatedAt();
+            if (null == settings || age < settings.softTtl) {
+                count(hits);
+                return cached.getValue();
+            }
+            if (age < settings.hardTtl) {
+                count(hits);
+                staleHitCount.incrementAndGet();
+                refresh(key, snapshot, settings.executor);
+                return cached.getValue();
+            }
+        }
+        final NominatimCache negative = negativeCache;
+        if (null != negative) {
+            final CacheEntry empty = negative.get(key);
+            if (null != empty) {
+                count(hits);
+                return empty.getValue();
+            }
+        }
+        final Serializable response = request.send(delegate);
+        put(key, response);
+        return response;
+    }
+
+    /**
+     * @param counter
+     *            a counter to increment, may be <code>null</code>
+     */
+    private static void count(final AtomicLong counter) {
+        if (null != counter) {
+            counter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Refreshes a stale response in the background, unless it is already being refreshed.
+     *
+     * @param key
+     *            the request key
+     * @param snapshot
+     *            copies the request
+     * @param executor
+     *            runs the refresh
+     */
+    private void refresh(final String key, final Supplier<NominatimCall<Serializable>> snapshot,
+            final Executor executor) {
+
+        if (!refreshing.add(key)) {
+            return;
+        }
+        final NominatimCall<Serializable> request = snapshot.get();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!put(key, request.send(delegate))) {
+                        // the place is gone
+                        cache.invalidate(key);
+                    }
+                    refreshCount.incrementAndGet();
+                } catch (final IOException | RuntimeException e) {
+                    LOGGER.debug("can't refresh {}", key, e);
+                    refreshFailureCount.incrementAndGet();
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            refreshing.remove(key);
+            refreshFailureCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Caches a response, an empty one in the negative cache if there is one.
+     *
+     * @param key
+     *            the request key
+     * @param response
+     *            an address or a list of addresses, which mustn't be modified afterwards, may be <code>null</code>
+     * @return false if the response is empty
+     */
+    @SuppressWarnings("unchecked")
+    private boolean put(final String key, final Serializable response) {
+
+        final long weight;
+        if (response instanceof Address) {
+            weight = Weigher.weigh((Address) response);
+        } else if (response instanceof List) {
+            weight = Weigher.weigh((List<Address>) response);
+        } else {
+            weight = 0;
+        }
+        if (!isEmpty(response)) {
+            cache.put(key, new CacheEntry(response, clock.currentTimeMillis(), weight));
+            return true;
+        }
+        final NominatimCache negative = negativeCache;
+        if (null != negative) {
+            negative.put(key, new CacheEntry(response, clock.currentTimeMillis(), weight));
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether a response has no result: no address, an empty list, or the error payload answered by reverse
+     * geocoding when there is no place at the coordinates, which has neither a place id nor a name.
+     *
+     * @param response
+     *            an address or a list of addresses, may be <code>null</code>
+     * @return true if the response has no result
+     */
+    private static boolean isEmpty(final Serializable response) {
+
+        if (response instanceof Address) {
+            final Address address = (Address) response;
+            return 0 == address.getPlaceId() && null == address.getDisplayName();
+        }
+        return null == response || ((List<?>) response).isEmpty();
+    }
+
+    /**
+     * Copies a list of addresses, so that the cached lists are never exposed.
+     *
+     * @param addresses
+     *            a list of addresses, may be <code>null</code>
+     * @return a copy of the list, or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayList<Address> copy(final Object addresses) {
+        return null == addresses ? null : new ArrayList<Address>((List<Address>) addresses);
+    }
+
+    /**
+     * The stale-while-revalidate settings.
+     */
+    private static final class Revalidation {
+
+        /** The age after which a response is refreshed, in milliseconds. */
+        private final long softTtl;
+
+        /** The age after which a response isn't returned any more, in milliseconds. */
+        private final long hardTtl;
+
+        /** Runs the background refreshes. */
+        private final Executor executor;
+
+        /**
+         * @param softTtl
+         *            the age after which a response is refreshed, in milliseconds
+         * @param hardTtl
+         *            the age after which a response isn't returned any more, in milliseconds
+         * @param executor
+         *            runs the background refreshes
+         */
+        private Revalidation(final long softTtl, final long hardTtl, final Executor executor) {
+            this.softTtl = softTtl;
+            this.hardTtl = hardTtl;
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import fr.dudie.nominatim.client.request.ExtendedSearchQuery;
+import fr.dudie.nominatim.client.request.SearchQuery;
+import fr.dudie.nominatim.client.request.SimpleSearchQuery;
+
+/**
+ * A {@link QueryNormalizer} rewriting the text of the queries: Unicode NFKC normalization, case folding, punctuation
+ * removal, whitespace collapsing and expansion of the abbreviations.
+ * <p>
+ * With the default settings, <code>10 Downing St, London</code> and <code>10  downing street london</code> have the
+ * same canonical form. The fields of an {@link ExtendedSearchQuery} are rewritten one by one and always appear in
+ * the same order in the cache key, blank fields being dropped. Other queries are left unchanged.
+ * <p>
+ * The default abbreviations are common English and French street types. An abbreviation is expanded wherever it
+ * appears as a word, and two places whose names only differ by an abbreviation share a cache entry: when searching
+ * places where <code>st</code> stands for <em>saint</em>, map it with {@link Builder#abbreviation(String, String)}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class CanonicalQueryNormalizer implements QueryNormalizer {
+
+    /** The default abbreviations, by abbreviated form. */
+    private static final Map<String, String> DEFAULT_ABBREVIATIONS = new HashMap<String, String>();
+
+    static {
+        final String[] abbreviations = { "st", "street", "rd", "road", "ave", "avenue", "av", "avenue", "blvd",
+                "boulevard", "bd", "boulevard", "dr", "drive", "ln", "lane", "ct", "court", "pl", "place", "sq",
+                "square", "hwy", "highway", "pkwy", "parkway", "imp", "impasse", "rte", "route", "chem", "chemin",
+                "fbg", "faubourg" };
+        for (int i = 0; i < abbreviations.length; i += 2) {
+            DEFAULT_ABBREVIATIONS.put(abbreviations[i], abbreviations[i + 1]);
+        }
+    }
+
+    /** Matches punctuation and symbols. */
+    private static final Pattern PUNCTUATION = Pattern.compile("[\\p{P}\\p{S}]+");
+
+    /** Matches whitespace. */
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s\\p{Z}]+");
+
+    /** The full forms, by abbreviated form in canonical form. */
+    private final Map<String, String> abbreviations;
+
+    /** Whether punctuation is removed. */
+    private final boolean stripPunctuation;
+
+    /**
+     * Creates a normalizer from a builder.
+     *
+     * @param builder
+     *            the builder
+     */
+    private CanonicalQueryNormalizer(final Builder builder) {
+        this.abbreviations = new HashMap<String, String>(builder.abbreviations);
+        this.stripPunctuation = builder.stripPunctuation;
+    }
+
+    /**
+     * Creates a builder for a normalizer.
+     *
+     * @return a builder, configured with the default abbreviations and removing punctuation
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.QueryNormalizer#normalize(fr.dudie.nominatim.client.request.SearchQuery)
+     */
+    @Override
+    public SearchQuery normalize(final SearchQuery query) {
+
+        if (query instanceof SimpleSearchQuery) {
+            return new SimpleSearchQuery(normalize(((SimpleSearchQuery) query).getQuery()));
+        }
+        if (query instanceof ExtendedSearchQuery) {
+            final ExtendedSearchQuery extended = (ExtendedSearchQuery) query;
+            final ExtendedSearchQuery canonical = new ExtendedSearchQuery();
+            canonical.setStreet(normalize(extended.getStreet()));
+            canonical.setCity(normalize(extended.getCity()));
+            canonical.setCounty(normalize(extended.getCounty()));
+            canonical.setState(normalize(extended.getState()));
+            canonical.setCountry(normalize(extended.getCountry()));
+            canonical.setPostalCode(normalize(extended.getPostalCode()));
+            return canonical;
+        }
+        return query;
+    }
+
+    /**
+     * Builds the canonical form of a text.
+     *
+     * @param text
+     *            the text, may be <code>null</code>
+     * @return the canonical text, <code>null</code> if it is blank
+     */
+    public String normalize(final String text) {
+
+        if (null == text) {
+            return null;
+        }
+        // upper then lower case folds characters like ß into ss
+        String canonical = Normalizer.normalize(text, Normalizer.Form.NFKC).toUpperCase(Locale.ROOT)
+                .toLowerCase(Locale.ROOT);
+        if (stripPunctuation) {
+            canonical = PUNCTUATION.matcher(canonical).replaceAll(" ");
+        }
+        final StringBuilder result = new StringBuilder(canonical.length());
+        for (final String word : WHITESPACE.split(canonical)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            final String expanded = abbreviations.get(word);
+            result.append(null == expanded ? word : expanded);
+        }
+        return result.length() == 0 ? null : result.toString();
+    }
+
+    /**
+     * Builds a {@link CanonicalQueryNormalizer}.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The full forms, by abbreviated form. */
+        private final Map<String, String> abbreviations = new HashMap<String, String>(DEFAULT_ABBREVIATIONS);
+
+        /** Whether punctuation is removed. */
+        private boolean stripPunctuation = true;
+
+        /**
+         * Hidden constructor, use {@link CanonicalQueryNormalizer#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Adds an abbreviation, or replaces the full form of a known one.
+         *
+         * @param abbreviated
+         *            the abbreviated word, matched regardless of case
+         * @param full
+         *            the full form
+         * @return this builder
+         */
+        public Builder abbreviation(final String abbreviated, final String full) {
+            abbreviations.put(abbreviated.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT),
+                    full.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        /**
+         * Removes all the abbreviations, including the default ones.
+         *
+         * @return this builder
+         */
+        public Builder clearAbbreviations() {
+            abbreviations.clear();
+            return this;
+        }
+
+        /**
+         * Sets whether punctuation and symbols are replaced with spaces.
+         *
+         * @param stripPunctuation
+         *            true to ignore punctuation
+         * @return this builder
+         */
+        public Builder stripPunctuation(final boolean stripPunctuation) {
+            this.stripPunctuation = stripPunctuation;
+            return this;
+        }
+
+        /**
+         * @return a new normalizer
+         */
+        public CanonicalQueryNormalizer build() {
+            return new CanonicalQueryNormalizer(this);
+        }
+    }
+}
@@ -0,0 +1,1069 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.Clock;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimCache} storing the responses in a directory, so that they survive a restart of the JVM.
+ * <p>
+ * Responses are serialized and appended to a log file. A hash table mapping the request keys to the records of the
+ * log is stored in a memory-mapped file next to it, so that opening the cache doesn't read the log and a lookup
+ * reads a single record. Replaced, removed and expired responses stay in the log until it is compacted: the live
+ * records are copied to a new log which replaces the previous one. Compaction runs when {@link #compact()} is called,
+ * and during a write when more than half of a log of at least 1 MB is obsolete; lookups wait meanwhile.
+ * <p>
+ * Every record has a checksum. When the cache wasn't closed, because the JVM crashed or was killed, the index is
+ * rebuilt from the log at the next start, and the log is truncated at the first incomplete or corrupted record. A
+ * log written with another format, for example by a version of this library with a different model, is discarded.
+ * Only the model classes are deserialized, and a response which can't be deserialized is removed.
+ * <p>
+ * Reads and writes never fail: an error is logged and the cache behaves as if the response wasn't cached. The cache
+ * should sit below an {@link InMemoryNominatimCache} holding the most used responses, see
+ * {@link TieredNominatimCache}:
+ *
+ * <pre>
+ * DiskNominatimCache disk = DiskNominatimCache.builder(Paths.get("/var/cache/nominatim"))
+ *         .expireAfterWrite(30, TimeUnit.DAYS)
+ *         .build();
+ * NominatimCache cache = new TieredNominatimCache(InMemoryNominatimCache.builder().maximumEntries(10000).build(),
+ *         disk);
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class DiskNominatimCache implements NominatimCache, Closeable {
+
+    /** The event logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskNominatimCache.class);
+
+    /** The name of the log file. */
+    static final String LOG_FILE = "nominatim-cache.log";
+
+    /** The name of the index file. */
+    static final String INDEX_FILE = "nominatim-cache.idx";
+
+    /** The suffix of the files written during a compaction. */
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** The magic number identifying a log file. */
+    private static final int LOG_MAGIC = 0x4e4f4d4c;
+
+    /**
+     * The version of the log format, increased whenever the format of the records or the serialized form of the
+     * model changes: a log written with another version is discarded when the cache is opened. Version 2 stores
+     * packed polygons and geojson text.
+     */
+    private static final int LOG_VERSION = 2;
+
+    /** The size of the log header: the magic number and the version. */
+    private static final int LOG_HEADER_SIZE = 8;
+
+    /** The size of a record header: the payload length and its checksum. */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    /** The size of the fixed part of a payload: the kind, the creation time, the weight and the key length. */
+    private static final int PAYLOAD_HEADER_SIZE = 21;
+
+    /** The largest payload, so that a corrupted length isn't trusted. */
+    private static final int MAX_PAYLOAD_SIZE = 64 * 1024 * 1024;
+
+    /** The size of the log below which it isn't compacted automatically. */
+    private static final long MIN_COMPACTION_SIZE = 1024 * 1024;
+
+    /** The kind of a record storing a response. */
+    private static final byte PUT = 1;
+
+    /** The kind of a record removing a response. */
+    private static final byte REMOVE = 2;
+
+    /** The log file. */
+    private final Path logFile;
+
+    /** The index file. */
+    private final Path indexFile;
+
+    /** The time to live of an entry, in milliseconds. */
+    private final long timeToLive;
+
+    /** The number of slots of a new index. */
+    private final int initialCapacity;
+
+    /** The time source. */
+    private final Clock clock;
+
+    /** Guards the files: lookups share the read lock, writes take the write lock. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The number of lookups which found an entry. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** The number of lookups which found no entry, or an expired one. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** The log. */
+    private FileChannel log;
+
+    /** The index. */
+    private MappedIndex index;
+
+    /** The length of the log, in bytes. */
+    private long logLength;
+
+    /** The number of expired entries removed by compactions. */
+    private long expirationCount;
+
+    /** Whether the cache is closed. */
+    private boolean closed;
+
+    /**
+     * Opens a cache from a builder.
+     *
+     * @param builder
+     *            the builder
+     * @throws IOException
+     *             the files can't be opened
+     */
+    private DiskNominatimCache(final Builder builder) throws IOException {
+        this.logFile = builder.directory.resolve(LOG_FILE);
+        this.indexFile = builder.directory.resolve(INDEX_FILE);
+        this.timeToLive = builder.timeToLive;
+        this.initialCapacity = builder.initialCapacity;
+        this.clock = builder.clock;
+        Files.createDirectories(builder.directory);
+        open();
+    }
+
+    /**
+     * Creates a builder for a disk cache.
+     *
+     * @param directory
+     *            the directory of the cache files, created if it doesn't exist
+     * @return a builder, configured with no expiration and an index sized for 100000 entries
+     */
+    public static Builder builder(final Path directory) {
+        return new Builder(directory);
+    }
+
+    /**
+     * Opens the log and the index, recovering from an unclean shutdown.
+     *
+     * @throws IOException
+     *             the files can't be opened
+     */
+    private void open() throws IOException {
+
+        Files.deleteIfExists(tmp(logFile));
+        Files.deleteIfExists(tmp(indexFile));
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            logLength = log.size();
+            if (logLength < LOG_HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+                header.putInt(LOG_MAGIC).putInt(LOG_VERSION).flip();
+                log.truncate(0);
+                write(header, 0);
+                logLength = LOG_HEADER_SIZE;
+            } else {
+                final ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_SIZE);
+                read(header, 0);
+                if (LOG_MAGIC != header.getInt(0)) {
+                    throw new IOException("not a cache log: " + logFile);
+                }
+                if (LOG_VERSION != header.getInt(4)) {
+                    LOGGER.info("discarding the disk cache {} written with format version {}", logFile,
+                            header.getInt(4));
+                    header.clear();
+                    header.putInt(LOG_MAGIC).putInt(LOG_VERSION).flip();
+                    log.truncate(0);
+                    write(header, 0);
+                    logLength = LOG_HEADER_SIZE;
+                    Files.deleteIfExists(indexFile);
+                }
+            }
+            index = MappedIndex.open(indexFile);
+            if (null == index || !index.isClean() || index.getLogLength() != logLength) {
+                if (null != index) {
+                    index.close();
+                }
+                rebuild();
+            }
+            index.setClean(false);
+        } catch (final IOException e) {
+            log.close();
+            if (null != index) {
+                index.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rebuilds the index by reading the whole log, which is truncated at the first invalid record.
+     *
+     * @throws IOException
+     *             the log can't be read or the index can't be written
+     */
+    private void rebuild() throws IOException {
+
+        final long start = clock.nanoTime();
+        index = MappedIndex.create(indexFile, initialCapacity);
+        // the stream isn't closed, it would close the log
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(log.position(LOG_HEADER_SIZE)), 64 * 1024));
+        long position = LOG_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= logLength) {
+            final int length = in.readInt();
+            final int crc = in.readInt();
+            if (length < PAYLOAD_HEADER_SIZE || length > MAX_PAYLOAD_SIZE
+                    || position + RECORD_HEADER_SIZE + length > logLength) {
+                break;
+            }
+            final byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (crc != crc(payload) || !apply(payload, position)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < logLength) {
+            LOGGER.warn("truncating the cache log {} at offset {}: the last {} bytes are incomplete or corrupted",
+                    logFile, position, logLength - position);
+            log.truncate(position);
+            log.force(true);
+            logLength = position;
+        }
+        LOGGER.info("rebuilt the index of {} with {} entries in {} ms", logFile, index.getSize(),
+                TimeUnit.NANOSECONDS.toMillis(clock.nanoTime() - start));
+    }
+
+    /**
+     * Applies a record read from the log to the index.
+     *
+     * @param payload
+     *            the record payload, whose checksum is valid
+     * @param offset
+     *            the offset of the record
+     * @return false if the record is invalid
+     * @throws IOException
+     *             the index can't be written
+     */
+    private boolean apply(final byte[] payload, final long offset) throws IOException {
+
+        final int keyLength = ByteBuffer.wrap(payload).getInt(17);
+        if (keyLength < 0 || keyLength > payload.length - PAYLOAD_HEADER_SIZE) {
+            return false;
+        }
+        final byte[] key = Arrays.copyOfRange(payload, PAYLOAD_HEADER_SIZE, PAYLOAD_HEADER_SIZE + keyLength);
+        final long previous;
+        if (PUT == payload[0]) {
+            if (index.isFull() && !grow()) {
+                return true;
+            }
+            previous = index.put(hash(key), offset, matcher(key, null));
+        } else {
+            previous = index.remove(hash(key), matcher(key, null));
+            index.setGarbage(index.getGarbage() + RECORD_HEADER_SIZE + payload.length);
+        }
+        if (0 != previous) {
+            index.setGarbage(index.getGarbage() + recordSize(previous));
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#get(java.lang.String)
+     */
+    @Override
+    public CacheEntry get(final String key) {
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[][] found = new byte[1][];
+        try {
+            final long offset;
+            lock.readLock().lock();
+            try {
+                checkOpen();
+                offset = index.get(hash(keyBytes), matcher(keyBytes, found));
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (null == found[0]) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            final ByteBuffer payload = ByteBuffer.wrap(found[0]);
+            final long createdAt = payload.getLong(1);
+            if (isExpired(createdAt, clock.currentTimeMillis())) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            final Serializable value;
+            try {
+                value = deserialize(found[0], PAYLOAD_HEADER_SIZE + keyBytes.length);
+            } catch (final IOException e) {
+                // it would fail the same way at every lookup
+                LOGGER.warn("dropping {} from the disk cache, it can't be deserialized: {}", key, e.toString());
+                remove(keyBytes, offset);
+                missCount.incrementAndGet();
+                return null;
+            }
+            final CacheEntry entry = new CacheEntry(value, createdAt, payload.getLong(9));
+            hitCount.incrementAndGet();
+            return entry;
+        } catch (final IOException e) {
+            LOGGER.warn("can't read {} from the disk cache", key, e);
+            reopenIfInterrupted(e);
+            missCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#put(java.lang.String,
+     *      fr.dudie.nominatim.client.cache.CacheEntry)
+     */
+    @Override
+    public void put(final String key, final CacheEntry entry) {
+
+        if (isExpired(entry.getCreatedAt(), clock.currentTimeMillis())) {
+            return;
+        }
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (index.isFull() && !grow()) {
+                return;
+            }
+            final long offset = append(PUT, entry.getCreatedAt(), entry.getWeight(), keyBytes,
+                    serialize(entry.getValue()));
+            final long previous = index.put(hash(keyBytes), offset, matcher(keyBytes, null));
+            if (0 != previous) {
+                index.setGarbage(index.getGarbage() + recordSize(previous));
+                compactIfNeeded();
+            }
+        } catch (final IOException e) {
+            LOGGER.warn("can't write {} to the disk cache", key, e);
+            reopenIfInterrupted(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#invalidate(java.lang.String)
+     */
+    @Override
+    public void invalidate(final String key) {
+        remove(key.getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param keyBytes
+     *            the entry key, encoded
+     * @param expected
+     *            the offset of the record to remove, or 0 to remove any record of the key
+     */
+    private void remove(final byte[] keyBytes, final long expected) {
+
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final long hash = hash(keyBytes);
+            final long current = index.get(hash, matcher(keyBytes, null));
+            if (0 == current || 0 != expected && expected != current) {
+                return;
+            }
+            // the removal must survive a rebuild of the index
+            final long offset = append(REMOVE, clock.currentTimeMillis(), 0, keyBytes, new byte[0]);
+            final long previous = index.remove(hash, matcher(keyBytes, null));
+            index.setGarbage(index.getGarbage() + recordSize(previous) + recordSize(offset));
+            compactIfNeeded();
+        } catch (final IOException e) {
+            LOGGER.warn("can't remove {} from the disk cache", new String(keyBytes, StandardCharsets.UTF_8), e);
+            reopenIfInterrupted(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#clear()
+     */
+    @Override
+    public void clear() {
+
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            log.truncate(LOG_HEADER_SIZE);
+            logLength = LOG_HEADER_SIZE;
+            index.close();
+            index = MappedIndex.create(indexFile, initialCapacity);
+        } catch (final IOException e) {
+            LOGGER.warn("can't clear the disk cache", e);
+            reopenIfInterrupted(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The weight is the size of the log, in bytes.
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#getStats()
+     */
+    @Override
+    public CacheStats getStats() {
+
+        lock.readLock().lock();
+        try {
+            return new CacheStats(hitCount.get(), missCount.get(), 0, expirationCount, closed ? 0 : index.getSize(),
+                    logLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Copies the live records to a new log, dropping the replaced, removed and expired responses. Lookups wait until
+     * the compaction is over.
+     *
+     * @throws IOException
+     *             the new log can't be written, the cache is unchanged
+     */
+    public void compact() throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            final long start = clock.nanoTime();
+            final long now = clock.currentTimeMillis();
+            final long[] entries = index.entries();
+            final Path logTmp = tmp(logFile);
+            final Path indexTmp = tmp(indexFile);
+            final MappedIndex compacted = MappedIndex.create(indexTmp,
+                    Math.max(initialCapacity, Math.min(MappedIndex.MAX_CAPACITY, entries.length)));
+            long position = LOG_HEADER_SIZE;
+            long expired = 0;
+            try {
+                try (final FileChannel out = FileChannel.open(logTmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                    buffer.putInt(LOG_MAGIC).putInt(LOG_VERSION);
+                    long written = 0;
+                    for (int i = 0; i < entries.length; i += 2) {
+                        final byte[] payload = readPayload(entries[i + 1]);
+                        if (isExpired(ByteBuffer.wrap(payload).getLong(1), now)) {
+                            expired++;
+                            continue;
+                        }
+                        if (buffer.remaining() < RECORD_HEADER_SIZE + payload.length) {
+                            buffer.flip();
+                            written += writeFully(out, buffer, written);
+                            buffer.clear();
+                        }
+                        final ByteBuffer target = buffer.remaining() < RECORD_HEADER_SIZE + payload.length
+                                ? ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length) : buffer;
+                        target.putInt(payload.length).putInt(crc(payload)).put(payload);
+                        if (target != buffer) {
+                            target.flip();
+                            written += writeFully(out, target, written);
+                        }
+                        compacted.put(entries[i], position, null);
+                        position += RECORD_HEADER_SIZE + payload.length;
+                    }
+                    buffer.flip();
+                    writeFully(out, buffer, written);
+                    out.force(true);
+                }
+                compacted.force();
+            } catch (final IOException e) {
+                compacted.close();
+                Files.deleteIfExists(logTmp);
+                Files.deleteIfExists(indexTmp);
+                throw e;
+            }
+            // an index left dirty by a crash between the two moves is rebuilt from the new log
+            log.close();
+            index.close();
+            Files.move(logTmp, logFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(indexTmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = compacted;
+            LOGGER.info("compacted {} from {} to {} bytes in {} ms", logFile, logLength, position,
+                    TimeUnit.NANOSECONDS.toMillis(clock.nanoTime() - start));
+            logLength = position;
+            expirationCount += expired;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the pending changes to the disk and closes the files. The index is reused at the next start.
+     *
+     * @throws IOException
+     *             the files can't be written
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                log.force(true);
+                index.setLogLength(logLength);
+                index.setClean(true);
+            } finally {
+                index.close();
+                log.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compacts the log when more than half of it is obsolete, the write lock must be held.
+     *
+     * @throws IOException
+     *             the new log can't be written
+     */
+    private void compactIfNeeded() throws IOException {
+        if (logLength >= MIN_COMPACTION_SIZE && index.getGarbage() > logLength / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces the index with one twice as large, the write lock must be held.
+     *
+     * @return false if the index can't grow any more
+     * @throws IOException
+     *             the new index can't be written
+     */
+    private boolean grow() throws IOException {
+
+        if (index.getCapacity() >= MappedIndex.MAX_CAPACITY) {
+            LOGGER.warn("the disk cache {} is full", logFile);
+            return false;
+        }
+        final long[] entries = index.entries();
+        final Path indexTmp = tmp(indexFile);
+        final MappedIndex grown = MappedIndex.create(indexTmp, index.getCapacity() * 2);
+        for (int i = 0; i < entries.length; i += 2) {
+            grown.put(entries[i], entries[i + 1], null);
+        }
+        grown.setGarbage(index.getGarbage());
+        index.close();
+        Files.move(indexTmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        index = grown;
+        return true;
+    }
+
+    /**
+     * Appends a record to the log, the write lock must be held.
+     *
+     * @param kind
+     *            the kind of record
+     * @param createdAt
+     *            the time the response was received
+     * @param weight
+     *            the estimated size of the response in memory
+     * @param key
+     *            the request key
+     * @param value
+     *            the serialized response
+     * @return the offset of the record
+     * @throws IOException
+     *             the log can't be written
+     */
+    private long append(final byte kind, final long createdAt, final long weight, final byte[] key,
+            final byte[] value) throws IOException {
+
+        final int length = PAYLOAD_HEADER_SIZE + key.length + value.length;
+        if (length > MAX_PAYLOAD_SIZE) {
+            throw new IOException("response too large: " + length + " bytes");
+        }
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.position(RECORD_HEADER_SIZE);
+        record.put(kind).putLong(createdAt).putLong(weight).putInt(key.length).put(key).put(value);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue());
+        record.flip();
+        final long offset = logLength;
+        write(record, offset);
+        logLength += record.limit();
+        return offset;
+    }
+
+    /**
+     * Creates a matcher comparing the key of a record.
+     *
+     * @param key
+     *            the searched key
+     * @param found
+     *            receives the payload of the matching record, may be <code>null</code>
+     * @return the matcher
+     */
+    private MappedIndex.KeyMatcher matcher(final byte[] key, final byte[][] found) {
+        return offset -> {
+            final byte[] payload = readPayload(offset);
+            final int keyLength = ByteBuffer.wrap(payload).getInt(17);
+            if (keyLength != key.length) {
+                return false;
+            }
+            for (int i = 0; i < keyLength; i++) {
+                if (payload[PAYLOAD_HEADER_SIZE + i] != key[i]) {
+                    return false;
+                }
+            }
+            if (null != found) {
+                found[0] = payload;
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Reads the payload of a record and checks it.
+     *
+     * @param offset
+     *            the offset of the record
+     * @return the payload
+     * @throws IOException
+     *             the record can't be read or is corrupted
+     */
+    private byte[] readPayload(final long offset) throws IOException {
+
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        read(header, offset);
+        final int length = header.getInt(0);
+        if (length < PAYLOAD_HEADER_SIZE || length > MAX_PAYLOAD_SIZE) {
+            throw new IOException("corrupted record at offset " + offset + " of " + logFile);
+        }
+        final byte[] payload = new byte[length];
+        read(ByteBuffer.wrap(payload), offset + RECORD_HEADER_SIZE);
+        if (header.getInt(4) != crc(payload)) {
+            throw new IOException("corrupted record at offset " + offset + " of " + logFile);
+        }
+        return payload;
+    }
+
+    /**
+     * @param offset
+     *            the offset of a record
+     * @return the size of the record, with its header
+     * @throws IOException
+     *             the log can't be read
+     */
+    private long recordSize(final long offset) throws IOException {
+
+        final ByteBuffer header = ByteBuffer.allocate(4);
+        read(header, offset);
+        return RECORD_HEADER_SIZE + header.getInt(0);
+    }
+
+    /**
+     * Fills a buffer from the log.
+     *
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position of the log to read from
+     * @throws IOException
+     *             the end of the log is reached or the log can't be read
+     */
+    private void read(final ByteBuffer buffer, final long position) throws IOException {
+
+        final int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (log.read(buffer, position + buffer.position() - start) < 0) {
+                throw new EOFException("truncated record at offset " + position + " of " + logFile);
+            }
+        }
+    }
+
+    /**
+     * Writes a buffer to the log.
+     *
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position of the log to write at
+     * @throws IOException
+     *             the log can't be written
+     */
+    private void write(final ByteBuffer buffer, final long position) throws IOException {
+        writeFully(log, buffer, position);
+    }
+
+    /**
+     * Writes a buffer to a file.
+     *
+     * @param channel
+     *            the file
+     * @param buffer
+     *            the buffer
+     * @param position
+     *            the position of the file to write at
+     * @return the number of bytes written
+     * @throws IOException
+     *             the file can't be written
+     */
+    private static int writeFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Reopens the log after an interrupted thread closed it. A file channel is closed when a thread using it is
+     * interrupted, which mustn't break the cache for the other threads.
+     *
+     * @param e
+     *            the error
+     */
+    private void reopenIfInterrupted(final IOException e) {
+
+        if (!(e instanceof ClosedByInterruptException)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!closed && !log.isOpen()) {
+                log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        } catch (final IOException reopenError) {
+            LOGGER.error("can't reopen the disk cache {}", logFile, reopenError);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @throws IllegalStateException
+     *             the cache is closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("the disk cache " + logFile + " is closed");
+        }
+    }
+
+    /**
+     * Checks whether an entry expired.
+     *
+     * @param createdAt
+     *            the time the response was received, in milliseconds since the epoch
+     * @param now
+     *            the current time, in milliseconds since the epoch
+     * @return <code>true</code> if the entry expired
+     */
+    private boolean isExpired(final long createdAt, final long now) {
+        return now - createdAt >= timeToLive;
+    }
+
+    /**
+     * @param file
+     *            a file
+     * @return the file replacing it during a compaction
+     */
+    private static Path tmp(final Path file) {
+        return file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+    }
+
+    /**
+     * Hashes a key: FNV-1a followed by the finalizer of MurmurHash3, so that the low bits are well distributed.
+     *
+     * @param key
+     *            the key
+     * @return the 64 bits hash of the key
+     */
+    static long hash(final byte[] key) {
+
+        long h = 0xcbf29ce484222325L;
+        for (final byte b : key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param payload
+     *            a record payload
+     * @return the checksum of the payload
+     */
+    private static int crc(final byte[] payload) {
+
+        final CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * @param value
+     *            a response
+     * @return the serialized response
+     * @throws IOException
+     *             the response can't be serialized
+     */
+    private static byte[] serialize(final Serializable value) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param payload
+     *            a record payload
+     * @param offset
+     *            the offset of the serialized response in the payload
+     * @return the response
+     * @throws IOException
+     *             the response can't be deserialized, for example because its classes changed
+     */
+    private static Serializable deserialize(final byte[] payload, final int offset) throws IOException {
+
+        try (final ObjectInputStream in = new ResponseInputStream(new ByteArrayInputStream(payload, offset,
+                payload.length - offset))) {
+            return (Serializable) in.readObject();
+        } catch (final ClassNotFoundException e) {
+            throw new IOException("unknown class in the cached response", e);
+        }
+    }
+
+    /**
+     * Reads a serialized response, refusing the classes which can't be part of a response: the log file is not
+     * trusted to hold only what this cache wrote.
+     */
+    private static final class ResponseInputStream extends ObjectInputStream {
+
+        /** The package of the model classes. */
+        private static final String MODEL_PACKAGE = Address.class.getPackage().getName() + ".";
+
+        /**
+         * @param in
+         *            the serialized response
+         * @throws IOException
+         *             the stream header can't be read
+         */
+        private ResponseInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+
+            String name = desc.getName();
+            while (name.startsWith("[")) {
+                name = name.substring(1);
+            }
+            final boolean allowed;
+            if (name.startsWith("L") && name.endsWith(";")) {
+                name = name.substring(1, name.length() - 1);
+                allowed = isAllowed(name);
+            } else {
+                // an array of primitives, or a class
+                allowed = name.length() == 1 || isAllowed(name);
+            }
+            if (!allowed) {
+                throw new InvalidClassException(desc.getName(), "not allowed in a cached response");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(final String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy", "not allowed in a cached response");
+        }
+
+        /**
+         * @param className
+         *            the name of a class which isn't an array
+         * @return true if the class can be part of a response
+         */
+        private static boolean isAllowed(final String className) {
+            return className.startsWith(MODEL_PACKAGE) && className.indexOf('.', MODEL_PACKAGE.length()) < 0
+                    || ArrayList.class.getName().equals(className) || String.class.getName().equals(className);
+        }
+    }
+
+    /**
+     * Builds a {@link DiskNominatimCache}.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The directory of the cache files. */
+        private final Path directory;
+
+        /** The time to live of an entry, in milliseconds. */
+        private long timeToLive = Long.MAX_VALUE;
+
+        /** The number of slots of a new index. */
+        private int initialCapacity = 100000 / 3 * 4;
+
+        /** The time source. */
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Hidden constructor, use {@link DiskNominatimCache#builder(Path)}.
+         *
+         * @param directory
+         *            the directory of the cache files
+         */
+        private Builder(final Path directory) {
+            if (null == directory) {
+                throw new IllegalArgumentException("directory must not be null");
+            }
+            this.directory = directory;
+        }
+
+        /**
+         * Sets the time after which an entry expires, counted from the time the response was received. Entries
+         * written with a different time to live expire according to the current one.
+         *
+         * @param duration
+         *            the time to live
+         * @param unit
+         *            the time unit of the duration
+         * @return this builder
+         */
+        public Builder expireAfterWrite(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("duration must be positive: " + duration);
+            }
+            this.timeToLive = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sizes a new index. The index doubles when it is full, which blocks the cache meanwhile.
+         *
+         * @param expectedEntries
+         *            the expected number of entries
+         * @return this builder
+         */
+        public Builder expectedEntries(final int expectedEntries) {
+            if (expectedEntries <= 0) {
+                throw new IllegalArgumentException("expectedEntries must be positive: " + expectedEntries);
+            }
+            this.initialCapacity = (int) Math.min(MappedIndex.MAX_CAPACITY, expectedEntries / 3L * 4 + 1);
+            return this;
+        }
+
+        /**
+         * Sets the time source.
+         *
+         * @param clock
+         *            the time source
+         * @return this builder
+         */
+        public Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Opens the cache, rebuilding its index if it wasn't closed.
+         *
+         * @return a new cache
+         * @throws IOException
+         *             the cache files can't be opened
+         */
+        public DiskNominatimCache build() throws IOException {
+            return new DiskNominatimCache(this);
+        }
+    }
+}
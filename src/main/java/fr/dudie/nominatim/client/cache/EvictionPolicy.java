@@ -0,0 +1,42 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * Enumerates the policies used to choose the entries to evict when a cache is full.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public enum EvictionPolicy {
+
+    /** Evicts the least recently used entry. */
+    LRU,
+
+    /**
+     * Evicts the least recently used entry, but only admits a new entry if it was requested more frequently than the
+     * entry it would evict. Frequencies are estimated with a TinyLFU sketch, so that a burst of one-time requests
+     * doesn't flush popular entries.
+     */
+    TINY_LFU
+}
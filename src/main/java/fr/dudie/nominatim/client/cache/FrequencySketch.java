@@ -0,0 +1,152 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch estimating how often keys were recently requested, used as the admission filter of the TinyLFU
+ * eviction policy.
+ * <p>
+ * Each key increments one counter in each of the {@value #DEPTH} rows, which hold about four counters per cache
+ * entry. The counters saturate at {@value #MAX_COUNT} and are all halved once the sketch recorded ten times as many
+ * increments as a row has counters, so that old popularity fades away. This class is not thread safe.
+ *
+ * @author Jeremie Huchet
+ */
+final class FrequencySketch {
+
+    /** The number of counters per key. */
+    private static final int DEPTH = 4;
+
+    /** The maximum value of a counter. */
+    private static final int MAX_COUNT = 15;
+
+    /** The seeds of the hash functions, one per row. */
+    private static final int[] SEEDS = { 0x97cb3127, 0xb3d7a7cd, 0x8f12ad35, 0xa4ba2af1 };
+
+    /** The counters, row after row. */
+    private final byte[] table;
+
+    /** The number of counters per row minus one, the number of counters per row is a power of two. */
+    private final int mask;
+
+    /** The number of increments after which the counters are halved. */
+    private final int sampleSize;
+
+    /** The number of increments since the counters were halved. */
+    private int additions;
+
+    /**
+     * @param capacity
+     *            the expected maximum number of entries in the cache
+     */
+    FrequencySketch(final long capacity) {
+        final int width = Integer.highestOneBit((int) Math.max(64, Math.min(4 * capacity, 1 << 24)) * 2 - 1);
+        this.table = new byte[width * DEPTH];
+        this.mask = width - 1;
+        this.sampleSize = (int) Math.min(10L * width, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Records a request for the given key.
+     *
+     * @param key
+     *            the requested key
+     */
+    void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            final int i = index(hash, row);
+            if (table[i] < MAX_COUNT) {
+                table[i]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Estimates how often the given key was recently requested.
+     *
+     * @param key
+     *            the key
+     * @return the estimated number of requests, between 0 and {@value #MAX_COUNT}
+     */
+    int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    /**
+     * Forgets all requests.
+     */
+    void clear() {
+        Arrays.fill(table, (byte) 0);
+        additions = 0;
+    }
+
+    /**
+     * Halves all counters.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) (table[i] >>> 1);
+        }
+        additions /= 2;
+    }
+
+    /**
+     * Gets the index of the counter of a key in a row.
+     *
+     * @param hash
+     *            the spread hash code of the key
+     * @param row
+     *            the row
+     * @return the index in {@link #table}
+     */
+    private int index(final int hash, final int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 17;
+        return row * (mask + 1) + (h & mask);
+    }
+
+    /**
+     * Spreads the bits of a hash code, so that keys with close hash codes don't share their counters.
+     *
+     * @param hashCode
+     *            the hash code
+     * @return the spread hash code
+     */
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
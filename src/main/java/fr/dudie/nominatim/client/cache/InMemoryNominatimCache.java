@@ -0,0 +1,379 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import fr.dudie.nominatim.client.Clock;
+
+/**
+ * A {@link NominatimCache} keeping entries in memory.
+ * <p>
+ * The cache is bounded by a number of entries and by the estimated size of the entries, and entries expire a fixed
+ * time after the response was received. When the cache is full, the least recently used entry is evicted, or the new
+ * entry is discarded when the {@link EvictionPolicy#TINY_LFU} policy estimates it is less popular than the entry it
+ * would replace.
+ *
+ * <pre>
+ * NominatimCache cache = InMemoryNominatimCache.builder()
+ *         .maximumEntries(10000)
+ *         .maximumWeight(64 * 1024 * 1024)
+ *         .expireAfterWrite(1, TimeUnit.DAYS)
+ *         .evictionPolicy(EvictionPolicy.TINY_LFU)
+ *         .build();
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class InMemoryNominatimCache implements NominatimCache {
+
+    /** The maximum number of entries. */
+    private final long maximumEntries;
+
+    /** The maximum estimated size of the entries, in bytes. */
+    private final long maximumWeight;
+
+    /** The time to live of an entry, in milliseconds. */
+    private final long timeToLive;
+
+    /** The time source. */
+    private final Clock clock;
+
+    /** The admission filter, <code>null</code> when the policy is {@link EvictionPolicy#LRU}. */
+    private final FrequencySketch sketch;
+
+    /** Guards the entries, the sketch and the counters. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The entries, from the least recently used to the most recently used. */
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    /** The estimated size of the entries, in bytes. */
+    private long weight;
+
+    /** The number of lookups which found an entry. */
+    private long hitCount;
+
+    /** The number of lookups which found no entry. */
+    private long missCount;
+
+    /** The number of evicted entries. */
+    private long evictionCount;
+
+    /** The number of expired entries. */
+    private long expirationCount;
+
+    /**
+     * Creates a cache from a builder.
+     *
+     * @param builder
+     *            the builder
+     */
+    private InMemoryNominatimCache(final Builder builder) {
+        this.maximumEntries = builder.maximumEntries;
+        this.maximumWeight = builder.maximumWeight;
+        this.timeToLive = builder.timeToLive;
+        this.clock = builder.clock;
+        this.sketch = builder.evictionPolicy == EvictionPolicy.TINY_LFU ? new FrequencySketch(maximumEntries) : null;
+    }
+
+    /**
+     * Creates a builder for an in-memory cache.
+     *
+     * @return a builder, configured with 10000 entries, no weight limit, no expiration and the
+     *         {@link EvictionPolicy#LRU} policy
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#get(java.lang.String)
+     */
+    @Override
+    public CacheEntry get(final String key) {
+
+        lock.lock();
+        try {
+            if (null != sketch) {
+                sketch.increment(key);
+            }
+            final CacheEntry entry = entries.get(key);
+            if (null == entry) {
+                missCount++;
+                return null;
+            }
+            if (isExpired(entry, clock.currentTimeMillis())) {
+                remove(key);
+                expirationCount++;
+                missCount++;
+                return null;
+            }
+            hitCount++;
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#put(java.lang.String,
+     *      fr.dudie.nominatim.client.cache.CacheEntry)
+     */
+    @Override
+    public void put(final String key, final CacheEntry entry) {
+
+        if (entry.getWeight() > maximumWeight || isExpired(entry, clock.currentTimeMillis())) {
+            return;
+        }
+        lock.lock();
+        try {
+            final boolean update = null != remove(key);
+            // select the victims first, so that a rejected candidate evicts nothing
+            final int candidateFrequency = null == sketch ? 0 : sketch.frequency(key);
+            int size = entries.size();
+            long remainingWeight = weight;
+            int victims = 0;
+            for (final Map.Entry<String, CacheEntry> victim : entries.entrySet()) {
+                if (size < maximumEntries && remainingWeight + entry.getWeight() <= maximumWeight) {
+                    break;
+                }
+                if (!update && null != sketch && candidateFrequency <= sketch.frequency(victim.getKey())) {
+                    return;
+                }
+                size--;
+                remainingWeight -= victim.getValue().getWeight();
+                victims++;
+            }
+            final Iterator<Map.Entry<String, CacheEntry>> eldest = entries.entrySet().iterator();
+            for (int i = 0; i < victims; i++) {
+                final Map.Entry<String, CacheEntry> victim = eldest.next();
+                eldest.remove();
+                weight -= victim.getValue().getWeight();
+                evictionCount++;
+            }
+            entries.put(key, entry);
+            weight += entry.getWeight();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#invalidate(java.lang.String)
+     */
+    @Override
+    public void invalidate(final String key) {
+
+        lock.lock();
+        try {
+            remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#clear()
+     */
+    @Override
+    public void clear() {
+
+        lock.lock();
+        try {
+            entries.clear();
+            weight = 0;
+            if (null != sketch) {
+                sketch.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#getStats()
+     */
+    @Override
+    public CacheStats getStats() {
+
+        lock.lock();
+        try {
+            return new CacheStats(hitCount, missCount, evictionCount, expirationCount, entries.size(), weight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an entry, the lock must be held.
+     *
+     * @param key
+     *            the entry key
+     * @return the removed entry, or <code>null</code>
+     */
+    private CacheEntry remove(final String key) {
+
+        final CacheEntry removed = entries.remove(key);
+        if (null != removed) {
+            weight -= removed.getWeight();
+        }
+        return removed;
+    }
+
+    /**
+     * Checks whether an entry expired.
+     *
+     * @param entry
+     *            the entry
+     * @param now
+     *            the current time, in milliseconds since the epoch
+     * @return <code>true</code> if the entry expired
+     */
+    private boolean isExpired(final CacheEntry entry, final long now) {
+        return now - entry.getCreatedAt() >= timeToLive;
+    }
+
+    /**
+     * Builds an {@link InMemoryNominatimCache}.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The maximum number of entries. */
+        private long maximumEntries = 10000;
+
+        /** The maximum estimated size of the entries, in bytes. */
+        private long maximumWeight = Long.MAX_VALUE;
+
+        /** The time to live of an entry, in milliseconds. */
+        private long timeToLive = Long.MAX_VALUE;
+
+        /** The eviction policy. */
+        private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+
+        /** The time source. */
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Hidden constructor, use {@link InMemoryNominatimCache#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of entries.
+         *
+         * @param maximumEntries
+         *            the maximum number of entries
+         * @return this builder
+         */
+        public Builder maximumEntries(final long maximumEntries) {
+            if (maximumEntries <= 0) {
+                throw new IllegalArgumentException("maximumEntries must be positive: " + maximumEntries);
+            }
+            this.maximumEntries = maximumEntries;
+            return this;
+        }
+
+        /**
+         * Sets the maximum estimated size of the entries.
+         *
+         * @param maximumWeight
+         *            the maximum estimated size of the entries, in bytes
+         * @return this builder
+         */
+        public Builder maximumWeight(final long maximumWeight) {
+            if (maximumWeight <= 0) {
+                throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+            }
+            this.maximumWeight = maximumWeight;
+            return this;
+        }
+
+        /**
+         * Sets the time after which an entry expires, counted from the time the response was received.
+         *
+         * @param duration
+         *            the time to live
+         * @param unit
+         *            the time unit of the duration
+         * @return this builder
+         */
+        public Builder expireAfterWrite(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("duration must be positive: " + duration);
+            }
+            this.timeToLive = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the eviction policy.
+         *
+         * @param evictionPolicy
+         *            the eviction policy
+         * @return this builder
+         */
+        public Builder evictionPolicy(final EvictionPolicy evictionPolicy) {
+            this.evictionPolicy = evictionPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the time source.
+         *
+         * @param clock
+         *            the time source
+         * @return this builder
+         */
+        public Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new cache
+         */
+        public InMemoryNominatimCache build() {
+            return new InMemoryNominatimCache(this);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An open addressing hash table stored in a memory-mapped file, mapping the hash of a key to the offset of its record
+ * in the log of a {@link DiskNominatimCache}.
+ * <p>
+ * The file starts with a header followed by the slots. A slot holds the 64 bits hash of a key and the offset of its
+ * record, 0 for a free slot and -1 for a removed entry. Different keys may have the same hash: the caller tells
+ * whether the record at an offset has the searched key. Collisions are resolved by linear probing.
+ * <p>
+ * The header records whether the index was closed cleanly, and the length of the log it covers: an index which
+ * wasn't closed cleanly may miss entries or point to records which were never written, it must be rebuilt from the
+ * log.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+final class MappedIndex implements Closeable {
+
+    /** The magic number identifying an index file. */
+    private static final int MAGIC = 0x4e4f4d49;
+
+    /** The version of the file format. */
+    private static final int VERSION = 1;
+
+    /** The size of the header, in bytes. */
+    private static final int HEADER_SIZE = 64;
+
+    /** The size of a slot, in bytes. */
+    private static final int SLOT_SIZE = 16;
+
+    /** The largest number of slots, so that the file can be mapped at once. */
+    static final int MAX_CAPACITY = 1 << 26;
+
+    /** The offset of a free slot. */
+    private static final long FREE = 0;
+
+    /** The offset of a removed entry. */
+    private static final long REMOVED = -1;
+
+    /** The position of the magic number in the header. */
+    private static final int MAGIC_POSITION = 0;
+
+    /** The position of the version in the header. */
+    private static final int VERSION_POSITION = 4;
+
+    /** The position of the number of slots in the header. */
+    private static final int CAPACITY_POSITION = 8;
+
+    /** The position of the clean flag in the header. */
+    private static final int CLEAN_POSITION = 12;
+
+    /** The position of the length of the log covered by the index in the header. */
+    private static final int LOG_LENGTH_POSITION = 16;
+
+    /** The position of the number of entries in the header. */
+    private static final int SIZE_POSITION = 24;
+
+    /** The position of the number of used slots in the header. */
+    private static final int USED_POSITION = 32;
+
+    /** The position of the size of the obsolete records in the header. */
+    private static final int GARBAGE_POSITION = 40;
+
+    /**
+     * Tells whether the record at an offset has the searched key.
+     */
+    interface KeyMatcher {
+
+        /**
+         * @param offset
+         *            the offset of a record whose key has the searched hash
+         * @return true if the record has the searched key
+         * @throws IOException
+         *             the record can't be read
+         */
+        boolean matches(long offset) throws IOException;
+    }
+
+    /** The file channel, kept open until the index is closed. */
+    private final FileChannel channel;
+
+    /** The mapped file. */
+    private final MappedByteBuffer buffer;
+
+    /** The number of slots, a power of 2. */
+    private final int capacity;
+
+    /**
+     * @param channel
+     *            the file channel
+     * @param buffer
+     *            the mapped file
+     * @param capacity
+     *            the number of slots
+     */
+    private MappedIndex(final FileChannel channel, final MappedByteBuffer buffer, final int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates an empty index, replacing the file if it exists.
+     *
+     * @param file
+     *            the index file
+     * @param capacity
+     *            the minimum number of slots
+     * @return the index
+     * @throws IOException
+     *             the file can't be created
+     */
+    static MappedIndex create(final Path file, final int capacity) throws IOException {
+
+        final int slots = Math.min(MAX_CAPACITY, Integer.highestOneBit(Math.max(16, capacity) - 1) << 1);
+        Files.deleteIfExists(file);
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+            buffer.putInt(MAGIC_POSITION, MAGIC);
+            buffer.putInt(VERSION_POSITION, VERSION);
+            buffer.putInt(CAPACITY_POSITION, slots);
+            return new MappedIndex(channel, buffer, slots);
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing index.
+     *
+     * @param file
+     *            the index file
+     * @return the index, or <code>null</code> if the file doesn't exist or isn't a valid index
+     * @throws IOException
+     *             the file can't be read
+     */
+    static MappedIndex open(final Path file) throws IOException {
+
+        if (!Files.isRegularFile(file) || Files.size(file) < HEADER_SIZE) {
+            return null;
+        }
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long length = channel.size();
+            final MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, Math.min(length, Integer.MAX_VALUE));
+            final int slots = buffer.getInt(CAPACITY_POSITION);
+            if (MAGIC == buffer.getInt(MAGIC_POSITION) && VERSION == buffer.getInt(VERSION_POSITION) && slots > 0
+                    && slots <= MAX_CAPACITY && 0 == (slots & slots - 1)
+                    && length == HEADER_SIZE + (long) slots * SLOT_SIZE) {
+                return new MappedIndex(channel, buffer, slots);
+            }
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    /**
+     * @return the number of slots
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    long getSize() {
+        return buffer.getLong(SIZE_POSITION);
+    }
+
+    /**
+     * @return whether one more entry can be added without degrading the lookups
+     */
+    boolean isFull() {
+        return buffer.getLong(USED_POSITION) + 1 > capacity / 4L * 3;
+    }
+
+    /**
+     * @return whether the index was closed cleanly
+     */
+    boolean isClean() {
+        return 0 != buffer.getInt(CLEAN_POSITION);
+    }
+
+    /**
+     * Sets whether the index is consistent with the log, and writes the header to the disk.
+     *
+     * @param clean
+     *            true if the index is consistent with the log
+     * @throws IOException
+     *             the header can't be written
+     */
+    void setClean(final boolean clean) throws IOException {
+        buffer.putInt(CLEAN_POSITION, clean ? 1 : 0);
+        buffer.force();
+    }
+
+    /**
+     * @return the length of the log covered by the index
+     */
+    long getLogLength() {
+        return buffer.getLong(LOG_LENGTH_POSITION);
+    }
+
+    /**
+     * @param logLength
+     *            the length of the log covered by the index
+     */
+    void setLogLength(final long logLength) {
+        buffer.putLong(LOG_LENGTH_POSITION, logLength);
+    }
+
+    /**
+     * @return the size of the obsolete records of the log, in bytes
+     */
+    long getGarbage() {
+        return buffer.getLong(GARBAGE_POSITION);
+    }
+
+    /**
+     * @param garbage
+     *            the size of the obsolete records of the log, in bytes
+     */
+    void setGarbage(final long garbage) {
+        buffer.putLong(GARBAGE_POSITION, garbage);
+    }
+
+    /**
+     * Finds the record of a key.
+     *
+     * @param hash
+     *            the hash of the key
+     * @param matcher
+     *            tells whether a record has the key
+     * @return the offset of the record, or 0 if the key isn't in the index
+     * @throws IOException
+     *             a record can't be read
+     */
+    long get(final long hash, final KeyMatcher matcher) throws IOException {
+
+        for (int i = 0, slot = start(hash); i < capacity; i++, slot = slot + 1 & capacity - 1) {
+            final long offset = offset(slot);
+            if (FREE == offset) {
+                return FREE;
+            }
+            if (REMOVED != offset && hash(slot) == hash && matcher.matches(offset)) {
+                return offset;
+            }
+        }
+        return FREE;
+    }
+
+    /**
+     * Maps a key to a record, the index must not be {@link #isFull() full}.
+     *
+     * @param hash
+     *            the hash of the key
+     * @param offset
+     *            the offset of the record
+     * @param matcher
+     *            tells whether a record has the key, <code>null</code> if the key is known not to be in the index
+     * @return the offset of the previous record of the key, or 0
+     * @throws IOException
+     *             a record can't be read
+     */
+    long put(final long hash, final long offset, final KeyMatcher matcher) throws IOException {
+
+        int target = -1;
+        for (int i = 0, slot = start(hash); i < capacity; i++, slot = slot + 1 & capacity - 1) {
+            final long previous = offset(slot);
+            if (FREE == previous) {
+                if (-1 == target) {
+                    target = slot;
+                    buffer.putLong(USED_POSITION, buffer.getLong(USED_POSITION) + 1);
+                }
+                break;
+            }
+            if (REMOVED == previous) {
+                if (-1 == target) {
+                    target = slot;
+                }
+            } else if (null != matcher && hash(slot) == hash && matcher.matches(previous)) {
+                buffer.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, offset);
+                return previous;
+            }
+        }
+        buffer.putLong(HEADER_SIZE + target * SLOT_SIZE, hash);
+        buffer.putLong(HEADER_SIZE + target * SLOT_SIZE + 8, offset);
+        buffer.putLong(SIZE_POSITION, getSize() + 1);
+        return FREE;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param hash
+     *            the hash of the key
+     * @param matcher
+     *            tells whether a record has the key
+     * @return the offset of the record of the key, or 0 if the key wasn't in the index
+     * @throws IOException
+     *             a record can't be read
+     */
+    long remove(final long hash, final KeyMatcher matcher) throws IOException {
+
+        for (int i = 0, slot = start(hash); i < capacity; i++, slot = slot + 1 & capacity - 1) {
+            final long offset = offset(slot);
+            if (FREE == offset) {
+                return FREE;
+            }
+            if (REMOVED != offset && hash(slot) == hash && matcher.matches(offset)) {
+                buffer.putLong(HEADER_SIZE + slot * SLOT_SIZE + 8, REMOVED);
+                buffer.putLong(SIZE_POSITION, getSize() - 1);
+                return offset;
+            }
+        }
+        return FREE;
+    }
+
+    /**
+     * Lists the entries.
+     *
+     * @return the hashes and the record offsets of the entries, alternately
+     */
+    long[] entries() {
+
+        final long[] entries = new long[(int) getSize() * 2];
+        int i = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            final long offset = offset(slot);
+            if (FREE != offset && REMOVED != offset) {
+                entries[i++] = hash(slot);
+                entries[i++] = offset;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the changes to the disk.
+     *
+     * @throws IOException
+     *             the file can't be written
+     */
+    void force() throws IOException {
+        buffer.force();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.io.Closeable#close()
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @param hash
+     *            the hash of a key
+     * @return the first slot where the key may be
+     */
+    private int start(final long hash) {
+        return (int) (hash ^ hash >>> 32) & capacity - 1;
+    }
+
+    /**
+     * @param slot
+     *            a slot
+     * @return the hash stored in the slot
+     */
+    private long hash(final int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    /**
+     * @param slot
+     *            a slot
+     * @return the offset stored in the slot
+     */
+    private long offset(final int slot) {
+        return buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE + 8);
+    }
+}
@@ -0,0 +1,73 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * Stores Nominatim responses, keyed on the normalized request.
+ * <p>
+ * Implementations are responsible for their eviction policy and must be thread safe.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public interface NominatimCache {
+
+    /**
+     * Gets a cached response.
+     *
+     * @param key
+     *            the request key
+     * @return the cached entry, or <code>null</code> if there is no entry or it expired
+     */
+    CacheEntry get(String key);
+
+    /**
+     * Stores a response. The cache may decline to store it, according to its eviction policy.
+     *
+     * @param key
+     *            the request key
+     * @param entry
+     *            the response entry
+     */
+    void put(String key, CacheEntry entry);
+
+    /**
+     * Removes a cached response.
+     *
+     * @param key
+     *            the request key
+     */
+    void invalidate(String key);
+
+    /**
+     * Removes all cached responses.
+     */
+    void clear();
+
+    /**
+     * Gets a snapshot of the cache statistics.
+     *
+     * @return the cache statistics
+     */
+    CacheStats getStats();
+}
@@ -0,0 +1,47 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import fr.dudie.nominatim.client.request.SearchQuery;
+
+/**
+ * Builds the canonical form of search queries, so that queries written differently but meaning the same share a
+ * cache entry.
+ * <p>
+ * The canonical query only builds the cache key: the server still receives the query as it was written.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ * @see CachingNominatimClient#setQueryNormalizer(QueryNormalizer)
+ */
+public interface QueryNormalizer {
+
+    /**
+     * Builds the canonical form of a search query.
+     *
+     * @param query
+     *            the query, which must not be modified
+     * @return an equivalent query in canonical form, may be the given query
+     */
+    SearchQuery normalize(SearchQuery query);
+}
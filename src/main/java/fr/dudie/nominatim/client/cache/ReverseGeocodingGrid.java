@@ -0,0 +1,137 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Arrays;
+
+/**
+ * Snaps reverse geocoding coordinates to the cells of a grid, so that close positions share a cache entry.
+ * <p>
+ * The grid is made of square cells measured in degrees, whose size depends on the zoom level of the request: the
+ * address of a building needs smaller cells than the name of a city. By default, a cell is
+ * <code>180 / 2^(zoom + 3)</code> degrees wide, that is about 10 meters at zoom 18 (building), 40 meters at zoom 16
+ * (major streets) and 2.4 kilometers at zoom 10 (city).
+ * <p>
+ * The cell sizes must be configured before the grid is given to a {@link CachingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class ReverseGeocodingGrid {
+
+    /** The highest zoom level supported by Nominatim. */
+    public static final int MAX_ZOOM = 18;
+
+    /** The zoom level used by Nominatim when a request doesn't specify one. */
+    public static final int DEFAULT_ZOOM = MAX_ZOOM;
+
+    /** The cell size for each zoom level, in degrees. */
+    private final double[] cellSizes = new double[MAX_ZOOM + 1];
+
+    /**
+     * Creates a grid with the default cell sizes.
+     */
+    public ReverseGeocodingGrid() {
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            cellSizes[zoom] = 180.0 / (1 << (zoom + 3));
+        }
+    }
+
+    /**
+     * Gets the cell size of a zoom level.
+     *
+     * @param zoom
+     *            the zoom level, values out of [0, {@value #MAX_ZOOM}] are clamped
+     * @return the cell size, in degrees
+     */
+    public double getCellSize(final int zoom) {
+        return cellSizes[clamp(zoom)];
+    }
+
+    /**
+     * Sets the cell size of a zoom level.
+     *
+     * @param zoom
+     *            the zoom level, between 0 and {@value #MAX_ZOOM}
+     * @param degrees
+     *            the cell size, in degrees
+     */
+    public void setCellSize(final int zoom, final double degrees) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom must be between 0 and " + MAX_ZOOM + ": " + zoom);
+        }
+        if (!(degrees > 0)) {
+            throw new IllegalArgumentException("cell size must be positive: " + degrees);
+        }
+        cellSizes[zoom] = degrees;
+    }
+
+    /**
+     * Sets the cell size of all zoom levels.
+     *
+     * @param degrees
+     *            the cell size, in degrees
+     */
+    public void setCellSize(final double degrees) {
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            setCellSize(zoom, degrees);
+        }
+    }
+
+    /**
+     * Gets an identifier of the cell containing a position.
+     *
+     * @param longitude
+     *            the longitude
+     * @param latitude
+     *            the latitude
+     * @param zoom
+     *            the zoom level, or <code>null</code> for the {@link #DEFAULT_ZOOM default zoom}
+     * @return an identifier of the cell, unique for the zoom level and the cell size
+     */
+    public String getCell(final double longitude, final double latitude, final Integer zoom) {
+
+        final int z = clamp(null == zoom ? DEFAULT_ZOOM : zoom);
+        final double size = cellSizes[z];
+        final long x = (long) Math.floor(longitude / size);
+        final long y = (long) Math.floor(latitude / size);
+        return new StringBuilder(48).append('z').append(z).append('/').append(size).append('/').append(x)
+                .append('/').append(y).toString();
+    }
+
+    /**
+     * Clamps a zoom level to [0, {@value #MAX_ZOOM}].
+     *
+     * @param zoom
+     *            the zoom level
+     * @return the clamped zoom level
+     */
+    private static int clamp(final int zoom) {
+        return Math.max(0, Math.min(MAX_ZOOM, zoom));
+    }
+
+    @Override
+    public String toString() {
+        return "ReverseGeocodingGrid" + Arrays.toString(cellSizes);
+    }
+}
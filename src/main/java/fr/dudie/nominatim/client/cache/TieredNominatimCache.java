@@ -0,0 +1,141 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * A {@link NominatimCache} made of a small and fast cache in front of a large and slower one, typically an
+ * {@link InMemoryNominatimCache} in front of a {@link DiskNominatimCache}.
+ * <p>
+ * Responses are written to both tiers. A lookup which misses the first tier is forwarded to the second one, and a
+ * response found there is copied to the first tier, so that the most used responses are served from memory while
+ * the other ones survive a restart.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class TieredNominatimCache implements NominatimCache {
+
+    /** The fast cache, looked up first. */
+    private final NominatimCache first;
+
+    /** The large cache, holding every response. */
+    private final NominatimCache second;
+
+    /**
+     * Creates a tiered cache.
+     *
+     * @param first
+     *            the fast cache, looked up first
+     * @param second
+     *            the large cache, holding every response
+     */
+    public TieredNominatimCache(final NominatimCache first, final NominatimCache second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * @return the fast cache, looked up first
+     */
+    public NominatimCache getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the large cache, holding every response
+     */
+    public NominatimCache getSecond() {
+        return second;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#get(java.lang.String)
+     */
+    @Override
+    public CacheEntry get(final String key) {
+
+        CacheEntry entry = first.get(key);
+        if (null == entry) {
+            entry = second.get(key);
+            if (null != entry) {
+                first.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#put(java.lang.String,
+     *      fr.dudie.nominatim.client.cache.CacheEntry)
+     */
+    @Override
+    public void put(final String key, final CacheEntry entry) {
+        first.put(key, entry);
+        second.put(key, entry);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#invalidate(java.lang.String)
+     */
+    @Override
+    public void invalidate(final String key) {
+        second.invalidate(key);
+        first.invalidate(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#clear()
+     */
+    @Override
+    public void clear() {
+        second.clear();
+        first.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A hit is a lookup answered by either tier, a miss a lookup answered by none. The size is the one of the second
+     * tier, which holds every response, and the weight is the one of the first tier.
+     *
+     * @see fr.dudie.nominatim.client.cache.NominatimCache#getStats()
+     */
+    @Override
+    public CacheStats getStats() {
+
+        final CacheStats firstStats = first.getStats();
+        final CacheStats secondStats = second.getStats();
+        return new CacheStats(firstStats.getHitCount() + secondStats.getHitCount(), secondStats.getMissCount(),
+                firstStats.getEvictionCount() + secondStats.getEvictionCount(),
+                firstStats.getExpirationCount() + secondStats.getExpirationCount(), secondStats.getSize(),
+                firstStats.getWeight());
+    }
+}
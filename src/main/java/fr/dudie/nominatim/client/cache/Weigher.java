@@ -0,0 +1,157 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.List;
+
+import fr.dudie.nominatim.model.Address;
+import fr.dudie.nominatim.model.Element;
+import fr.dudie.nominatim.model.LazyGeometry;
+
+/**
+ * Estimates the size of Nominatim responses in memory.
+ * <p>
+ * The estimate assumes a 64 bits JVM with compressed references, it is meant to bound the cache memory footprint,
+ * not to be exact.
+ *
+ * @author Jeremie Huchet
+ */
+final class Weigher {
+
+    /** The size of an object header. */
+    private static final int HEADER = 16;
+
+    /** The size of an {@link Address} without its referenced objects. */
+    private static final int ADDRESS = 112;
+
+    /** The size of a {@link fr.dudie.nominatim.model.BoundingBox}. */
+    private static final int BOUNDING_BOX = HEADER + 4 * 8;
+
+    /** The size of a {@link fr.dudie.nominatim.model.PackedPolygon} without its points. */
+    private static final int PACKED_POLYGON = HEADER + 8 + HEADER;
+
+    /** The size of a JTS geometry coordinate, including its reference. */
+    private static final int COORDINATE = 4 + HEADER + 3 * 8;
+
+    /** The size of a JTS geometry without its coordinates. */
+    private static final int GEOMETRY = 64;
+
+    /**
+     * Utility class.
+     */
+    private Weigher() {
+    }
+
+    /**
+     * Estimates the size of a list of addresses.
+     *
+     * @param addresses
+     *            the addresses
+     * @return the estimated size, in bytes
+     */
+    static long weigh(final List<Address> addresses) {
+
+        long weight = HEADER + 8 + array(addresses.size());
+        for (final Address address : addresses) {
+            weight += weigh(address);
+        }
+        return weight;
+    }
+
+    /**
+     * Estimates the size of an address.
+     *
+     * @param address
+     *            the address
+     * @return the estimated size, in bytes
+     */
+    static long weigh(final Address address) {
+
+        long weight = ADDRESS;
+        weight += string(address.getLicence());
+        weight += string(address.getOsmType());
+        weight += string(address.getOsmId());
+        weight += string(address.getDisplayName());
+        weight += string(address.getElementClass());
+        weight += string(address.getElementType());
+        weight += string(address.getWkt());
+        if (null != address.getBoundingBox()) {
+            weight += BOUNDING_BOX;
+        }
+        if (null != address.getPolygon()) {
+            weight += PACKED_POLYGON + 8L * address.getPolygon().size();
+        }
+        final LazyGeometry geojson = address.getLazyGeojson();
+        if (null != geojson) {
+            // only weigh what is held: weighing the decoded geometry would decode it
+            weight += geojson.isDecoded() ? GEOMETRY + (long) geojson.getGeometry().getNumPoints() * COORDINATE
+                    : string(geojson.getJson());
+        }
+        weight += elements(address.getAddressElements());
+        weight += elements(address.getNameDetails());
+        return weight;
+    }
+
+    /**
+     * Estimates the size of an array of elements.
+     *
+     * @param elements
+     *            the elements, may be <code>null</code>
+     * @return the estimated size, in bytes
+     */
+    private static long elements(final Element[] elements) {
+
+        if (null == elements) {
+            return 0;
+        }
+        long weight = array(elements.length);
+        for (final Element e : elements) {
+            if (null != e) {
+                weight += HEADER + 8 + string(e.getKey()) + string(e.getValue());
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Estimates the size of an array of references.
+     *
+     * @param length
+     *            the array length
+     * @return the estimated size, in bytes
+     */
+    private static long array(final int length) {
+        return HEADER + 4L * length;
+    }
+
+    /**
+     * Estimates the size of a string.
+     *
+     * @param s
+     *            the string, may be <code>null</code>
+     * @return the estimated size, in bytes
+     */
+    private static long string(final String s) {
+        return null == s ? 0 : HEADER + 8 + HEADER + 2L * s.length();
+    }
+}
@@ -0,0 +1,167 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The measurements of the requests sent to an endpoint during a period.
+ * <p>
+ * Durations are in nanoseconds.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class EndpointMetrics {
+
+    /** The request encoding durations. */
+    private final HistogramSnapshot encodeTime;
+
+    /** The times to first byte. */
+    private final HistogramSnapshot timeToFirstByte;
+
+    /** The response parsing durations. */
+    private final HistogramSnapshot parseTime;
+
+    /** The request durations. */
+    private final HistogramSnapshot totalTime;
+
+    /** The response sizes, in bytes. */
+    private final HistogramSnapshot responseBytes;
+
+    /** The response sizes on the wire, in bytes. */
+    private final HistogramSnapshot wireBytes;
+
+    /** The number of errors, by class name. */
+    private final Map<String, Long> errors;
+
+    /**
+     * @param encodeTime
+     *            the request encoding durations
+     * @param timeToFirstByte
+     *            the times to first byte
+     * @param parseTime
+     *            the response parsing durations
+     * @param totalTime
+     *            the request durations
+     * @param responseBytes
+     *            the response sizes, in bytes
+     * @param wireBytes
+     *            the response sizes on the wire, in bytes
+     * @param errors
+     *            the number of errors, by class name
+     */
+    EndpointMetrics(final HistogramSnapshot encodeTime, final HistogramSnapshot timeToFirstByte,
+            final HistogramSnapshot parseTime, final HistogramSnapshot totalTime,
+            final HistogramSnapshot responseBytes, final HistogramSnapshot wireBytes, final Map<String, Long> errors) {
+        this.encodeTime = encodeTime;
+        this.timeToFirstByte = timeToFirstByte;
+        this.parseTime = parseTime;
+        this.totalTime = totalTime;
+        this.responseBytes = responseBytes;
+        this.wireBytes = wireBytes;
+        this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * @return the number of requests, successful or not
+     */
+    public long getRequestCount() {
+        return totalTime.getCount();
+    }
+
+    /**
+     * @return the number of failed requests
+     */
+    public long getErrorCount() {
+        long count = 0;
+        for (final Long c : errors.values()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of failed requests, by error class name
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the time spent building the request URLs
+     */
+    public HistogramSnapshot getEncodeTime() {
+        return encodeTime;
+    }
+
+    /**
+     * @return the time between the start of the requests and the reception of the response headers
+     */
+    public HistogramSnapshot getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @return the time spent reading and parsing the response bodies
+     */
+    public HistogramSnapshot getParseTime() {
+        return parseTime;
+    }
+
+    /**
+     * @return the request durations
+     */
+    public HistogramSnapshot getTotalTime() {
+        return totalTime;
+    }
+
+    /**
+     * @return the response body sizes, in bytes
+     */
+    public HistogramSnapshot getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return the response body sizes on the wire, before decompression, in bytes
+     */
+    public HistogramSnapshot getWireBytes() {
+        return wireBytes;
+    }
+
+    /**
+     * @return the total response size divided by the total size on the wire, 1 when responses are not compressed
+     */
+    public double getCompressionRatio() {
+        return 0 == wireBytes.getSum() ? 1 : responseBytes.getSum() / (double) wireBytes.getSum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("requests=%s errors=%s total=[%s] ttfb=[%s] parse=[%s] encode=[%s] bytes=[%s] "
+                + "wire=[%s]", getRequestCount(), errors, totalTime, timeToFirstByte, parseTime, encodeTime,
+                responseBytes, wireBytes);
+    }
+}
@@ -0,0 +1,158 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of positive values, with a relative precision better than 1.6%.
+ * <p>
+ * Like an HDR histogram, values are counted in buckets whose width grows with the magnitude of the values: values
+ * below 128 are counted exactly, and each power of two above is split in 64 buckets. Recording a value is lock free
+ * and doesn't allocate, and the memory footprint is fixed (about 18 KB). Values above 2<sup>40</sup> (18 minutes in
+ * nanoseconds) are counted as 2<sup>40</sup>, min and max stay exact.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class Histogram {
+
+    /** The number of bits of the values counted exactly. */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /** The number of buckets per power of two. */
+    private static final int HALF_SUB_BUCKET_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+
+    /** The highest value counted in its own bucket. */
+    static final long MAX_TRACKABLE_VALUE = 1L << 40;
+
+    /** The number of buckets. */
+    static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_VALUE) + 1;
+
+    /** The counts, by bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** The sum of the recorded values. */
+    private final AtomicLong sum = new AtomicLong();
+
+    /** The lowest recorded value. */
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+
+    /** The highest recorded value. */
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Records a value.
+     *
+     * @param value
+     *            the value, negative values are recorded as 0
+     */
+    public void record(final long value) {
+
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(indexOf(Math.min(v, MAX_TRACKABLE_VALUE)));
+        sum.addAndGet(v);
+        long current;
+        while (v < (current = min.get()) && !min.compareAndSet(current, v)) {
+            // retry
+        }
+        while (v > (current = max.get()) && !max.compareAndSet(current, v)) {
+            // retry
+        }
+    }
+
+    /**
+     * Copies the recorded values. The copy may miss values recorded concurrently.
+     *
+     * @return a snapshot of the histogram
+     */
+    public HistogramSnapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Copies the recorded values and forgets them, to get the distribution of the values recorded since the last
+     * snapshot. A value recorded concurrently is counted in this snapshot or in the next one, but its min and max
+     * may be counted in both.
+     *
+     * @return a snapshot of the histogram
+     */
+    public HistogramSnapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    /**
+     * Copies the recorded values.
+     *
+     * @param reset
+     *            whether to forget the recorded values
+     * @return a snapshot of the histogram
+     */
+    private HistogramSnapshot snapshot(final boolean reset) {
+
+        final long[] copy = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = reset ? counts.getAndSet(i, 0) : counts.get(i);
+            total += copy[i];
+        }
+        final long s = reset ? sum.getAndSet(0) : sum.get();
+        final long lo = reset ? min.getAndSet(Long.MAX_VALUE) : min.get();
+        final long hi = reset ? max.getAndSet(Long.MIN_VALUE) : max.get();
+        return new HistogramSnapshot(copy, total, s, total == 0 ? 0 : lo, total == 0 ? 0 : hi);
+    }
+
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value
+     *            a value between 0 and {@link #MAX_TRACKABLE_VALUE}
+     * @return the bucket index
+     */
+    static int indexOf(final long value) {
+
+        if (value < 2 * HALF_SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Gets the highest value counted in a bucket.
+     *
+     * @param index
+     *            the bucket index
+     * @return the highest value of the bucket
+     */
+    static long highestValueOf(final int index) {
+
+        if (index < 2 * HALF_SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        final long subBucket = index % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,150 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable copy of the values recorded in a {@link Histogram}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class HistogramSnapshot {
+
+    /** The counts, by bucket. */
+    private final long[] counts;
+
+    /** The number of values. */
+    private final long count;
+
+    /** The sum of the values. */
+    private final long sum;
+
+    /** The lowest value. */
+    private final long min;
+
+    /** The highest value. */
+    private final long max;
+
+    /**
+     * @param counts
+     *            the counts, by bucket
+     * @param count
+     *            the number of values
+     * @param sum
+     *            the sum of the values
+     * @param min
+     *            the lowest value
+     * @param max
+     *            the highest value
+     */
+    HistogramSnapshot(final long[] counts, final long count, final long sum, final long min, final long max) {
+        this.counts = counts;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the sum of the values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the lowest value, 0 when there is no value
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * @return the highest value, 0 when there is no value
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the mean of the values, 0 when there is no value
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Gets the value below which a percentage of the values fall.
+     *
+     * @param percentile
+     *            the percentage, between 0 and 100
+     * @return the highest value of the bucket holding the percentile, capped by the highest value, 0 when there is no
+     *         value
+     */
+    public long getValueAtPercentile(final double percentile) {
+
+        if (count == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(min, Math.min(max, Histogram.highestValueOf(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Formats the distribution of durations recorded in nanoseconds.
+     *
+     * @param unit
+     *            the time unit of the formatted values
+     * @return the count, min, mean, median, 90th, 99th, 99.9th percentiles and max
+     */
+    public String toString(final TimeUnit unit) {
+        final double nanos = unit.toNanos(1);
+        return String.format("count=%s min=%.3f mean=%.3f p50=%.3f p90=%.3f p99=%.3f p999=%.3f max=%.3f (%s)",
+                count, min / nanos, getMean() / nanos, getValueAtPercentile(50) / nanos,
+                getValueAtPercentile(90) / nanos, getValueAtPercentile(99) / nanos,
+                getValueAtPercentile(99.9) / nanos, max / nanos, unit);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%s min=%s mean=%.1f p50=%s p90=%s p99=%s p999=%s max=%s", count, min, getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), max);
+    }
+}
@@ -0,0 +1,218 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fr.dudie.nominatim.client.Clock;
+
+/**
+ * A {@link NominatimMetrics} keeping histograms of the request measurements in memory, per endpoint.
+ * <p>
+ * Call {@link #snapshot()} to read the measurements recorded since the creation of the metrics, or
+ * {@link #snapshotAndReset()} from a scheduled task to publish the measurements of each period:
+ *
+ * <pre>
+ * InMemoryNominatimMetrics metrics = new InMemoryNominatimMetrics();
+ * client.setMetrics(metrics);
+ * scheduler.scheduleAtFixedRate(new Runnable() {
+ *     public void run() {
+ *         MetricsSnapshot snapshot = metrics.snapshotAndReset();
+ *         HistogramSnapshot latency = snapshot.get(Endpoint.SEARCH).getTotalTime();
+ *         LOGGER.info(&quot;search latency: {}&quot;, latency.toString(TimeUnit.MILLISECONDS));
+ *     }
+ * }, 1, 1, TimeUnit.MINUTES);
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class InMemoryNominatimMetrics implements NominatimMetrics {
+
+    /** The measurements, by endpoint. */
+    private final Map<Endpoint, Recorder> recorders = new EnumMap<Endpoint, Recorder>(Endpoint.class);
+
+    /** The time source. */
+    private final Clock clock;
+
+    /** The start of the current period, in milliseconds since the epoch. */
+    private final AtomicLong periodStart;
+
+    /**
+     * Creates empty metrics.
+     */
+    public InMemoryNominatimMetrics() {
+        this(Clock.SYSTEM);
+    }
+
+    /**
+     * Creates empty metrics.
+     *
+     * @param clock
+     *            the time source of the snapshot periods
+     */
+    public InMemoryNominatimMetrics(final Clock clock) {
+        this.clock = clock;
+        this.periodStart = new AtomicLong(clock.currentTimeMillis());
+        for (final Endpoint endpoint : Endpoint.values()) {
+            recorders.put(endpoint, new Recorder());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.metrics.NominatimMetrics#record(fr.dudie.nominatim.client.metrics.RequestSample)
+     */
+    @Override
+    public void record(final RequestSample sample) {
+
+        final Recorder recorder = recorders.get(sample.getEndpoint());
+        record(recorder.encodeTime, sample.getEncodeNanos());
+        record(recorder.timeToFirstByte, sample.getTimeToFirstByteNanos());
+        record(recorder.parseTime, sample.getParseNanos());
+        record(recorder.responseBytes, sample.getResponseBytes());
+        record(recorder.wireBytes, sample.getWireBytes());
+        recorder.totalTime.record(sample.getTotalNanos());
+        if (null != sample.getError()) {
+            AtomicLong errors = recorder.errors.get(sample.getError());
+            if (null == errors) {
+                final AtomicLong created = new AtomicLong();
+                errors = recorder.errors.putIfAbsent(sample.getError(), created);
+                if (null == errors) {
+                    errors = created;
+                }
+            }
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the measurement of a phase, unless the phase wasn't reached.
+     *
+     * @param histogram
+     *            the histogram of the phase
+     * @param value
+     *            the measurement, or {@link RequestSample#NOT_REACHED}
+     */
+    private static void record(final Histogram histogram, final long value) {
+        if (RequestSample.NOT_REACHED != value) {
+            histogram.record(value);
+        }
+    }
+
+    /**
+     * Reads the measurements recorded since the creation of the metrics, or since the last
+     * {@link #snapshotAndReset()}.
+     *
+     * @return the measurements
+     */
+    public MetricsSnapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Reads the measurements recorded since the creation of the metrics, or since the last
+     * {@link #snapshotAndReset()}, and starts a new period.
+     *
+     * @return the measurements
+     */
+    public MetricsSnapshot snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    /**
+     * Reads the measurements.
+     *
+     * @param reset
+     *            whether to start a new period
+     * @return the measurements
+     */
+    private MetricsSnapshot snapshot(final boolean reset) {
+
+        final long now = clock.currentTimeMillis();
+        final long start = reset ? periodStart.getAndSet(now) : periodStart.get();
+        final Map<Endpoint, EndpointMetrics> endpoints = new EnumMap<Endpoint, EndpointMetrics>(Endpoint.class);
+        for (final Map.Entry<Endpoint, Recorder> e : recorders.entrySet()) {
+            endpoints.put(e.getKey(), e.getValue().snapshot(reset));
+        }
+        return new MetricsSnapshot(start, now, endpoints);
+    }
+
+    /**
+     * The measurements of an endpoint.
+     */
+    private static final class Recorder {
+
+        /** The request encoding durations. */
+        private final Histogram encodeTime = new Histogram();
+
+        /** The times to first byte. */
+        private final Histogram timeToFirstByte = new Histogram();
+
+        /** The response parsing durations. */
+        private final Histogram parseTime = new Histogram();
+
+        /** The request durations. */
+        private final Histogram totalTime = new Histogram();
+
+        /** The response sizes. */
+        private final Histogram responseBytes = new Histogram();
+
+        /** The response sizes on the wire. */
+        private final Histogram wireBytes = new Histogram();
+
+        /** The number of errors, by class name. */
+        private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+        /**
+         * Copies the measurements.
+         *
+         * @param reset
+         *            whether to forget the measurements
+         * @return the measurements
+         */
+        private EndpointMetrics snapshot(final boolean reset) {
+
+            final Map<String, Long> errorCounts = new HashMap<String, Long>();
+            for (final Map.Entry<String, AtomicLong> e : errors.entrySet()) {
+                final long count = reset ? e.getValue().getAndSet(0) : e.getValue().get();
+                if (count > 0) {
+                    errorCounts.put(e.getKey(), count);
+                }
+            }
+            if (reset) {
+                return new EndpointMetrics(encodeTime.snapshotAndReset(), timeToFirstByte.snapshotAndReset(),
+                        parseTime.snapshotAndReset(), totalTime.snapshotAndReset(),
+                        responseBytes.snapshotAndReset(), wireBytes.snapshotAndReset(), errorCounts);
+            }
+            return new EndpointMetrics(encodeTime.snapshot(), timeToFirstByte.snapshot(), parseTime.snapshot(),
+                    totalTime.snapshot(), responseBytes.snapshot(), wireBytes.snapshot(), errorCounts);
+        }
+    }
+}
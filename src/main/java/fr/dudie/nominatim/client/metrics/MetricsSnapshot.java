@@ -0,0 +1,100 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The measurements of the requests sent to each endpoint during a period.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class MetricsSnapshot {
+
+    /** The start of the period, in milliseconds since the epoch. */
+    private final long start;
+
+    /** The end of the period, in milliseconds since the epoch. */
+    private final long end;
+
+    /** The measurements, by endpoint. */
+    private final Map<Endpoint, EndpointMetrics> endpoints;
+
+    /**
+     * @param start
+     *            the start of the period, in milliseconds since the epoch
+     * @param end
+     *            the end of the period, in milliseconds since the epoch
+     * @param endpoints
+     *            the measurements, by endpoint
+     */
+    MetricsSnapshot(final long start, final long end, final Map<Endpoint, EndpointMetrics> endpoints) {
+        this.start = start;
+        this.end = end;
+        this.endpoints = Collections.unmodifiableMap(endpoints);
+    }
+
+    /**
+     * @return the start of the period, in milliseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the end of the period, in milliseconds since the epoch
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @param endpoint
+     *            the endpoint
+     * @return the measurements of the endpoint
+     */
+    public EndpointMetrics get(final Endpoint endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * @param endpoint
+     *            the endpoint
+     * @return the number of requests per second sent to the endpoint during the period
+     */
+    public double getThroughput(final Endpoint endpoint) {
+        final long millis = Math.max(1, end - start);
+        return endpoints.get(endpoint).getRequestCount() * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder s = new StringBuilder("MetricsSnapshot[").append(end - start).append("ms");
+        for (final Map.Entry<Endpoint, EndpointMetrics> e : endpoints.entrySet()) {
+            s.append(", ").append(e.getKey()).append("={").append(e.getValue()).append('}');
+        }
+        return s.append(']').toString();
+    }
+}
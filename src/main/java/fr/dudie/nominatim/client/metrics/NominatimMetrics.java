@@ -0,0 +1,50 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * Receives measurements of the requests sent to Nominatim.
+ * <p>
+ * Implementations are called by the request threads, they must be thread safe and fast.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public interface NominatimMetrics {
+
+    /** Ignores all measurements. */
+    NominatimMetrics NOOP = new NominatimMetrics() {
+
+        @Override
+        public void record(final RequestSample sample) {
+        }
+    };
+
+    /**
+     * Records the measurements of a completed request.
+     *
+     * @param sample
+     *            the measurements
+     */
+    void record(RequestSample sample);
+}
@@ -0,0 +1,158 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+/**
+ * The measurements of a request sent to Nominatim.
+ * <p>
+ * Durations are in nanoseconds. A phase which wasn't reached, like parsing after a connection failure, has a
+ * {@link #NOT_REACHED} duration and byte counts, so that it doesn't count as a 0 measurement.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class RequestSample {
+
+    /** The value of the measurements of a phase which wasn't reached. */
+    public static final long NOT_REACHED = -1;
+
+    /** The endpoint. */
+    private final Endpoint endpoint;
+
+    /** The time spent building the request URL. */
+    private final long encodeNanos;
+
+    /** The time between the start of the request and the reception of the response headers. */
+    private final long timeToFirstByteNanos;
+
+    /** The time spent reading and parsing the response body. */
+    private final long parseNanos;
+
+    /** The time between the start of the request and its completion. */
+    private final long totalNanos;
+
+    /** The number of response body bytes read, after decompression. */
+    private final long responseBytes;
+
+    /** The number of response body bytes received, before decompression. */
+    private final long wireBytes;
+
+    /** The class name of the error, <code>null</code> if the request succeeded. */
+    private final String error;
+
+    /**
+     * @param endpoint
+     *            the endpoint
+     * @param encodeNanos
+     *            the time spent building the request URL
+     * @param timeToFirstByteNanos
+     *            the time between the start of the request and the reception of the response headers
+     * @param parseNanos
+     *            the time spent reading and parsing the response body
+     * @param totalNanos
+     *            the time between the start of the request and its completion
+     * @param responseBytes
+     *            the number of response body bytes read, after decompression
+     * @param wireBytes
+     *            the number of response body bytes received, before decompression
+     * @param error
+     *            the class name of the error, <code>null</code> if the request succeeded
+     */
+    public RequestSample(final Endpoint endpoint, final long encodeNanos, final long timeToFirstByteNanos,
+            final long parseNanos, final long totalNanos, final long responseBytes, final long wireBytes,
+            final String error) {
+        this.endpoint = endpoint;
+        this.encodeNanos = encodeNanos;
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+        this.parseNanos = parseNanos;
+        this.totalNanos = totalNanos;
+        this.responseBytes = responseBytes;
+        this.wireBytes = wireBytes;
+        this.error = error;
+    }
+
+    /**
+     * @return the endpoint
+     */
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the time spent building the request URL, in nanoseconds, or {@link #NOT_REACHED}
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    /**
+     * @return the time between the start of the request and the reception of the response headers, in nanoseconds,
+     *         or {@link #NOT_REACHED}
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * @return the time spent reading and parsing the response body, in nanoseconds, or {@link #NOT_REACHED}
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return the time between the start of the request and its completion, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the number of response body bytes read, after decompression, or {@link #NOT_REACHED}
+     */
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * @return the number of response body bytes received, before decompression, equal to the response bytes when
+     *         the response isn't compressed, or {@link #NOT_REACHED}
+     */
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    /**
+     * @return the class name of the error, <code>null</code> if the request succeeded
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RequestSample[%s, encode=%sns, ttfb=%sns, parse=%sns, total=%sns, bytes=%s, wire=%s, "
+                + "error=%s]", endpoint, encodeNanos, timeToFirstByteNanos, parseNanos, totalNanos, responseBytes,
+                wireBytes, error);
+    }
+}
@@ -0,0 +1,118 @@
+package fr.dudie.nominatim.client.ratelimit;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import fr.dudie.nominatim.client.AbstractAsyncNominatimClient;
+import fr.dudie.nominatim.client.AsyncNominatimClient;
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * An {@link AsyncNominatimClient} decorator which never blocks the calling thread.
+ * <p>
+ * A request is sent only if the {@link RateLimiter} has a token available right now, see
+ * {@link RateLimiter#tryAcquire()}. Otherwise the returned future fails immediately with a
+ * {@link RateLimitExceededException}, leaving the caller free to retry later or to drop the request.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class RateLimitedAsyncNominatimClient extends AbstractAsyncNominatimClient {
+
+    /** The client sending the requests. */
+    private final AsyncNominatimClient delegate;
+
+    /** The rate limiter. */
+    private final RateLimiter limiter;
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     * @param limiter
+     *            the rate limiter, may be shared with other clients of the same server
+     */
+    public RateLimitedAsyncNominatimClient(final AsyncNominatimClient delegate, final RateLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return the rate limiter
+     */
+    public RateLimiter getRateLimiter() {
+        return limiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public CompletableFuture<List<Address>> search(final NominatimSearchRequest search) {
+        return ifAllowed(() -> delegate.search(search));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public CompletableFuture<Address> getAddress(final NominatimReverseRequest reverse) {
+        return ifAllowed(() -> delegate.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.AsyncNominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public CompletableFuture<List<Address>> lookupAddress(final NominatimLookupRequest lookup) {
+        return ifAllowed(() -> delegate.lookupAddress(lookup));
+    }
+
+    /**
+     * Sends a request if the rate limiter lets it through.
+     *
+     * @param request
+     *            sends the request
+     * @return the future result, or a failed future if the request was not sent
+     */
+    private <T> CompletableFuture<T> ifAllowed(final Supplier<CompletableFuture<T>> request) {
+
+        if (limiter.tryAcquire()) {
+            return request.get();
+        }
+        final CompletableFuture<T> rejected = new CompletableFuture<T>();
+        rejected.completeExceptionally(new RateLimitExceededException("no request allowed right now"));
+        return rejected;
+    }
+}
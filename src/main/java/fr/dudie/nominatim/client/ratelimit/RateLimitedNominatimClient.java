@@ -0,0 +1,102 @@
+package fr.dudie.nominatim.client.ratelimit;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import fr.dudie.nominatim.client.AbstractNominatimClient;
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator holding each request until the {@link RateLimiter} lets it through.
+ * <p>
+ * Callers wait for their turn in arrival order. A request which would wait longer than the maximum wait of the limiter
+ * fails with a {@link RateLimitExceededException} without being sent.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class RateLimitedNominatimClient extends AbstractNominatimClient {
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** The rate limiter. */
+    private final RateLimiter limiter;
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     * @param limiter
+     *            the rate limiter, may be shared with other clients of the same server
+     */
+    public RateLimitedNominatimClient(final NominatimClient delegate, final RateLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    /**
+     * @return the rate limiter
+     */
+    public RateLimiter getRateLimiter() {
+        return limiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        limiter.acquire();
+        return delegate.search(search);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        limiter.acquire();
+        return delegate.getAddress(reverse);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        limiter.acquire();
+        return delegate.lookupAddress(lookup);
+    }
+}
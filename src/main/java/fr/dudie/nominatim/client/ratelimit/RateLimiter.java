@@ -0,0 +1,316 @@
+package fr.dudie.nominatim.client.ratelimit;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import fr.dudie.nominatim.client.Clock;
+import fr.dudie.nominatim.client.metrics.Histogram;
+
+/**
+ * A token bucket limiting the rate of requests sent to a Nominatim server.
+ * <p>
+ * The bucket is refilled at a constant rate and holds up to <code>burst</code> tokens, so that an idle client can send
+ * a short burst of requests before being held to the sustained rate. When the bucket is empty, each caller reserves
+ * the next token to come, in arrival order, and waits for it without holding any lock: callers are served first come
+ * first served and a late caller can never take the token reserved by an earlier one.
+ * <p>
+ * Waiting is bounded: a caller which would have to wait longer than the maximum wait doesn't reserve anything and
+ * gets a {@link RateLimitExceededException}. {@link #tryAcquire()} never waits and is meant for non-blocking callers.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class RateLimiter {
+
+    /** Returned by {@link #reserve(long, long)} when no token was reserved. */
+    private static final long REJECTED = Long.MIN_VALUE;
+
+    /** The time between two tokens, in nanoseconds. */
+    private final double intervalNanos;
+
+    /** The maximum number of stored tokens. */
+    private final int burst;
+
+    /** The maximum time a caller waits for a token, in nanoseconds. */
+    private final long maxWaitNanos;
+
+    /** The time source. */
+    private final Clock clock;
+
+    /** Guards the bucket state, fair so that callers reserve their tokens in arrival order. */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /** The number of tokens in the bucket at {@link #nextFreeNanos}, including the fraction of the next one. */
+    private double storedTokens;
+
+    /** The time up to which the bucket state is computed, in the future when tokens are reserved. */
+    private long nextFreeNanos;
+
+    /** The number of callers waiting for their token. */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    /** The highest number of callers waiting at the same time. */
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /** The number of granted tokens. */
+    private final AtomicLong acquiredCount = new AtomicLong();
+
+    /** The number of refused tokens. */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /** The time callers waited for their token, in nanoseconds. */
+    private final Histogram waitTime = new Histogram();
+
+    /**
+     * @param builder
+     *            the configuration
+     */
+    private RateLimiter(final Builder builder) {
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / builder.permitsPerSecond;
+        this.burst = builder.burst;
+        this.maxWaitNanos = builder.maxWaitNanos;
+        this.clock = builder.clock;
+        this.storedTokens = builder.burst;
+        this.nextFreeNanos = clock.nanoTime();
+    }
+
+    /**
+     * Creates a builder for a limiter allowing 1 request per second, without burst and with a 1 minute maximum wait.
+     *
+     * @return a builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Takes a token, waiting for it if necessary.
+     *
+     * @throws RateLimitExceededException
+     *             the token would not be available within the maximum wait
+     * @throws InterruptedIOException
+     *             the thread was interrupted while waiting, its token is lost
+     */
+    public void acquire() throws RateLimitExceededException, InterruptedIOException {
+
+        final long now = clock.nanoTime();
+        final long waitUntil = reserve(now, maxWaitNanos);
+        if (waitUntil == REJECTED) {
+            rejectedCount.incrementAndGet();
+            throw new RateLimitExceededException("no request allowed within "
+                    + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+        }
+        acquiredCount.incrementAndGet();
+        if (waitUntil - now <= 0) {
+            waitTime.record(0);
+            return;
+        }
+
+        final int depth = queueDepth.incrementAndGet();
+        updateMaxQueueDepth(depth);
+        try {
+            long remaining = waitUntil - now;
+            while (remaining > 0) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for the rate limiter");
+                }
+                remaining = waitUntil - clock.nanoTime();
+            }
+        } finally {
+            queueDepth.decrementAndGet();
+            waitTime.record(clock.nanoTime() - now);
+        }
+    }
+
+    /**
+     * Takes a token if one is available right now.
+     * <p>
+     * A token is only available when no caller is waiting, so that non-blocking callers don't overtake blocking ones.
+     *
+     * @return true if the token was taken, false if the request must not be sent
+     */
+    public boolean tryAcquire() {
+
+        if (reserve(clock.nanoTime(), 0) == REJECTED) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        acquiredCount.incrementAndGet();
+        waitTime.record(0);
+        return true;
+    }
+
+    /**
+     * Reserves the next token, unless it comes too late.
+     *
+     * @param now
+     *            the current time, in nanoseconds
+     * @param maxWait
+     *            the maximum wait, in nanoseconds
+     * @return the time at which the reserved token is available, or {@link #REJECTED} if nothing was reserved
+     */
+    private long reserve(final long now, final long maxWait) {
+
+        lock.lock();
+        try {
+            if (now - nextFreeNanos > 0) {
+                storedTokens = Math.min(burst, storedTokens + (now - nextFreeNanos) / intervalNanos);
+                nextFreeNanos = now;
+            }
+            final double fromBucket = Math.min(1, storedTokens);
+            final long waitUntil = nextFreeNanos + (long) ((1 - fromBucket) * intervalNanos);
+            if (waitUntil - now > maxWait) {
+                return REJECTED;
+            }
+            storedTokens -= fromBucket;
+            nextFreeNanos = waitUntil;
+            return waitUntil;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a queue depth if it is the highest seen.
+     *
+     * @param depth
+     *            the current queue depth
+     */
+    private void updateMaxQueueDepth(final int depth) {
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Gets the current statistics of this limiter.
+     *
+     * @return a snapshot of the statistics
+     */
+    public RateLimiterStats getStats() {
+        return new RateLimiterStats(acquiredCount.get(), rejectedCount.get(), queueDepth.get(),
+                maxQueueDepth.get(), waitTime.snapshot());
+    }
+
+    /**
+     * Builds a {@link RateLimiter}.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The sustained rate. */
+        private double permitsPerSecond = 1;
+
+        /** The maximum number of requests sent at once after an idle period. */
+        private int burst = 1;
+
+        /** The maximum time a caller waits for a token, in nanoseconds. */
+        private long maxWaitNanos = TimeUnit.MINUTES.toNanos(1);
+
+        /** The time source. */
+        private Clock clock = Clock.SYSTEM;
+
+        /**
+         * Hidden constructor, use {@link RateLimiter#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Sets the sustained rate.
+         *
+         * @param permitsPerSecond
+         *            the number of requests allowed per second
+         * @return this builder
+         */
+        public Builder permitsPerSecond(final double permitsPerSecond) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests which can be sent at once after an idle period.
+         *
+         * @param burst
+         *            the size of the bucket, at least 1
+         * @return this builder
+         */
+        public Builder burst(final int burst) {
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1: " + burst);
+            }
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a caller waits for its turn before being rejected.
+         *
+         * @param duration
+         *            the maximum wait, 0 to never wait
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder maxWait(final long duration, final TimeUnit unit) {
+            if (duration < 0) {
+                throw new IllegalArgumentException("maxWait must not be negative: " + duration);
+            }
+            this.maxWaitNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Sets the time source, for tests.
+         *
+         * @param clock
+         *            the time source
+         * @return this builder
+         */
+        public Builder clock(final Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @return a new rate limiter
+         */
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+    }
+}
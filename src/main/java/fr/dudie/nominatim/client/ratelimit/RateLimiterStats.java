@@ -0,0 +1,111 @@
+package fr.dudie.nominatim.client.ratelimit;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import fr.dudie.nominatim.client.metrics.HistogramSnapshot;
+
+/**
+ * A snapshot of the statistics of a {@link RateLimiter}.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class RateLimiterStats {
+
+    /** Number of granted requests. */
+    private final long acquiredCount;
+
+    /** Number of refused requests. */
+    private final long rejectedCount;
+
+    /** Number of callers waiting for their turn. */
+    private final int queueDepth;
+
+    /** Highest number of callers waiting at the same time. */
+    private final int maxQueueDepth;
+
+    /** Time granted requests waited for their turn, in nanoseconds. */
+    private final HistogramSnapshot waitTime;
+
+    /**
+     * @param acquiredCount
+     *            number of granted requests
+     * @param rejectedCount
+     *            number of refused requests
+     * @param queueDepth
+     *            number of callers waiting for their turn
+     * @param maxQueueDepth
+     *            highest number of callers waiting at the same time
+     * @param waitTime
+     *            time granted requests waited for their turn, in nanoseconds
+     */
+    public RateLimiterStats(final long acquiredCount, final long rejectedCount, final int queueDepth,
+            final int maxQueueDepth, final HistogramSnapshot waitTime) {
+        this.acquiredCount = acquiredCount;
+        this.rejectedCount = rejectedCount;
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.waitTime = waitTime;
+    }
+
+    /**
+     * @return the number of granted requests
+     */
+    public long getAcquiredCount() {
+        return acquiredCount;
+    }
+
+    /**
+     * @return the number of refused requests
+     */
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * @return the number of callers waiting for their turn
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return the highest number of callers waiting at the same time
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return the time granted requests waited for their turn, in nanoseconds
+     */
+    public HistogramSnapshot getWaitTime() {
+        return waitTime;
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiterStats[acquired=" + acquiredCount + ", rejected=" + rejectedCount + ", queueDepth="
+                + queueDepth + ", maxQueueDepth=" + maxQueueDepth + ", waitTime=" + waitTime + "]";
+    }
+}
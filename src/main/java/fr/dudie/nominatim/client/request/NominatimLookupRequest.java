@@ -22,6 +22,7 @@ package fr.dudie.nominatim.client.request;
  * [/license]
  */
 
+import java.util.ArrayList;
 import java.util.List;
 
 import fr.dudie.nominatim.client.request.paramhelper.BooleanSerializer;
@@ -108,5 +109,24 @@ public class NominatimLookupRequest extends NominatimRequest {
     public void setAddressDetails(final boolean addressDetails) {
         this.addressDetails = addressDetails;
     }
-}
 
+    /**
+     * Copies this request, so that the copy can be sent while this request is changed.
+     *
+     * @return a new request with the same parameters
+     * @since 3.5
+     */
+    public NominatimLookupRequest copy() {
+
+        final NominatimLookupRequest copy = new NominatimLookupRequest();
+        copy.acceptLanguage = acceptLanguage;
+        if (query instanceof OsmTypeAndIdLookupQuery) {
+            final List<String> typeId = ((OsmTypeAndIdLookupQuery) query).getTypeId();
+            copy.query = new OsmTypeAndIdLookupQuery(null == typeId ? null : new ArrayList<String>(typeId));
+        } else {
+            copy.query = query;
+        }
+        copy.addressDetails = addressDetails;
+        return copy;
+    }
+}
@@ -131,4 +131,31 @@ public class NominatimReverseRequest extends NominatimRequest {
     public void setAddressDetails(final boolean addressDetails) {
         this.addressDetails = addressDetails;
     }
+
+    /**
+     * Copies this request, so that the copy can be sent while this request is changed.
+     *
+     * @return a new request with the same parameters
+     * @since 3.5
+     */
+    public NominatimReverseRequest copy() {
+
+        final NominatimReverseRequest copy = new NominatimReverseRequest();
+        copy.acceptLanguage = acceptLanguage;
+        if (query instanceof CoordinatesReverseQuery) {
+            final CoordinatesReverseQuery coordinates = (CoordinatesReverseQuery) query;
+            final CoordinatesReverseQuery coordinatesCopy = new CoordinatesReverseQuery(0d, 0d);
+            coordinatesCopy.setLongitude(coordinates.getLongitude());
+            coordinatesCopy.setLatitude(coordinates.getLatitude());
+            copy.query = coordinatesCopy;
+        } else if (query instanceof OsmTypeAndIdReverseQuery) {
+            final OsmTypeAndIdReverseQuery object = (OsmTypeAndIdReverseQuery) query;
+            copy.query = new OsmTypeAndIdReverseQuery(object.getType(), object.getId());
+        } else {
+            copy.query = query;
+        }
+        copy.zoom = zoom;
+        copy.addressDetails = addressDetails;
+        return copy;
+    }
 }
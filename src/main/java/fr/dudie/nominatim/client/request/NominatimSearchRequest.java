@@ -370,4 +370,46 @@ public class NominatimSearchRequest extends NominatimRequest {
     public void setPolygonFormat(PolygonFormat polygonFormat) {
         this.polygonFormat = polygonFormat;
     }
+
+    /**
+     * Copies this request, so that the copy can be sent while this request is changed.
+     *
+     * @return a new request with the same parameters
+     * @since 3.5
+     */
+    public NominatimSearchRequest copy() {
+
+        final NominatimSearchRequest copy = new NominatimSearchRequest();
+        if (query instanceof SimpleSearchQuery) {
+            copy.query = new SimpleSearchQuery(((SimpleSearchQuery) query).getQuery());
+        } else if (query instanceof ExtendedSearchQuery) {
+            final ExtendedSearchQuery extended = (ExtendedSearchQuery) query;
+            final ExtendedSearchQuery extendedCopy = new ExtendedSearchQuery();
+            extendedCopy.setStreet(extended.getStreet());
+            extendedCopy.setCity(extended.getCity());
+            extendedCopy.setCounty(extended.getCounty());
+            extendedCopy.setState(extended.getState());
+            extendedCopy.setCountry(extended.getCountry());
+            extendedCopy.setPostalCode(extended.getPostalCode());
+            copy.query = extendedCopy;
+        } else {
+            copy.query = query;
+        }
+        copy.acceptLanguage = acceptLanguage;
+        copy.countryCodes = null == countryCodes ? null : new ArrayList<String>(countryCodes);
+        if (null != viewBox) {
+            copy.viewBox = new BoundingBox();
+            copy.viewBox.setNorth(viewBox.getNorth());
+            copy.viewBox.setWest(viewBox.getWest());
+            copy.viewBox.setEast(viewBox.getEast());
+            copy.viewBox.setSouth(viewBox.getSouth());
+        }
+        copy.bounded = bounded;
+        copy.address = address;
+        copy.name = name;
+        copy.excludePlaceIds = null == excludePlaceIds ? null : new ArrayList<String>(excludePlaceIds);
+        copy.limit = limit;
+        copy.polygonFormat = polygonFormat;
+        return copy;
+    }
 }
@@ -22,16 +22,24 @@ package fr.dudie.nominatim.client.request;
  * [/license]
  */
 
-import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import fr.dudie.nominatim.client.request.paramhelper.QueryParameter;
+import fr.dudie.nominatim.client.request.paramhelper.QueryParameterSerializer;
 import fr.dudie.nominatim.client.request.paramhelper.ToStringSerializer;
 
 /**
@@ -42,7 +50,7 @@ import fr.dudie.nominatim.client.request.paramhelper.ToStringSerializer;
  *     &#064;QueryParameter(&quot;paramName=%s&quot;)
  *     private String param = &quot;value with space&quot;;
  * 
- *     &#064;QueryParameter(&quot;secondParamName=%d&quot;)
+ *     &#064;QueryParameter(&quot;secondParamName=%s&quot;)
  *     private Integer param2 = 10;
  * }
  * </pre>
@@ -50,8 +58,11 @@ import fr.dudie.nominatim.client.request.paramhelper.ToStringSerializer;
  * will generate the following query string :
  * 
  * <pre>
- * paramName=value+with+space&param2=10
+ * paramName=value%20with%20space&secondParamName=10
  * </pre>
+ * <p>
+ * The annotations of a class are scanned only once: the first call builds an {@link Encoder} holding the field
+ * accessors, the serializer instances and the parameter formats, which is cached and reused by subsequent calls.
  * 
  * @author Jeremie Huchet
  */
@@ -60,6 +71,21 @@ class QueryParameterAnnotationHandler {
     /** The event logger. */
     private static final Logger LOGGER = LoggerFactory.getLogger(QueryParameterAnnotationHandler.class);
 
+    /** The placeholder of the serialized value in the {@link QueryParameter#value()} format. */
+    private static final String PLACEHOLDER = "%s";
+
+    /** Builders larger than this are not kept for reuse. */
+    private static final int MAX_BUFFER_CAPACITY = 4096;
+
+    /** Encoders, by class of request. */
+    private static final ConcurrentMap<Class<?>, Encoder> ENCODERS = new ConcurrentHashMap<Class<?>, Encoder>();
+
+    /** Serializer instances, shared by all the encoders. */
+    private static final ConcurrentMap<Class<?>, QueryParameterSerializer> SERIALIZERS = new ConcurrentHashMap<Class<?>, QueryParameterSerializer>();
+
+    /** A string builder per thread, reused from a request to another. */
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>();
+
     /**
      * Process an object to generate a query string.
      * <ul>
@@ -70,38 +96,50 @@ class QueryParameterAnnotationHandler {
      * @param o
      *            the object to scan for {@link QueryParameter} annotations
      * @return the generated query string
-     * @throws UnsupportedEncodingException
      */
     static String process(final Object o) {
 
-        final StringBuilder s = new StringBuilder();
-
-        for (final Field f : o.getClass().getDeclaredFields()) {
-
-            final QueryParameter paramMetadata = f.getAnnotation(QueryParameter.class);
-            final Object fieldValue = getValue(o, f);
-
-            // each field having the QueryParameter annotation is processed
-            if (null != fieldValue && null != paramMetadata) {
-
-                final String paramFormat = paramMetadata.value();
-                String paramValue = serialize(paramMetadata, fieldValue, f.getName());
+        StringBuilder s = BUFFER.get();
+        if (null == s) {
+            s = new StringBuilder();
+        } else {
+            // a serializer may generate a nested query string while this one is being built
+            BUFFER.set(null);
+        }
+        try {
+            getEncoder(o.getClass()).appendTo(o, s);
+            return s.toString();
+        } finally {
+            if (s.capacity() <= MAX_BUFFER_CAPACITY) {
+                s.setLength(0);
+                BUFFER.set(s);
+            }
+        }
+    }
 
-                if (null != paramValue && !"".equals(paramValue.trim())) {
-                    if (s.length() > 0) {
-                        s.append('&');
-                    }
-                    if (paramMetadata.encode()) {
-                        paramValue = uriEncode(paramValue);
-                    }
-                    s.append(String.format(Locale.US, paramFormat, paramValue));
-                }
+    /**
+     * Gets the encoder of the given class, builds it on first use.
+     * 
+     * @param type
+     *            a class having {@link QueryParameter} annotated fields
+     * @return the encoder for this class
+     */
+    static Encoder getEncoder(final Class<?> type) {
+        Encoder encoder = ENCODERS.get(type);
+        if (null == encoder) {
+            encoder = new Encoder(type);
+            final Encoder concurrent = ENCODERS.putIfAbsent(type, encoder);
+            if (null != concurrent) {
+                encoder = concurrent;
             }
         }
-        return s.toString();
+        return encoder;
     }
 
     private static String uriEncode(String paramValue) {
+        if (isUriSafe(paramValue)) {
+            return paramValue;
+        }
         try {
             return new URI(null, null, null, paramValue, null).getRawQuery();
         } catch (final URISyntaxException e) {
@@ -111,51 +149,239 @@ class QueryParameterAnnotationHandler {
     }
 
     /**
-     * Serializes the field value regardless of reflection errors. Fallback to the {@link ToStringSerializer}.
+     * Tells whether a value is left untouched by the {@link URI} query encoding, so that the URI instantiation can be
+     * skipped for the most common values (numbers, codes, lists of ids...).
+     * 
+     * @param value
+     *            a parameter value
+     * @return true if the value only contains ascii letters, digits and <code>-_.,</code>
+     */
+    private static boolean isUriSafe(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-'
+                    || c == '_' || c == '.' || c == ',';
+            if (!safe) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the shared instance of a serializer, regardless of reflection errors. Fallback to the
+     * {@link ToStringSerializer}.
      * 
-     * @param paramMetadata
-     *            the query parameter annotation
-     * @param fieldValue
-     *            the field value
+     * @param type
+     *            the serializer class
      * @param fieldName
      *            the field name (for logging purposes only)
-     * @return the serialized value
-     * @throws UnsupportedEncodingException
-     *             UTF-8 encoding issue
+     * @return the serializer instance
      */
-    private static String serialize(final QueryParameter paramMetadata, final Object fieldValue, final String fieldName) {
-        String paramValue;
-        try {
-            paramValue = paramMetadata.serializer().newInstance().handle(fieldValue);
-        } catch (final InstantiationException e) {
-            LOGGER.error("Failure while serializing field {}", new Object[] { fieldName, e });
-            paramValue = new ToStringSerializer().handle(fieldValue);
-        } catch (final IllegalAccessException e) {
-            LOGGER.error("Failure while serializing field {}", new Object[] { fieldName, e });
-            paramValue = new ToStringSerializer().handle(fieldValue);
+    private static QueryParameterSerializer getSerializer(final Class<? extends QueryParameterSerializer> type,
+            final String fieldName) {
+        QueryParameterSerializer serializer = SERIALIZERS.get(type);
+        if (null == serializer) {
+            try {
+                serializer = type.newInstance();
+            } catch (final InstantiationException e) {
+                LOGGER.error("Failure while serializing field {}", new Object[] { fieldName, e });
+                return new ToStringSerializer();
+            } catch (final IllegalAccessException e) {
+                LOGGER.error("Failure while serializing field {}", new Object[] { fieldName, e });
+                return new ToStringSerializer();
+            }
+            final QueryParameterSerializer concurrent = SERIALIZERS.putIfAbsent(type, serializer);
+            if (null != concurrent) {
+                serializer = concurrent;
+            }
         }
-        return paramValue;
+        return serializer;
     }
 
     /**
-     * Gets a field value regardless of reflection errors.
-     * 
-     * @param o
-     *            the object instance
-     * @param f
-     *            the field
-     * @return the field value or null if a reflection error occurred
+     * The precompiled query string generation plan of a class: one {@link ParameterEncoder} per {@link QueryParameter}
+     * annotated field, in declaration order.
      */
-    private static Object getValue(final Object o, final Field f) {
-        try {
-            f.setAccessible(true);
-            return f.get(o);
-        } catch (final IllegalArgumentException e) {
-            LOGGER.error("failure accessing field value {}", new Object[] { f.getName(), e });
-        } catch (final IllegalAccessException e) {
-            LOGGER.error("failure accessing field value {}", new Object[] { f.getName(), e });
+    static final class Encoder {
+
+        /** The parameters encoders. */
+        private final ParameterEncoder[] parameters;
+
+        /**
+         * Scans the class annotations.
+         * 
+         * @param type
+         *            the class to scan for {@link QueryParameter} annotations
+         */
+        private Encoder(final Class<?> type) {
+            final List<ParameterEncoder> params = new ArrayList<ParameterEncoder>();
+            for (final Field f : type.getDeclaredFields()) {
+                final QueryParameter paramMetadata = f.getAnnotation(QueryParameter.class);
+                if (null != paramMetadata && !Modifier.isStatic(f.getModifiers())) {
+                    final MethodHandle getter = getAccessor(f);
+                    if (null != getter) {
+                        params.add(new ParameterEncoder(paramMetadata, getter, f.getName()));
+                    }
+                }
+            }
+            this.parameters = params.toArray(new ParameterEncoder[params.size()]);
+        }
+
+        /**
+         * Appends the query string parameters of the given object to the builder.
+         * 
+         * @param o
+         *            the object, its class must be the one of this encoder
+         * @param s
+         *            the builder where the parameters are appended
+         */
+        void appendTo(final Object o, final StringBuilder s) {
+            final int start = s.length();
+            for (final ParameterEncoder param : parameters) {
+                param.appendTo(o, s, start);
+            }
+        }
+
+        /**
+         * Gets a field accessor regardless of reflection errors.
+         * 
+         * @param f
+         *            the field
+         * @return the field getter or null if a reflection error occurred
+         */
+        private static MethodHandle getAccessor(final Field f) {
+            try {
+                f.setAccessible(true);
+                return MethodHandles.lookup().unreflectGetter(f)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (final IllegalAccessException e) {
+                LOGGER.error("failure accessing field value {}", new Object[] { f.getName(), e });
+            } catch (final RuntimeException e) {
+                LOGGER.error("failure accessing field value {}", new Object[] { f.getName(), e });
+            }
+            return null;
         }
-        return null;
     }
 
+    /**
+     * Encodes a {@link QueryParameter} annotated field.
+     */
+    private static final class ParameterEncoder {
+
+        /** The field getter. */
+        private final MethodHandle getter;
+
+        /** The field name (for logging purposes only). */
+        private final String fieldName;
+
+        /** The serializer of the field value. */
+        private final QueryParameterSerializer serializer;
+
+        /** Whether or not the serialized value is URL encoded. */
+        private final boolean encode;
+
+        /** The part of the format preceding the value, null if the format isn't a single <code>%s</code>. */
+        private final String prefix;
+
+        /** The part of the format following the value. */
+        private final String suffix;
+
+        /** The format string, used when it can't be split around its placeholder. */
+        private final String format;
+
+        private ParameterEncoder(final QueryParameter paramMetadata, final MethodHandle getter, final String fieldName) {
+            this.getter = getter;
+            this.fieldName = fieldName;
+            this.serializer = getSerializer(paramMetadata.serializer(), fieldName);
+            this.encode = paramMetadata.encode();
+            this.format = paramMetadata.value();
+            final int placeholder = format.indexOf(PLACEHOLDER);
+            if (placeholder >= 0 && format.indexOf('%') == placeholder
+                    && format.indexOf('%', placeholder + PLACEHOLDER.length()) < 0) {
+                this.prefix = format.substring(0, placeholder);
+                this.suffix = format.substring(placeholder + PLACEHOLDER.length());
+            } else {
+                this.prefix = null;
+                this.suffix = null;
+            }
+        }
+
+        /**
+         * Appends the parameter to the builder, unless the field value is null or empty.
+         * 
+         * @param o
+         *            the object holding the field
+         * @param s
+         *            the builder where the parameter is appended
+         * @param start
+         *            the position in the builder where the query string of the object starts
+         */
+        void appendTo(final Object o, final StringBuilder s, final int start) {
+            final Object fieldValue = getValue(o);
+            if (null == fieldValue) {
+                return;
+            }
+            if (!encode && null != prefix && serializer instanceof ToStringSerializer
+                    && fieldValue instanceof NominatimRequest) {
+                appendNested(fieldValue, s, start);
+                return;
+            }
+            String paramValue = serializer.handle(fieldValue);
+            if (null != paramValue && !"".equals(paramValue.trim())) {
+                if (s.length() > start) {
+                    s.append('&');
+                }
+                if (encode) {
+                    paramValue = uriEncode(paramValue);
+                }
+                if (null != prefix) {
+                    s.append(prefix).append(paramValue).append(suffix);
+                } else {
+                    s.append(String.format(Locale.US, format, paramValue));
+                }
+            }
+        }
+
+        /**
+         * Writes the query string of a nested request straight into the builder, instead of generating an
+         * intermediate string.
+         */
+        private void appendNested(final Object nested, final StringBuilder s, final int start) {
+            final int rollback = s.length();
+            if (rollback > start) {
+                s.append('&');
+            }
+            s.append(prefix);
+            final int valueStart = s.length();
+            getEncoder(nested.getClass()).appendTo(nested, s);
+            if (s.length() == valueStart) {
+                // empty nested query string, the parameter is ignored
+                s.setLength(rollback);
+            } else {
+                s.append(suffix);
+            }
+        }
+
+        /**
+         * Gets the field value regardless of errors.
+         * 
+         * @param o
+         *            the object instance
+         * @return the field value or null if an error occurred
+         */
+        private Object getValue(final Object o) {
+            try {
+                return (Object) getter.invokeExact(o);
+            } catch (final RuntimeException e) {
+                LOGGER.error("failure accessing field value {}", new Object[] { fieldName, e });
+            } catch (final Throwable e) {
+                if (e instanceof Error) {
+                    throw (Error) e;
+                }
+                LOGGER.error("failure accessing field value {}", new Object[] { fieldName, e });
+            }
+            return null;
+        }
+    }
 }
@@ -36,6 +36,6 @@ package fr.dudie.nominatim.client.request;
  * @author Jeremie Huchet
  * @since 3.0
  */
-abstract class SearchQuery extends NominatimRequest {
+public abstract class SearchQuery extends NominatimRequest {
 
 }
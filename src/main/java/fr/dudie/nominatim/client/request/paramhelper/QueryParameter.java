@@ -61,7 +61,10 @@ public @interface QueryParameter {
      * Defines the serializer to use to convert the field value into a string value.
      * <p>
      * Default is {@link ToStringSerializer}.
-     * 
+     * <p>
+     * A single instance of each serializer class is created and shared by all requests, so serializers must be
+     * stateless.
+     *
      * @return the serializer class to use
      */
     Class<? extends QueryParameterSerializer> serializer() default ToStringSerializer.class;
@@ -0,0 +1,251 @@
+package fr.dudie.nominatim.client.retry;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ConnectTimeoutException;
+
+import fr.dudie.nominatim.client.NominatimClientErrorException;
+import fr.dudie.nominatim.client.NominatimHttpException;
+import fr.dudie.nominatim.client.NominatimParseException;
+import fr.dudie.nominatim.client.breaker.CircuitOpenException;
+import fr.dudie.nominatim.client.ratelimit.RateLimitExceededException;
+
+/**
+ * Decides whether a failed request is sent again, and when.
+ * <p>
+ * Only transient failures are retried: throttling, server errors, timeouts and connection failures. Rejected
+ * requests ({@link NominatimClientErrorException}), unreadable responses ({@link NominatimParseException}),
+ * interruptions, local rate limiting and open circuits ({@link CircuitOpenException}) are not. All Nominatim
+ * requests are idempotent GET requests, so sending one again is always safe.
+ * <p>
+ * The delay before a retry is drawn uniformly between 0 and an exponentially growing cap ("full jitter"), so that
+ * clients failing together don't retry together. When the server asks for a delay with a <code>Retry-After</code>
+ * header, the request isn't sent earlier. A request is given up after a maximum number of attempts, or when the retry
+ * would happen after the deadline.
+ * <p>
+ * <pre>
+ * RetryPolicy policy = RetryPolicy.builder().maxAttempts(5).backoff(200, 10000, TimeUnit.MILLISECONDS)
+ *         .deadline(1, TimeUnit.MINUTES).build();
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class RetryPolicy {
+
+    /** Returned by {@link #nextDelayNanos(int, IOException, long)} when the request must not be sent again. */
+    public static final long GIVE_UP = -1;
+
+    /** The maximum number of times a request is sent. */
+    private final int maxAttempts;
+
+    /** The cap of the first delay, in nanoseconds. */
+    private final long baseDelayNanos;
+
+    /** The maximum cap of a delay, in nanoseconds. */
+    private final long maxDelayNanos;
+
+    /** The time after the first attempt after which no request is sent, in nanoseconds. */
+    private final long deadlineNanos;
+
+    /**
+     * Hidden constructor, use {@link #builder()}.
+     *
+     * @param builder
+     *            the builder
+     */
+    private RetryPolicy(final Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.baseDelayNanos = builder.baseDelayNanos;
+        this.maxDelayNanos = builder.maxDelayNanos;
+        this.deadlineNanos = builder.deadlineNanos;
+    }
+
+    /**
+     * Creates a builder.
+     *
+     * @return a builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the maximum number of times a request is sent
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Tells whether an error is transient.
+     *
+     * @param error
+     *            the error of an attempt
+     * @return true if sending the request again may succeed
+     */
+    public boolean isRetryable(final IOException error) {
+
+        if (error instanceof NominatimHttpException) {
+            return !(error instanceof NominatimClientErrorException);
+        }
+        if (error instanceof SocketTimeoutException || error instanceof ConnectTimeoutException) {
+            return true;
+        }
+        return !(error instanceof InterruptedIOException || error instanceof NominatimParseException
+                || error instanceof RateLimitExceededException || error instanceof CircuitOpenException);
+    }
+
+    /**
+     * Computes the delay before sending a failed request again.
+     *
+     * @param attempts
+     *            the number of attempts done
+     * @param error
+     *            the error of the last attempt
+     * @param elapsedNanos
+     *            the time since the start of the first attempt, in nanoseconds
+     * @return the delay, in nanoseconds, or {@link #GIVE_UP}
+     */
+    public long nextDelayNanos(final int attempts, final IOException error, final long elapsedNanos) {
+
+        if (attempts >= maxAttempts || !isRetryable(error)) {
+            return GIVE_UP;
+        }
+        final int doublings = Math.min(attempts - 1, Long.numberOfLeadingZeros(baseDelayNanos) - 1);
+        final long cap = Math.min(maxDelayNanos, baseDelayNanos << Math.max(0, doublings));
+        long delay = ThreadLocalRandom.current().nextLong(cap + 1);
+        if (error instanceof NominatimHttpException) {
+            final long retryAfterMillis = ((NominatimHttpException) error).getRetryAfterMillis();
+            delay = Math.max(delay, TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+        if (elapsedNanos + delay > deadlineNanos) {
+            return GIVE_UP;
+        }
+        return delay;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RetryPolicy[maxAttempts=%s, backoff=%s..%sms, deadline=%sms]", maxAttempts,
+                TimeUnit.NANOSECONDS.toMillis(baseDelayNanos), TimeUnit.NANOSECONDS.toMillis(maxDelayNanos),
+                TimeUnit.NANOSECONDS.toMillis(deadlineNanos));
+    }
+
+    /**
+     * Builds a {@link RetryPolicy}.
+     * <p>
+     * By default, a request is sent up to 3 times, the delay cap starts at 100 milliseconds and grows up to 10
+     * seconds, and no request is sent 30 seconds after the first attempt.
+     *
+     * @author Jeremie Huchet
+     * @since 3.5
+     */
+    public static final class Builder {
+
+        /** The maximum number of times a request is sent. */
+        private int maxAttempts = 3;
+
+        /** The cap of the first delay, in nanoseconds. */
+        private long baseDelayNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+        /** The maximum cap of a delay, in nanoseconds. */
+        private long maxDelayNanos = TimeUnit.SECONDS.toNanos(10);
+
+        /** The time after the first attempt after which no request is sent, in nanoseconds. */
+        private long deadlineNanos = TimeUnit.SECONDS.toNanos(30);
+
+        /**
+         * Hidden constructor, use {@link RetryPolicy#builder()}.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of times a request is sent.
+         *
+         * @param maxAttempts
+         *            the maximum number of attempts, 1 to never retry
+         * @return this builder
+         */
+        public Builder maxAttempts(final int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the delay caps: the delay before the n-th retry is drawn between 0 and
+         * <code>min(maxDelay, baseDelay * 2<sup>n-1</sup>)</code>.
+         *
+         * @param baseDelay
+         *            the cap of the first delay
+         * @param maxDelay
+         *            the maximum cap of a delay
+         * @param unit
+         *            the delays unit
+         * @return this builder
+         */
+        public Builder backoff(final long baseDelay, final long maxDelay, final TimeUnit unit) {
+            if (baseDelay < 0 || maxDelay < baseDelay) {
+                throw new IllegalArgumentException(String.format(
+                        "delays must verify 0 <= baseDelay <= maxDelay: %s, %s", baseDelay, maxDelay));
+            }
+            this.baseDelayNanos = unit.toNanos(baseDelay);
+            this.maxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * Sets the time after the first attempt after which a request isn't sent again.
+         *
+         * @param duration
+         *            the deadline
+         * @param unit
+         *            the duration unit
+         * @return this builder
+         */
+        public Builder deadline(final long duration, final TimeUnit unit) {
+            if (duration <= 0) {
+                throw new IllegalArgumentException("deadline must be positive: " + duration);
+            }
+            this.deadlineNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * @return a new retry policy
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package fr.dudie.nominatim.client.retry;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import fr.dudie.nominatim.client.AbstractNominatimClient;
+import fr.dudie.nominatim.client.NominatimCall;
+import fr.dudie.nominatim.client.NominatimClient;
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} decorator sending failed requests again, as told by a {@link RetryPolicy}.
+ * <p>
+ * When a request is given up, the error of the last attempt is thrown, with the errors of the previous attempts as
+ * suppressed exceptions.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public class RetryingNominatimClient extends AbstractNominatimClient {
+
+    /** The logger. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryingNominatimClient.class);
+
+    /** The client sending the requests. */
+    private final NominatimClient delegate;
+
+    /** Decides whether and when a failed request is sent again. */
+    private final RetryPolicy policy;
+
+    /** The number of requests sent again. */
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /** The number of requests which failed after being retried. */
+    private final AtomicLong exhaustedCount = new AtomicLong();
+
+    /**
+     * @param delegate
+     *            the client sending the requests
+     * @param policy
+     *            decides whether and when a failed request is sent again
+     */
+    public RetryingNominatimClient(final NominatimClient delegate, final RetryPolicy policy) {
+        this.delegate = delegate;
+        this.policy = policy;
+    }
+
+    /**
+     * @return the number of requests sent again after a failure
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return the number of requests which failed although they were sent again
+     */
+    public long getExhaustedCount() {
+        return exhaustedCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#search(fr.dudie.nominatim.client.request.NominatimSearchRequest)
+     */
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return execute(c -> c.search(search));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#getAddress(fr.dudie.nominatim.client.request.NominatimReverseRequest)
+     */
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return execute(c -> c.getAddress(reverse));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see fr.dudie.nominatim.client.NominatimClient#lookupAddress(fr.dudie.nominatim.client.request.NominatimLookupRequest)
+     */
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        return execute(c -> c.lookupAddress(lookup));
+    }
+
+    /**
+     * Sends a request until it succeeds or the policy gives up.
+     *
+     * @param request
+     *            sends the request
+     * @return the response
+     * @throws IOException
+     *             the last attempt failed
+     */
+    private <T> T execute(final NominatimCall<T> request) throws IOException {
+
+        final long start = System.nanoTime();
+        final List<IOException> previous = new ArrayList<IOException>();
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            try {
+                return request.send(delegate);
+            } catch (final IOException e) {
+                final long delay = policy.nextDelayNanos(attempts, e, System.nanoTime() - start);
+                if (delay == RetryPolicy.GIVE_UP) {
+                    if (attempts > 1) {
+                        exhaustedCount.incrementAndGet();
+                    }
+                    for (final IOException p : previous) {
+                        if (p != e) {
+                            e.addSuppressed(p);
+                        }
+                    }
+                    throw e;
+                }
+                LOGGER.debug("retrying in {} ms after attempt {} failed: {}", TimeUnit.NANOSECONDS.toMillis(delay),
+                        attempts, e.getMessage());
+                retryCount.incrementAndGet();
+                sleep(delay, e);
+                previous.add(e);
+            }
+        }
+    }
+
+    /**
+     * Waits before sending a request again.
+     *
+     * @param delayNanos
+     *            the delay, in nanoseconds
+     * @param error
+     *            the error of the last attempt
+     * @throws InterruptedIOException
+     *             the thread was interrupted, the error of the last attempt is suppressed
+     */
+    private static void sleep(final long delayNanos, final IOException error) throws InterruptedIOException {
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException interrupted = new InterruptedIOException("interrupted before a retry");
+            interrupted.addSuppressed(error);
+            throw interrupted;
+        }
+    }
+}
@@ -55,7 +55,9 @@ import fr.dudie.nominatim.model.Element;
  * </pre>
  * 
  * @author Jérémie Huchet
+ * @deprecated use {@link ArrayOfAddressElementsTypeAdapter} which doesn't build a JSON tree
  */
+@Deprecated
 public final class ArrayOfAddressElementsDeserializer implements JsonDeserializer<Element[]> {
 
     /** The event logger. */
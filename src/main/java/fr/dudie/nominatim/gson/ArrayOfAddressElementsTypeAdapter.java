@@ -0,0 +1,132 @@
+package fr.dudie.nominatim.gson;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import fr.dudie.nominatim.model.Element;
+
+/**
+ * Reads the attributes named "address" and "namedetails" of a response from the Nominatim API straight from the JSON
+ * stream. They will become an Array of {@link Element}s.
+ * <p>
+ * Sample "address" attribute:
+ *
+ * <pre>
+ *     "address": {
+ *         "road": "Boulevard de Vitré",
+ *         "suburb": "Jeanne d'Arc",
+ *         "city": "Rennes",
+ *         "administrative": "Rennes",
+ *         "state": "Britanny",
+ *         "postcode": "35042",
+ *         "country": "France",
+ *         "country_code": "fr"
+ *     }
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class ArrayOfAddressElementsTypeAdapter extends TypeAdapter<Element[]> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+     */
+    @Override
+    public Element[] read(final JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+        }
+
+        final List<Element> elements = new ArrayList<Element>();
+        in.beginObject();
+        while (in.hasNext()) {
+            final Element element = new Element();
+            element.setKey(in.nextName());
+            element.setValue(readValue(in));
+            elements.add(element);
+        }
+        in.endObject();
+        return elements.toArray(new Element[elements.size()]);
+    }
+
+    /**
+     * Reads a primitive value as a string.
+     *
+     * @param in
+     *            the json reader
+     * @return the string representation of the value
+     * @throws IOException
+     *             unable to read the value
+     */
+    private static String readValue(final JsonReader in) throws IOException {
+
+        switch (in.peek()) {
+        case STRING:
+        case NUMBER:
+            return in.nextString();
+        case BOOLEAN:
+            return String.valueOf(in.nextBoolean());
+        case NULL:
+            in.nextNull();
+            return null;
+        default:
+            throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
+     */
+    @Override
+    public void write(final JsonWriter out, final Element[] elements) throws IOException {
+
+        if (null == elements) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        for (final Element element : elements) {
+            out.name(element.getKey()).value(element.getValue());
+        }
+        out.endObject();
+    }
+}
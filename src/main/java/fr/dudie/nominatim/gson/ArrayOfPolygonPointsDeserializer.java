@@ -51,7 +51,9 @@ import fr.dudie.nominatim.model.PolygonPoint;
  * </pre>
  * 
  * @author Jérémie Huchet
+ * @deprecated use {@link ArrayOfPolygonPointsTypeAdapter} which doesn't build a JSON tree
  */
+@Deprecated
 public final class ArrayOfPolygonPointsDeserializer implements JsonDeserializer<PolygonPoint[]> {
 
     /** The event logger. */
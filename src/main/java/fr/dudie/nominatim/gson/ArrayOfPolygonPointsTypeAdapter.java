@@ -0,0 +1,107 @@
+package fr.dudie.nominatim.gson;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import fr.dudie.nominatim.model.PolygonPoint;
+
+/**
+ * Reads the attribute named "polygonpoints" of a response from the Nominatim API straight from the JSON stream. It
+ * will become an array of {@link PolygonPoint}s.
+ * <p>
+ * Sample "polygonpoints" attribute:
+ *
+ * <pre>
+ *     "polygonpoints": [
+ *         [
+ *             "34.50669",
+ *             "28.0885916"
+ *         ],
+ *         [
+ *             "34.5183936",
+ *             "28.1684821"
+ *         ]
+ *     ],
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class ArrayOfPolygonPointsTypeAdapter extends TypeAdapter<PolygonPoint[]> {
+
+    /** Reads the points of the array. */
+    private final PolygonPointTypeAdapter pointAdapter = new PolygonPointTypeAdapter();
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+     */
+    @Override
+    public PolygonPoint[] read(final JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+        }
+
+        final List<PolygonPoint> points = new ArrayList<PolygonPoint>();
+        in.beginArray();
+        while (in.hasNext()) {
+            points.add(pointAdapter.read(in));
+        }
+        in.endArray();
+        return points.toArray(new PolygonPoint[points.size()]);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
+     */
+    @Override
+    public void write(final JsonWriter out, final PolygonPoint[] points) throws IOException {
+
+        if (null == points) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (final PolygonPoint point : points) {
+            pointAdapter.write(out, point);
+        }
+        out.endArray();
+    }
+}
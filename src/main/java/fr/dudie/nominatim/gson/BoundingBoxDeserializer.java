@@ -51,7 +51,9 @@ import fr.dudie.nominatim.model.BoundingBox;
  * </pre>
  * 
  * @author Jérémie Huchet
+ * @deprecated use {@link BoundingBoxTypeAdapter} which doesn't build a JSON tree
  */
+@Deprecated
 public final class BoundingBoxDeserializer implements JsonDeserializer<BoundingBox> {
 
     /** The event logger. */
@@ -0,0 +1,103 @@
+package fr.dudie.nominatim.gson;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import fr.dudie.nominatim.model.BoundingBox;
+
+/**
+ * Reads the attribute named "boundingbox" of a response from the Nominatim API straight from the JSON stream. It will
+ * become an {@link BoundingBox}.
+ * <p>
+ * Sample "boundingbox" attribute:
+ *
+ * <pre>
+ *     "boundingbox": [
+ *         "48.1190567016602", S
+ *         "48.1191635131836", N
+ *         "-1.6499342918396", W
+ *         "-1.64988231658936" E
+ *     ],
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class BoundingBoxTypeAdapter extends TypeAdapter<BoundingBox> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+     */
+    @Override
+    public BoundingBox read(final JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+        }
+
+        final BoundingBox bbox = new BoundingBox();
+        in.beginArray();
+        bbox.setSouth(in.nextDouble());
+        bbox.setNorth(in.nextDouble());
+        bbox.setWest(in.nextDouble());
+        bbox.setEast(in.nextDouble());
+        while (in.hasNext()) {
+            in.skipValue();
+        }
+        in.endArray();
+        return bbox;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
+     */
+    @Override
+    public void write(final JsonWriter out, final BoundingBox bbox) throws IOException {
+
+        if (null == bbox) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        out.value(bbox.getSouth());
+        out.value(bbox.getNorth());
+        out.value(bbox.getWest());
+        out.value(bbox.getEast());
+        out.endArray();
+    }
+}
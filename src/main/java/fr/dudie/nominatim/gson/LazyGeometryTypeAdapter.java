@@ -0,0 +1,127 @@
+package fr.dudie.nominatim.gson;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import fr.dudie.nominatim.model.LazyGeometry;
+
+/**
+ * Reads the attribute named "geojson" of a response from the Nominatim API as compact JSON text, copied token by token
+ * from the stream into a {@link LazyGeometry}, without building any JSON tree nor JTS geometry.
+ * <p>
+ * Numbers are copied as they appear in the response, so the geometry decoded later is the same as if it had been
+ * read directly.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class LazyGeometryTypeAdapter extends TypeAdapter<LazyGeometry> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+     */
+    @Override
+    public LazyGeometry read(final JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+        }
+
+        final StringWriter json = new StringWriter();
+        final JsonWriter out = new JsonWriter(json);
+        int depth = 0;
+        do {
+            switch (in.peek()) {
+            case BEGIN_OBJECT:
+                in.beginObject();
+                out.beginObject();
+                depth++;
+                break;
+            case END_OBJECT:
+                in.endObject();
+                out.endObject();
+                depth--;
+                break;
+            case BEGIN_ARRAY:
+                in.beginArray();
+                out.beginArray();
+                depth++;
+                break;
+            case END_ARRAY:
+                in.endArray();
+                out.endArray();
+                depth--;
+                break;
+            case NAME:
+                out.name(in.nextName());
+                break;
+            case STRING:
+                out.value(in.nextString());
+                break;
+            case NUMBER:
+                out.jsonValue(in.nextString());
+                break;
+            case BOOLEAN:
+                out.value(in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                break;
+            default:
+                throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+            }
+        } while (depth > 0);
+        out.flush();
+        return LazyGeometry.of(json.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
+     */
+    @Override
+    public void write(final JsonWriter out, final LazyGeometry geometry) throws IOException {
+
+        if (null == geometry) {
+            out.nullValue();
+            return;
+        }
+        out.jsonValue(geometry.getJson());
+    }
+}
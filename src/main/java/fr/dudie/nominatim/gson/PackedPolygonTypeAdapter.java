@@ -0,0 +1,107 @@
+package fr.dudie.nominatim.gson;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import fr.dudie.nominatim.model.PackedPolygon;
+
+/**
+ * Reads the attribute named "polygonpoints" of a response from the Nominatim API straight from the JSON stream into
+ * a {@link PackedPolygon}, without creating an object per point.
+ * <p>
+ * The attribute has the same format as the one read by {@link ArrayOfPolygonPointsTypeAdapter}: an array of
+ * <code>[longitude, latitude]</code> arrays, whose values may be numbers or strings.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class PackedPolygonTypeAdapter extends TypeAdapter<PackedPolygon> {
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#read(com.google.gson.stream.JsonReader)
+     */
+    @Override
+    public PackedPolygon read(final JsonReader in) throws IOException {
+
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (in.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+        }
+
+        int[] coordinates = new int[64];
+        int length = 0;
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new JsonParseException("Unexpected data: " + in.peek() + " at " + in.getPath());
+            }
+            if (length == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, 2 * length);
+            }
+            in.beginArray();
+            coordinates[length++] = PackedPolygon.toE7(in.nextDouble());
+            coordinates[length++] = PackedPolygon.toE7(in.nextDouble());
+            while (in.hasNext()) {
+                in.skipValue();
+            }
+            in.endArray();
+        }
+        in.endArray();
+        return PackedPolygon.ofE7(coordinates, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see com.google.gson.TypeAdapter#write(com.google.gson.stream.JsonWriter, java.lang.Object)
+     */
+    @Override
+    public void write(final JsonWriter out, final PackedPolygon polygon) throws IOException {
+
+        if (null == polygon) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (int i = 0; i < polygon.size(); i++) {
+            out.beginArray();
+            out.value(polygon.getLongitude(i));
+            out.value(polygon.getLatitude(i));
+            out.endArray();
+        }
+        out.endArray();
+    }
+}
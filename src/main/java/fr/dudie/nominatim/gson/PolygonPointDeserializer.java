@@ -48,7 +48,9 @@ import fr.dudie.nominatim.model.PolygonPoint;
  * </pre>
  * 
  * @author Jérémie Huchet
+ * @deprecated use {@link PolygonPointTypeAdapter} which doesn't build a JSON tree
  */
+@Deprecated
 public final class PolygonPointDeserializer implements JsonDeserializer<PolygonPoint> {
 
     /** The event logger. */
@@ -22,10 +22,14 @@ package fr.dudie.nominatim.model;
  * [/license]
  */
 
+import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 import org.locationtech.jts.geom.Geometry;
 import java.io.Serializable;
 
+import fr.dudie.nominatim.gson.LazyGeometryTypeAdapter;
+import fr.dudie.nominatim.gson.PackedPolygonTypeAdapter;
+
 /**
  * Represents a search result.
  * 
@@ -75,6 +79,9 @@ import java.io.Serializable;
  */
 public final class Address implements Serializable {
 
+    /** Serial version UID. */
+    private static final long serialVersionUID = 2L;
+
     /** The OpenStreetMap place id. */
     @SerializedName("place_id")
     private long placeId;
@@ -97,11 +104,13 @@ public final class Address implements Serializable {
     /** The polygon points representing the element. */
     @Deprecated
     @SerializedName("polygonpoints")
-    private PolygonPoint[] polygonPoints;
+    @JsonAdapter(PackedPolygonTypeAdapter.class)
+    private PackedPolygon polygonPoints;
 
     /** The geojson representing the element. */
     @SerializedName("geojson")
-    private Geometry geojson;
+    @JsonAdapter(LazyGeometryTypeAdapter.class)
+    private LazyGeometry geojson;
 
     /** The address longitude. */
     @SerializedName("lon")
@@ -253,36 +262,81 @@ public final class Address implements Serializable {
 
     /**
      * Gets the polygon points representing the element.
+     * <p>
+     * The points are stored packed, each call creates new {@link PolygonPoint}s: prefer {@link #getPolygon()}.
      * 
      * @return the polygon points representing the element
      */
     public PolygonPoint[] getPolygonPoints() {
 
-        return polygonPoints;
+        return null == polygonPoints ? null : polygonPoints.toPolygonPoints();
     }
 
     /**
-     * Sets the polygon points representing the element.
+     * Sets the polygon points representing the element. The coordinates are rounded to 10<sup>-7</sup> degree.
      * 
      * @param polygonPoints
      *            the polygon points representing the element to set
      */
     public void setPolygonPoints(final PolygonPoint[] polygonPoints) {
 
-        this.polygonPoints = polygonPoints;
+        this.polygonPoints = PackedPolygon.of(polygonPoints);
+    }
+
+    /**
+     * Gets the polygon points representing the element, without creating an object per point.
+     *
+     * @return the polygon points representing the element
+     * @since 3.5
+     */
+    public PackedPolygon getPolygon() {
+
+        return polygonPoints;
+    }
+
+    /**
+     * Sets the polygon points representing the element.
+     *
+     * @param polygon
+     *            the polygon points representing the element to set
+     * @since 3.5
+     */
+    public void setPolygon(final PackedPolygon polygon) {
+
+        this.polygonPoints = polygon;
     }
 
     /**
+	 * Gets the geojson, decoded on first call.
+	 * 
 	 * @return the geojson
 	 */
 	public Geometry getGeojson() {
-		return geojson;
+		return null == geojson ? null : geojson.getGeometry();
 	}
 
 	/**
 	 * @param geojson the geojson to set
 	 */
 	public void setGeojson(Geometry geojson) {
+		this.geojson = LazyGeometry.of(geojson);
+	}
+
+	/**
+	 * Gets the geojson, without decoding it.
+	 * 
+	 * @return the geojson
+	 * @since 3.5
+	 */
+	public LazyGeometry getLazyGeojson() {
+		return geojson;
+	}
+
+	/**
+	 * @param geojson the geojson to set
+	 * @since 3.5
+	 */
+	public void setLazyGeojson(final LazyGeometry geojson) {
 		this.geojson = geojson;
 	}
 
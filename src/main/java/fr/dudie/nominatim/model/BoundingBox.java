@@ -40,6 +40,9 @@ import java.io.Serializable;
  */
 public class BoundingBox implements Serializable {
 
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
     /** The north bound of the boundingbox. */
     private double north;
 
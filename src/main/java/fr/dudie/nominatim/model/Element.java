@@ -61,6 +61,9 @@ import java.io.Serializable;
  */
 public class Element implements Serializable {
 
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
     /** The element key. */
     private String key;
 
@@ -0,0 +1,155 @@
+package fr.dudie.nominatim.model;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.locationtech.jts.geom.Geometry;
+
+import com.github.filosganga.geogson.gson.GeometryAdapterFactory;
+import com.github.filosganga.geogson.jts.JtsAdapterFactory;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * A GeoJSON geometry kept as JSON text and decoded into a JTS {@link Geometry} on first access.
+ * <p>
+ * Most callers only read the name and the position of a place: a response holding a large boundary costs a copy of
+ * its text instead of tens of thousands of coordinate objects, unless {@link #getGeometry()} is called. The decoded
+ * geometry is kept, and the text released.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class LazyGeometry implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The GeoJSON text, <code>null</code> once decoded. */
+    private String json;
+
+    /** The decoded geometry, <code>null</code> until first accessed. */
+    private transient volatile Geometry geometry;
+
+    /**
+     * @param json
+     *            the GeoJSON text
+     * @param geometry
+     *            the decoded geometry
+     */
+    private LazyGeometry(final String json, final Geometry geometry) {
+        this.json = json;
+        this.geometry = geometry;
+    }
+
+    /**
+     * Wraps GeoJSON text, without decoding it.
+     *
+     * @param json
+     *            the GeoJSON text, may be <code>null</code>
+     * @return the lazy geometry, or <code>null</code>
+     */
+    public static LazyGeometry of(final String json) {
+        return null == json ? null : new LazyGeometry(json, null);
+    }
+
+    /**
+     * Wraps a decoded geometry.
+     *
+     * @param geometry
+     *            the geometry, may be <code>null</code>
+     * @return the lazy geometry, or <code>null</code>
+     */
+    public static LazyGeometry of(final Geometry geometry) {
+        return null == geometry ? null : new LazyGeometry(null, geometry);
+    }
+
+    /**
+     * @return true if the geometry has already been decoded
+     */
+    public boolean isDecoded() {
+        return null != geometry;
+    }
+
+    /**
+     * Gets the geometry, decoding it on first call.
+     *
+     * @return the geometry
+     */
+    public Geometry getGeometry() {
+
+        Geometry result = geometry;
+        if (null == result) {
+            synchronized (this) {
+                result = geometry;
+                if (null == result) {
+                    result = GsonHolder.GSON.fromJson(json, Geometry.class);
+                    geometry = result;
+                    json = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the GeoJSON text, without decoding the geometry.
+     *
+     * @return the GeoJSON text, encoded again if the geometry has already been decoded
+     */
+    public synchronized String getJson() {
+        return null == json ? GsonHolder.GSON.toJson(geometry, Geometry.class) : json;
+    }
+
+    /**
+     * Serializes the GeoJSON text rather than the geometry.
+     *
+     * @param out
+     *            the object output stream
+     * @throws IOException
+     *             an I/O error occurred
+     */
+    private synchronized void writeObject(final ObjectOutputStream out) throws IOException {
+
+        final String decoded = json;
+        json = getJson();
+        try {
+            out.defaultWriteObject();
+        } finally {
+            json = decoded;
+        }
+    }
+
+    /**
+     * Holds the {@link Gson} instance decoding geometries, created on first use.
+     */
+    private static final class GsonHolder {
+
+        /** The Gson instance able to read and write JTS geometries. */
+        private static final Gson GSON = new GsonBuilder().registerTypeAdapterFactory(new JtsAdapterFactory())
+                .registerTypeAdapterFactory(new GeometryAdapterFactory()).create();
+    }
+}
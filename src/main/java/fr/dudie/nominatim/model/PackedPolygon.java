@@ -0,0 +1,162 @@
+package fr.dudie.nominatim.model;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The points of a polygon, packed into a single array of fixed-point coordinates.
+ * <p>
+ * Coordinates are stored as integer multiples of 10<sup>-7</sup> degree, the precision of OpenStreetMap, which takes
+ * 8 bytes per point instead of about 36 for a {@link PolygonPoint} and its reference. Large administrative
+ * boundaries have tens of thousands of points.
+ *
+ * @author Jeremie Huchet
+ * @since 3.5
+ */
+public final class PackedPolygon implements Serializable {
+
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
+    /** The number of fixed-point units per degree. */
+    private static final double E7 = 1E7;
+
+    /** The longitudes and latitudes of the points, alternately, in 10<sup>-7</sup> degrees. */
+    private final int[] coordinates;
+
+    /**
+     * @param coordinates
+     *            the longitudes and latitudes of the points, alternately, in 10<sup>-7</sup> degrees, not copied
+     */
+    private PackedPolygon(final int[] coordinates) {
+        this.coordinates = coordinates;
+    }
+
+    /**
+     * Packs points given as fixed-point coordinates.
+     *
+     * @param coordinatesE7
+     *            the longitudes and latitudes of the points, alternately, in 10<sup>-7</sup> degrees
+     * @param length
+     *            the number of values of the array to use, twice the number of points
+     * @return the packed points
+     */
+    public static PackedPolygon ofE7(final int[] coordinatesE7, final int length) {
+        if (length % 2 != 0) {
+            throw new IllegalArgumentException("expected longitude and latitude pairs: " + length + " values");
+        }
+        return new PackedPolygon(Arrays.copyOf(coordinatesE7, length));
+    }
+
+    /**
+     * Packs points.
+     *
+     * @param points
+     *            the points, may be <code>null</code>
+     * @return the packed points, or <code>null</code>
+     */
+    public static PackedPolygon of(final PolygonPoint[] points) {
+
+        if (null == points) {
+            return null;
+        }
+        final int[] coordinates = new int[2 * points.length];
+        for (int i = 0; i < points.length; i++) {
+            coordinates[2 * i] = toE7(points[i].getLongitude());
+            coordinates[2 * i + 1] = toE7(points[i].getLatitude());
+        }
+        return new PackedPolygon(coordinates);
+    }
+
+    /**
+     * Converts a coordinate to fixed-point.
+     *
+     * @param degrees
+     *            a longitude or a latitude, in degrees
+     * @return the coordinate, in 10<sup>-7</sup> degrees
+     */
+    public static int toE7(final double degrees) {
+        return (int) Math.round(degrees * E7);
+    }
+
+    /**
+     * @return the number of points
+     */
+    public int size() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * @param index
+     *            the index of a point
+     * @return the longitude of the point, in degrees
+     */
+    public double getLongitude(final int index) {
+        return coordinates[2 * index] / E7;
+    }
+
+    /**
+     * @param index
+     *            the index of a point
+     * @return the latitude of the point, in degrees
+     */
+    public double getLatitude(final int index) {
+        return coordinates[2 * index + 1] / E7;
+    }
+
+    /**
+     * @param index
+     *            the index of a point
+     * @return the longitude of the point, in 10<sup>-7</sup> degrees
+     */
+    public int getLongitudeE7(final int index) {
+        return coordinates[2 * index];
+    }
+
+    /**
+     * @param index
+     *            the index of a point
+     * @return the latitude of the point, in 10<sup>-7</sup> degrees
+     */
+    public int getLatitudeE7(final int index) {
+        return coordinates[2 * index + 1];
+    }
+
+    /**
+     * Unpacks the points, each call creates new objects.
+     *
+     * @return the points
+     */
+    public PolygonPoint[] toPolygonPoints() {
+
+        final PolygonPoint[] points = new PolygonPoint[size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = new PolygonPoint();
+            points[i].setLongitude(getLongitude(i));
+            points[i].setLatitude(getLatitude(i));
+        }
+        return points;
+    }
+}
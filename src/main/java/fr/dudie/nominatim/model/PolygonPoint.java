@@ -31,6 +31,9 @@ import java.io.Serializable;
  */
 public class PolygonPoint implements Serializable {
 
+    /** Serial version UID. */
+    private static final long serialVersionUID = 1L;
+
     /** The point's longitude. */
     private double longitude;
 
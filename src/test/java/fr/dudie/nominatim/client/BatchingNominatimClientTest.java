@@ -0,0 +1,191 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.OsmTypeAndIdLookupQuery;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link BatchingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class BatchingNominatimClientTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    /** Answers each requested object with an address, unless told to fail. */
+    private final FakeNominatimClient delegate = new FakeNominatimClient() {
+
+        @Override
+        public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+            super.lookupAddress(lookup);
+            if (failure) {
+                throw new IOException("boom");
+            }
+            if (null != error) {
+                throw error;
+            }
+            final List<Address> addresses = new ArrayList<Address>();
+            for (final String typeId : ((OsmTypeAndIdLookupQuery) lookup.getQuery()).getTypeId()) {
+                if (!typeId.startsWith("N")) {
+                    final Address address = new Address();
+                    address.setOsmType(typeId.startsWith("W") ? "way" : "relation");
+                    address.setOsmId(typeId.substring(1));
+                    address.setDisplayName(typeId);
+                    addresses.add(address);
+                }
+            }
+            return addresses;
+        }
+    };
+
+    private volatile boolean failure;
+
+    private volatile Error error;
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private List<Future<List<Address>>> lookupConcurrently(final NominatimClient client, final String... typeIds) {
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<List<Address>>> results = new ArrayList<Future<List<Address>>>();
+        for (final String typeId : typeIds) {
+            results.add(executor.submit(new Callable<List<Address>>() {
+                @Override
+                public List<Address> call() throws Exception {
+                    start.await();
+                    return client.lookupAddress(Arrays.asList(typeId));
+                }
+            }));
+        }
+        start.countDown();
+        return results;
+    }
+
+    @Test
+    public void mergesConcurrentLookups() throws Exception {
+
+        final BatchingNominatimClient client = new BatchingNominatimClient(delegate, 500, TimeUnit.MILLISECONDS, 50);
+        final String[] typeIds = new String[20];
+        for (int i = 0; i < typeIds.length; i++) {
+            typeIds[i] = (i % 2 == 0 ? "R" : "w") + i;
+        }
+        final List<Future<List<Address>>> results = lookupConcurrently(client, typeIds);
+
+        for (int i = 0; i < typeIds.length; i++) {
+            final List<Address> addresses = results.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals(1, addresses.size());
+            assertEquals(typeIds[i].toUpperCase(), addresses.get(0).getDisplayName());
+        }
+        assertTrue("calls: " + delegate.getCalls(), delegate.getCalls() <= 2);
+    }
+
+    @Test
+    public void respectsMaxBatchSize() throws Exception {
+
+        final BatchingNominatimClient client = new BatchingNominatimClient(delegate, 1, TimeUnit.SECONDS, 2);
+        final long start = System.nanoTime();
+        final List<Future<List<Address>>> results = lookupConcurrently(client, "R1", "R2", "R3", "R4");
+        for (final Future<List<Address>> result : results) {
+            assertEquals(1, result.get(5, TimeUnit.SECONDS).size());
+        }
+
+        assertEquals(2, delegate.getCalls());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        for (final String query : delegate.getQueries()) {
+            assertTrue(query, query.matches("osm_ids=R\\d,R\\d"));
+        }
+    }
+
+    @Test
+    public void missingObjectsGiveEmptyResults() throws Exception {
+
+        final BatchingNominatimClient client = new BatchingNominatimClient(delegate);
+        assertEquals(0, client.lookupAddress(Arrays.asList("N1")).size());
+        final List<Address> addresses = client.lookupAddress(Arrays.asList("N1", "R2"));
+        assertEquals(1, addresses.size());
+        assertEquals("R2", addresses.get(0).getDisplayName());
+    }
+
+    @Test
+    public void failuresReachEveryCaller() throws Exception {
+
+        failure = true;
+        final BatchingNominatimClient client = new BatchingNominatimClient(delegate, 200, TimeUnit.MILLISECONDS, 50);
+        for (final Future<List<Address>> result : lookupConcurrently(client, "R1", "R2", "R3")) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("expected an IOException");
+            } catch (final ExecutionException e) {
+                assertEquals("boom", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void errorsReachEveryCaller() throws Exception {
+
+        error = new StackOverflowError("deep");
+        final BatchingNominatimClient client = new BatchingNominatimClient(delegate, 200, TimeUnit.MILLISECONDS, 50);
+        for (final Future<List<Address>> result : lookupConcurrently(client, "R1", "R2", "R3")) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("expected an error");
+            } catch (final ExecutionException e) {
+                assertEquals("deep", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void multipleObjectsLookupsAreNotBatched() throws Exception {
+
+        final BatchingNominatimClient client = new BatchingNominatimClient(delegate);
+        assertEquals(2, client.lookupAddress(Arrays.asList("R1", "W2")).size());
+        assertEquals(1, delegate.getCalls());
+    }
+}
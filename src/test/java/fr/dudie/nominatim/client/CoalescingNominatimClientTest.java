@@ -0,0 +1,136 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link CoalescingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class CoalescingNominatimClientTest {
+
+    private static final int THREADS = 8;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile CoalescingNominatimClient client;
+
+    private volatile boolean failure;
+
+    /** Holds each request until the other threads joined it. */
+    private final FakeNominatimClient delegate = new FakeNominatimClient() {
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (client.getCoalescedCount() % THREADS < THREADS - 1 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            if (failure) {
+                throw new IOException("boom");
+            }
+            return super.answer(queryString);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private List<Future<List<Address>>> searchConcurrently(final String query) {
+
+        final List<Future<List<Address>>> results = new ArrayList<Future<List<Address>>>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> client.search(query)));
+        }
+        return results;
+    }
+
+    @Test
+    public void sharesConcurrentIdenticalRequests() throws Exception {
+
+        client = new CoalescingNominatimClient(delegate);
+        final List<Future<List<Address>>> results = searchConcurrently("rennes");
+
+        final List<Address> first = results.get(0).get(5, TimeUnit.SECONDS);
+        for (final Future<List<Address>> result : results) {
+            final List<Address> addresses = result.get(5, TimeUnit.SECONDS);
+            assertEquals(1, addresses.size());
+            assertEquals(first.get(0).getDisplayName(), addresses.get(0).getDisplayName());
+            if (result != results.get(0)) {
+                assertNotSame(first, addresses);
+            }
+        }
+        assertEquals(1, delegate.getCalls());
+        assertEquals(1, client.getSentCount());
+        assertEquals(THREADS - 1, client.getCoalescedCount());
+    }
+
+    @Test
+    public void sharesErrors() throws Exception {
+
+        failure = true;
+        client = new CoalescingNominatimClient(delegate);
+        for (final Future<List<Address>> result : searchConcurrently("rennes")) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("the request should fail");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        }
+        assertEquals(1, delegate.getCalls());
+    }
+
+    @Test
+    public void sendsSequentialRequestsAgain() throws IOException {
+
+        client = new CoalescingNominatimClient(new FakeNominatimClient());
+        client.search("rennes");
+        client.search("rennes");
+        client.getAddress(-1.68, 48.11);
+
+        assertEquals(3, client.getSentCount());
+        assertEquals(0, client.getCoalescedCount());
+    }
+}
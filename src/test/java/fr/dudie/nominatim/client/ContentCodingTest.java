@@ -0,0 +1,111 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for {@link ContentCoding}.
+ *
+ * @author Jeremie Huchet
+ */
+public class ContentCodingTest {
+
+    private byte[] body;
+
+    @Before
+    public void setUp() throws IOException {
+        body = NominatimStubServer.read("/fixtures/search.json");
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final OutputStream out = new GZIPOutputStream(buffer);
+        out.write(data);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] deflate(final byte[] data, final boolean raw) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final OutputStream out = new DeflaterOutputStream(buffer, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        out.write(data);
+        out.close();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] decode(final byte[] data, final String contentEncoding) throws IOException {
+        final InputStream in = ContentCoding.decode(new ByteArrayInputStream(data), contentEncoding);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+
+    @Test
+    public void decodesSupportedCodings() throws IOException {
+
+        assertArrayEquals(body, decode(body, null));
+        assertArrayEquals(body, decode(body, "identity"));
+        assertArrayEquals(body, decode(gzip(body), "gzip"));
+        assertArrayEquals(body, decode(gzip(body), "X-GZIP"));
+        assertArrayEquals(body, decode(deflate(body, false), "deflate"));
+        assertArrayEquals(body, decode(deflate(body, true), "deflate"));
+        assertArrayEquals(body, decode(gzip(deflate(body, false)), "deflate, gzip"));
+    }
+
+    @Test
+    public void rejectsUnknownCodings() {
+
+        try {
+            decode(body, "compress");
+            fail("compress is not supported");
+        } catch (final IOException e) {
+            assertEquals("unsupported content encoding: compress", e.getMessage());
+        }
+    }
+
+    @Test
+    public void acceptsDecodableCodings() {
+
+        assertEquals("gzip, deflate", ContentCoding.ACCEPTED);
+    }
+}
@@ -0,0 +1,138 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link ExecutorAsyncNominatimClient} and {@link VirtualThreads}.
+ *
+ * @author Jeremie Huchet
+ */
+public class ExecutorAsyncNominatimClientTest {
+
+    /** Tracks how many calls run at the same time. */
+    private final FakeNominatimClient delegate = new FakeNominatimClient() {
+
+        private final AtomicInteger running = new AtomicInteger();
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            final int current = running.incrementAndGet();
+            maxRunning.accumulateAndGet(current, Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(5);
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+            if (queryString.contains("broken")) {
+                throw new IOException("boom");
+            }
+            return super.answer(queryString);
+        }
+    };
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private void runConcurrentCalls(final ExecutorAsyncNominatimClient client) throws Exception {
+
+        final List<CompletableFuture<List<Address>>> results = new ArrayList<CompletableFuture<List<Address>>>();
+        for (int i = 0; i < 100; i++) {
+            results.add(client.search("street " + i));
+        }
+        for (final CompletableFuture<List<Address>> result : results) {
+            assertEquals(1, result.get(5, TimeUnit.SECONDS).size());
+        }
+        assertEquals(100, delegate.getCalls());
+    }
+
+    @Test
+    public void capsConcurrentCalls() throws Exception {
+
+        final ExecutorAsyncNominatimClient client = new ExecutorAsyncNominatimClient(delegate,
+                Executors.newCachedThreadPool(), 4);
+        try {
+            runConcurrentCalls(client);
+        } finally {
+            client.close();
+        }
+        assertTrue("max running: " + maxRunning.get(), maxRunning.get() <= 4);
+    }
+
+    @Test
+    public void reportsErrors() throws Exception {
+
+        final ExecutorAsyncNominatimClient client = ExecutorAsyncNominatimClient.withPlatformThreads(delegate, 2);
+        try {
+            client.search("broken").get(5, TimeUnit.SECONDS);
+            fail("the call should fail");
+        } catch (final ExecutionException e) {
+            assertEquals("boom", e.getCause().getMessage());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void runsCallsOnVirtualThreads() throws Exception {
+
+        Assume.assumeTrue("virtual threads require Java 21", VirtualThreads.isAvailable());
+        final ExecutorAsyncNominatimClient client = ExecutorAsyncNominatimClient.withVirtualThreads(delegate, 8);
+        try {
+            runConcurrentCalls(client);
+        } finally {
+            client.close();
+        }
+        assertTrue("max running: " + maxRunning.get(), maxRunning.get() <= 8);
+    }
+
+    @Test
+    public void failsWithoutVirtualThreads() {
+
+        Assume.assumeTrue(!VirtualThreads.isAvailable());
+        try {
+            VirtualThreads.newThreadPerTaskExecutor("test-");
+            fail("virtual threads should not be available");
+        } catch (final UnsupportedOperationException e) {
+            assertTrue(e.getMessage().contains("Java 21"));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * A {@link NominatimClient} answering without network access, to test the client decorators.
+ * <p>
+ * Each response contains one address whose display name is the query string of the request, unless the query
+ * string contains <code>empty</code>, in which case the response is empty.
+ *
+ * @author Jeremie Huchet
+ */
+public class FakeNominatimClient extends AbstractNominatimClient {
+
+    /** The number of requests received. */
+    private final AtomicInteger calls = new AtomicInteger();
+
+    /** The query strings of the requests received. */
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * @return the number of requests received
+     */
+    public int getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return a copy of the query strings of the requests received
+     */
+    public List<String> getQueries() {
+        synchronized (queries) {
+            return new ArrayList<String>(queries);
+        }
+    }
+
+    /**
+     * Answers a request, can be overridden to simulate latency or failures.
+     *
+     * @param queryString
+     *            the request query string
+     * @return the address, or <code>null</code> for an empty response
+     * @throws IOException
+     *             if the request fails
+     */
+    protected Address answer(final String queryString) throws IOException {
+
+        if (queryString.contains("empty")) {
+            return null;
+        }
+        final Address address = new Address();
+        address.setDisplayName(queryString);
+        return address;
+    }
+
+    @Override
+    public List<Address> search(final NominatimSearchRequest search) throws IOException {
+        return list(search.getQueryString());
+    }
+
+    @Override
+    public Address getAddress(final NominatimReverseRequest reverse) throws IOException {
+        return single(reverse.getQueryString());
+    }
+
+    @Override
+    public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+        return list(lookup.getQueryString());
+    }
+
+    private Address single(final String queryString) throws IOException {
+        calls.incrementAndGet();
+        queries.add(queryString);
+        return answer(queryString);
+    }
+
+    private List<Address> list(final String queryString) throws IOException {
+        final List<Address> addresses = new ArrayList<Address>();
+        final Address address = single(queryString);
+        if (null != address) {
+            addresses.add(address);
+        }
+        return addresses;
+    }
+}
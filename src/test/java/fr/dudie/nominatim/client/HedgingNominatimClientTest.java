@@ -0,0 +1,216 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.request.NominatimLookupRequest;
+import fr.dudie.nominatim.client.request.OsmTypeAndIdLookupQuery;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Tests {@link HedgingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class HedgingNominatimClientTest {
+
+    @Test
+    public void hedgeAnswersFirstAndCancelsSlowRequest() throws IOException {
+
+        final SlowClient delegate = new SlowClient(1, 10000);
+        final HedgingNominatimClient client = HedgingNominatimClient.builder(delegate).budget(1)
+                .initialDelay(20, TimeUnit.MILLISECONDS).build();
+        try {
+            final long start = System.nanoTime();
+            assertEquals(1, client.search("rennes").size());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(2, delegate.getCalls());
+            assertEquals(1, delegate.cancelled);
+            assertEquals(1, client.getHedgeCount());
+            assertEquals(1, client.getHedgeWonCount());
+
+            // fast requests aren't hedged
+            assertEquals(1, client.search("rennes").size());
+            assertEquals(3, delegate.getCalls());
+            assertEquals(1, client.getHedgeCount());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void budgetBoundsExtraLoad() throws IOException {
+
+        final SlowClient delegate = new SlowClient(Integer.MAX_VALUE, 20);
+        final HedgingNominatimClient client = HedgingNominatimClient.builder(delegate).budget(0.1)
+                .initialDelay(1, TimeUnit.MILLISECONDS).build();
+        try {
+            for (int i = 0; i < 30; i++) {
+                assertEquals(1, client.search("rennes").size());
+            }
+            assertEquals(30, client.getRequestCount());
+            assertEquals(3, client.getHedgeCount());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void delayFollowsLatencyPercentile() throws IOException {
+
+        final FakeNominatimClient delegate = new FakeNominatimClient();
+        final HedgingNominatimClient client = HedgingNominatimClient.builder(delegate).percentile(50).window(10)
+                .initialDelay(1, TimeUnit.SECONDS).build();
+        try {
+            for (int i = 0; i < 10; i++) {
+                client.search("rennes");
+            }
+            assertTrue(client.getHedgeDelayNanos() < TimeUnit.MILLISECONDS.toNanos(100));
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void hedgeGoesToAnotherServerAndAbortsSlowRequest() throws IOException {
+
+        final NominatimStubServer slow = new NominatimStubServer(4);
+        final NominatimStubServer fast = new NominatimStubServer(4);
+        slow.setLatency(10, 0, TimeUnit.SECONDS);
+        slow.start();
+        fast.start();
+        final LoadBalancingNominatimClient balancer = LoadBalancingNominatimClient.builder()
+                .servers(NominatimClientBuilder.create(null, "contact@dudie.fr"), slow.getBaseUrl(),
+                        fast.getBaseUrl()).build();
+        final HedgingNominatimClient client = HedgingNominatimClient.builder(balancer).budget(1)
+                .initialDelay(50, TimeUnit.MILLISECONDS).build();
+        try {
+            final long start = System.nanoTime();
+            assertEquals(30, client.getAddress(-1.6499, 48.1191).getPlaceRank());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            assertEquals(1, client.getHedgeWonCount());
+            assertEquals(1, fast.getRequestCount());
+
+            // the aborted request isn't a server failure
+            assertEquals(0, balancer.getBackendStats().get(0).getFailureCount());
+            assertEquals(0, balancer.getBackendStats().get(0).getOutstanding());
+        } finally {
+            client.close();
+            balancer.close();
+            slow.stop();
+            fast.stop();
+        }
+    }
+
+    @Test
+    public void hedgeDoesNotAbortSharedBatch() throws Exception {
+
+        final SlowClient transport = new SlowClient(1, 1000) {
+
+            @Override
+            public List<Address> lookupAddress(final NominatimLookupRequest lookup) throws IOException {
+                super.lookupAddress(lookup);
+                final List<Address> addresses = new ArrayList<Address>();
+                for (final String typeId : ((OsmTypeAndIdLookupQuery) lookup.getQuery()).getTypeId()) {
+                    final Address address = new Address();
+                    address.setOsmType(typeId.startsWith("W") ? "way" : "relation");
+                    address.setOsmId(typeId.substring(1));
+                    address.setDisplayName(typeId);
+                    addresses.add(address);
+                }
+                return addresses;
+            }
+        };
+        final BatchingNominatimClient batching = new BatchingNominatimClient(transport, 50, TimeUnit.MILLISECONDS, 50);
+        final HedgingNominatimClient client = HedgingNominatimClient.builder(batching).budget(1)
+                .initialDelay(300, TimeUnit.MILLISECONDS).build();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // the hedged caller leads the first batch, another caller joins it
+            final Future<List<Address>> other = executor.submit(() -> {
+                TimeUnit.MILLISECONDS.sleep(10);
+                return batching.lookupAddress(Arrays.asList("W2"));
+            });
+            assertEquals("R1", client.lookupAddress(Arrays.asList("R1")).get(0).getDisplayName());
+            assertEquals(1, client.getHedgeWonCount());
+
+            assertEquals("W2", other.get(5, TimeUnit.SECONDS).get(0).getDisplayName());
+            assertEquals(0, transport.cancelled);
+            assertEquals(2, transport.getCalls());
+        } finally {
+            executor.shutdownNow();
+            client.close();
+        }
+    }
+
+    /** Answers the first requests slowly, unless they are cancelled. */
+    private static class SlowClient extends FakeNominatimClient {
+
+        private final int slowCalls;
+
+        private final long latencyMillis;
+
+        private volatile int cancelled;
+
+        SlowClient(final int slowCalls, final long latencyMillis) {
+            this.slowCalls = slowCalls;
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+
+            if (getCalls() <= slowCalls) {
+                final CountDownLatch cancel = new CountDownLatch(1);
+                final Cancellation cancellation = Cancellation.current();
+                if (null != cancellation) {
+                    cancellation.onCancel(cancel::countDown);
+                }
+                try {
+                    if (cancel.await(latencyMillis, TimeUnit.MILLISECONDS)) {
+                        cancelled++;
+                        throw new InterruptedIOException("cancelled");
+                    }
+                } catch (final InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return super.answer(queryString);
+        }
+    }
+}
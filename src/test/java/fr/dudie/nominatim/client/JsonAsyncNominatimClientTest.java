@@ -0,0 +1,144 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link JsonAsyncNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public final class JsonAsyncNominatimClientTest {
+
+    /** A jsonv2 search response. */
+    private static final String SEARCH_RESPONSE = "[{\"place_id\":\"49135222\",\"osm_type\":\"way\",\"osm_id\":\"42928962\","
+            + "\"boundingbox\":[\"48.1190567\",\"48.1191635\",\"-1.6499342\",\"-1.6498823\"],"
+            + "\"lat\":\"48.11911095\",\"lon\":\"-1.6499083\",\"display_name\":\"Boulevard de Vitré, Rennes, France\","
+            + "\"category\":\"highway\",\"type\":\"primary\",\"place_rank\":26}]";
+
+    /** A jsonv2 reverse geocoding response. */
+    private static final String REVERSE_RESPONSE = "{\"place_id\":\"1234\",\"osm_type\":\"node\",\"osm_id\":\"42\","
+            + "\"lat\":\"48.1166561\",\"lon\":\"-1.6489126\",\"display_name\":\"Rennes, France\",\"place_rank\":30}";
+
+    /** The local HTTP server. */
+    private HttpServer server;
+
+    /** The tested client. */
+    private JsonAsyncNominatimClient client;
+
+    /** The non-blocking HTTP client. */
+    private CloseableHttpAsyncClient httpClient;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/search", new FixedResponse(200, SEARCH_RESPONSE));
+        server.createContext("/reverse", new FixedResponse(200, REVERSE_RESPONSE));
+        server.createContext("/lookup", new FixedResponse(503, "[]"));
+        server.start();
+
+        httpClient = HttpAsyncClients.createDefault();
+        httpClient.start();
+        final String baseUrl = String.format("http://localhost:%s/", server.getAddress().getPort());
+        client = new JsonAsyncNominatimClient(baseUrl, httpClient, "contact@dudie.fr");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        final List<Address> addresses = client.search("vitré, rennes").get();
+        assertEquals("one result", 1, addresses.size());
+        assertEquals(49135222L, addresses.get(0).getPlaceId());
+        assertEquals(48.1190567, addresses.get(0).getBoundingBox().getSouth(), 0);
+    }
+
+    @Test
+    public void testGetAddress() throws Exception {
+        final Address address = client.getAddress(-1.6489126, 48.1166561).get();
+        assertEquals("Rennes, France", address.getDisplayName());
+        assertNull("no polygonpoint", address.getPolygonPoints());
+    }
+
+    @Test
+    public void testHttpErrorCompletesExceptionally() throws Exception {
+        try {
+            client.lookupAddress(Arrays.asList("R146656")).get();
+            fail("an HTTP error is expected");
+        } catch (final ExecutionException e) {
+            assertTrue("the cause is an I/O error", e.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * Answers every request with the same response.
+     */
+    private static final class FixedResponse implements HttpHandler {
+
+        private final int status;
+
+        private final byte[] body;
+
+        FixedResponse(final int status, final String body) {
+            this.status = status;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.metrics.Endpoint;
+import fr.dudie.nominatim.client.metrics.EndpointMetrics;
+import fr.dudie.nominatim.client.metrics.InMemoryNominatimMetrics;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.client.request.paramhelper.PolygonFormat;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Tests {@link JsonNominatimClient} against the {@link NominatimStubServer}, without network access.
+ *
+ * @author Jeremie Huchet
+ */
+public class JsonNominatimClientStubTest {
+
+    private NominatimStubServer server;
+
+    private CloseableHttpClient httpClient;
+
+    private JsonNominatimClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new NominatimStubServer();
+        server.start();
+        httpClient = HttpClients.custom().setMaxConnPerRoute(64).setMaxConnTotal(64).build();
+        client = new JsonNominatimClient(server.getBaseUrl(), httpClient, "contact@dudie.fr");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+        server.stop();
+    }
+
+    @Test
+    public void search() throws IOException {
+
+        final List<Address> addresses = client.search("vitré, rennes");
+        assertEquals(5, addresses.size());
+        assertEquals("Boulevard de Vitré", addresses.get(0).getAddressElements()[0].getValue());
+        assertEquals(0, client.search("nowhere").size());
+
+        final NominatimSearchRequest polygon = new NominatimSearchRequest();
+        polygon.setQuery("rennes");
+        polygon.setPolygonFormat(PolygonFormat.GEO_JSON);
+        assertEquals(401, client.search(polygon).get(0).getGeojson().getNumPoints());
+        assertEquals(3, server.getRequestCount("/search"));
+    }
+
+    @Test
+    public void reverse() throws IOException {
+
+        final Address address = client.getAddress(-1.6499, 48.1191);
+        assertNotNull(address);
+        assertEquals(30, address.getPlaceRank());
+    }
+
+    @Test
+    public void lookupAnswersRequestedObjects() throws IOException {
+
+        final List<Address> addresses = client.lookupAddress(Arrays.asList("W24351247", "R146656", "N1"));
+        assertEquals(2, addresses.size());
+        assertEquals("24351247", addresses.get(0).getOsmId());
+        assertEquals("146656", addresses.get(1).getOsmId());
+    }
+
+    @Test
+    public void injectedErrors() throws IOException {
+
+        server.setErrorRate(1);
+        try {
+            client.getAddress(-1.6499, 48.1191);
+            fail("expected an HTTP error");
+        } catch (final NominatimServerErrorException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("500"));
+            assertEquals(500, e.getStatusCode());
+            assertEquals(-1, e.getRetryAfterMillis());
+        }
+        assertEquals(1, server.getErrorCount());
+    }
+
+    @Test
+    public void throttling() throws IOException {
+
+        server.setMaxRequestsPerSecond(1);
+        int throttled = 0;
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.getAddress(-1.6499, 48.1191);
+            } catch (final NominatimThrottledException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("429"));
+                assertEquals(1000, e.getRetryAfterMillis());
+                throttled++;
+            }
+        }
+        // 3 requests may span 2 seconds
+        assertTrue(throttled >= 1);
+        assertEquals(throttled, server.getThrottledCount());
+
+        // the connection is still usable after error responses
+        server.setMaxRequestsPerSecond(0);
+        assertNotNull(client.getAddress(-1.6499, 48.1191));
+    }
+
+    @Test
+    public void concurrentCallsWithLatency() throws Exception {
+
+        server.setLatency(5, 5, TimeUnit.MILLISECONDS);
+        final ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < 32; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws IOException {
+                        int found = 0;
+                        for (int j = 0; j < 10; j++) {
+                            found += client.search("vitré").size();
+                            found += null == client.getAddress(-1.65, 48.12) ? 0 : 1;
+                        }
+                        return found;
+                    }
+                }));
+            }
+            for (final Future<Integer> result : results) {
+                assertEquals(60, result.get(30, TimeUnit.SECONDS).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(640, server.getRequestCount());
+        assertTrue("max concurrent requests: " + server.getMaxConcurrentRequests(),
+                server.getMaxConcurrentRequests() > 1);
+    }
+
+    @Test
+    public void decompressesResponses() throws IOException {
+
+        final NominatimSearchRequest request = new NominatimSearchRequest();
+        request.setQuery("rennes");
+        request.setPolygonFormat(PolygonFormat.GEO_JSON);
+        final InMemoryNominatimMetrics metrics = new InMemoryNominatimMetrics();
+        for (final String compression : Arrays.asList("gzip", "deflate")) {
+            server.setCompression(compression);
+            final JsonNominatimClient compressed = NominatimClientBuilder.create(server.getBaseUrl(),
+                    "contact@dudie.fr").metrics(metrics).build();
+            try {
+                assertEquals(401, compressed.search(request).get(0).getGeojson().getNumPoints());
+            } finally {
+                compressed.close();
+            }
+        }
+
+        final EndpointMetrics search = metrics.snapshot().get(Endpoint.SEARCH);
+        assertEquals(2, search.getRequestCount());
+        assertEquals(NominatimStubServer.read("/fixtures/search-polygon.json").length, search.getResponseBytes().getMax());
+        assertTrue("compression ratio: " + search.getCompressionRatio(), search.getCompressionRatio() > 3);
+    }
+}
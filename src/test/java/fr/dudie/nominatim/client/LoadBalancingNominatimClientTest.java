@@ -0,0 +1,314 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.junit.Test;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Tests {@link LoadBalancingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class LoadBalancingNominatimClientTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void roundRobin() throws IOException {
+
+        final FakeNominatimClient a = new FakeNominatimClient();
+        final FakeNominatimClient b = new FakeNominatimClient();
+        final FakeNominatimClient c = new FakeNominatimClient();
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("a", a)
+                .backend("b", b).backend("c", c).clock(clock).build();
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(1, client.search("rennes").size());
+        }
+        assertEquals(3, a.getCalls());
+        assertEquals(3, b.getCalls());
+        assertEquals(3, c.getCalls());
+    }
+
+    @Test
+    public void leastOutstandingAvoidsBusyServer() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final FakeNominatimClient a = new BlockingClient(release);
+        final FakeNominatimClient b = new BlockingClient(release);
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("a", a)
+                .backend("b", b).strategy(BalancingStrategy.LEAST_OUTSTANDING).build();
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<List<Address>> slow = executor.submit(() -> client.search("slow"));
+            while (a.getCalls() + b.getCalls() == 0) {
+                Thread.sleep(1);
+            }
+            final FakeNominatimClient idle = a.getCalls() == 0 ? a : b;
+            for (int i = 0; i < 5; i++) {
+                client.search("fast");
+            }
+            assertEquals(5, idle.getCalls());
+
+            release.countDown();
+            assertEquals(1, slow.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void ewmaPrefersFastServer() throws IOException {
+
+        final LatencyClient slow = new LatencyClient(50);
+        final LatencyClient fast = new LatencyClient(5);
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("slow", slow)
+                .backend("fast", fast).strategy(BalancingStrategy.EWMA).clock(clock).build();
+
+        for (int i = 0; i < 20; i++) {
+            client.search("rennes");
+        }
+        assertEquals(1, slow.getCalls());
+        assertEquals(19, fast.getCalls());
+
+        // the fast server slows down: a single request is enough to switch
+        fast.latencyMillis = 100;
+        client.search("rennes");
+        client.search("rennes");
+        assertEquals(20, fast.getCalls());
+        assertEquals(2, slow.getCalls());
+    }
+
+    @Test
+    public void ejectsFailingServerUntilCoolDownIsOver() throws IOException {
+
+        final FailingClient a = new FailingClient();
+        final FakeNominatimClient b = new FakeNominatimClient();
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("a", a)
+                .backend("b", b).ejectAfter(2).coolDown(10, TimeUnit.SECONDS).clock(clock).build();
+
+        a.failing = true;
+        for (int i = 0; i < 10; i++) {
+            // failed requests are sent again to the other server
+            assertEquals(1, client.search("rennes").size());
+        }
+        assertEquals(2, a.getCalls());
+        assertEquals(10, b.getCalls());
+        assertFalse(client.getBackendStats().get(0).isAvailable());
+        assertEquals(1, client.getBackendStats().get(0).getEjectionCount());
+
+        // back after the cool-down, ejected again by a single failure, for twice as long
+        clock.advance(10, TimeUnit.SECONDS);
+        assertTrue(client.getBackendStats().get(0).isAvailable());
+        client.search("rennes");
+        client.search("rennes");
+        assertEquals(3, a.getCalls());
+        assertEquals(2, client.getBackendStats().get(0).getEjectionCount());
+        clock.advance(10, TimeUnit.SECONDS);
+        assertFalse(client.getBackendStats().get(0).isAvailable());
+
+        clock.advance(10, TimeUnit.SECONDS);
+        a.failing = false;
+        for (int i = 0; i < 4; i++) {
+            client.search("rennes");
+        }
+        assertEquals(5, a.getCalls());
+        assertEquals(3, client.getBackendStats().get(0).getFailureCount());
+    }
+
+    @Test
+    public void failsWhenEveryServerFails() {
+
+        final FailingClient a = new FailingClient();
+        final FailingClient b = new FailingClient();
+        a.failing = true;
+        b.failing = true;
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("a", a)
+                .backend("b", b).ejectAfter(1).maxAttempts(3).clock(clock).build();
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                client.search("rennes");
+                fail("expected an error");
+            } catch (final IOException e) {
+                assertEquals(1, e.getSuppressed().length);
+            }
+        }
+        // ejected servers still receive the requests when there is no other choice
+        assertEquals(6, a.getCalls() + b.getCalls());
+    }
+
+    @Test
+    public void timeoutsFailOver() throws IOException {
+
+        final FailingClient a = new FailingClient();
+        final FailingClient b = new FailingClient();
+        final FakeNominatimClient c = new FakeNominatimClient();
+        a.error = () -> new SocketTimeoutException("Read timed out");
+        b.error = () -> new ConnectTimeoutException("Connect timed out");
+        a.failing = true;
+        b.failing = true;
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("a", a)
+                .backend("b", b).backend("c", c).ejectAfter(1).maxAttempts(3).clock(clock).build();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, client.search("rennes").size());
+        }
+        assertEquals(3, c.getCalls());
+        assertEquals(1, client.getBackendStats().get(0).getFailureCount());
+        assertEquals(1, client.getBackendStats().get(1).getFailureCount());
+        assertFalse(client.getBackendStats().get(0).isAvailable());
+        assertFalse(client.getBackendStats().get(1).isAvailable());
+    }
+
+    @Test
+    public void rejectedRequestsAreNotSentAgain() {
+
+        final FailingClient a = new FailingClient();
+        final FailingClient b = new FailingClient();
+        a.error = () -> new NominatimClientErrorException(400, "Bad Request", -1);
+        b.error = () -> new NominatimParseException("unexpected response", null);
+        a.failing = true;
+        b.failing = true;
+        final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder().backend("a", a)
+                .backend("b", b).ejectAfter(1).clock(clock).build();
+
+        for (int i = 0; i < 4; i++) {
+            try {
+                client.search("rennes");
+                fail("expected an error");
+            } catch (final IOException e) {
+                assertTrue(e instanceof NominatimClientErrorException || e instanceof NominatimParseException);
+                assertEquals(0, e.getSuppressed().length);
+            }
+        }
+        assertEquals(4, a.getCalls() + b.getCalls());
+        for (final BackendStats stats : client.getBackendStats()) {
+            assertEquals(0, stats.getFailureCount());
+            assertTrue(stats.isAvailable());
+        }
+    }
+
+    @Test
+    public void sharesConnectionPoolBetweenServers() throws IOException {
+
+        final NominatimStubServer up = new NominatimStubServer(4);
+        final NominatimStubServer down = new NominatimStubServer(4);
+        up.start();
+        down.start();
+        final String downUrl = down.getBaseUrl();
+        down.stop();
+        try {
+            final NominatimClientBuilder settings = NominatimClientBuilder.create(null, "contact@dudie.fr")
+                    .maxConnectionsPerRoute(2).maxConnectionsTotal(2);
+            final LoadBalancingNominatimClient client = LoadBalancingNominatimClient.builder()
+                    .servers(settings, downUrl, up.getBaseUrl()).ejectAfter(1).build();
+            assertEquals(2, settings.maxConnectionsTotal);
+            try {
+                for (int i = 0; i < 4; i++) {
+                    assertEquals(5, client.search("vitré, rennes").size());
+                }
+                assertEquals(4, up.getRequestCount());
+                assertEquals(1, client.getBackendStats().get(0).getFailureCount());
+                assertFalse(client.getBackendStats().get(0).isAvailable());
+            } finally {
+                client.close();
+            }
+        } finally {
+            up.stop();
+        }
+    }
+
+    /** Answers after a given latency, on the manual clock. */
+    private class LatencyClient extends FakeNominatimClient {
+
+        private volatile long latencyMillis;
+
+        LatencyClient(final long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            clock.advance(latencyMillis, TimeUnit.MILLISECONDS);
+            return super.answer(queryString);
+        }
+    }
+
+    /** Fails while told to. */
+    private static class FailingClient extends FakeNominatimClient {
+
+        private volatile boolean failing;
+
+        private volatile Supplier<IOException> error = () -> new IOException("failure");
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            if (failing) {
+                throw error.get();
+            }
+            return super.answer(queryString);
+        }
+    }
+
+    /** Answers requests for "slow" once released. */
+    private static class BlockingClient extends FakeNominatimClient {
+
+        private final CountDownLatch release;
+
+        BlockingClient(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            if (queryString.contains("slow")) {
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            return super.answer(queryString);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link NominatimClientBuilder} and {@link NominatimConnectionPool}.
+ *
+ * @author Jeremie Huchet
+ */
+public class NominatimClientBuilderTest {
+
+    private NominatimStubServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new NominatimStubServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void reusesConnections() throws IOException {
+
+        final JsonNominatimClient client = NominatimClientBuilder.create(server.getBaseUrl(), "contact@dudie.fr")
+                .build();
+        try {
+            for (int i = 0; i < 20; i++) {
+                client.getAddress(-1.6489126, 48.1166561);
+            }
+            final ConnectionPoolStats stats = client.getConnectionPool().getStats();
+            assertEquals(1, stats.getOpenedCount());
+            assertEquals(0, stats.getLeased());
+            assertEquals(1, stats.getAvailable());
+            assertEquals(10, stats.getMax());
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    public void limitsConnectionsPerRoute() throws Exception {
+
+        server.setLatency(20, 0, TimeUnit.MILLISECONDS);
+        final JsonNominatimClient client = NominatimClientBuilder.create(server.getBaseUrl(), "contact@dudie.fr")
+                .maxConnectionsPerRoute(4).build();
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            final List<Future<Address>> results = new ArrayList<Future<Address>>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> client.getAddress(-1.6489126, 48.1166561)));
+            }
+            for (final Future<Address> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+            assertTrue("max concurrent requests: " + server.getMaxConcurrentRequests(),
+                    server.getMaxConcurrentRequests() <= 4);
+            assertTrue(client.getConnectionPool().getStats().getOpenedCount() <= 4);
+        } finally {
+            executor.shutdownNow();
+            client.close();
+        }
+    }
+
+    @Test
+    public void sharedPoolOutlivesClients() throws IOException {
+
+        final NominatimClientBuilder builder = NominatimClientBuilder.create(server.getBaseUrl(), "contact@dudie.fr");
+        final NominatimConnectionPool pool = builder.buildConnectionPool();
+        try {
+            final JsonNominatimClient first = builder.connectionPool(pool).build();
+            first.search("vitré, rennes");
+            first.close();
+            final JsonNominatimClient second = builder.connectionPool(pool).build();
+            second.search("vitré, rennes");
+
+            assertEquals(1, pool.getStats().getOpenedCount());
+        } finally {
+            pool.close();
+        }
+        try {
+            builder.build().search("vitré, rennes");
+            fail("the pool is closed");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void clientWithoutBuilderHasNoPool() throws IOException {
+
+        final JsonNominatimClient client = new JsonNominatimClient(server.getBaseUrl(), HttpClients.createDefault(),
+                "contact@dudie.fr");
+        assertNull(client.getConnectionPool());
+        client.close();
+    }
+}
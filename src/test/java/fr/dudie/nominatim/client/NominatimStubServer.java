@@ -0,0 +1,501 @@
+package fr.dudie.nominatim.client;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server standing in for Nominatim, to test and benchmark clients without network access.
+ * <p>
+ * It answers <code>/search</code>, <code>/reverse</code> and <code>/lookup</code> with the recorded responses of
+ * <code>src/test/resources/fixtures</code>:
+ * <ul>
+ * <li><code>/search</code> answers <code>search-polygon.json</code> when a polygon is requested and
+ * <code>search.json</code> otherwise, or an empty list when the query contains <code>nowhere</code>,</li>
+ * <li><code>/reverse</code> answers <code>reverse.json</code>,</li>
+ * <li><code>/lookup</code> answers the objects of <code>lookup.json</code> and <code>search.json</code> whose type and
+ * id were requested in <code>osm_ids</code>.</li>
+ * </ul>
+ * Latency, server errors and throttling can be injected at any time, responses can be compressed, and the server
+ * counts the requests it received.
+ *
+ * <pre>
+ * NominatimStubServer server = new NominatimStubServer();
+ * server.setLatency(50, 10, TimeUnit.MILLISECONDS);
+ * server.setErrorRate(0.01);
+ * server.start();
+ * NominatimClient client = new JsonNominatimClient(server.getBaseUrl(), httpClient, "test@example.com");
+ * </pre>
+ *
+ * @author Jeremie Huchet
+ */
+public class NominatimStubServer {
+
+    /** The recorded responses, by file name. */
+    private final Map<String, byte[]> fixtures = new HashMap<String, byte[]>();
+
+    /** The addresses answered by the lookup endpoint, by normalized type and id. */
+    private final Map<String, JsonElement> lookupIndex = new HashMap<String, JsonElement>();
+
+    /** The number of requests received, by path. */
+    private final Map<String, AtomicLong> requests = new HashMap<String, AtomicLong>();
+
+    /** The number of requests answered with a server error. */
+    private final AtomicLong errors = new AtomicLong();
+
+    /** The number of requests answered with a 429 status. */
+    private final AtomicLong throttled = new AtomicLong();
+
+    /** The number of requests being handled. */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** The highest number of requests handled at the same time. */
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    /** The random source of the injected latency and errors. */
+    private final Random random = new Random(42);
+
+    /** The handler threads. */
+    private final ExecutorService executor;
+
+    /** The HTTP server. */
+    private final HttpServer server;
+
+    /** The minimum latency added to each response, in nanoseconds. */
+    private volatile long latencyNanos;
+
+    /** The maximum random latency added on top of the minimum latency, in nanoseconds. */
+    private volatile long jitterNanos;
+
+    /** The ratio of requests answered with a 500 status, between 0 and 1. */
+    private volatile double errorRate;
+
+    /** The maximum number of requests accepted per second, 0 for no limit. */
+    private volatile int maxRequestsPerSecond;
+
+    /** The content coding of the responses, <code>null</code> to send them uncompressed. */
+    private volatile String compression;
+
+    /** The second of the current throttling window. */
+    private long throttlingSecond;
+
+    /** The number of requests accepted during the current throttling window. */
+    private int throttlingCount;
+
+    /**
+     * Creates a stub server listening on a random port of the loopback interface, with 64 handler threads.
+     *
+     * @throws IOException
+     *             the fixtures can't be read or the server can't be created
+     */
+    public NominatimStubServer() throws IOException {
+        this(64);
+    }
+
+    /**
+     * Creates a stub server listening on a random port of the loopback interface.
+     *
+     * @param threads
+     *            the number of handler threads, which bounds the number of requests handled concurrently
+     * @throws IOException
+     *             the fixtures can't be read or the server can't be created
+     */
+    public NominatimStubServer(final int threads) throws IOException {
+
+        for (final String name : new String[] { "search.json", "search-polygon.json", "reverse.json", "lookup.json" }) {
+            fixtures.put(name, read("/fixtures/" + name));
+        }
+        indexLookup("search.json");
+        indexLookup("lookup.json");
+        for (final String path : new String[] { "/search", "/reverse", "/lookup" }) {
+            requests.put(path, new AtomicLong());
+        }
+
+        // without it, Nagle's algorithm and delayed ACKs add 40 ms to each response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/", new StubHandler());
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the base URL of the server, to give to the client constructors
+     */
+    public String getBaseUrl() {
+        return String.format("http://localhost:%s/", server.getAddress().getPort());
+    }
+
+    /**
+     * Adds latency to each response.
+     *
+     * @param latency
+     *            the minimum latency
+     * @param jitter
+     *            the maximum random latency added to the minimum latency
+     * @param unit
+     *            the time unit
+     */
+    public void setLatency(final long latency, final long jitter, final TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        this.jitterNanos = unit.toNanos(jitter);
+    }
+
+    /**
+     * Answers a ratio of the requests with a <code>500 Internal Server Error</code> status.
+     *
+     * @param errorRate
+     *            the ratio of failed requests, between 0 and 1
+     */
+    public void setErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Answers the requests exceeding a rate with a <code>429 Too Many Requests</code> status and a
+     * <code>Retry-After</code> header, like the public server does.
+     *
+     * @param maxRequestsPerSecond
+     *            the maximum number of requests accepted per second, 0 for no limit
+     */
+    public void setMaxRequestsPerSecond(final int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+
+    /**
+     * Compresses the responses to the requests accepting the given content coding.
+     *
+     * @param compression
+     *            <code>gzip</code> or <code>deflate</code>, <code>null</code> to send the responses uncompressed
+     */
+    public void setCompression(final String compression) {
+        if (null != compression && !"gzip".equals(compression) && !"deflate".equals(compression)) {
+            throw new IllegalArgumentException("unsupported compression: " + compression);
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * @param path
+     *            <code>/search</code>, <code>/reverse</code> or <code>/lookup</code>
+     * @return the number of requests received on the path
+     */
+    public long getRequestCount(final String path) {
+        return requests.get(path).get();
+    }
+
+    /**
+     * @return the number of requests received on all paths
+     */
+    public long getRequestCount() {
+        long count = 0;
+        for (final AtomicLong c : requests.values()) {
+            count += c.get();
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of requests answered with an injected server error
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return the number of requests answered with a 429 status
+     */
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    /**
+     * @return the highest number of requests handled at the same time
+     */
+    public int getMaxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Checks whether a request exceeds the throttling rate.
+     *
+     * @return <code>true</code> if the request must be rejected
+     */
+    private synchronized boolean isThrottled() {
+
+        final int max = maxRequestsPerSecond;
+        if (max <= 0) {
+            return false;
+        }
+        final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        if (second != throttlingSecond) {
+            throttlingSecond = second;
+            throttlingCount = 0;
+        }
+        return ++throttlingCount > max;
+    }
+
+    /**
+     * Draws the outcome of the injected latency and errors.
+     *
+     * @return the latency to add in nanoseconds, negative if the request must fail
+     */
+    private long draw() {
+
+        synchronized (random) {
+            if (random.nextDouble() < errorRate) {
+                return -1;
+            }
+            final long jitter = jitterNanos;
+            return latencyNanos + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+        }
+    }
+
+    /**
+     * Builds the lookup response of a request.
+     *
+     * @param osmIds
+     *            the value of the <code>osm_ids</code> parameter
+     * @return the JSON response
+     */
+    private byte[] lookup(final String osmIds) throws UnsupportedEncodingException {
+
+        final JsonArray found = new JsonArray();
+        final Set<String> seen = new HashSet<String>();
+        if (null != osmIds) {
+            for (final String typeId : osmIds.split(",")) {
+                final String key = typeId.trim().toUpperCase(Locale.ENGLISH);
+                final JsonElement address = lookupIndex.get(key);
+                if (null != address && seen.add(key)) {
+                    found.add(address);
+                }
+            }
+        }
+        return found.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Indexes the addresses of a fixture for the lookup endpoint.
+     *
+     * @param name
+     *            the fixture name
+     */
+    private void indexLookup(final String name) throws UnsupportedEncodingException {
+
+        final JsonArray addresses = JsonParser.parseString(new String(fixtures.get(name), "UTF-8")).getAsJsonArray();
+        for (final JsonElement e : addresses) {
+            final JsonObject address = e.getAsJsonObject();
+            final String type = address.get("osm_type").getAsString().substring(0, 1).toUpperCase(Locale.ENGLISH);
+            lookupIndex.put(type + address.get("osm_id").getAsString(), address);
+        }
+    }
+
+    /**
+     * Parses a query string.
+     *
+     * @param query
+     *            the raw query string, may be <code>null</code>
+     * @return the decoded parameters
+     */
+    private static Map<String, String> parameters(final String query) throws UnsupportedEncodingException {
+
+        final Map<String, String> parameters = new HashMap<String, String>();
+        if (null != query) {
+            for (final String pair : query.split("&")) {
+                final int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                            URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Reads a classpath resource.
+     *
+     * @param name
+     *            the resource name
+     * @return the resource content
+     * @throws IOException
+     *             the resource can't be read
+     */
+    public static byte[] read(final String name) throws IOException {
+
+        final InputStream in = NominatimStubServer.class.getResourceAsStream(name);
+        if (null == in) {
+            throw new IOException("missing resource " + name);
+        }
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Answers the requests of all paths.
+     */
+    private final class StubHandler implements HttpHandler {
+
+        /** The exchange attribute set once the response is sent. */
+        private static final String ANSWERED = "answered";
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+
+            final int concurrent = inFlight.incrementAndGet();
+            int max;
+            while (concurrent > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, concurrent)) {
+                // retry
+            }
+            try {
+                exchange.getRequestBody().close();
+                final String path = exchange.getRequestURI().getPath();
+                final AtomicLong counter = requests.get(path);
+                if (null == counter) {
+                    send(exchange, 404, "{\"error\":\"unknown path\"}".getBytes("UTF-8"));
+                    return;
+                }
+                counter.incrementAndGet();
+
+                if (isThrottled()) {
+                    throttled.incrementAndGet();
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 429, "{\"error\":\"too many requests\"}".getBytes("UTF-8"));
+                    return;
+                }
+                final long latency = draw();
+                if (latency < 0) {
+                    errors.incrementAndGet();
+                    send(exchange, 500, "{\"error\":\"internal server error\"}".getBytes("UTF-8"));
+                    return;
+                }
+                if (latency > 0) {
+                    TimeUnit.NANOSECONDS.sleep(latency);
+                }
+
+                final Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+                final byte[] body;
+                if ("/search".equals(path)) {
+                    final String q = parameters.get("q");
+                    if (null != q && q.contains("nowhere")) {
+                        body = "[]".getBytes("UTF-8");
+                    } else if ("1".equals(parameters.get("polygon_geojson"))) {
+                        body = fixtures.get("search-polygon.json");
+                    } else {
+                        body = fixtures.get("search.json");
+                    }
+                } else if ("/reverse".equals(path)) {
+                    body = fixtures.get("reverse.json");
+                } else {
+                    body = lookup(parameters.get("osm_ids"));
+                }
+                send(exchange, 200, body);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.close();
+            } finally {
+                if (null == exchange.getAttribute(ANSWERED)) {
+                    inFlight.decrementAndGet();
+                }
+            }
+        }
+
+        private void send(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+            // no longer in flight once the client may read the response and reuse the connection
+            exchange.setAttribute(ANSWERED, Boolean.TRUE);
+            inFlight.decrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            final String coding = compression;
+            final String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            byte[] payload = body;
+            if (null != coding && null != accepted && accepted.contains(coding)) {
+                payload = compress(body, coding);
+                exchange.getResponseHeaders().set("Content-Encoding", coding);
+            }
+            exchange.sendResponseHeaders(status, payload.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(payload);
+            out.close();
+        }
+
+        private byte[] compress(final byte[] body, final String coding) throws IOException {
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+            final OutputStream out = "gzip".equals(coding) ? new GZIPOutputStream(buffer)
+                    : new DeflaterOutputStream(buffer);
+            out.write(body);
+            out.close();
+            return buffer.toByteArray();
+        }
+    }
+}
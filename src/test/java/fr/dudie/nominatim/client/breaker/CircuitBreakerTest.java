@@ -0,0 +1,220 @@
+package fr.dudie.nominatim.client.breaker;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.FakeNominatimClient;
+import fr.dudie.nominatim.client.ManualClock;
+import fr.dudie.nominatim.client.NominatimClientErrorException;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link CircuitBreaker} and {@link CircuitBreakingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class CircuitBreakerTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    private final ControlledClient delegate = new ControlledClient();
+
+    private final List<String> transitions = new ArrayList<String>();
+
+    private CircuitBreaker breaker(final CircuitBreaker.Builder builder) {
+
+        final CircuitBreaker breaker = builder.window(10, 4).openDuration(10, TimeUnit.SECONDS).halfOpenCalls(2)
+                .clock(clock).build();
+        breaker.addListener(new CircuitBreakerListener() {
+
+            @Override
+            public void onStateChange(final CircuitBreaker b, final CircuitState from, final CircuitState to) {
+                transitions.add(from + "->" + to);
+            }
+        });
+        return breaker;
+    }
+
+    @Test
+    public void opensOnFailureRateAndFailsFast() throws IOException {
+
+        final CircuitBreaker breaker = breaker(CircuitBreaker.builder().failureRateThreshold(50));
+        final CircuitBreakingNominatimClient client = new CircuitBreakingNominatimClient(delegate, breaker, null,
+                clock);
+
+        client.search("rennes");
+        client.search("rennes");
+        delegate.failing = true;
+        fails(client);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        fails(client);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertEquals(4, delegate.getCalls());
+
+        try {
+            client.search("rennes");
+            fail("expected the circuit to be open");
+        } catch (final CircuitOpenException e) {
+            // expected
+        }
+        assertEquals(4, delegate.getCalls());
+        assertEquals(1, breaker.getStats().getNotPermittedCount());
+        assertEquals(Arrays.asList("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    public void opensOnSlowCallRate() throws IOException {
+
+        final CircuitBreaker breaker = breaker(CircuitBreaker.builder().slowCall(75, 1, TimeUnit.SECONDS));
+        final CircuitBreakingNominatimClient client = new CircuitBreakingNominatimClient(delegate, breaker, null,
+                clock);
+
+        delegate.latencyMillis = 2000;
+        for (int i = 0; i < 3; i++) {
+            client.search("rennes");
+        }
+        delegate.latencyMillis = 0;
+        client.search("rennes");
+        assertEquals(CircuitState.OPEN, breaker.getState());
+        assertEquals(1, breaker.getStats().getOpenedCount());
+    }
+
+    @Test
+    public void halfOpenTrialsCloseOrOpenTheCircuit() throws IOException {
+
+        final CircuitBreaker breaker = breaker(CircuitBreaker.builder());
+        final CircuitBreakingNominatimClient client = new CircuitBreakingNominatimClient(delegate, breaker, null,
+                clock);
+        delegate.failing = true;
+        for (int i = 0; i < 4; i++) {
+            fails(client);
+        }
+        assertEquals(CircuitState.OPEN, breaker.getState());
+
+        // the first trial fails: open again
+        clock.advance(10, TimeUnit.SECONDS);
+        assertEquals(CircuitState.HALF_OPEN, breaker.getState());
+        fails(client);
+        assertEquals(CircuitState.OPEN, breaker.getState());
+
+        // successful trials close the circuit, further calls wait for the trials to complete
+        clock.advance(10, TimeUnit.SECONDS);
+        delegate.failing = false;
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertEquals(false, breaker.tryAcquire());
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertEquals(1, client.search("rennes").size());
+
+        assertEquals(Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN", "OPEN->HALF_OPEN",
+                "HALF_OPEN->CLOSED"), transitions);
+        final CircuitBreakerStats stats = breaker.getStats();
+        assertEquals(2, stats.getOpenedCount());
+        assertEquals(2, stats.getHalfOpenedCount());
+        assertEquals(1, stats.getClosedCount());
+    }
+
+    @Test
+    public void fallbackAnswersWhileOpen() throws IOException {
+
+        final CircuitBreaker breaker = breaker(CircuitBreaker.builder());
+        final FakeNominatimClient fallback = new FakeNominatimClient();
+        final CircuitBreakingNominatimClient client = new CircuitBreakingNominatimClient(delegate, breaker,
+                fallback, clock);
+        delegate.failing = true;
+        for (int i = 0; i < 4; i++) {
+            fails(client);
+        }
+
+        assertEquals(1, client.search("rennes").size());
+        assertEquals(1, fallback.getCalls());
+        assertEquals(4, delegate.getCalls());
+    }
+
+    @Test
+    public void rejectedRequestsDoNotOpenTheCircuit() {
+
+        final CircuitBreaker breaker = breaker(CircuitBreaker.builder());
+        final CircuitBreakingNominatimClient client = new CircuitBreakingNominatimClient(delegate, breaker, null,
+                clock);
+        delegate.rejecting = true;
+        for (int i = 0; i < 10; i++) {
+            try {
+                client.search("rennes");
+                fail("expected an error");
+            } catch (final NominatimClientErrorException e) {
+                // expected
+            } catch (final IOException e) {
+                fail("unexpected error: " + e);
+            }
+        }
+        assertEquals(CircuitState.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getStats().getFailureRate(), 0);
+    }
+
+    private static void fails(final CircuitBreakingNominatimClient client) {
+        try {
+            client.search("rennes");
+            fail("expected an error");
+        } catch (final CircuitOpenException e) {
+            fail("unexpected open circuit");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /** Fails, rejects requests or answers slowly when told to. */
+    private class ControlledClient extends FakeNominatimClient {
+
+        private volatile boolean failing;
+
+        private volatile boolean rejecting;
+
+        private volatile long latencyMillis;
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            clock.advance(latencyMillis, TimeUnit.MILLISECONDS);
+            if (failing) {
+                throw new IOException("connection reset");
+            }
+            if (rejecting) {
+                throw new NominatimClientErrorException(400, "Bad Request", -1);
+            }
+            return super.answer(queryString);
+        }
+    }
+}
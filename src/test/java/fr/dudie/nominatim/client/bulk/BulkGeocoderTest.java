@@ -0,0 +1,206 @@
+package fr.dudie.nominatim.client.bulk;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.FakeNominatimClient;
+import fr.dudie.nominatim.client.request.ExtendedSearchQuery;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link BulkGeocoder}.
+ *
+ * @author Jeremie Huchet
+ */
+public class BulkGeocoderTest {
+
+    /** Answers after a short random delay, fails the first attempt of "flaky" queries and always fails "broken". */
+    private final FakeNominatimClient delegate = new FakeNominatimClient() {
+
+        private final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<String, AtomicInteger>();
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            try {
+                TimeUnit.MICROSECONDS.sleep(ThreadLocalRandom.current().nextInt(2000));
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            }
+            attempts.putIfAbsent(queryString, new AtomicInteger());
+            final int attempt = attempts.get(queryString).incrementAndGet();
+            if (queryString.contains("broken") || queryString.contains("flaky") && attempt == 1) {
+                throw new IOException("boom");
+            }
+            return super.answer(queryString);
+        }
+    };
+
+    private static Iterator<NominatimSearchRequest> requests(final String... queries) {
+        return Stream.of(queries).map(q -> {
+            final NominatimSearchRequest request = new NominatimSearchRequest();
+            request.setQuery(q);
+            return request;
+        }).iterator();
+    }
+
+    @Test
+    public void deliversResultsInInputOrder() throws InterruptedException {
+
+        final BulkGeocoder geocoder = BulkGeocoder.builder(delegate).parallelism(8).ordered(true).build();
+        final String[] queries = IntStream.range(0, 200).mapToObj(i -> "street-" + i).toArray(String[]::new);
+        final List<BulkResult> results = Collections.synchronizedList(new ArrayList<BulkResult>());
+
+        final BulkJob job = geocoder.submit(requests(queries), results::add);
+        job.await();
+
+        assertEquals(200, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertTrue(results.get(i).isSuccess());
+            assertEquals("q=street-" + i, results.get(i).getRequest().getQuery().getQueryString());
+            assertEquals(results.get(i).getRequest().getQueryString(), results.get(i).getAddresses().get(0)
+                    .getDisplayName());
+        }
+        final BulkProgress progress = job.getProgress();
+        assertEquals(200, progress.getReadCount());
+        assertEquals(200, progress.getSucceededCount());
+        assertEquals(0, progress.getPendingCount());
+        assertTrue(progress.getThroughput() > 0);
+    }
+
+    @Test
+    public void keepsSendingRequestsWhileTheCallbackIsSlow() throws InterruptedException {
+
+        final BulkGeocoder geocoder = BulkGeocoder.builder(delegate).parallelism(4).build();
+        final String[] queries = IntStream.range(0, 12).mapToObj(i -> "street-" + i).toArray(String[]::new);
+        final AtomicLong sentDuringFirstCallback = new AtomicLong(-1);
+        final List<BulkResult> results = Collections.synchronizedList(new ArrayList<BulkResult>());
+
+        final BulkJob job = geocoder.submit(requests(queries), result -> {
+            if (results.isEmpty()) {
+                // a slow callback, such as a database write, waiting for the other workers
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (delegate.getCalls() < queries.length && System.nanoTime() < deadline) {
+                    Thread.yield();
+                }
+                sentDuringFirstCallback.set(delegate.getCalls());
+            }
+            results.add(result);
+        });
+        job.await();
+
+        assertEquals(queries.length, sentDuringFirstCallback.get());
+        assertEquals(queries.length, results.size());
+        assertEquals(queries.length, job.getProgress().getSucceededCount());
+    }
+
+    @Test
+    public void retriesFailedRequests() throws InterruptedException {
+
+        final BulkGeocoder geocoder = BulkGeocoder.builder(delegate).retry(3, 1, TimeUnit.MILLISECONDS).build();
+        final List<BulkResult> results = Collections.synchronizedList(new ArrayList<BulkResult>());
+
+        final BulkJob job = geocoder.submit(requests("rennes", "flaky", "broken"), results::add);
+        job.await();
+
+        final Map<String, BulkResult> byQuery = results.stream().collect(
+                Collectors.toMap(r -> r.getRequest().getQuery().getQueryString(), r -> r));
+        assertEquals(1, byQuery.get("q=rennes").getAttempts());
+        assertEquals(2, byQuery.get("q=flaky").getAttempts());
+        assertTrue(byQuery.get("q=flaky").isSuccess());
+        assertEquals(3, byQuery.get("q=broken").getAttempts());
+        assertNull(byQuery.get("q=broken").getAddresses());
+        assertEquals("boom", byQuery.get("q=broken").getError().getMessage());
+
+        assertEquals(1, job.getProgress().getFailedCount());
+        assertEquals(3, job.getProgress().getRetryCount());
+    }
+
+    @Test
+    public void readsInputOnlyAsResultsAreConsumed() {
+
+        final AtomicLong read = new AtomicLong();
+        final Iterator<NominatimSearchRequest> endless = new Iterator<NominatimSearchRequest>() {
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public NominatimSearchRequest next() {
+                final NominatimSearchRequest request = new NominatimSearchRequest();
+                request.setQuery("street " + read.getAndIncrement());
+                return request;
+            }
+        };
+        final BulkGeocoder geocoder = BulkGeocoder.builder(delegate).parallelism(2).bufferSize(10).build();
+        final BulkJob job = geocoder.submit(endless);
+
+        final long consumed;
+        try (final Stream<BulkResult> results = job.results()) {
+            consumed = results.limit(50).count();
+        }
+
+        assertEquals(50, consumed);
+        assertTrue("read: " + read.get(), read.get() <= 50 + 10);
+        assertTrue(job.isDone());
+    }
+
+    @Test
+    public void geocodesSearchQueries() throws InterruptedException {
+
+        final ExtendedSearchQuery query = new ExtendedSearchQuery();
+        query.setCity("Rennes");
+        final List<BulkResult> results = new ArrayList<BulkResult>();
+        final BulkJob job = BulkGeocoder.builder(delegate).build().submit(
+                BulkGeocoder.requestsOf(Collections.singletonList(query).iterator()), results::add);
+
+        assertTrue(job.await(5, TimeUnit.SECONDS));
+        assertEquals(1, results.size());
+        assertEquals(Collections.singletonList("city=Rennes"), delegate.getQueries());
+        assertFalse(results.get(0).getAddresses().isEmpty());
+    }
+}
@@ -0,0 +1,265 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.FakeNominatimClient;
+import fr.dudie.nominatim.client.ManualClock;
+import fr.dudie.nominatim.client.request.NominatimSearchRequest;
+import fr.dudie.nominatim.client.request.SimpleSearchQuery;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link CachingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class CachingNominatimClientTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    private FakeNominatimClient delegate;
+
+    private CachingNominatimClient client;
+
+    @Before
+    public void setUp() {
+        delegate = new FakeNominatimClient();
+        client = new CachingNominatimClient(delegate, InMemoryNominatimCache.builder().clock(clock).build(), clock);
+    }
+
+    @Test
+    public void cachesSearch() throws IOException {
+
+        final List<Address> first = client.search("rennes");
+        first.clear();
+        final List<Address> second = client.search("rennes");
+
+        assertEquals(1, delegate.getCalls());
+        assertEquals(1, second.size());
+        assertEquals(1, client.getCache().getStats().getHitCount());
+    }
+
+    @Test
+    public void distinguishesRequests() throws IOException {
+
+        final NominatimSearchRequest bounded = new NominatimSearchRequest();
+        bounded.setQuery("rennes");
+        bounded.setBounded(true);
+        client.search("rennes");
+        client.search(bounded);
+        client.getAddress(-1.68, 48.11);
+        client.getAddress(-1.68, 48.11, 10);
+        client.lookupAddress(Arrays.asList("R146656"));
+
+        client.search("rennes");
+        client.search(bounded);
+        client.getAddress(-1.68, 48.11);
+        client.getAddress(-1.68, 48.11, 10);
+        client.lookupAddress(Arrays.asList("R146656"));
+
+        assertEquals(5, delegate.getCalls());
+    }
+
+    @Test
+    public void doesNotCacheEmptyResponses() throws IOException {
+
+        client.search("empty");
+        client.search("empty");
+        client.lookupAddress(Arrays.asList("empty"));
+        client.lookupAddress(Arrays.asList("empty"));
+
+        assertEquals(4, delegate.getCalls());
+    }
+
+    @Test
+    public void returnsStaleResponsesWhileRefreshing() throws IOException {
+
+        final List<Runnable> refreshes = new ArrayList<Runnable>();
+        client.setStaleWhileRevalidate(1, 60, TimeUnit.MINUTES, refreshes::add);
+        client.search("rennes");
+        clock.advance(2, TimeUnit.MINUTES);
+
+        assertEquals(1, client.search("rennes").size());
+        assertEquals(1, client.search("rennes").size());
+        assertEquals(1, delegate.getCalls());
+        assertEquals(1, refreshes.size());
+        assertEquals(2, client.getStaleHitCount());
+
+        refreshes.remove(0).run();
+        assertEquals(2, delegate.getCalls());
+        assertEquals(1, client.getRefreshCount());
+        client.search("rennes");
+        assertEquals(0, refreshes.size());
+
+        // too old to be returned
+        clock.advance(2, TimeUnit.HOURS);
+        client.search("rennes");
+        assertEquals(3, delegate.getCalls());
+        assertEquals(0, refreshes.size());
+    }
+
+    @Test
+    public void refreshesTheRequestAsItWasWhenTheStaleResponseWasReturned() throws IOException {
+
+        final List<Runnable> refreshes = new ArrayList<Runnable>();
+        client.setStaleWhileRevalidate(1, 60, TimeUnit.MINUTES, refreshes::add);
+        final NominatimSearchRequest search = new NominatimSearchRequest();
+        search.setQuery("rennes");
+        client.search(search);
+        clock.advance(2, TimeUnit.MINUTES);
+        client.search(search);
+
+        // the caller reuses its request before the refresh runs
+        search.setQuery("brest");
+        refreshes.remove(0).run();
+
+        assertEquals("q=rennes", delegate.getQueries().get(1));
+        assertEquals("q=rennes", client.search("rennes").get(0).getDisplayName());
+        assertEquals(0, refreshes.size());
+        assertEquals(2, delegate.getCalls());
+    }
+
+    @Test
+    public void returnsStaleResponsesWhenRefreshesAreRejected() throws IOException {
+
+        client.setStaleWhileRevalidate(1, 60, TimeUnit.MINUTES, command -> {
+            throw new RejectedExecutionException();
+        });
+        client.getAddress(-1.68, 48.11);
+        clock.advance(2, TimeUnit.MINUTES);
+
+        assertNotNull(client.getAddress(-1.68, 48.11));
+        client.getAddress(-1.68, 48.11);
+        assertEquals(1, delegate.getCalls());
+        assertEquals(2, client.getRefreshFailureCount());
+    }
+
+    @Test
+    public void cachesEmptyResponsesSeparately() throws IOException {
+
+        final FakeNominatimClient water = new FakeNominatimClient() {
+
+            @Override
+            protected Address answer(final String queryString) throws IOException {
+                // the error payload answered when there is no place at the coordinates
+                return queryString.contains("lat=0.0") ? new Address() : super.answer(queryString);
+            }
+        };
+        client = new CachingNominatimClient(water, InMemoryNominatimCache.builder().clock(clock).build(), clock);
+        client.setNegativeCache(InMemoryNominatimCache.builder().maximumEntries(2)
+                .expireAfterWrite(1, TimeUnit.MINUTES).clock(clock).build());
+
+        assertEquals(0, client.search("empty").size());
+        assertEquals(0, client.search("empty").size());
+        assertNull(client.getAddress(0, 0).getDisplayName());
+        assertNull(client.getAddress(0, 0).getDisplayName());
+        client.search("rennes");
+        client.search("rennes");
+        assertEquals(3, water.getCalls());
+        assertEquals(2, client.getNegativeCache().getStats().getHitCount());
+        assertEquals(1, client.getCache().getStats().getHitCount());
+        assertEquals(1, client.getCache().getStats().getSize());
+
+        clock.advance(1, TimeUnit.MINUTES);
+        client.search("empty");
+        assertEquals(4, water.getCalls());
+    }
+
+    @Test
+    public void identifiesSearchesByCanonicalQuery() throws IOException {
+
+        client.setQueryNormalizer(CanonicalQueryNormalizer.builder().build());
+        client.search("10 Downing St, London");
+        assertEquals(1, client.search("10  downing street london").size());
+        client.search("10  downing street london");
+        client.search("Rennes");
+
+        assertEquals(2, delegate.getCalls());
+        assertEquals("q=10%20Downing%20St,%20London", delegate.getQueries().get(0));
+        assertEquals(1, client.getNormalizedHitCount());
+        assertEquals(1, client.getRawHitCount());
+    }
+
+    @Test
+    public void keepsTheOtherSearchParametersInTheCanonicalKey() throws IOException {
+
+        client.setQueryNormalizer(CanonicalQueryNormalizer.builder().build());
+        final NominatimSearchRequest french = new NominatimSearchRequest();
+        french.setQuery("Rennes");
+        french.setAcceptLanguage("fr");
+        final NominatimSearchRequest english = new NominatimSearchRequest();
+        english.setQuery("rennes");
+        english.setAcceptLanguage("en");
+
+        client.search(french);
+        client.search(english);
+        english.setAcceptLanguage("fr");
+        client.search(english);
+
+        assertEquals(2, delegate.getCalls());
+        assertEquals("q=Rennes&accept-language=fr", delegate.getQueries().get(0));
+        // the caller's request keeps its query as written
+        assertEquals("Rennes", ((SimpleSearchQuery) french.getQuery()).getQuery());
+    }
+
+    @Test
+    public void countsRawHitsOnlyForQueriesWhichWereCached() throws IOException {
+
+        final FakeNominatimClient failing = new FakeNominatimClient() {
+
+            @Override
+            protected Address answer(final String queryString) throws IOException {
+                if (1 == getCalls()) {
+                    throw new IOException("unreachable");
+                }
+                return super.answer(queryString);
+            }
+        };
+        client = new CachingNominatimClient(failing, InMemoryNominatimCache.builder().clock(clock).build(), clock);
+        client.setQueryNormalizer(CanonicalQueryNormalizer.builder().build());
+        try {
+            client.search("Rennes");
+        } catch (final IOException e) {
+            // nothing was cached for this query as written
+        }
+        client.search("rennes");
+        client.search("Rennes");
+
+        assertEquals(1, client.getNormalizedHitCount());
+        assertEquals(0, client.getRawHitCount());
+    }
+}
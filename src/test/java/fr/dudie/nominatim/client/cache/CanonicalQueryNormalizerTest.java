@@ -0,0 +1,85 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.request.ExtendedSearchQuery;
+import fr.dudie.nominatim.client.request.SearchQuery;
+import fr.dudie.nominatim.client.request.SimpleSearchQuery;
+
+/**
+ * Test class for {@link CanonicalQueryNormalizer}.
+ *
+ * @author Jeremie Huchet
+ */
+public class CanonicalQueryNormalizerTest {
+
+    private final CanonicalQueryNormalizer normalizer = CanonicalQueryNormalizer.builder().build();
+
+    @Test
+    public void normalizesText() {
+
+        assertEquals("10 downing street london", normalizer.normalize("10 Downing St, London"));
+        assertEquals("10 downing street london", normalizer.normalize(" 10  downing\tstreet LONDON "));
+        assertEquals("rennes", normalizer.normalize("Ｒｅｎｎｅｓ"));
+        assertEquals("hauptstrasse 1", normalizer.normalize("Hauptstraße 1"));
+        assertEquals("boulevard de vitré", normalizer.normalize("Bd de Vitré"));
+        assertNull(normalizer.normalize(" ,. "));
+    }
+
+    @Test
+    public void customAbbreviations() {
+
+        final CanonicalQueryNormalizer saints = CanonicalQueryNormalizer.builder().abbreviation("St", "Saint")
+                .stripPunctuation(false).build();
+        assertEquals("st-malo", saints.normalize("St-Malo"));
+        assertEquals("saint malo", saints.normalize("st malo"));
+        assertEquals("bd", CanonicalQueryNormalizer.builder().clearAbbreviations().build().normalize("BD"));
+    }
+
+    @Test
+    public void normalizesQueries() {
+
+        final ExtendedSearchQuery first = new ExtendedSearchQuery();
+        first.setStreet("Rue de  Paris");
+        first.setCity("RENNES");
+        first.setCountry(" ");
+        final ExtendedSearchQuery second = new ExtendedSearchQuery();
+        second.setCity("rennes");
+        second.setStreet("rue de paris");
+
+        assertEquals(normalizer.normalize(second).getQueryString(), normalizer.normalize(first).getQueryString());
+        assertEquals("Rue de  Paris", first.getStreet());
+        assertEquals(normalizer.normalize(new SimpleSearchQuery("rennes")).getQueryString(),
+                normalizer.normalize(new SimpleSearchQuery("Rennes.")).getQueryString());
+
+        final SearchQuery other = new SearchQuery() {
+        };
+        assertSame(other, normalizer.normalize(other));
+    }
+}
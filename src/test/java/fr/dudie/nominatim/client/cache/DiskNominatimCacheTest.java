@@ -0,0 +1,237 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fr.dudie.nominatim.client.ManualClock;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link DiskNominatimCache} and {@link TieredNominatimCache}.
+ *
+ * @author Jeremie Huchet
+ */
+public class DiskNominatimCacheTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final ManualClock clock = new ManualClock();
+
+    private Path directory;
+
+    private DiskNominatimCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.getRoot().toPath();
+        cache = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        cache.close();
+    }
+
+    private DiskNominatimCache open() throws IOException {
+        return DiskNominatimCache.builder(directory).expectedEntries(16).expireAfterWrite(1, TimeUnit.DAYS)
+                .clock(clock).build();
+    }
+
+    private CacheEntry entry(final long placeId) {
+        final Address address = new Address();
+        address.setPlaceId(placeId);
+        address.setDisplayName("place " + placeId);
+        return new CacheEntry(new ArrayList<Address>(Arrays.asList(address)), clock.currentTimeMillis(), 100);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long placeId(final CacheEntry entry) {
+        return ((ArrayList<Address>) entry.getValue()).get(0).getPlaceId();
+    }
+
+    @Test
+    public void persistsAcrossRestarts() throws IOException {
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("search?q=" + i, entry(i));
+        }
+        cache.put("search?q=7", entry(7007));
+        cache.invalidate("search?q=8");
+        cache.close();
+
+        cache = open();
+        assertEquals(999, cache.getStats().getSize());
+        assertEquals(7007, placeId(cache.get("search?q=7")));
+        assertNull(cache.get("search?q=8"));
+        for (int i = 9; i < 1000; i++) {
+            assertEquals(i, placeId(cache.get("search?q=" + i)));
+        }
+        assertNull(cache.get("search?q=1000"));
+        assertEquals(100, cache.get("search?q=9").getWeight());
+    }
+
+    @Test
+    public void expiresEntries() throws IOException {
+
+        cache.put("a", entry(1));
+        clock.advance(1, TimeUnit.HOURS);
+        cache.put("b", entry(2));
+        clock.advance(23, TimeUnit.HOURS);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+
+        cache.compact();
+        assertEquals(1, cache.getStats().getSize());
+        assertEquals(1, cache.getStats().getExpirationCount());
+    }
+
+    @Test
+    public void compactionDropsObsoleteRecords() throws IOException {
+
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.put("reverse?q=" + i, entry(round * 1000 + i));
+            }
+        }
+        final long before = Files.size(directory.resolve(DiskNominatimCache.LOG_FILE));
+        cache.compact();
+        final long after = Files.size(directory.resolve(DiskNominatimCache.LOG_FILE));
+        assertTrue(before + " -> " + after, after * 9 < before);
+        assertEquals(after, cache.getStats().getWeight());
+
+        cache.close();
+        cache = open();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(9000 + i, placeId(cache.get("reverse?q=" + i)));
+        }
+    }
+
+    @Test
+    public void recoversFromACrash() throws IOException {
+
+        for (int i = 0; i < 100; i++) {
+            cache.put("lookup?q=" + i, entry(i));
+        }
+        cache.invalidate("lookup?q=0");
+        cache.close();
+
+        // a record torn by a crash during a write
+        final Path log = directory.resolve(DiskNominatimCache.LOG_FILE);
+        final long length = Files.size(log);
+        try (final RandomAccessFile file = new RandomAccessFile(log.toFile(), "rw")) {
+            file.seek(length);
+            file.writeInt(1000);
+            file.writeInt(42);
+            file.write(new byte[100]);
+        }
+        Files.delete(directory.resolve(DiskNominatimCache.INDEX_FILE));
+
+        cache = open();
+        assertEquals(length, Files.size(log));
+        assertEquals(99, cache.getStats().getSize());
+        assertNull(cache.get("lookup?q=0"));
+        for (int i = 1; i < 100; i++) {
+            assertEquals(i, placeId(cache.get("lookup?q=" + i)));
+        }
+        cache.put("lookup?q=100", entry(100));
+        assertEquals(100, placeId(cache.get("lookup?q=100")));
+    }
+
+    @Test
+    public void dropsResponsesWhichCantBeDeserialized() throws IOException {
+
+        final HashMap<String, String> unexpected = new HashMap<String, String>();
+        unexpected.put("class", "not a response");
+        cache.put("search?q=rennes", new CacheEntry(unexpected, clock.currentTimeMillis(), 100));
+        cache.put("search?q=vitré", entry(2));
+
+        assertNull(cache.get("search?q=rennes"));
+        assertEquals(1, cache.getStats().getSize());
+        cache.close();
+        cache = open();
+        assertNull(cache.get("search?q=rennes"));
+        assertEquals(2, placeId(cache.get("search?q=vitré")));
+    }
+
+    @Test
+    public void discardsLogOfAnotherFormat() throws IOException {
+
+        cache.put("search?q=rennes", entry(1));
+        cache.close();
+        try (final RandomAccessFile file = new RandomAccessFile(directory.resolve(DiskNominatimCache.LOG_FILE)
+                .toFile(), "rw")) {
+            file.seek(4);
+            file.writeInt(1);
+        }
+
+        cache = open();
+        assertEquals(0, cache.getStats().getSize());
+        assertNull(cache.get("search?q=rennes"));
+        cache.put("search?q=rennes", entry(1));
+        assertEquals(1, placeId(cache.get("search?q=rennes")));
+    }
+
+    @Test
+    public void tiersPromoteEntriesFromDisk() throws IOException {
+
+        cache.put("search?q=rennes", entry(1));
+        final InMemoryNominatimCache memory = InMemoryNominatimCache.builder().clock(clock).build();
+        final TieredNominatimCache tiered = new TieredNominatimCache(memory, cache);
+
+        assertEquals(1, placeId(tiered.get("search?q=rennes")));
+        assertEquals(1, memory.getStats().getSize());
+        assertEquals(1, placeId(tiered.get("search?q=rennes")));
+        assertEquals(1, cache.getStats().getHitCount());
+        assertNull(tiered.get("search?q=vitré"));
+
+        tiered.put("search?q=vitré", entry(2));
+        assertEquals(2, cache.getStats().getSize());
+        tiered.invalidate("search?q=rennes");
+        assertNull(tiered.get("search?q=rennes"));
+
+        final CacheStats stats = tiered.getStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(1, stats.getSize());
+    }
+}
@@ -0,0 +1,170 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.ManualClock;
+
+/**
+ * Test class for {@link InMemoryNominatimCache}.
+ *
+ * @author Jeremie Huchet
+ */
+public class InMemoryNominatimCacheTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    private CacheEntry entry(final long weight) {
+        return new CacheEntry("value", clock.currentTimeMillis(), weight);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().maximumEntries(2).clock(clock).build();
+        cache.put("a", entry(1));
+        cache.put("b", entry(1));
+        assertNotNull(cache.get("a"));
+        cache.put("c", entry(1));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        final CacheStats stats = cache.getStats();
+        assertEquals(3, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(2, stats.getSize());
+    }
+
+    @Test
+    public void evictsToRespectMaximumWeight() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().maximumWeight(100).clock(clock).build();
+        cache.put("a", entry(40));
+        cache.put("b", entry(40));
+        cache.put("c", entry(40));
+        cache.put("too heavy", entry(101));
+
+        assertNull(cache.get("a"));
+        assertNull(cache.get("too heavy"));
+        assertEquals(80, cache.getStats().getWeight());
+        assertEquals(1, cache.getStats().getEvictionCount());
+    }
+
+    @Test
+    public void expiresEntries() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().expireAfterWrite(1, TimeUnit.MINUTES)
+                .clock(clock).build();
+        cache.put("a", entry(1));
+        clock.advance(59, TimeUnit.SECONDS);
+        assertNotNull(cache.get("a"));
+        clock.advance(1, TimeUnit.SECONDS);
+        assertNull(cache.get("a"));
+
+        assertEquals(1, cache.getStats().getExpirationCount());
+        assertEquals(0, cache.getStats().getSize());
+    }
+
+    @Test
+    public void updatesReplaceWeight() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().clock(clock).build();
+        cache.put("a", entry(10));
+        cache.put("a", entry(20));
+        assertEquals(1, cache.getStats().getSize());
+        assertEquals(20, cache.getStats().getWeight());
+        cache.invalidate("a");
+        assertEquals(0, cache.getStats().getWeight());
+    }
+
+    @Test
+    public void tinyLfuKeepsPopularEntries() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().maximumEntries(10)
+                .evictionPolicy(EvictionPolicy.TINY_LFU).clock(clock).build();
+        for (int i = 0; i < 10; i++) {
+            cache.put("popular" + i, entry(1));
+            for (int j = 0; j < 3; j++) {
+                cache.get("popular" + i);
+            }
+        }
+        // a scan of one-time requests
+        for (int i = 0; i < 100; i++) {
+            if (null == cache.get("scan" + i)) {
+                cache.put("scan" + i, entry(1));
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertNotNull("popular" + i, cache.get("popular" + i));
+        }
+    }
+
+    @Test
+    public void tinyLfuRejectsWithoutEvicting() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().maximumWeight(100)
+                .evictionPolicy(EvictionPolicy.TINY_LFU).clock(clock).build();
+        cache.put("cold", entry(40));
+        cache.put("hot", entry(40));
+        for (int i = 0; i < 5; i++) {
+            cache.get("hot");
+        }
+        cache.get("candidate");
+        cache.get("candidate");
+        // evicting the cold entry is not enough, the hot one is more popular than the candidate
+        cache.put("candidate", entry(80));
+
+        assertEquals(0, cache.getStats().getEvictionCount());
+        assertEquals(2, cache.getStats().getSize());
+        assertNotNull(cache.get("cold"));
+        assertNotNull(cache.get("hot"));
+        assertNull(cache.get("candidate"));
+    }
+
+    @Test
+    public void lruIsFlushedByScan() {
+
+        final NominatimCache cache = InMemoryNominatimCache.builder().maximumEntries(10).clock(clock).build();
+        for (int i = 0; i < 10; i++) {
+            cache.put("popular" + i, entry(1));
+            cache.get("popular" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            cache.put("scan" + i, entry(1));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.get("popular" + i));
+        }
+    }
+}
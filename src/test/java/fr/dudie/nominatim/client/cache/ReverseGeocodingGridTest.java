@@ -0,0 +1,104 @@
+package fr.dudie.nominatim.client.cache;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.FakeNominatimClient;
+import fr.dudie.nominatim.client.request.NominatimReverseRequest;
+
+/**
+ * Test class for {@link ReverseGeocodingGrid}.
+ *
+ * @author Jeremie Huchet
+ */
+public class ReverseGeocodingGridTest {
+
+    private final ReverseGeocodingGrid grid = new ReverseGeocodingGrid();
+
+    @Test
+    public void closePositionsShareACell() {
+
+        // about 1 meter apart
+        assertEquals(grid.getCell(-1.648910, 48.116650, 18), grid.getCell(-1.648900, 48.116655, 18));
+        assertEquals(grid.getCell(-1.648910, 48.116650, null), grid.getCell(-1.648900, 48.116655, 18));
+    }
+
+    @Test
+    public void cellSizeDependsOnZoom() {
+
+        // about 500 meters apart
+        assertFalse(grid.getCell(-1.6489, 48.1166, 18).equals(grid.getCell(-1.6420, 48.1166, 18)));
+        assertEquals(grid.getCell(-1.6470, 48.1166, 10), grid.getCell(-1.6300, 48.1166, 10));
+        assertFalse(grid.getCell(-1.6489, 48.1166, 10).equals(grid.getCell(-1.6489, 48.1166, 11)));
+    }
+
+    @Test
+    public void customCellSize() {
+
+        grid.setCellSize(18, 0.01);
+        assertEquals(0.01, grid.getCellSize(18), 0);
+        assertEquals(0.01, grid.getCellSize(25), 0);
+        assertEquals(grid.getCell(-1.6401, 48.1101, 18), grid.getCell(-1.6499, 48.1199, 18));
+        assertFalse(grid.getCell(-1.6401, 48.1101, 18).equals(grid.getCell(-1.6399, 48.1101, 18)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeCellSize() {
+        grid.setCellSize(-1);
+    }
+
+    @Test
+    public void cachingClientSnapsCoordinates() throws IOException {
+
+        final FakeNominatimClient delegate = new FakeNominatimClient();
+        final CachingNominatimClient client = new CachingNominatimClient(delegate, InMemoryNominatimCache.builder()
+                .build());
+        client.setReverseGrid(grid);
+
+        final String first = client.getAddress(-1.648910, 48.116650).getDisplayName();
+        assertEquals(first, client.getAddress(-1.648900, 48.116655).getDisplayName());
+        assertEquals(first, client.getAddress(-1.648910, 48.116650, 18).getDisplayName());
+        assertEquals(1, delegate.getCalls());
+
+        // different options are cached apart
+        final NominatimReverseRequest details = new NominatimReverseRequest();
+        details.setQuery(-1.648900, 48.116655);
+        details.setAddressDetails(true);
+        client.getAddress(details);
+        client.getAddress(-1.648910, 48.116650, 10);
+        client.getAddress(-1.6420, 48.1166);
+        assertEquals(4, delegate.getCalls());
+
+        client.setReverseGrid(null);
+        client.getAddress(-1.648900, 48.116655);
+        assertEquals(5, delegate.getCalls());
+        assertNull(client.getReverseGrid());
+    }
+}
@@ -0,0 +1,97 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link Histogram}.
+ *
+ * @author Jeremie Huchet
+ */
+public class HistogramTest {
+
+    @Test
+    public void bucketsAreContiguous() {
+
+        long previous = -1;
+        for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+            final long highest = Histogram.highestValueOf(i);
+            assertEquals(i, Histogram.indexOf(previous + 1));
+            assertEquals(i, Histogram.indexOf(highest));
+            previous = highest;
+        }
+        assertTrue(previous >= Histogram.MAX_TRACKABLE_VALUE);
+    }
+
+    @Test
+    public void percentilesAreWithinPrecision() {
+
+        final Histogram histogram = new Histogram();
+        final Random random = new Random(1);
+        final long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (Math.exp(random.nextGaussian() * 2 + 15));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[0], snapshot.getMin());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (final double p : new double[] { 50, 90, 99, 99.9 }) {
+            final long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            final long approx = snapshot.getValueAtPercentile(p);
+            assertTrue(p + ": " + exact + " vs " + approx, Math.abs(approx - exact) <= exact / 64 + 1);
+        }
+        assertEquals(values[values.length - 1], snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void snapshotAndReset() {
+
+        final Histogram histogram = new Histogram();
+        histogram.record(10);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        final HistogramSnapshot first = histogram.snapshotAndReset();
+        assertEquals(3, first.getCount());
+        assertEquals(0, first.getMin());
+        assertEquals(Long.MAX_VALUE, first.getMax());
+
+        final HistogramSnapshot second = histogram.snapshotAndReset();
+        assertEquals(0, second.getCount());
+        assertEquals(0, second.getMax());
+        assertEquals(0, second.getValueAtPercentile(50));
+        histogram.record(3);
+        assertEquals(3, histogram.snapshot().getMin());
+    }
+}
@@ -0,0 +1,126 @@
+package fr.dudie.nominatim.client.metrics;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.JsonNominatimClient;
+import fr.dudie.nominatim.client.NominatimServerErrorException;
+import fr.dudie.nominatim.client.NominatimStubServer;
+
+/**
+ * Tests the measurements of {@link JsonNominatimClient} recorded in {@link InMemoryNominatimMetrics}.
+ *
+ * @author Jeremie Huchet
+ */
+public class InMemoryNominatimMetricsTest {
+
+    private NominatimStubServer server;
+
+    private CloseableHttpClient httpClient;
+
+    private JsonNominatimClient client;
+
+    private InMemoryNominatimMetrics metrics;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new NominatimStubServer();
+        server.start();
+        httpClient = HttpClients.createDefault();
+        client = new JsonNominatimClient(server.getBaseUrl(), httpClient, "contact@dudie.fr");
+        metrics = new InMemoryNominatimMetrics();
+        client.setMetrics(metrics);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.close();
+        server.stop();
+    }
+
+    @Test
+    public void recordsEachEndpoint() throws IOException {
+
+        server.setLatency(20, 0, TimeUnit.MILLISECONDS);
+        client.search("vitré");
+        client.search("vitré");
+        client.getAddress(-1.65, 48.12);
+        client.lookupAddress(Arrays.asList("R146656"));
+
+        final MetricsSnapshot snapshot = metrics.snapshot();
+        final EndpointMetrics search = snapshot.get(Endpoint.SEARCH);
+        assertEquals(2, search.getRequestCount());
+        assertEquals(0, search.getErrorCount());
+        assertEquals(NominatimStubServer.read("/fixtures/search.json").length, search.getResponseBytes().getMax());
+        assertTrue(search.getTimeToFirstByte().getMin() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(search.getTotalTime().getMin() >= search.getTimeToFirstByte().getMin());
+        assertTrue(search.getParseTime().getMin() > 0);
+        assertTrue(search.getEncodeTime().getMin() > 0);
+        assertEquals(1, snapshot.get(Endpoint.REVERSE).getRequestCount());
+        assertEquals(1, snapshot.get(Endpoint.LOOKUP).getRequestCount());
+        assertTrue(snapshot.getThroughput(Endpoint.SEARCH) > 0);
+    }
+
+    @Test
+    public void recordsErrors() throws IOException {
+
+        server.setErrorRate(1);
+        try {
+            client.getAddress(-1.65, 48.12);
+            fail("expected an HTTP error");
+        } catch (final IOException e) {
+            // expected
+        }
+        final EndpointMetrics reverse = metrics.snapshot().get(Endpoint.REVERSE);
+        assertEquals(1, reverse.getErrorCount());
+        assertEquals(Long.valueOf(1), reverse.getErrors().get(NominatimServerErrorException.class.getName()));
+        assertEquals(1, reverse.getTotalTime().getCount());
+        assertEquals(0, reverse.getParseTime().getCount());
+        assertEquals(0, reverse.getResponseBytes().getCount());
+        assertEquals(0, reverse.getWireBytes().getCount());
+        assertTrue(reverse.getTimeToFirstByte().getMax() > 0);
+    }
+
+    @Test
+    public void snapshotAndResetStartsANewPeriod() throws IOException {
+
+        client.search("vitré");
+        assertEquals(1, metrics.snapshotAndReset().get(Endpoint.SEARCH).getRequestCount());
+        final MetricsSnapshot empty = metrics.snapshotAndReset();
+        assertEquals(0, empty.get(Endpoint.SEARCH).getRequestCount());
+        assertEquals(0, empty.getThroughput(Endpoint.SEARCH), 0);
+    }
+}
@@ -0,0 +1,152 @@
+package fr.dudie.nominatim.client.ratelimit;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.FakeNominatimClient;
+import fr.dudie.nominatim.client.ManualClock;
+
+/**
+ * Test class for {@link RateLimiter} and {@link RateLimitedNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class RateLimiterTest {
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void allowsBurstThenSustainedRate() {
+
+        final RateLimiter limiter = RateLimiter.builder().permitsPerSecond(10).burst(3).clock(clock).build();
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        clock.advance(99, TimeUnit.MILLISECONDS);
+        assertFalse(limiter.tryAcquire());
+        clock.advance(1, TimeUnit.MILLISECONDS);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        // an idle period refills the bucket up to the burst size only
+        clock.advance(1, TimeUnit.MINUTES);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+
+        final RateLimiterStats stats = limiter.getStats();
+        assertEquals(7, stats.getAcquiredCount());
+        assertEquals(4, stats.getRejectedCount());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    public void rejectsCallersWhichWouldWaitTooLong() throws IOException {
+
+        final RateLimiter limiter = RateLimiter.builder().permitsPerSecond(1).maxWait(500, TimeUnit.MILLISECONDS)
+                .clock(clock).build();
+        limiter.acquire();
+        try {
+            limiter.acquire();
+            fail("the second request should wait 1 second");
+        } catch (final RateLimitExceededException e) {
+            assertEquals(1, limiter.getStats().getRejectedCount());
+        }
+        clock.advance(1, TimeUnit.SECONDS);
+        limiter.acquire();
+        assertEquals(2, limiter.getStats().getAcquiredCount());
+    }
+
+    @Test
+    public void servesWaitingCallersInArrivalOrder() throws Exception {
+
+        final RateLimiter limiter = RateLimiter.builder().permitsPerSecond(10).build();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final int caller = i;
+            threads.add(new Thread(() -> {
+                try {
+                    limiter.acquire();
+                    order.add(caller);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+
+        limiter.acquire();
+        for (int i = 0; i < 4; i++) {
+            threads.get(i).start();
+            // tokens are reserved in arrival order, before waiting
+            while (limiter.getStats().getAcquiredCount() <= i + 1) {
+                Thread.sleep(1);
+            }
+        }
+        // a non-blocking caller can't overtake the queue
+        assertFalse(limiter.tryAcquire());
+        for (final Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+        final RateLimiterStats stats = limiter.getStats();
+        assertEquals(4, stats.getMaxQueueDepth());
+        assertEquals(5, stats.getWaitTime().getCount());
+        assertTrue(stats.getWaitTime().getMax() >= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test
+    public void clientDoesNotSendRejectedRequests() throws IOException {
+
+        final FakeNominatimClient delegate = new FakeNominatimClient();
+        final RateLimitedNominatimClient client = new RateLimitedNominatimClient(delegate, RateLimiter.builder()
+                .permitsPerSecond(1).maxWait(0, TimeUnit.SECONDS).clock(clock).build());
+        client.search("rennes");
+        try {
+            client.getAddress(-1.68, 48.11);
+            fail("the second request should be rejected");
+        } catch (final RateLimitExceededException e) {
+            assertEquals(1, delegate.getCalls());
+        }
+        clock.advance(1, TimeUnit.SECONDS);
+        client.lookupAddress(Arrays.asList("R146656"));
+        assertEquals(2, delegate.getCalls());
+    }
+}
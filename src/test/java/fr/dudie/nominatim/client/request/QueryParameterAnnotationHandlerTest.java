@@ -0,0 +1,95 @@
+package fr.dudie.nominatim.client.request;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.request.paramhelper.PolygonFormat;
+
+public class QueryParameterAnnotationHandlerTest {
+
+    @Test
+    public void encodingMatchesUriQueryEncoding() throws Exception {
+        final String value = "10 Downing St. #1, London & co/100% [x]";
+        final NominatimSearchRequest req = new NominatimSearchRequest();
+        req.setAcceptLanguage(value);
+        final String expected = "accept-language=" + new URI(null, null, null, value, null).getRawQuery();
+        assertEquals(expected, req.getQueryString());
+    }
+
+    @Test
+    public void emptyNestedQueryIsIgnored() {
+        final NominatimSearchRequest req = new NominatimSearchRequest();
+        req.setQuery(new ExtendedSearchQuery());
+        req.setLimit(5);
+        assertEquals("limit=5", req.getQueryString());
+    }
+
+    @Test
+    public void nestedQueryIsInlined() {
+        final ExtendedSearchQuery q = new ExtendedSearchQuery();
+        q.setCity("rennes");
+        q.setCountry("france");
+        final NominatimSearchRequest req = new NominatimSearchRequest();
+        req.setQuery(q);
+        req.setPolygonFormat(PolygonFormat.GEO_JSON);
+        assertEquals("city=rennes&country=france&polygon_geojson=1", req.getQueryString());
+    }
+
+    @Test
+    public void concurrentEncoding() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < 1000; i++) {
+                final int n = i;
+                results.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() {
+                        final NominatimReverseRequest req = new NominatimReverseRequest();
+                        req.setQuery(n, 0);
+                        req.setZoom(n % 18);
+                        return req.getQueryString();
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(String.format("lat=0.00000000000000&lon=%s.00000000000000&zoom=%s", i, i % 18),
+                        results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
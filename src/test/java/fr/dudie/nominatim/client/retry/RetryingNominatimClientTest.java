@@ -0,0 +1,166 @@
+package fr.dudie.nominatim.client.retry;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import fr.dudie.nominatim.client.FakeNominatimClient;
+import fr.dudie.nominatim.client.NominatimClientErrorException;
+import fr.dudie.nominatim.client.NominatimParseException;
+import fr.dudie.nominatim.client.NominatimServerErrorException;
+import fr.dudie.nominatim.client.NominatimThrottledException;
+import fr.dudie.nominatim.client.ratelimit.RateLimitExceededException;
+import fr.dudie.nominatim.model.Address;
+
+/**
+ * Test class for {@link RetryPolicy} and {@link RetryingNominatimClient}.
+ *
+ * @author Jeremie Huchet
+ */
+public class RetryingNominatimClientTest {
+
+    private final RetryPolicy policy = RetryPolicy.builder().maxAttempts(4).backoff(1, 8, TimeUnit.MILLISECONDS)
+            .deadline(10, TimeUnit.SECONDS).build();
+
+    @Test
+    public void retriesOnlyTransientFailures() {
+
+        assertTrue(policy.isRetryable(new NominatimThrottledException(429, "Too Many Requests", -1)));
+        assertTrue(policy.isRetryable(new NominatimServerErrorException(503, "Service Unavailable", -1)));
+        assertTrue(policy.isRetryable(new SocketTimeoutException()));
+        assertTrue(policy.isRetryable(new IOException("connection reset")));
+
+        assertEquals(false, policy.isRetryable(new NominatimClientErrorException(400, "Bad Request", -1)));
+        assertEquals(false, policy.isRetryable(new NominatimParseException("unexpected response", null)));
+        assertEquals(false, policy.isRetryable(new InterruptedIOException()));
+        assertEquals(false, policy.isRetryable(new RateLimitExceededException("too many requests")));
+    }
+
+    @Test
+    public void delaysGrowExponentiallyWithFullJitter() {
+
+        final IOException error = new IOException("connection reset");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.nextDelayNanos(1, error, 0) <= TimeUnit.MILLISECONDS.toNanos(1));
+            assertTrue(policy.nextDelayNanos(3, error, 0) <= TimeUnit.MILLISECONDS.toNanos(4));
+        }
+        long max = 0;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            final long delay = RetryPolicy.builder().maxAttempts(100).backoff(1, 8, TimeUnit.MILLISECONDS).build()
+                    .nextDelayNanos(50, error, 0);
+            max = Math.max(max, delay);
+            min = Math.min(min, delay);
+        }
+        assertTrue(max <= TimeUnit.MILLISECONDS.toNanos(8));
+        assertTrue(max > TimeUnit.MILLISECONDS.toNanos(6));
+        assertTrue(min < TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals(RetryPolicy.GIVE_UP, policy.nextDelayNanos(4, error, 0));
+        assertEquals(RetryPolicy.GIVE_UP, policy.nextDelayNanos(1, error, TimeUnit.SECONDS.toNanos(10)));
+    }
+
+    @Test
+    public void honorsRetryAfter() {
+
+        final NominatimThrottledException throttled = new NominatimThrottledException(429, "Too Many Requests", 2000);
+        assertTrue(policy.nextDelayNanos(1, throttled, 0) >= TimeUnit.SECONDS.toNanos(2));
+        // the server asks to come back after the deadline
+        assertEquals(RetryPolicy.GIVE_UP, policy.nextDelayNanos(1, throttled, TimeUnit.SECONDS.toNanos(9)));
+    }
+
+    @Test
+    public void retriesUntilSuccess() throws IOException {
+
+        final FlakyClient delegate = new FlakyClient(2, () -> new NominatimServerErrorException(502, "Bad Gateway", -1));
+        final RetryingNominatimClient client = new RetryingNominatimClient(delegate, policy);
+
+        assertEquals(1, client.search("rennes").size());
+        assertEquals(3, delegate.getCalls());
+        assertEquals(2, client.getRetryCount());
+        assertEquals(0, client.getExhaustedCount());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+
+        final FlakyClient delegate = new FlakyClient(10, () -> new IOException("connection reset"));
+        final RetryingNominatimClient client = new RetryingNominatimClient(delegate, policy);
+        try {
+            client.search("rennes");
+            fail("expected an error");
+        } catch (final IOException e) {
+            assertEquals(3, e.getSuppressed().length);
+        }
+        assertEquals(4, delegate.getCalls());
+        assertEquals(1, client.getExhaustedCount());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+
+        final FlakyClient delegate = new FlakyClient(10, () -> new NominatimClientErrorException(400, "Bad Request", -1));
+        final RetryingNominatimClient client = new RetryingNominatimClient(delegate, policy);
+        try {
+            client.getAddress(-1.65, 48.12);
+            fail("expected an error");
+        } catch (final NominatimClientErrorException e) {
+            assertEquals(400, e.getStatusCode());
+        } catch (final IOException e) {
+            fail("unexpected error: " + e);
+        }
+        assertEquals(1, delegate.getCalls());
+        assertEquals(0, client.getRetryCount());
+    }
+
+    /** Fails a number of times before answering. */
+    private static class FlakyClient extends FakeNominatimClient {
+
+        private final int failures;
+
+        private final Supplier<IOException> error;
+
+        FlakyClient(final int failures, final Supplier<IOException> error) {
+            this.failures = failures;
+            this.error = error;
+        }
+
+        @Override
+        protected Address answer(final String queryString) throws IOException {
+            if (getCalls() <= failures) {
+                throw error.get();
+            }
+            return super.answer(queryString);
+        }
+    }
+}
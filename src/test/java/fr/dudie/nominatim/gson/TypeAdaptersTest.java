@@ -0,0 +1,162 @@
+package fr.dudie.nominatim.gson;
+
+/*
+ * [license]
+ * Nominatim Java API client
+ * ~~~~
+ * Copyright (C) 2010 - 2014 Dudie
+ * ~~~~
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Lesser Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Lesser Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/lgpl-3.0.html>.
+ * [/license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import fr.dudie.nominatim.model.Address;
+import fr.dudie.nominatim.model.BoundingBox;
+import fr.dudie.nominatim.model.Element;
+import fr.dudie.nominatim.model.LazyGeometry;
+import fr.dudie.nominatim.model.PackedPolygon;
+import fr.dudie.nominatim.model.PolygonPoint;
+
+/**
+ * Checks the streaming type adapters read the same values as the deprecated deserializers.
+ *
+ * @author Jeremie Huchet
+ */
+@SuppressWarnings("deprecation")
+public class TypeAdaptersTest {
+
+    private static final Type ADDRESS_LIST = new TypeToken<List<Address>>() {
+    }.getType();
+
+    private static final String RESPONSE = "[{\"place_id\":\"49135222\",\"licence\":\"Data © OpenStreetMap contributors\","
+            + "\"osm_type\":\"way\",\"osm_id\":\"42928962\","
+            + "\"boundingbox\":[\"48.1190567016602\",\"48.1191635131836\",\"-1.6499342918396\",\"-1.64988231658936\"],"
+            + "\"polygonpoints\":[[\"34.50669\",\"28.0885916\"],[34.5183936,28.1684821],[\"-1.5\",\"48.2\",\"extra\"]],"
+            + "\"lat\":\"48.11911095\",\"lon\":\"-1.6499083\","
+            + "\"display_name\":\"Boulevard de Vitré, Jeanne d'Arc, Rennes, Britanny, 35042, France\","
+            + "\"category\":\"highway\",\"type\":\"primary\",\"place_rank\":26,\"importance\":0.2101,"
+            + "\"address\":{\"road\":\"Boulevard de Vitré\",\"suburb\":\"Jeanne d'Arc\",\"postcode\":35042,"
+            + "\"country\":\"France\",\"country_code\":\"fr\"},"
+            + "\"namedetails\":{\"name\":\"Boulevard de Vitré\",\"name:br\":\"Bali Gwitreg\"}},"
+            + "{\"place_id\":1,\"boundingbox\":null,\"address\":null,\"lat\":\"0\",\"lon\":\"0\"}]";
+
+    /** Serializes the models field by field to compare them. */
+    private final Gson reflective = new Gson();
+
+    @Test
+    public void sameOutputAsDeserializers() {
+        final GsonBuilder legacy = new GsonBuilder();
+        legacy.registerTypeAdapter(Element[].class, new ArrayOfAddressElementsDeserializer());
+        legacy.registerTypeAdapter(PolygonPoint.class, new PolygonPointDeserializer());
+        legacy.registerTypeAdapter(PolygonPoint[].class, new ArrayOfPolygonPointsDeserializer());
+        legacy.registerTypeAdapter(BoundingBox.class, new BoundingBoxDeserializer());
+
+        final List<Address> expected = legacy.create().fromJson(RESPONSE, ADDRESS_LIST);
+        final List<Address> actual = streaming().fromJson(RESPONSE, ADDRESS_LIST);
+
+        assertEquals(reflective.toJson(expected), reflective.toJson(actual));
+    }
+
+    @Test
+    public void readValues() {
+        final List<Address> addresses = streaming().fromJson(RESPONSE, ADDRESS_LIST);
+        final Address address = addresses.get(0);
+
+        assertEquals(48.1190567016602, address.getBoundingBox().getSouth(), 0);
+        assertEquals(-1.64988231658936, address.getBoundingBox().getEast(), 0);
+        assertEquals(3, address.getPolygonPoints().length);
+        assertEquals(34.5183936, address.getPolygonPoints()[1].getLongitude(), 0);
+        assertEquals(48.2, address.getPolygonPoints()[2].getLatitude(), 0);
+        assertEquals("postcode", address.getAddressElements()[2].getKey());
+        assertEquals("35042", address.getAddressElements()[2].getValue());
+        assertEquals("Bali Gwitreg", address.getNameDetails()[1].getValue());
+
+        assertNull(addresses.get(1).getBoundingBox());
+        assertNull(addresses.get(1).getAddressElements());
+    }
+
+    @Test
+    public void writeThenRead() {
+        final Gson gson = streaming();
+        final List<Address> addresses = gson.fromJson(RESPONSE, ADDRESS_LIST);
+        final List<Address> copy = gson.fromJson(gson.toJson(addresses, ADDRESS_LIST), ADDRESS_LIST);
+
+        assertEquals(reflective.toJson(addresses), reflective.toJson(copy));
+    }
+
+    @Test
+    public void packsPolygonPoints() {
+        final Address address = streaming().<List<Address>> fromJson(RESPONSE, ADDRESS_LIST).get(0);
+
+        final PackedPolygon polygon = address.getPolygon();
+        assertEquals(3, polygon.size());
+        assertEquals(345066900, polygon.getLongitudeE7(0));
+        assertEquals(281684821, polygon.getLatitudeE7(1));
+        assertEquals(-1.5, polygon.getLongitude(2), 0);
+        assertNotSame(address.getPolygonPoints()[0], address.getPolygonPoints()[0]);
+
+        final PolygonPoint point = new PolygonPoint();
+        point.setLongitude(-1.64988231658936);
+        point.setLatitude(48.1191635131836);
+        address.setPolygonPoints(new PolygonPoint[] { point });
+        assertEquals(-16498823, address.getPolygon().getLongitudeE7(0));
+        assertEquals(48.1191635, address.getPolygonPoints()[0].getLatitude(), 0);
+        address.setPolygonPoints(null);
+        assertNull(address.getPolygon());
+    }
+
+    @Test
+    public void decodesGeojsonOnDemand() {
+        final String json = "[{\"place_id\":1,\"display_name\":\"Rennes\",\"geojson\":{\"type\":\"LineString\","
+                + "\"coordinates\":[[-1.6499342918396,48.1190567016602],[-1.64988231658936,48.1191635131836]]}}]";
+        final Address address = streaming().<List<Address>> fromJson(json, ADDRESS_LIST).get(0);
+
+        final LazyGeometry geojson = address.getLazyGeojson();
+        assertFalse(geojson.isDecoded());
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[-1.6499342918396,48.1190567016602],"
+                + "[-1.64988231658936,48.1191635131836]]}", geojson.getJson());
+        assertFalse(geojson.isDecoded());
+
+        assertEquals(2, address.getGeojson().getNumPoints());
+        assertEquals(48.1191635131836, address.getGeojson().getCoordinates()[1].y, 0);
+        assertTrue(geojson.isDecoded());
+        assertTrue(streaming().toJson(address).contains("\"geojson\":{\"type\":\"LineString\",\"coordinates\":"
+                + "[[-1.6499342918396,48.1190567016602],[-1.64988231658936,48.1191635131836]]}"));
+    }
+
+    private static Gson streaming() {
+        final GsonBuilder builder = new GsonBuilder();
+        builder.registerTypeAdapter(Element[].class, new ArrayOfAddressElementsTypeAdapter());
+        builder.registerTypeAdapter(PolygonPoint.class, new PolygonPointTypeAdapter());
+        builder.registerTypeAdapter(PolygonPoint[].class, new ArrayOfPolygonPointsTypeAdapter());
+        builder.registerTypeAdapter(BoundingBox.class, new BoundingBoxTypeAdapter());
+        return builder.create();
+    }
+}